@@ -0,0 +1,149 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Non-blocking client for the auction server.
+// A single I/O thread multiplexes any number of AuctionSessions over one Selector,
+// so one process can drive thousands of automated users.
+//
+// Example:
+//   AsyncAuctionClient client = new AsyncAuctionClient("localhost", 8888);
+//   AuctionSession session = client.openSession(listener);
+//   session.login("bob", "secret").thenCompose(w -> session.bid(3, 12000));
+public class AsyncAuctionClient implements Closeable {
+    private final InetSocketAddress serverAddress;
+    private final Selector selector;
+    private final Thread ioThread;
+    private volatile boolean running;
+
+    private final Set<AuctionSession> sessions = ConcurrentHashMap.newKeySet();
+    // Sessions with work for the I/O thread (new connection, pending output, close)
+    private final Queue<AuctionSession> actions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    // Reconnect deadlines, only touched by the I/O thread
+    private final PriorityQueue<AuctionSession> reconnects =
+            new PriorityQueue<>(Comparator.comparingLong(AuctionSession::getReconnectAt));
+
+    public AsyncAuctionClient(String host, int port) throws IOException {
+        this.serverAddress = new InetSocketAddress(host, port);
+        this.selector = Selector.open();
+        this.running = true;
+        this.ioThread = new Thread(this::runLoop, "auction-client-io");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    public AuctionSession openSession(AuctionEventListener listener) {
+        return openSession(null, listener);
+    }
+
+    // localAddress binds the session's socket, e.g. to a loopback alias, so the server
+    // sees a distinct IP per session; null lets the OS choose
+    public AuctionSession openSession(InetAddress localAddress, AuctionEventListener listener) {
+        if (!running) {
+            throw new IllegalStateException("Client is closed");
+        }
+        AuctionSession session = new AuctionSession(this, localAddress, listener);
+        sessions.add(session);
+        requestAction(session);
+        return session;
+    }
+
+    InetSocketAddress getServerAddress() {
+        return serverAddress;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    void requestAction(AuctionSession session) {
+        actions.add(session);
+        if (Thread.currentThread() != ioThread && wakeupRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    void scheduleReconnect(AuctionSession session) {
+        reconnects.add(session);
+    }
+
+    void sessionClosed(AuctionSession session) {
+        sessions.remove(session);
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                long timeout = 0;
+                AuctionSession next = reconnects.peek();
+                if (next != null) {
+                    timeout = Math.max(1, next.getReconnectAt() - System.currentTimeMillis());
+                }
+                selector.select(timeout);
+                wakeupRequested.set(false);
+
+                AuctionSession session;
+                while ((session = actions.poll()) != null) {
+                    session.onAction();
+                }
+
+                long now = System.currentTimeMillis();
+                while ((next = reconnects.peek()) != null && next.getReconnectAt() <= now) {
+                    reconnects.poll().reconnect();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    AuctionSession owner = (AuctionSession) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isConnectable()) {
+                        owner.onConnectable();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        owner.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        owner.onWritable();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Auction client I/O error: " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Auction client error: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        for (AuctionSession session : sessions) {
+            session.shutdown(new IOException("Client closed"));
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
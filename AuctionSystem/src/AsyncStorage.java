@@ -0,0 +1,127 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Runs AuctionStore calls off the client and timer threads. Callers get a CompletableFuture
+// and compose on it, so a slow disk delays storage work but no longer blocks client
+// sockets or timer threads. Writes, and anything that must be ordered with them, run on
+// one dedicated storage thread in submission order, so they reach the database in the
+// order they were submitted. Pure reads run on reader threads, one per reader the store
+// offers (AuctionStore.getReaderCount), and do not wait behind the writes.
+// The queues are bounded: when one is full new tasks fail with RejectedExecutionException
+// instead of piling up. Queue depth and queueing delay are tracked for STORAGE_STATS.
+public class AsyncStorage {
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private final AuctionStore db;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor readExecutor; // the storage thread itself if the store has no readers
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public AsyncStorage(AuctionStore db, int queueCapacity) {
+        this.db = db;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "storage");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        int readers = db.getReaderCount();
+        if (readers == 0) {
+            this.readExecutor = executor;
+        } else {
+            AtomicInteger count = new AtomicInteger();
+            this.readExecutor = new ThreadPoolExecutor(readers, readers, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "storage-reader-" + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    // Runs the function with the database on the storage thread
+    public <T> CompletableFuture<T> call(Function<AuctionStore, T> task) {
+        return submit(executor, task);
+    }
+
+    // Runs a function that only reads on a reader thread. It sees every write that completed
+    // before it was submitted, but is not ordered with writes still queued.
+    public <T> CompletableFuture<T> read(Function<AuctionStore, T> task) {
+        return submit(readExecutor, task);
+    }
+
+    private <T> CompletableFuture<T> submit(ThreadPoolExecutor target, Function<AuctionStore, T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            target.execute(() -> {
+                long wait = System.nanoTime() - queuedAt;
+                totalWaitNanos.add(wait);
+                maxWaitNanos.accumulateAndGet(wait, Math::max);
+                try {
+                    result.complete(task.apply(db));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    completed.increment();
+                }
+            });
+            submitted.increment();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> run(Consumer<AuctionStore> task) {
+        return call(database -> {
+            task.accept(database);
+            return null;
+        });
+    }
+
+    public int getQueueDepth() {
+        int depth = executor.getQueue().size();
+        return readExecutor != executor ? depth + readExecutor.getQueue().size() : depth;
+    }
+
+    // One line for STORAGE_STATS; the maximum wait is reset by each call
+    public String getStats() {
+        long done = completed.sum();
+        long avgWaitMicros = done > 0 ? totalWaitNanos.sum() / done / 1000 : 0;
+        return "queued=" + getQueueDepth()
+                + " submitted=" + submitted.sum()
+                + " completed=" + done
+                + " rejected=" + rejected.sum()
+                + " avgWaitMicros=" + avgWaitMicros
+                + " maxWaitMicros=" + maxWaitNanos.getAndSet(0) / 1000;
+    }
+
+    // Lets queued tasks finish, then closes the database
+    public void close() {
+        executor.shutdown();
+        readExecutor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS) || !readExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                System.err.println("Storage did not drain within 10 seconds, " + getQueueDepth() + " tasks dropped");
+                executor.shutdownNow();
+                readExecutor.shutdownNow();
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+                readExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        db.close(); // no task is running any more
+    }
+}
\ No newline at end of file
@@ -1,16 +1,18 @@
-import java.sql.Timestamp;
-
 public class Auction {
+    public static final long NO_END_TIME = 0; // the end time of an ongoing auction
+    
     private int auctionId;
     private String itemName;
     private String itemDescription;
-    private double startingPrice;
-    private double currentPrice;
+    private long startingPrice; // prices in minor units, see Money
+    private long currentPrice;
+    private int sellerId;
     private String sellerUsername;
     private int auctionType; // 1 for timed, 2 for ongoing until no more bids
-    private Timestamp startTime;
-    private Timestamp endTime;
+    private long startTime; // epoch millis, see ServerClock
+    private long endTime;   // epoch millis, NO_END_TIME for type 2
     private String status; // active or closed
+    private int highestBidderId; // UserDirectory.NO_USER while nobody has bid
     private String highestBidder;
     
     public Auction() {}
@@ -40,22 +42,30 @@ public class Auction {
         this.itemDescription = itemDescription;
     }
     
-    public double getStartingPrice() {
+    public long getStartingPrice() {
         return startingPrice;
     }
     
-    public void setStartingPrice(double startingPrice) {
+    public void setStartingPrice(long startingPrice) {
         this.startingPrice = startingPrice;
     }
     
-    public double getCurrentPrice() {
+    public long getCurrentPrice() {
         return currentPrice;
     }
     
-    public void setCurrentPrice(double currentPrice) {
+    public void setCurrentPrice(long currentPrice) {
         this.currentPrice = currentPrice;
     }
     
+    public int getSellerId() {
+        return sellerId;
+    }
+    
+    public void setSellerId(int sellerId) {
+        this.sellerId = sellerId;
+    }
+    
     public String getSellerUsername() {
         return sellerUsername;
     }
@@ -72,22 +82,26 @@ public class Auction {
         this.auctionType = auctionType;
     }
     
-    public Timestamp getStartTime() {
+    public long getStartTime() {
         return startTime;
     }
     
-    public void setStartTime(Timestamp startTime) {
+    public void setStartTime(long startTime) {
         this.startTime = startTime;
     }
     
-    public Timestamp getEndTime() {
+    public long getEndTime() {
         return endTime;
     }
     
-    public void setEndTime(Timestamp endTime) {
+    public void setEndTime(long endTime) {
         this.endTime = endTime;
     }
     
+    public boolean hasEndTime() {
+        return endTime != NO_END_TIME;
+    }
+    
     public String getStatus() {
         return status;
     }
@@ -96,6 +110,14 @@ public class Auction {
         this.status = status;
     }
     
+    public int getHighestBidderId() {
+        return highestBidderId;
+    }
+    
+    public void setHighestBidderId(int highestBidderId) {
+        this.highestBidderId = highestBidderId;
+    }
+    
     public String getHighestBidder() {
         return highestBidder;
     }
@@ -109,8 +131,8 @@ public class Auction {
         return "Auction ID: " + auctionId + 
                ", Item: " + itemName + 
                ", Description: " + itemDescription + 
-               ", Starting Price: " + startingPrice + 
-               ", Current Price: " + currentPrice + 
+               ", Starting Price: " + Money.format(startingPrice) + 
+               ", Current Price: " + Money.format(currentPrice) + 
                ", Seller: " + sellerUsername;
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 import java.io.*;
 import java.net.*;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class AuctionClient {
@@ -79,7 +80,10 @@ public class AuctionClient {
                 System.out.println("New bid: " + content);
                 break;
             case "BID_STATUS":
-                System.out.println("Highest bid: " + content);
+                displayBidStatus(content);
+                break;
+            case "HISTORY":
+                displayHistory(content);
                 break;
             case "GOING_ONCE":
                 System.out.println("GOING ONCE: " + content);
@@ -90,6 +94,18 @@ public class AuctionClient {
             case "SOLD":
                 System.out.println("SOLD: " + content);
                 break;
+            case "PRICE_ALERT":
+                System.out.println("Price alert: " + content);
+                break;
+            case "ENDING_ALERT":
+                System.out.println("Ending soon: " + content);
+                break;
+            case "EXTENDED":
+                displayExtended(content);
+                break;
+            case "NEW_LISTING":
+                System.out.println("New listing for your saved search: " + content);
+                break;
             case "GOODBYE":
                 connected = false;
                 System.out.println(content);
@@ -122,6 +138,58 @@ public class AuctionClient {
         System.out.println("=========================\n");
     }
     
+    // The server sends times as epoch millis; shown here in the local time zone
+    private static String formatTime(String millis) {
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(Long.parseLong(millis)));
+        } catch (NumberFormatException e) {
+            return millis;
+        }
+    }
+    
+    // auctionId itemName endTimeMillis
+    private void displayExtended(String extension) {
+        int last = extension.lastIndexOf(' ');
+        if (last < 0) {
+            System.out.println("Auction extended: " + extension);
+            return;
+        }
+        System.out.println("Auction extended: #" + extension.substring(0, last) + " now ends at " + formatTime(extension.substring(last + 1)));
+    }
+    
+    // "auctionId amount bidTime sequence" or "auctionId startingPrice (starting price, no bids yet)"
+    private void displayBidStatus(String status) {
+        String[] fields = status.split(" ", 4);
+        if (fields.length == 4 && !fields[2].startsWith("(")) {
+            System.out.println("Highest bid on auction #" + fields[0] + ": " + fields[1] + " at " + formatTime(fields[2]) + " (bid #" + fields[3] + ")");
+        } else {
+            System.out.println("Highest bid: " + status);
+        }
+    }
+    
+    private void displayHistory(String historyData) {
+        String[] entries = historyData.split(";");
+        String[] auction = entries[0].split("\\|");
+        if (auction.length < 7) {
+            System.out.println("Server: HISTORY " + historyData);
+            return;
+        }
+        
+        System.out.println("\n===== AUCTION #" + auction[0] + " HISTORY =====");
+        System.out.println("Item: " + auction[1] + " (" + auction[2] + ")");
+        System.out.println("Seller: " + auction[5] + ", starting price " + auction[3]);
+        System.out.println("Sold for " + auction[4] + " to " + auction[6]);
+        System.out.printf("%-12s | %-15s | %-25s\n", "Amount", "Bidder", "Time");
+        System.out.println("--------------------------------------------------------");
+        for (int i = 1; i < entries.length; i++) {
+            String[] fields = entries[i].split("\\|");
+            if (fields.length >= 3) {
+                System.out.printf("%-12s | %-15s | %-25s\n", fields[0], fields[1], formatTime(fields[2]));
+            }
+        }
+        System.out.println("=========================\n");
+    }
+    
     private void processUserInput(String input) {
         try {
             int choice = Integer.parseInt(input);
@@ -195,6 +263,15 @@ public class AuctionClient {
                 withdrawFromAuction();
                 break;
             case 7:
+                placeProxyBid();
+                break;
+            case 8:
+                auctionHistory();
+                break;
+            case 9:
+                importListings();
+                break;
+            case 10:
                 out.println("DISCONNECT");
                 break;
             default:
@@ -292,6 +369,24 @@ public class AuctionClient {
         out.println("BID " + auctionId + " " + bidAmount);
     }
     
+    private void placeProxyBid() throws IOException {
+        System.out.println("\n===== PLACE PROXY (MAXIMUM) BID =====");
+        System.out.print("Auction ID: ");
+        String auctionId = consoleIn.readLine();
+        
+        System.out.print("Maximum Amount: ");
+        String maxAmount = consoleIn.readLine();
+        
+        System.out.print("Increment (leave empty for default): ");
+        String increment = consoleIn.readLine();
+        
+        if (increment == null || increment.trim().isEmpty()) {
+            out.println("PROXY_BID " + auctionId + " " + maxAmount);
+        } else {
+            out.println("PROXY_BID " + auctionId + " " + maxAmount + " " + increment.trim());
+        }
+    }
+    
     private void checkHighestBid() throws IOException {
         System.out.println("\n===== CHECK HIGHEST BID =====");
         System.out.print("Auction ID: ");
@@ -300,6 +395,44 @@ public class AuctionClient {
         out.println("CHECK_BID " + auctionId);
     }
     
+    private void auctionHistory() throws IOException {
+        System.out.println("\n===== AUCTION HISTORY =====");
+        System.out.print("Auction ID: ");
+        String auctionId = consoleIn.readLine();
+        
+        out.println("AUCTION_HISTORY " + auctionId);
+    }
+    
+    // Streams a file of listings, one per line as name|description|price|type[|duration]
+    private void importListings() throws IOException {
+        System.out.println("\n===== IMPORT LISTINGS =====");
+        System.out.print("File: ");
+        String path = consoleIn.readLine();
+        
+        BufferedReader file;
+        try {
+            file = new BufferedReader(new FileReader(path));
+        } catch (FileNotFoundException e) {
+            System.out.println("Cannot open " + path);
+            return;
+        }
+        long records = 0;
+        try {
+            out.println("IMPORT");
+            String record;
+            while ((record = file.readLine()) != null) {
+                if (!record.trim().isEmpty() && !record.equals("END")) {
+                    out.print(record + "\n"); // flushed once at the end, not per line
+                    records++;
+                }
+            }
+        } finally {
+            file.close();
+            out.println("END");
+        }
+        System.out.println("Sent " + records + " listings, waiting for the server...");
+    }
+    
     private void withdrawFromAuction() throws IOException {
         System.out.println("\n===== WITHDRAW FROM AUCTION =====");
         System.out.print("Auction ID: ");
@@ -330,7 +463,10 @@ public class AuctionClient {
         System.out.println("4. Place Bid");
         System.out.println("5. Check Highest Bid");
         System.out.println("6. Withdraw from Auction");
-        System.out.println("7. Disconnect");
+        System.out.println("7. Place Proxy (Maximum) Bid");
+        System.out.println("8. Auction History");
+        System.out.println("9. Import Listings from File");
+        System.out.println("10. Disconnect");
         System.out.print("Enter your choice: ");
     }
     
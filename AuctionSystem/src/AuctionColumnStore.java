@@ -0,0 +1,416 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+
+// Columnar in-memory store of the active auctions: one primitive array per field, indexed
+// by row, plus an IntIntMap from auction ID to row. Millions of live auctions cost a few
+// dozen bytes each and a handful of large arrays for the GC to trace, instead of an Auction,
+// a boxed key and a map node per auction.
+// Closed auctions are removed and their rows reused, so presence means "active".
+// Writers are serialized by a StampedLock; readers copy one row into a reusable View. A write
+// changes one row in place, so its cost does not grow with the number of auctions, and
+// every write bumps a version that readers use to tell whether anything changed.
+// Reads are optimistic: they copy without locking and keep the copy only if no write ran
+// meanwhile, so a reader never waits behind a bid and never holds one up. A read that keeps
+// losing to writers takes the read lock instead.
+public class AuctionColumnStore {
+    // Optimistic attempts before a listing copy takes the read lock
+    private static final int LISTING_ATTEMPTS = 3;
+
+    // The column arrays, all indexed by row; auctionIds[row] == 0 marks a free row. Growing
+    // replaces the whole set, so an optimistic reader holding one Columns sees arrays of the
+    // same length.
+    private static final class Columns {
+        final int[] auctionIds;
+        final byte[] auctionTypes;
+        final int[] sellerIds;
+        final int[] highestBidderIds;
+        final long[] startingPrices;
+        final long[] currentPrices;
+        final long[] highestBidTimes;      // epoch millis, 0 while nobody has bid
+        final long[] highestBidSequences;
+        final long[] endTimes;             // Auction.NO_END_TIME for ongoing auctions
+        final String[] itemNames;
+        final String[] itemDescriptions;
+
+        Columns(int capacity) {
+            auctionIds = new int[capacity];
+            auctionTypes = new byte[capacity];
+            sellerIds = new int[capacity];
+            highestBidderIds = new int[capacity];
+            startingPrices = new long[capacity];
+            currentPrices = new long[capacity];
+            highestBidTimes = new long[capacity];
+            highestBidSequences = new long[capacity];
+            endTimes = new long[capacity];
+            itemNames = new String[capacity];
+            itemDescriptions = new String[capacity];
+        }
+
+        Columns(Columns from, int capacity) {
+            auctionIds = Arrays.copyOf(from.auctionIds, capacity);
+            auctionTypes = Arrays.copyOf(from.auctionTypes, capacity);
+            sellerIds = Arrays.copyOf(from.sellerIds, capacity);
+            highestBidderIds = Arrays.copyOf(from.highestBidderIds, capacity);
+            startingPrices = Arrays.copyOf(from.startingPrices, capacity);
+            currentPrices = Arrays.copyOf(from.currentPrices, capacity);
+            highestBidTimes = Arrays.copyOf(from.highestBidTimes, capacity);
+            highestBidSequences = Arrays.copyOf(from.highestBidSequences, capacity);
+            endTimes = Arrays.copyOf(from.endTimes, capacity);
+            itemNames = Arrays.copyOf(from.itemNames, capacity);
+            itemDescriptions = Arrays.copyOf(from.itemDescriptions, capacity);
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final IntIntMap rows;
+    private Columns columns;
+
+    private int rowCount; // rows ever used; free rows below it are on the free list
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    private volatile long version;
+
+    public AuctionColumnStore(int expectedAuctions) {
+        int capacity = Math.max(16, expectedAuctions);
+        rows = new IntIntMap(capacity);
+        columns = new Columns(capacity);
+    }
+
+    // A reusable, single-threaded window onto one row, with the getters of Auction that the
+    // server's bid and notification paths use. load() copies the row, so the values stay
+    // consistent once it returns and no object is allocated per lookup.
+    public final class View {
+        private int auctionId;
+        private int auctionType;
+        private int sellerId;
+        private int highestBidderId;
+        private long startingPrice;
+        private long currentPrice;
+        private long highestBidTime;
+        private long highestBidSequence;
+        private long endTime;
+        private String itemName;
+        private String itemDescription;
+
+        private View() {}
+
+        // Returns false when the auction is not active; the view's values are then undefined
+        public boolean load(int auctionId) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                boolean found = copy(auctionId, rows.getOptimistic(auctionId));
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return copy(auctionId, rows.get(auctionId));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Copies the row, which an optimistic caller may have read from a map that was changing
+        private boolean copy(int auctionId, int row) {
+            Columns c = columns;
+            if (row < 0 || row >= c.auctionIds.length) {
+                return false;
+            }
+            this.auctionId = auctionId;
+            this.auctionType = c.auctionTypes[row];
+            this.sellerId = c.sellerIds[row];
+            this.highestBidderId = c.highestBidderIds[row];
+            this.startingPrice = c.startingPrices[row];
+            this.currentPrice = c.currentPrices[row];
+            this.highestBidTime = c.highestBidTimes[row];
+            this.highestBidSequence = c.highestBidSequences[row];
+            this.endTime = c.endTimes[row];
+            this.itemName = c.itemNames[row];
+            this.itemDescription = c.itemDescriptions[row];
+            return true;
+        }
+
+        public int getAuctionId() {
+            return auctionId;
+        }
+
+        public int getAuctionType() {
+            return auctionType;
+        }
+
+        public int getSellerId() {
+            return sellerId;
+        }
+
+        // UserDirectory.NO_USER while nobody has bid
+        public int getHighestBidderId() {
+            return highestBidderId;
+        }
+
+        public long getStartingPrice() {
+            return startingPrice;
+        }
+
+        public long getCurrentPrice() {
+            return currentPrice;
+        }
+
+        // Epoch millis of the highest bid, 0 while nobody has bid
+        public long getHighestBidTime() {
+            return highestBidTime;
+        }
+
+        public long getHighestBidSequence() {
+            return highestBidSequence;
+        }
+
+        public boolean hasEndTime() {
+            return endTime != Auction.NO_END_TIME;
+        }
+
+        // Epoch millis; only meaningful when hasEndTime()
+        public long getEndTimeMillis() {
+            return endTime;
+        }
+
+        public String getItemName() {
+            return itemName;
+        }
+
+        public String getItemDescription() {
+            return itemDescription;
+        }
+    }
+
+    public View view() {
+        return new View();
+    }
+
+    // Adds an active auction or replaces the stored copy, e.g. on startup; the highest bid's
+    // time and sequence are 0 while nobody has bid
+    public void put(Auction auction, long highestBidTime, long highestBidSequence) {
+        put(auction.getAuctionId(), auction.getItemName(), auction.getItemDescription(), auction.getAuctionType(),
+                auction.getSellerId(), auction.getHighestBidderId(), auction.getStartingPrice(), auction.getCurrentPrice(),
+                highestBidTime, highestBidSequence, auction.getEndTime());
+    }
+
+    public void put(int auctionId, String itemName, String itemDescription, int auctionType, int sellerId,
+                    int highestBidderId, long startingPrice, long currentPrice, long highestBidTime,
+                    long highestBidSequence, long endTimeMillis) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rows.get(auctionId);
+            if (row < 0) {
+                row = allocateRow();
+                rows.put(auctionId, row);
+            }
+            Columns c = columns;
+            c.auctionIds[row] = auctionId;
+            c.auctionTypes[row] = (byte) auctionType;
+            c.sellerIds[row] = sellerId;
+            c.highestBidderIds[row] = highestBidderId;
+            c.startingPrices[row] = startingPrice;
+            c.currentPrices[row] = currentPrice;
+            c.highestBidTimes[row] = highestBidTime;
+            c.highestBidSequences[row] = highestBidSequence;
+            c.endTimes[row] = endTimeMillis;
+            c.itemNames[row] = itemName;
+            c.itemDescriptions[row] = itemDescription;
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Records a new highest bid; returns false when the auction is not active
+    public boolean updateBid(int auctionId, int highestBidderId, long currentPrice, long bidTime, long sequence) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rows.get(auctionId);
+            if (row < 0) {
+                return false;
+            }
+            Columns c = columns;
+            c.highestBidderIds[row] = highestBidderId;
+            c.currentPrices[row] = currentPrice;
+            c.highestBidTimes[row] = bidTime;
+            c.highestBidSequences[row] = sequence;
+            version++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Moves a timed auction's deadline; returns false when the auction is not active
+    public boolean setEndTime(int auctionId, long endTimeMillis) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rows.get(auctionId);
+            if (row < 0) {
+                return false;
+            }
+            columns.endTimes[row] = endTimeMillis;
+            version++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Drops a closed auction; its row is reused by a later put()
+    public boolean remove(int auctionId) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rows.remove(auctionId);
+            if (row < 0) {
+                return false;
+            }
+            Columns c = columns;
+            c.auctionIds[row] = 0;
+            c.itemNames[row] = null; // let the strings be collected
+            c.itemDescriptions[row] = null;
+            if (freeCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            }
+            freeRows[freeCount++] = row;
+            version++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean contains(int auctionId) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = rows.getOptimistic(auctionId) >= 0;
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return rows.containsKey(auctionId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Changes with every write, so a reader can keep what it rendered until the next one
+    public long getVersion() {
+        return version;
+    }
+
+    // Appends the LIST_AUCTIONS body, "id|item|description|starting price|current price|seller|
+    // seller IP;" per auction in ID order, and returns the version it shows: every auction as
+    // it was at that version, never a mix of before and after a write. The fields are copied in
+    // one optimistic pass, retried if a write ran meanwhile, and the text is rendered from the
+    // copy, so a bid never waits for the rendering.
+    public long appendListing(StringBuilder sb, IntFunction<String> sellerNames, IntFunction<String> sellerIps) {
+        Listing listing = null;
+        for (int attempt = 0; attempt < LISTING_ATTEMPTS && listing == null; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Listing copy = copyListing();
+                if (copy != null && lock.validate(stamp)) {
+                    listing = copy;
+                }
+            }
+        }
+        if (listing == null) {
+            long stamp = lock.readLock();
+            try {
+                listing = copyListing();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long[] order = new long[listing.count];
+        for (int i = 0; i < listing.count; i++) {
+            order[i] = (long) listing.auctionIds[i] << 32 | i;
+        }
+        Arrays.sort(order); // auction IDs are positive, so this is ID order
+        for (long entry : order) {
+            int i = (int) entry;
+            sb.append(listing.auctionIds[i]).append('|').append(listing.itemNames[i]).append('|')
+              .append(listing.itemDescriptions[i]).append('|');
+            Money.appendTo(sb, listing.startingPrices[i]).append('|');
+            Money.appendTo(sb, listing.currentPrices[i]).append('|')
+              .append(sellerNames.apply(listing.sellerIds[i])).append('|')
+              .append(sellerIps.apply(listing.sellerIds[i])).append(';');
+        }
+        return listing.version;
+    }
+
+    // The fields of the listing, copied at one version
+    private static final class Listing {
+        final long version;
+        final int[] auctionIds;
+        final int[] sellerIds;
+        final long[] startingPrices;
+        final long[] currentPrices;
+        final String[] itemNames;
+        final String[] itemDescriptions;
+        int count;
+
+        Listing(long version, int capacity) {
+            this.version = version;
+            auctionIds = new int[capacity];
+            sellerIds = new int[capacity];
+            startingPrices = new long[capacity];
+            currentPrices = new long[capacity];
+            itemNames = new String[capacity];
+            itemDescriptions = new String[capacity];
+        }
+    }
+
+    // Copies every active row. Under an optimistic read the caller validates the result; null
+    // when a write running meanwhile left the rows inconsistent enough to notice here.
+    private Listing copyListing() {
+        Columns c = columns;
+        int used = Math.min(rowCount, c.auctionIds.length);
+        Listing listing = new Listing(version, Math.max(0, rows.size()));
+        int count = 0;
+        for (int row = 0; row < used; row++) {
+            int auctionId = c.auctionIds[row];
+            if (auctionId == 0) {
+                continue;
+            }
+            if (count == listing.auctionIds.length) {
+                return null;
+            }
+            listing.auctionIds[count] = auctionId;
+            listing.sellerIds[count] = c.sellerIds[row];
+            listing.startingPrices[count] = c.startingPrices[row];
+            listing.currentPrices[count] = c.currentPrices[row];
+            listing.itemNames[count] = c.itemNames[row];
+            listing.itemDescriptions[count] = c.itemDescriptions[row];
+            count++;
+        }
+        listing.count = count;
+        return listing;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return rows.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int allocateRow() {
+        if (freeCount > 0) {
+            return freeRows[--freeCount];
+        }
+        if (rowCount == columns.auctionIds.length) {
+            columns = new Columns(columns, rowCount * 2);
+        }
+        return rowCount++;
+    }
+}
\ No newline at end of file
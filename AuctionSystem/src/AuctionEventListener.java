@@ -0,0 +1,28 @@
+// Callbacks for messages the server pushes to a session without a request.
+// Callbacks run on the client's I/O thread, so they must not block.
+public interface AuctionEventListener {
+    default void onBidUpdate(AuctionSession session, int auctionId, String itemName, long amount, String bidder, String bidderIp) {}
+
+    default void onGoingOnce(AuctionSession session, int auctionId, String itemName, long amount) {}
+
+    default void onGoingTwice(AuctionSession session, int auctionId, String itemName, long amount) {}
+
+    // winner is null when a timed auction closes without bids; winnerIp is null for timed auctions
+    default void onSold(AuctionSession session, int auctionId, String itemName, long price, String winner, String winnerIp) {}
+
+    // A WATCH fired: the price reached threshold, or the auction has minutesLeft to go under its ceiling
+    default void onPriceAlert(AuctionSession session, int auctionId, String itemName, long price, long threshold) {}
+
+    default void onEndingAlert(AuctionSession session, int auctionId, String itemName, long price, int minutesLeft) {}
+
+    // A bid near the end of a timed auction moved its deadline to endTime (epoch millis)
+    default void onExtended(AuctionSession session, int auctionId, String itemName, long endTime) {}
+
+    // A new auction matched the saved search searchId
+    default void onNewListing(AuctionSession session, int searchId, int auctionId, String itemName, String itemDescription,
+                              long startingPrice, int auctionType, String seller) {}
+
+    default void onConnectionLost(AuctionSession session, Throwable cause) {}
+
+    default void onReconnected(AuctionSession session) {}
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+import java.io.*;
+
+// Exports auctions and bids to a ColumnarExport file for offline analysis, so analysts never
+// query the database the server is writing to; and dumps such a file as CSV.
+// A running server exports the same way on the EXPORT command.
+//
+// Usage: java AuctionExport export --out=auctions.aucx [--store=sqlite] [--db=auction_system.db]
+//        java AuctionExport dump --in=auctions.aucx [--table=auctions]   CSV on standard output
+public class AuctionExport {
+    // Writes next to the target and renames at the end, so a half-written file is never seen
+    // under the target's name. Returns a one-line summary.
+    public static String export(AuctionStore store, File target) throws IOException {
+        File partial = new File(target.getPath() + ".partial");
+        long start = System.nanoTime();
+        ColumnarExport.Writer writer = new ColumnarExport.Writer(new FileOutputStream(partial));
+        boolean complete = false;
+        try {
+            store.export(writer);
+            writer.finish();
+            complete = true;
+        } finally {
+            writer.close();
+            if (!complete) {
+                partial.delete();
+            }
+        }
+        if (target.exists() && !target.delete() || !partial.renameTo(target)) {
+            throw new IOException("Cannot replace " + target);
+        }
+        return "Exported " + writer.getAuctionCount() + " auctions and " + writer.getBidCount() + " bids to " + target
+                + " (" + target.length() / 1024 + " KB) in " + (System.nanoTime() - start) / 1000000 + " ms";
+    }
+
+    // Writes one table as CSV, a header line first
+    public static void dump(File file, String tableName, PrintStream out) throws IOException {
+        ColumnarExport.Reader reader = new ColumnarExport.Reader(new FileInputStream(file));
+        try {
+            int table = reader.tableNumber(tableName);
+            if (table == 0) {
+                throw new IOException("No table " + tableName + " in " + file);
+            }
+            out.println(String.join(",", reader.getColumnNames(table)));
+            StringBuilder line = new StringBuilder();
+            ColumnarExport.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                if (chunk.getTable() != table) {
+                    continue;
+                }
+                int columns = reader.getColumnNames(table).length;
+                for (int row = 0; row < chunk.getRows(); row++) {
+                    line.setLength(0);
+                    for (int column = 0; column < columns; column++) {
+                        if (column > 0) {
+                            line.append(',');
+                        }
+                        if (chunk.isNumber(column)) {
+                            line.append(chunk.getNumber(column, row));
+                        } else {
+                            line.append(csv(chunk.getText(column, row)));
+                        }
+                    }
+                    out.println(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String csv(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    public static void main(String[] args) {
+        String store = AuctionStore.SQLITE;
+        String db = null;
+        String out = null;
+        String in = null;
+        String table = "auctions";
+        try {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing mode (export, dump)");
+            }
+            for (int i = 1; i < args.length; i++) {
+                String[] option = args[i].split("=", 2);
+                if (option.length < 2) {
+                    throw new IllegalArgumentException("Invalid argument: " + args[i]);
+                }
+                switch (option[0]) {
+                    case "--store":
+                        store = option[1];
+                        break;
+                    case "--db":
+                        db = option[1];
+                        break;
+                    case "--out":
+                        out = option[1];
+                        break;
+                    case "--in":
+                        in = option[1];
+                        break;
+                    case "--table":
+                        table = option[1];
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option[0]);
+                }
+            }
+
+            switch (args[0]) {
+                case "export":
+                    if (out == null) {
+                        throw new IllegalArgumentException("Missing --out");
+                    }
+                    if (db == null) {
+                        db = store.equals(AuctionStore.FILE) ? "auction_system.journal" : "auction_system.db";
+                    }
+                    AuctionStore source = AuctionStore.open(store, db);
+                    try {
+                        System.out.println(export(source, new File(out)));
+                    } finally {
+                        source.close();
+                    }
+                    break;
+                case "dump":
+                    if (in == null) {
+                        throw new IllegalArgumentException("Missing --in");
+                    }
+                    dump(new File(in), table, System.out);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + args[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Export error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
\ No newline at end of file
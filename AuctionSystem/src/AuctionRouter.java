@@ -0,0 +1,437 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Gateway for a sharded deployment.
+// Auctions are partitioned across N AuctionServer nodes by auctionId % N. Clients connect
+// to the router, which opens one connection per shard on their behalf, forwards each
+// command to the shard that owns the auction and relays the shards' pushed notifications
+// back to the client. Users are registered and logged in on every shard; LIST_AUCTIONS
+// and the highest-bidder check on DISCONNECT are answered by scatter/gather.
+//
+// Example with two shards on localhost:
+//   java AuctionServer --port=9001 --db=shard0.db --shard=0/2
+//   java AuctionServer --port=9002 --db=shard1.db --shard=1/2
+//   java AuctionRouter --port=8888 --shards=localhost:9001,localhost:9002
+public class AuctionRouter {
+    private static final int DEFAULT_PORT = 8888;
+    private static final long REPLY_TIMEOUT_SECONDS = 30;
+
+    private int port;
+    private List<InetSocketAddress> shards;
+    private ServerSocket serverSocket;
+    private boolean running;
+    private ExecutorService threadPool;
+    private int nextAdvertiseShard;
+
+    public AuctionRouter(int port, List<InetSocketAddress> shards) {
+        this.port = port;
+        this.shards = shards;
+        this.threadPool = Executors.newCachedThreadPool();
+        this.running = true;
+    }
+
+    public void start() {
+        try {
+            serverSocket = new ServerSocket(port);
+            System.out.println("Auction Router started on port " + port + " for " + shards.size() + " shards");
+
+            while (running) {
+                Socket clientSocket = serverSocket.accept();
+                threadPool.execute(new ClientSession(clientSocket));
+            }
+        } catch (IOException e) {
+            System.err.println("Router error: " + e.getMessage());
+        } finally {
+            stop();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        threadPool.shutdown();
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing router socket: " + e.getMessage());
+        }
+        System.out.println("Router stopped");
+    }
+
+    private int shardFor(int auctionId) {
+        return Math.floorMod(auctionId, shards.size());
+    }
+
+    private synchronized int nextAdvertiseShard() {
+        int shard = nextAdvertiseShard;
+        nextAdvertiseShard = (nextAdvertiseShard + 1) % shards.size();
+        return shard;
+    }
+
+    private static boolean isPush(String line) {
+        return line.startsWith("BID_UPDATE ") || line.startsWith("GOING_ONCE ")
+                || line.startsWith("GOING_TWICE ") || line.startsWith("SOLD ")
+                || line.startsWith("PRICE_ALERT ") || line.startsWith("ENDING_ALERT ")
+                || line.startsWith("NEW_LISTING ") || line.startsWith("EXTENDED ");
+    }
+
+    // One shard connection opened on behalf of a client
+    private class ShardLink {
+        private final Socket socket;
+        private final PrintWriter out;
+        private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+        ShardLink(InetSocketAddress address, String clientIp, ClientSession owner) throws IOException {
+            socket = new Socket(address.getHostString(), address.getPort());
+            out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out.println("FORWARDED_FOR " + clientIp);
+
+            threadPool.execute(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (isPush(line)) {
+                            owner.sendMessage(line);
+                        } else {
+                            replies.add(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Shard connection closed
+                }
+            });
+        }
+
+        void send(String command) {
+            out.println(command);
+        }
+
+        String awaitReply() throws IOException {
+            try {
+                String reply = replies.poll(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (reply == null) {
+                    throw new IOException("Shard did not answer");
+                }
+                return reply;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for shard");
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing shard connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // A client connected to the router
+    private class ClientSession implements Runnable {
+        private final Socket clientSocket;
+        private final String ipAddress;
+        private FrameCodec.Writer out;
+        private final List<ShardLink> links = new ArrayList<>();
+
+        ClientSession(Socket socket) {
+            this.clientSocket = socket;
+            this.ipAddress = socket.getInetAddress().getHostAddress();
+        }
+
+        void sendMessage(String message) {
+            out.send(message);
+        }
+
+        @Override
+        public void run() {
+            try {
+                out = new FrameCodec.Writer(clientSocket.getOutputStream());
+                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+                for (InetSocketAddress shard : shards) {
+                    links.add(new ShardLink(shard, ipAddress, this));
+                }
+
+                String inputLine;
+                while ((inputLine = in.readLine()) != null) {
+                    if (inputLine.equals("IMPORT")) {
+                        routeImport(in);
+                        continue;
+                    }
+                    if (!route(inputLine)) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error handling routed client: " + e.getMessage());
+            } finally {
+                for (ShardLink link : links) {
+                    link.close();
+                }
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing client socket: " + e.getMessage());
+                }
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+
+        // Returns false once the client has disconnected
+        private boolean route(String input) throws IOException {
+            String[] tokens = input.split(" ", 2);
+            String command = tokens[0];
+
+            switch (command) {
+                case "REGISTER":
+                    sendMessage(broadcast(input));
+                    return true;
+                case "CONNECT":
+                    connect(input);
+                    return true;
+                case "LIST_AUCTIONS":
+                    sendMessage(listAuctions());
+                    return true;
+                case "MARKET_STATS":
+                    sendMessage(marketStats(input));
+                    return true;
+                case "SAVE_SEARCH":
+                case "DELETE_SEARCH":
+                    // Any shard may get the next listing; each numbers the user's searches alike
+                    sendMessage(broadcast(input));
+                    return true;
+                case "ADVERTISE":
+                    sendMessage(forward(nextAdvertiseShard(), input));
+                    return true;
+                case "JOIN_AUCTION":
+                case "BID":
+                case "PROXY_BID":
+                case "CHECK_BID":
+                case "AUCTION_HISTORY":
+                case "BID_HISTORY":
+                case "PRICE_CANDLES":
+                case "WATCH":
+                case "UNWATCH":
+                case "WITHDRAW":
+                    sendMessage(forward(ownerOf(tokens), input));
+                    return true;
+                case "DISCONNECT":
+                    return disconnect();
+                default:
+                    sendMessage(forward(0, input));
+                    return true;
+            }
+        }
+
+        // The router compresses what it sends the client itself, so the shards are asked for
+        // plain text whatever the client chose
+        private void connect(String input) throws IOException {
+            String[] tokens = input.split(" ", 4);
+            boolean compress = tokens.length > 3 && tokens[3].startsWith(FrameCodec.OPTION)
+                    && FrameCodec.isSupported(tokens[3].substring(FrameCodec.OPTION.length()));
+            String reply = broadcast(tokens.length > 3 ? tokens[0] + " " + tokens[1] + " " + tokens[2] : input);
+            sendMessage(reply);
+            if (compress && reply.startsWith("WELCOME")) {
+                out.startCompression();
+            }
+        }
+
+        // The records of an IMPORT all go to one shard, like ADVERTISE, which allocates their IDs;
+        // they are passed on as they arrive, so the shard's pace holds the client back
+        private void routeImport(BufferedReader in) throws IOException {
+            ShardLink link = links.get(nextAdvertiseShard());
+            link.send("IMPORT");
+            String record;
+            while ((record = in.readLine()) != null && !record.equals("END")) {
+                link.send(record);
+            }
+            link.send("END");
+            sendMessage(link.awaitReply());
+        }
+
+        // Commands that start with an auction ID go to the shard that owns it; anything
+        // unparsable goes to shard 0, which answers with the usual error
+        private int ownerOf(String[] tokens) {
+            if (tokens.length > 1) {
+                try {
+                    return shardFor(Integer.parseInt(tokens[1].trim().split(" ")[0]));
+                } catch (NumberFormatException e) {
+                    // Fall through
+                }
+            }
+            return 0;
+        }
+
+        private String forward(int shard, String command) throws IOException {
+            ShardLink link = links.get(shard);
+            link.send(command);
+            return link.awaitReply();
+        }
+
+        // Sends a command to every shard; succeeds only if every shard succeeded
+        private String broadcast(String command) throws IOException {
+            for (ShardLink link : links) {
+                link.send(command);
+            }
+            String result = null;
+            String error = null;
+            for (ShardLink link : links) {
+                String reply = link.awaitReply();
+                if (reply.startsWith("ERROR") && error == null) {
+                    error = reply;
+                }
+                if (result == null) {
+                    result = reply;
+                }
+            }
+            return error != null ? error : result;
+        }
+
+        // Each shard counts its own auctions: counts and amounts add up, and the uplift is
+        // averaged over sold auctions. A bidder active on two shards is counted on both
+        private String marketStats(String command) throws IOException {
+            for (ShardLink link : links) {
+                link.send(command);
+            }
+            Map<String, String> merged = new LinkedHashMap<>();
+            long sold = 0;
+            double upliftTotal = 0;
+            String error = null;
+            for (ShardLink link : links) {
+                String reply = link.awaitReply();
+                if (!reply.startsWith("MARKET_STATS ")) {
+                    if (error == null) {
+                        error = reply;
+                    }
+                    continue;
+                }
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (String field : reply.substring(13).split(" ")) {
+                    String[] pair = field.split("=", 2);
+                    fields.put(pair[0], pair.length > 1 ? pair[1] : "");
+                }
+                long shardSold = Long.parseLong(fields.get("sold"));
+                sold += shardSold;
+                upliftTotal += Double.parseDouble(fields.get("avgUpliftPercent")) * shardSold;
+                for (Map.Entry<String, String> field : fields.entrySet()) {
+                    if (field.getKey().equals("seller") || field.getKey().equals("avgUpliftPercent")) {
+                        merged.put(field.getKey(), field.getValue());
+                    } else {
+                        merged.merge(field.getKey(), field.getValue(),
+                                (a, b) -> new BigDecimal(a).add(new BigDecimal(b)).toPlainString());
+                    }
+                }
+            }
+            if (error != null) {
+                return error;
+            }
+            merged.put("avgUpliftPercent", String.format("%.1f", sold == 0 ? 0 : upliftTotal / sold));
+            StringBuilder sb = new StringBuilder("MARKET_STATS");
+            for (Map.Entry<String, String> field : merged.entrySet()) {
+                sb.append(' ').append(field.getKey()).append('=').append(field.getValue());
+            }
+            return sb.toString();
+        }
+
+        private String listAuctions() throws IOException {
+            for (ShardLink link : links) {
+                link.send("LIST_AUCTIONS");
+            }
+            List<String> entries = new ArrayList<>();
+            for (ShardLink link : links) {
+                String reply = link.awaitReply();
+                String content = reply.startsWith("AUCTIONS ") ? reply.substring(9) : "";
+                if (content.isEmpty() || content.equals("No active auctions")) {
+                    continue;
+                }
+                for (String entry : content.split(";")) {
+                    if (!entry.isEmpty()) {
+                        entries.add(entry);
+                    }
+                }
+            }
+            if (entries.isEmpty()) {
+                return "AUCTIONS No active auctions";
+            }
+
+            entries.sort(Comparator.comparingInt(e -> Integer.parseInt(e.substring(0, e.indexOf('|')))));
+            StringBuilder response = new StringBuilder("AUCTIONS ");
+            for (String entry : entries) {
+                response.append(entry).append(";");
+            }
+            return response.toString();
+        }
+
+        // A user may only leave if they are not the highest bidder on any shard
+        private boolean disconnect() throws IOException {
+            for (ShardLink link : links) {
+                link.send("IS_LEADING");
+            }
+            String error = null;
+            boolean leading = false;
+            for (ShardLink link : links) {
+                String reply = link.awaitReply();
+                if (reply.startsWith("ERROR") && error == null) {
+                    error = reply;
+                }
+                leading |= reply.equals("LEADING true");
+            }
+            if (error != null) {
+                sendMessage(error);
+                return true;
+            }
+            if (leading) {
+                sendMessage("ERROR Cannot disconnect while you are the highest bidder in an active auction");
+                return true;
+            }
+
+            sendMessage(broadcast("DISCONNECT"));
+            return false;
+        }
+    }
+
+    // Usage: java AuctionRouter [--port=8888] --shards=host:port,host:port,...
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        List<InetSocketAddress> shards = new ArrayList<>();
+
+        try {
+            for (String arg : args) {
+                String[] option = arg.split("=", 2);
+                if (option.length < 2) {
+                    throw new IllegalArgumentException("Invalid argument: " + arg);
+                }
+                switch (option[0]) {
+                    case "--port":
+                        port = Integer.parseInt(option[1]);
+                        break;
+                    case "--shards":
+                        for (String shard : option[1].split(",")) {
+                            String[] hostPort = shard.trim().split(":");
+                            shards.add(InetSocketAddress.createUnresolved(hostPort[0], Integer.parseInt(hostPort[1])));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option[0]);
+                }
+            }
+            if (shards.isEmpty()) {
+                throw new IllegalArgumentException("At least one shard is required (--shards=host:port,...)");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        AuctionRouter router = new AuctionRouter(port, shards);
+        router.start();
+    }
+}
\ No newline at end of file
@@ -1,38 +1,203 @@
 import java.io.*;
 import java.net.*;
-import java.sql.Timestamp;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AuctionServer {
-    private static final int PORT = 8888;
+    private static final int DEFAULT_PORT = 8888;
+    private static final String DEFAULT_DB = "auction_system.db";
+    private static final String DEFAULT_JOURNAL = "auction_system.journal";
+    private static final Set<String> WRITE_COMMANDS = new HashSet<>(Arrays.asList(
+            "REGISTER", "ADVERTISE", "JOIN_AUCTION", "BID", "PROXY_BID", "WITHDRAW", "WATCH", "SAVE_SEARCH"));
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final int DELIVERY_STRIPES = 8;
+    private static final int MAX_PIPELINED_COMMANDS = 64; // per client, before its socket stops being read
+    private static final long CLOSE_RETRY_MILLIS = 1000;
+    
+    // Timed auctions close in ticks: the auctions that end within the same CLOSE_TICK_MILLIS
+    // share one timer, and the tick closes them CLOSE_BATCH at a time, one transaction per batch
+    private static final long CLOSE_TICK_MILLIS = 100;
+    private static final int CLOSE_BATCH = 500;
+    
+    // Archiver: closed auctions leave the hot tables in batches of ARCHIVE_BATCH, one storage
+    // task each, with a pause in between so bids queued meanwhile run first
+    private static final int ARCHIVE_BATCH = 100;
+    private static final long ARCHIVE_PAUSE_MILLIS = 50;        // between batches while closed auctions remain
+    private static final long ARCHIVE_INTERVAL_MILLIS = 10000;  // between sweeps once none are left
+    private static final int ARCHIVE_MAX_QUEUE_DEPTH = 100;     // storage busier than this: skip to the next sweep
+    private int port;
     private ServerSocket serverSocket;
     private boolean running;
-    private DatabaseManager dbManager;
-    private Map<String, ClientHandler> connectedClients;
+    private AuctionStore dbManager; // only used on the storage threads, see AsyncStorage
+    private AsyncStorage storage;
+    private UserDirectory users;
+    private UserTable<ClientHandler> connectedClients; // by user ID
     private ExecutorService threadPool;
     private ScheduledExecutorService timerService;
+    private ProxyBidEngine proxyEngine;
+    
+    // Every time the server stores, sends or schedules against; see ServerClock
+    private final ServerClock clock;
+    
+    // The sequence number of the last bid stored, on this node or replicated to it; storage thread only
+    private long lastBidSequence;
+    
+    // Replies and notifications that follow a storage task are sent from here, never from the
+    // storage thread; one thread per stripe keeps each auction's messages in commit order
+    private final ExecutorService[] delivery = new ExecutorService[DELIVERY_STRIPES];
+    
+    // Active auctions as seen by the bid, close and notification paths and by read commands,
+    // which use them without locks held across rows and without DB access; a miss means
+    // "not active" and readers fall back to the DB. Written on the storage thread only, from
+    // what a change already has in hand, so a bid updates one row and reads nothing.
+    private final AuctionColumnStore activeAuctions = new AuctionColumnStore(1024);
+    
+    // Registration IPs of the sellers of active auctions, for the listing; one per seller
+    private final Map<Integer, String> sellerIps = new ConcurrentHashMap<>();
+    
+    // The LIST_AUCTIONS body and the activeAuctions version it was rendered at
+    private final AtomicReference<Listing> listing = new AtomicReference<>(new Listing(-1, null));
+    
+    // Who joined and who leads which active auction, so bids and disconnects skip SQL
+    private final MembershipIndex membership = new MembershipIndex();
+    
+    // Live market aggregates, fed by every accepted bid and every close; MARKET_STATS reads them
+    private final MarketStats marketStats = new MarketStats();
+    
+    // WATCH alerts by auction and threshold; price watches fire from publishBid, on the primary
+    private final WatchIndex watches;
+    
+    // Recent bids and price candles of the active auctions, for BID_HISTORY and PRICE_CANDLES
+    private BidTape bidTape = new BidTape(1024, BidTape.DEFAULT_BIDS, BidTape.DEFAULT_CANDLE_SECONDS, BidTape.DEFAULT_CANDLES, false);
+    
+    // Saved searches, matched against every new listing on the primary to push NEW_LISTING
+    private final SearchPercolator searches = new SearchPercolator();
+    
+    // Multi-node mode: this node owns the auctions with id % shardCount == shardIndex
+    // and trusts the gateway at trustedGateway to forward its clients' IP addresses
+    private int shardIndex;
+    private int shardCount;
+    private String trustedGateway;
+    
+    // Replication: a primary streams every change to its followers over replicationPort;
+    // a follower applies them, serves read-only commands and can be promoted
+    private int replicationPort;
+    private ReplicationLog replicationLog;
+    private ReplicationFollower follower;
+    private volatile boolean readOnly;
+    
+    // Browser clients: HTTP and WebSocket on webPort, served by sessions of this server
+    private int webPort;
+    private WebGateway webGateway;
     
     // Map to keep track of auction timers
     private Map<Integer, ScheduledFuture<?>> auctionTimers;
     private Map<Integer, ScheduledFuture<?>> goingOnceTimers;
     private Map<Integer, ScheduledFuture<?>> goingTwiceTimers;
     
+    // Timed auctions waiting for their close tick, by tick (end time / CLOSE_TICK_MILLIS, rounded up)
+    private final ConcurrentHashMap<Long, List<Integer>> closeTicks = new ConcurrentHashMap<>();
+    
+    // Soft close: a bid on a timed auction with less than softCloseMillis to go moves its
+    // deadline to softCloseExtensionMillis after the bid; 0 leaves deadlines fixed
+    private long softCloseMillis;
+    private long softCloseExtensionMillis;
+    
+    // Deadlines moved by soft close but not stored yet, by auction; storage thread only.
+    // A bid only changes the deadline in activeAuctions: the auction stays on the close tick of
+    // its stored end time, which puts it on the tick of the new one and stores that, so a run
+    // of late bids costs neither a timer nor a write each.
+    private final Map<Integer, Long> extendedEndTimes = new HashMap<>();
+    
     public AuctionServer() {
-        dbManager = new DatabaseManager();
-        connectedClients = new ConcurrentHashMap<>();
+        this(DEFAULT_PORT, new DatabaseManager(DEFAULT_DB), 0, 1, null);
+    }
+    
+    public AuctionServer(int port, AuctionStore store, int shardIndex, int shardCount, String trustedGateway) {
+        this(port, store, shardIndex, shardCount, trustedGateway, ServerClock.SYSTEM);
+    }
+    
+    public AuctionServer(int port, AuctionStore store, int shardIndex, int shardCount, String trustedGateway, ServerClock clock) {
+        this.port = port;
+        this.clock = clock;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.trustedGateway = trustedGateway;
+        dbManager = store;
+        dbManager.setAuctionIdPartition(shardIndex, shardCount);
+        storage = new AsyncStorage(dbManager, AsyncStorage.DEFAULT_QUEUE_CAPACITY);
+        users = dbManager.getUserDirectory();
+        connectedClients = new UserTable<>();
         threadPool = Executors.newCachedThreadPool();
+        for (int i = 0; i < delivery.length; i++) {
+            delivery[i] = Executors.newSingleThreadExecutor();
+        }
         timerService = Executors.newScheduledThreadPool(10);
         auctionTimers = new ConcurrentHashMap<>();
         goingOnceTimers = new ConcurrentHashMap<>();
         goingTwiceTimers = new ConcurrentHashMap<>();
+        proxyEngine = new ProxyBidEngine();
+        watches = new WatchIndex(timerService, clock, this::endingWatchDue);
         running = true;
     }
     
+    // Call before start(): replicationPort > 0 serves followers (immediately on a primary,
+    // after promotion on a follower); a non-null primaryHost makes this node a follower
+    public void configureReplication(int replicationPort, String primaryHost, int primaryReplicationPort) {
+        this.replicationPort = replicationPort;
+        if (primaryHost != null) {
+            long position = storage.call(AuctionStore::getReplicationPosition).join();
+            String logId = storage.call(AuctionStore::getReplicationLog).join();
+            follower = new ReplicationFollower(primaryHost, primaryReplicationPort, logId, position, this::applyReplicated);
+            readOnly = true;
+        }
+    }
+    
+    // Call before start(): how many bids and candles of which intervals to keep per auction,
+    // and whether to keep them off the heap
+    public void configureBidTape(int bids, int[] candleSeconds, int candles, boolean offHeap) {
+        bidTape = new BidTape(1024, bids, candleSeconds, candles, offHeap);
+    }
+    
+    // Call before start(): a bid with less than windowSeconds left on a timed auction moves its
+    // deadline to extensionSeconds after the bid; a window of 0 turns soft close off
+    public void configureSoftClose(int windowSeconds, int extensionSeconds) {
+        if (windowSeconds < 0 || (windowSeconds > 0 && extensionSeconds <= 0)) {
+            throw new IllegalArgumentException("The soft close window must be at least 0 and its extension above 0");
+        }
+        softCloseMillis = windowSeconds * 1000L;
+        softCloseExtensionMillis = extensionSeconds * 1000L;
+    }
+    
+    // Call before start(): webPort > 0 serves browser clients (see WebGateway)
+    public void configureWebGateway(int webPort) {
+        this.webPort = webPort;
+    }
+    
     public void start() {
         try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("Auction Server started on port " + PORT);
+            storage.run(db -> loadActiveAuctions()).join();
+            if (follower != null) {
+                follower.start();
+            } else {
+                startReplicationLog(ReplicationLog.newLogId(), 1);
+                storage.run(db -> restoreAuctionTimers()).join();
+            }
+            // Archiving is local housekeeping, not a replicated change: every node archives its own copy
+            timerService.schedule(this::archiveClosedAuctions, ARCHIVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            timerService.scheduleAtFixedRate(() -> marketStats.tick(clock.millis()), 1, 1, TimeUnit.SECONDS);
+            
+            serverSocket = new ServerSocket(port);
+            if (webPort > 0) {
+                webGateway = new WebGateway(webPort, ClientHandler::new);
+                webGateway.start();
+            }
+            if (shardCount > 1) {
+                System.out.println("Auction Server shard " + shardIndex + "/" + shardCount + " started on port " + port);
+            } else {
+                System.out.println("Auction Server started on port " + port);
+            }
             
             while (running) {
                 Socket clientSocket = serverSocket.accept();
@@ -49,9 +214,21 @@ public class AuctionServer {
     
     public void stop() {
         running = false;
+        if (follower != null) {
+            follower.stop();
+        }
+        if (replicationLog != null) {
+            replicationLog.stop();
+        }
+        if (webGateway != null) {
+            webGateway.close();
+        }
         threadPool.shutdown();
         timerService.shutdown();
-        dbManager.close();
+        for (ExecutorService stripe : delivery) {
+            stripe.shutdown();
+        }
+        storage.close();
         
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
@@ -64,58 +241,461 @@ public class AuctionServer {
         System.out.println("Server stopped");
     }
     
-    // Notify all participants in an auction
-    private void notifyAuctionParticipants(int auctionId, String message) {
-        List<String> participants = dbManager.getAuctionParticipants(auctionId);
-        Auction auction = dbManager.getAuction(auctionId);
+    private void startReplicationLog(String logId, long startSeq) throws IOException {
+        if (replicationPort > 0) {
+            replicationLog = new ReplicationLog(logId, startSeq);
+            replicationLog.start(replicationPort);
+        }
+    }
+    
+    // The executor that sends the messages following a storage task for this auction
+    private Executor deliveryFor(int auctionId) {
+        return delivery[Math.floorMod(auctionId, delivery.length)];
+    }
+    
+    // Storage thread only, like every method that uses dbManager directly
+    private void loadActiveAuctions() {
+        for (Auction auction : dbManager.getActiveAuctions()) {
+            Bid highestBid = dbManager.getHighestBid(auction.getAuctionId());
+            activeAuctions.put(auction, highestBid != null ? highestBid.getBidTime() : 0,
+                    highestBid != null ? highestBid.getSequence() : 0);
+            sellerIpOf(auction.getSellerId());
+            membership.setLeader(auction.getAuctionId(), auction.getHighestBidderId());
+            if (auction.getHighestBidderId() != UserDirectory.NO_USER) {
+                for (Bid bid : dbManager.getBidHistory(auction.getAuctionId())) {
+                    bidTape.record(auction.getAuctionId(), bid.getUserId(), bid.getAmount(), bid.getBidTime());
+                }
+            }
+        }
+        dbManager.loadActiveParticipants(membership);
+        lastBidSequence = dbManager.getLastBidSequence();
+    }
+    
+    // Storage thread: the seller's registration IP, read once per seller
+    private String sellerIpOf(int sellerId) {
+        return sellerIps.computeIfAbsent(sellerId, id -> {
+            User seller = dbManager.getUser(users.nameOf(id));
+            return seller != null ? seller.getIpAddress() : "unknown";
+        });
+    }
+    
+    // Storage thread, under the auction's lock: adds an auction that has just been created
+    private void addActive(int auctionId, String itemName, String itemDescription, int auctionType, int sellerId,
+                           long startingPrice, long endTime) {
+        sellerIpOf(sellerId);
+        activeAuctions.put(auctionId, itemName, itemDescription, auctionType, sellerId, UserDirectory.NO_USER,
+                startingPrice, startingPrice, 0, 0, endTime);
+    }
+    
+    // Storage thread, under the auction's lock: a closed auction leaves the in-memory state
+    private void dropActive(int auctionId) {
+        extendedEndTimes.remove(auctionId);
+        activeAuctions.remove(auctionId);
+        bidTape.remove(auctionId);
+        watches.removeAuction(auctionId);
+    }
+    
+    // A rendered LIST_AUCTIONS body, good for as long as activeAuctions is at version
+    private static final class Listing {
+        final long version;
+        final String text;
         
-        if (auction != null) {
-            // Also notify the seller
-            participants.add(auction.getSellerUsername());
-            
-            for (String username : participants) {
-                ClientHandler handler = connectedClients.get(username);
-                if (handler != null) {
-                    handler.sendMessage(message);
+        Listing(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+    
+    // Renders the listing at most once per change, however many clients poll in between. The
+    // text is cached with the version it was copied at, which may be older than the one read
+    // here, so a write that lands during the render is picked up by the next poll.
+    private String currentListing() {
+        Listing cached = listing.get();
+        if (cached.version == activeAuctions.getVersion()) {
+            return cached.text;
+        }
+        StringBuilder sb = new StringBuilder();
+        long version = activeAuctions.appendListing(sb, users::nameOf, id -> sellerIps.getOrDefault(id, "unknown"));
+        String text = sb.length() == 0 ? "No active auctions" : sb.toString();
+        listing.compareAndSet(cached, new Listing(version, text));
+        return text;
+    }
+    
+    // Record a state change for followers
+    private void replicate(String... event) {
+        if (replicationLog != null) {
+            replicationLog.append(event);
+        }
+    }
+    
+    // Called on the follower thread: each event is applied on the storage thread before the
+    // next one is taken, so events keep their order, and stored with its sequence number in
+    // one go; waits for room when storage is saturated. False if the store could not take it
+    private boolean applyReplicated(String logId, long seq, String[] event) {
+        while (true) {
+            try {
+                return storage.call(db -> db.applyReplicated(logId, seq, () -> applyReplicatedEvent(event))).join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof RejectedExecutionException)) {
+                    throw e;
                 }
             }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+    
+    // Apply a state change streamed from the primary (follower only), inside the store's
+    // applyReplicated() so that the event's writes and its sequence number are stored together
+    private void applyReplicatedEvent(String[] event) {
+        switch (event[0]) {
+            case "USER":
+                dbManager.registerUser(event[1], event[2], event[3], event[4], event[5], event[6], event[7], event[8]);
+                break;
+            case "AUCTION":
+                long endTime = event[7] != null ? Long.parseLong(event[7]) : Auction.NO_END_TIME;
+                if (dbManager.insertAuction(Integer.parseInt(event[1]), event[2], event[3], Money.parse(event[4]),
+                        users.idOf(event[5]), Integer.parseInt(event[6]), Long.parseLong(event[8]), endTime)) {
+                    addActive(Integer.parseInt(event[1]), event[2], event[3], Integer.parseInt(event[6]), users.idOf(event[5]),
+                            Money.parse(event[4]), endTime);
+                }
+                break;
+            case "JOIN":
+                if (dbManager.joinAuction(Integer.parseInt(event[1]), users.idOf(event[2]))) {
+                    membership.join(Integer.parseInt(event[1]), users.idOf(event[2]));
+                }
+                break;
+            case "BID":
+                // The primary's time and sequence number, so a promoted follower numbers on from them
+                long bidTime = Long.parseLong(event[4]);
+                long sequence = Long.parseLong(event[5]);
+                if (dbManager.placeBid(Integer.parseInt(event[1]), users.idOf(event[2]), Money.parse(event[3]), bidTime, sequence)) {
+                    activeAuctions.updateBid(Integer.parseInt(event[1]), users.idOf(event[2]), Money.parse(event[3]), bidTime, sequence);
+                    membership.setLeader(Integer.parseInt(event[1]), users.idOf(event[2]));
+                    marketStats.recordBid(users.idOf(event[2]), bidTime);
+                    bidTape.record(Integer.parseInt(event[1]), users.idOf(event[2]), Money.parse(event[3]), bidTime);
+                }
+                lastBidSequence = Math.max(lastBidSequence, sequence);
+                break;
+            case "WITHDRAW":
+                dbManager.withdrawFromAuction(Integer.parseInt(event[1]), users.idOf(event[2]));
+                membership.leave(Integer.parseInt(event[1]), users.idOf(event[2]));
+                break;
+            case "LEAVE":
+                int userId = users.idOf(event[1]);
+                dbManager.removeUserFromAuctions(userId, membership.leaveAll(userId));
+                break;
+            case "CLOSE":
+                AuctionColumnStore.View closing = activeAuctions.view();
+                if (closing.load(Integer.parseInt(event[1]))) {
+                    marketStats.recordClose(closing.getSellerId(), closing.getStartingPrice(), Money.parse(event[2]),
+                            users.idOf(event[3]), clock.millis());
+                }
+                dbManager.closeAuction(Integer.parseInt(event[1]), Money.parse(event[2]), users.idOf(event[3]));
+                dropActive(Integer.parseInt(event[1]));
+                membership.removeAuction(Integer.parseInt(event[1]));
+                break;
+            case "EXTEND":
+                if (dbManager.extendAuctions(new int[] {Integer.parseInt(event[1])}, new long[] {Long.parseLong(event[2])})) {
+                    activeAuctions.setEndTime(Integer.parseInt(event[1]), Long.parseLong(event[2]));
+                    watches.deadlineMoved(Integer.parseInt(event[1]), Long.parseLong(event[2]));
+                }
+                break;
+            default:
+                System.err.println("Unknown replication event: " + event[0]);
         }
     }
     
+    // Turn a follower into the primary: stop following, accept writes, serve followers
+    // from the next sequence number of the same log and re-arm the timers of the active auctions
+    private synchronized CompletableFuture<Long> promote() throws IOException {
+        follower.stop();
+        long lastSeq = follower.getLastSeq();
+        String logId = follower.getLogId();
+        follower = null;
+        startReplicationLog(logId != null ? logId : ReplicationLog.newLogId(), lastSeq + 1);
+        readOnly = false;
+        System.out.println("Promoted to primary at sequence " + lastSeq);
+        return storage.run(db -> restoreAuctionTimers()).thenApply(v -> lastSeq);
+    }
     
+    // Schedule the closing timers of auctions that are still active, e.g. after a restart or promotion
+    private void restoreAuctionTimers() {
+        for (Auction auction : dbManager.getActiveAuctions()) {
+            if (auction.getAuctionType() == 1 && auction.hasEndTime()) {
+                scheduleAuctionClose(auction.getAuctionId(), auction.getEndTime());
+            } else if (auction.getAuctionType() == 2 && auction.getHighestBidderId() != UserDirectory.NO_USER) {
+                handleBid(auction.getAuctionId(), auction.getHighestBidderId(), auction.getCurrentPrice());
+            }
+        }
+    }
     
- // Method to schedule auction close for timed auctions
-    private void scheduleAuctionClose(int auctionId, long durationMillis) {
-        ScheduledFuture<?> future = timerService.schedule(() -> {
-            Auction auction = dbManager.getAuction(auctionId);
-            if (auction != null && "active".equals(auction.getStatus())) {
-                Bid highestBid = dbManager.getHighestBid(auctionId);
-                String highestBidder = highestBid != null ? highestBid.getUsername() : null;
-                double finalPrice = highestBid != null ? highestBid.getAmount() : auction.getStartingPrice();
-                
-                // Close the auction
-                dbManager.closeAuction(auctionId, finalPrice, highestBidder);
-                
-                // Notify participants
-                String message = "SOLD " + auctionId + " " + auction.getItemName() + " " + finalPrice + " " + 
-                                 (highestBidder != null ? highestBidder : "No bidders");
-                notifyAuctionParticipants(auctionId, message);
-                
-                // Remove auction timer
-                auctionTimers.remove(auctionId);
+    // Notify all participants of an active auction, and its seller
+    private void notifyAuctionParticipants(int auctionId, String message) {
+        AuctionColumnStore.View active = activeAuctions.view();
+        if (active.load(auctionId)) {
+            notifyAuctionParticipants(auctionId, active.getSellerId(), message);
+        }
+    }
+    
+    // Closed auctions are gone from activeAuctions, so SOLD passes the seller itself
+    private void notifyAuctionParticipants(int auctionId, int sellerId, String message) {
+        int[] participants = membership.getParticipants(auctionId);
+        
+        for (int userId : participants) {
+            ClientHandler handler = connectedClients.get(userId);
+            if (handler != null) {
+                handler.sendMessage(message);
             }
-        }, durationMillis, TimeUnit.MILLISECONDS);
+        }
         
-        auctionTimers.put(auctionId, future);
+        // Also notify the seller
+        ClientHandler seller = connectedClients.get(sellerId);
+        if (seller != null) {
+            seller.sendMessage(message);
+        }
+    }
+    
+    // Storage thread, under the auction's lock: stores a bid stamped with the clock and the next
+    // sequence number, then records it for followers, in the active auction's row and in the
+    // bid tape. False, with nothing recorded and no number used, when the store turns it down.
+    private boolean storeBid(int auctionId, int bidderId, long amount) {
+        long bidTime = clock.millis();
+        long sequence = lastBidSequence + 1;
+        if (!dbManager.placeBid(auctionId, bidderId, amount, bidTime, sequence)) {
+            return false;
+        }
+        lastBidSequence = sequence;
+        activeAuctions.updateBid(auctionId, bidderId, amount, bidTime, sequence);
+        membership.setLeader(auctionId, bidderId);
+        replicate("BID", String.valueOf(auctionId), users.nameOf(bidderId), Money.format(amount),
+                String.valueOf(bidTime), String.valueOf(sequence));
+        bidTape.record(auctionId, bidderId, amount, bidTime);
+        return true;
+    }
+    
+    // Storage tasks change state and return the messages to send as a Runnable, which runs
+    // here on the auction's delivery thread once the task has committed
+    private CompletableFuture<Void> deliver(int auctionId, CompletableFuture<Runnable> messages) {
+        return messages.thenAcceptAsync(send -> {
+            if (send != null) {
+                send.run();
+            }
+        }, deliveryFor(auctionId));
+    }
+    
+    private static boolean isRejected(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof RejectedExecutionException;
+    }
+    
+    // Moves one batch of closed auctions to the archive, then schedules the next batch or sweep
+    private void archiveClosedAuctions() {
+        if (!running) {
+            return;
+        }
+        if (storage.getQueueDepth() > ARCHIVE_MAX_QUEUE_DEPTH) {
+            timerService.schedule(this::archiveClosedAuctions, ARCHIVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        storage.call(db -> db.archiveClosedAuctions(ARCHIVE_BATCH)).whenComplete((moved, e) -> {
+            if (moved != null && moved > 0) {
+                System.out.println("Archived " + moved + " closed auctions");
+            }
+            long delay = moved != null && moved == ARCHIVE_BATCH ? ARCHIVE_PAUSE_MILLIS : ARCHIVE_INTERVAL_MILLIS;
+            if (running) {
+                timerService.schedule(this::archiveClosedAuctions, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+    
+
+ // Method to schedule auction close for timed auctions, at endTime (epoch millis) or as soon
+    // as possible if that has passed
+    private void scheduleAuctionClose(int auctionId, long endTime) {
+        long now = clock.millis();
+        long tick = (Math.max(now, endTime) + CLOSE_TICK_MILLIS - 1) / CLOSE_TICK_MILLIS;
+        // A tick's list is only changed inside compute() and only read once closeTick() has
+        // removed it, so an auction added after that gets a new list with its own timer
+        closeTicks.compute(tick, (t, due) -> {
+            if (due == null) {
+                due = new ArrayList<>();
+                timerService.schedule(() -> closeTick(t), Math.max(0, t * CLOSE_TICK_MILLIS - now), TimeUnit.MILLISECONDS);
+            }
+            due.add(auctionId);
+            return due;
+        });
+    }
+    
+    // Runs on a timer thread but only submits the closes, CLOSE_BATCH auctions per storage task
+    private void closeTick(long tick) {
+        List<Integer> due = closeTicks.remove(tick);
+        if (due == null) {
+            return;
+        }
+        for (int from = 0; from < due.size(); from += CLOSE_BATCH) {
+            List<Integer> batch = due.subList(from, Math.min(due.size(), from + CLOSE_BATCH));
+            closeTimedAuctions(batch.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+    
+    // SOLD goes out once the batch has committed, each auction's on its own delivery stripe so
+    // the stripes send in parallel. A batch turned away by a full storage queue is retried on a
+    // later tick, so no auction stays open.
+    private void closeTimedAuctions(int[] auctionIds) {
+        storage.call(db -> closeDueAuctions(auctionIds)).whenComplete((sends, e) -> {
+            if (e != null) {
+                if (isRejected(e)) {
+                    for (int auctionId : auctionIds) {
+                        scheduleAuctionClose(auctionId, clock.millis() + CLOSE_RETRY_MILLIS);
+                    }
+                } else {
+                    System.err.println("Error closing auctions: " + e.getMessage());
+                }
+                return;
+            }
+            for (int i = 0; i < sends.length; i++) {
+                if (sends[i] != null) {
+                    deliveryFor(auctionIds[i]).execute(sends[i]);
+                }
+            }
+        });
     }
     
-    // Method to handle ongoing auction bidding process
-    private void handleBid(int auctionId, String bidder, double amount) {
-        Auction auction = dbManager.getAuction(auctionId);
+    // Storage thread: closes those of the auctions that are still active in one transaction and
+    // drops them from the active auctions. Returns each auction's SOLD delivery, null for the
+    // auctions that had already closed or whose deadline soft close has moved since.
+    private Runnable[] closeDueAuctions(int[] auctionIds) {
+        AuctionColumnStore.View auction = activeAuctions.view();
+        long now = clock.millis();
+        Runnable[] sends = new Runnable[auctionIds.length];
+        int[] extended = new int[auctionIds.length];
+        int extendedCount = 0;
+        int[] closing = new int[auctionIds.length];
+        long[] finalPrices = new long[auctionIds.length];
+        int[] highestBidderIds = new int[auctionIds.length];
+        int[] sellerIds = new int[auctionIds.length];
+        long[] startingPrices = new long[auctionIds.length];
+        int count = 0;
+        
+        for (int i = 0; i < auctionIds.length; i++) {
+            int auctionId = auctionIds[i];
+            synchronized (proxyEngine.lockFor(auctionId)) {
+                if (!auction.load(auctionId)) {
+                    continue;
+                }
+                if (auction.getEndTimeMillis() > now) {
+                    extended[extendedCount++] = auctionId;
+                    scheduleAuctionClose(auctionId, auction.getEndTimeMillis());
+                    continue;
+                }
+                // The stored current price and highest bidder are those of the highest bid
+                int highestBidderId = auction.getHighestBidderId();
+                long finalPrice = auction.getCurrentPrice();
+                closing[count] = auctionId;
+                finalPrices[count] = finalPrice;
+                highestBidderIds[count] = highestBidderId;
+                sellerIds[count] = auction.getSellerId();
+                startingPrices[count] = auction.getStartingPrice();
+                count++;
+                
+                int sellerId = auction.getSellerId();
+                String message = "SOLD " + auctionId + " " + auction.getItemName() + " " + Money.format(finalPrice) + " " + 
+                                 (highestBidderId != UserDirectory.NO_USER ? users.nameOf(highestBidderId) : "No bidders");
+                sends[i] = () -> {
+                    notifyAuctionParticipants(auctionId, sellerId, message);
+                    membership.removeAuction(auctionId);
+                };
+            }
+        }
+        storeExtendedEndTimes(Arrays.copyOf(extended, extendedCount));
+        if (count == 0) {
+            return sends;
+        }
         
-        if (auction == null || !"active".equals(auction.getStatus())) {
+        int[] closed = Arrays.copyOf(closing, count);
+        if (!dbManager.closeAuctions(closed, Arrays.copyOf(finalPrices, count), Arrays.copyOf(highestBidderIds, count))) {
+            // Nothing was closed; try again on a later tick
+            for (int auctionId : closed) {
+                scheduleAuctionClose(auctionId, clock.millis() + CLOSE_RETRY_MILLIS);
+            }
+            return new Runnable[auctionIds.length];
+        }
+        for (int i = 0; i < count; i++) {
+            marketStats.recordClose(sellerIds[i], startingPrices[i], finalPrices[i], highestBidderIds[i], now);
+            synchronized (proxyEngine.lockFor(closed[i])) {
+                replicate("CLOSE", String.valueOf(closed[i]), Money.format(finalPrices[i]), users.nameOf(highestBidderIds[i]));
+                dropActive(closed[i]);
+                proxyEngine.clear(closed[i]);
+            }
+        }
+        return sends;
+    }
+    
+    // Storage thread, once the auctions are on the ticks of their new deadlines: stores the
+    // deadlines soft close moved, in one transaction. If that fails they stay in
+    // extendedEndTimes and the next tick tries again.
+    private void storeExtendedEndTimes(int[] auctionIds) {
+        int[] pending = new int[auctionIds.length];
+        long[] endTimes = new long[auctionIds.length];
+        int count = 0;
+        for (int auctionId : auctionIds) {
+            Long endTime = extendedEndTimes.get(auctionId);
+            if (endTime != null) {
+                pending[count] = auctionId;
+                endTimes[count] = endTime;
+                count++;
+            }
+        }
+        if (count == 0 || !dbManager.extendAuctions(Arrays.copyOf(pending, count), Arrays.copyOf(endTimes, count))) {
             return;
         }
+        for (int i = 0; i < count; i++) {
+            synchronized (proxyEngine.lockFor(pending[i])) {
+                replicate("EXTEND", String.valueOf(pending[i]), String.valueOf(endTimes[i]));
+                extendedEndTimes.remove(pending[i]);
+            }
+        }
+    }
+    
+    // Storage thread: creates a chunk of imported auctions in one transaction, adds them to the
+    // active auctions and puts the timed ones on their close ticks
+    private int importAuctions(List<Auction> chunk, String sellerUsername, String sellerIp) {
+        int[] auctionIds = dbManager.createAuctions(chunk);
+        if (auctionIds == null) {
+            return -1;
+        }
+        sellerIps.putIfAbsent(chunk.get(0).getSellerId(), sellerIp);
+        for (int i = 0; i < auctionIds.length; i++) {
+            Auction auction = chunk.get(i);
+            auction.setAuctionId(auctionIds[i]);
+            auction.setSellerUsername(sellerUsername);
+            replicate("AUCTION", String.valueOf(auctionIds[i]), auction.getItemName(), auction.getItemDescription(),
+                    Money.format(auction.getStartingPrice()), sellerUsername, String.valueOf(auction.getAuctionType()),
+                    auction.hasEndTime() ? String.valueOf(auction.getEndTime()) : null, String.valueOf(auction.getStartTime()));
+            activeAuctions.put(auction, 0, 0);
+            announceListing(auctionIds[i], auction.getItemName(), auction.getItemDescription(), auction.getStartingPrice(),
+                    auction.getAuctionType(), auction.getSellerId());
+            if (auction.hasEndTime()) {
+                scheduleAuctionClose(auctionIds[i], auction.getEndTime());
+            }
+        }
+        return auctionIds.length;
+    }
+    
+    // Method to handle ongoing auction bidding process; called in bid order on the storage thread.
+    // Returns the new deadline when the bid extended a timed auction, else Auction.NO_END_TIME.
+    private long handleBid(int auctionId, int bidderId, long amount) {
+        AuctionColumnStore.View auction = activeAuctions.view();
+        
+        if (!auction.load(auctionId)) {
+            return Auction.NO_END_TIME;
+        }
+        String itemName = auction.getItemName();
         
         // For auction type 2 (ongoing until no more bids)
         if (auction.getAuctionType() == 2) {
@@ -124,33 +704,145 @@ public class AuctionServer {
             
             // Schedule "going once" timer (30 seconds)
             goingOnceTimers.put(auctionId, timerService.schedule(() -> {
-                String message = "GOING_ONCE " + auctionId + " " + auction.getItemName() + " " + amount;
+                String message = "GOING_ONCE " + auctionId + " " + itemName + " " + Money.format(amount);
                 notifyAuctionParticipants(auctionId, message);
                 
                 // Schedule "going twice" timer (5 seconds after "going once")
                 goingTwiceTimers.put(auctionId, timerService.schedule(() -> {
-                    String goingTwiceMessage = "GOING_TWICE " + auctionId + " " + auction.getItemName() + " " + amount;
+                    String goingTwiceMessage = "GOING_TWICE " + auctionId + " " + itemName + " " + Money.format(amount);
                     notifyAuctionParticipants(auctionId, goingTwiceMessage);
                     
                     // Schedule "sold" message (5 seconds after "going twice")
-                    auctionTimers.put(auctionId, timerService.schedule(() -> {
-                        // Close the auction
-                        dbManager.closeAuction(auctionId, amount, bidder);
-                        
-                        ClientHandler bidderHandler = connectedClients.get(bidder);
-                        String bidderIp = bidderHandler != null ? bidderHandler.getIpAddress() : "unknown";
-                        
-                        String soldMessage = "SOLD " + auctionId + " " + auction.getItemName() + " " + amount + " " + bidder + " " + bidderIp;
-                        notifyAuctionParticipants(auctionId, soldMessage);
-                        
-                        // Remove all timers for this auction
-                        cancelAuctionTimers(auctionId);
-                    }, 5, TimeUnit.SECONDS));
+                    auctionTimers.put(auctionId, timerService.schedule(() -> closeOngoingAuction(auctionId, itemName, bidderId, amount),
+                            5, TimeUnit.SECONDS));
                 }, 5, TimeUnit.SECONDS));
             }, 30, TimeUnit.SECONDS));
         }
         
-        // For auction type 1, there's already a fixed timer set when the auction was created
+        // For auction type 1 the close tick was set when the auction was created; a bid in the
+        // soft close window only moves the deadline that the tick checks
+        if (auction.getAuctionType() == 1 && softCloseMillis > 0 && auction.hasEndTime()) {
+            long now = clock.millis();
+            long endTime = now + softCloseExtensionMillis;
+            if (now < auction.getEndTimeMillis() && auction.getEndTimeMillis() - now < softCloseMillis
+                    && endTime > auction.getEndTimeMillis()) {
+                activeAuctions.setEndTime(auctionId, endTime);
+                extendedEndTimes.put(auctionId, endTime);
+                watches.deadlineMoved(auctionId, endTime);
+                return endTime;
+            }
+        }
+        return Auction.NO_END_TIME;
+    }
+    
+    // A timed auction takes no bids once its deadline has passed, even while its close tick
+    // has yet to get to it
+    private boolean isPastDeadline(AuctionColumnStore.View auction) {
+        return auction.getAuctionType() == 1 && auction.hasEndTime() && clock.millis() >= auction.getEndTimeMillis();
+    }
+    
+    // Sells a type 2 auction to the bid that started the countdown
+    private void closeOngoingAuction(int auctionId, String itemName, int bidderId, long amount) {
+        deliver(auctionId, storage.call(db -> {
+            AuctionColumnStore.View auction = activeAuctions.view();
+            // Close the auction
+            synchronized (proxyEngine.lockFor(auctionId)) {
+                if (!auction.load(auctionId)) {
+                    return null;
+                }
+                db.closeAuction(auctionId, amount, bidderId);
+                marketStats.recordClose(auction.getSellerId(), auction.getStartingPrice(), amount, bidderId, clock.millis());
+                replicate("CLOSE", String.valueOf(auctionId), Money.format(amount), users.nameOf(bidderId));
+                dropActive(auctionId);
+                proxyEngine.clear(auctionId);
+            }
+            
+            int sellerId = auction.getSellerId();
+            return () -> {
+                ClientHandler bidderHandler = connectedClients.get(bidderId);
+                String bidderIp = bidderHandler != null ? bidderHandler.getIpAddress() : "unknown";
+                
+                String soldMessage = "SOLD " + auctionId + " " + itemName + " " + Money.format(amount) + " " + users.nameOf(bidderId) + " " + bidderIp;
+                notifyAuctionParticipants(auctionId, sellerId, soldMessage);
+                membership.removeAuction(auctionId);
+                
+                // Remove all timers for this auction
+                cancelAuctionTimers(auctionId);
+            };
+        })).exceptionally(e -> {
+            if (isRejected(e)) {
+                auctionTimers.put(auctionId, timerService.schedule(() -> closeOngoingAuction(auctionId, itemName, bidderId, amount),
+                        CLOSE_RETRY_MILLIS, TimeUnit.MILLISECONDS));
+            } else {
+                System.err.println("Error closing auction " + auctionId + ": " + e.getMessage());
+            }
+            return null;
+        });
+    }
+    
+    // Push a new visible price to everyone in the auction (delivery thread); every accepted
+    // bid passes through here, so it is also where the market aggregates count it. A bid that
+    // extended the auction is followed by EXTENDED with the new deadline.
+    private void publishBid(int auctionId, String itemName, int bidderId, long amount, long extendedTo) {
+        marketStats.recordBid(bidderId, clock.millis());
+        ClientHandler bidderHandler = connectedClients.get(bidderId);
+        String bidderIp = bidderHandler != null ? bidderHandler.getIpAddress() : "unknown";
+        StringBuilder sb = new StringBuilder(64).append("BID_UPDATE ").append(auctionId).append(' ').append(itemName).append(' ');
+        String message = Money.appendTo(sb, amount).append(' ').append(users.nameOf(bidderId)).append(' ').append(bidderIp).toString();
+        notifyAuctionParticipants(auctionId, message);
+        if (extendedTo != Auction.NO_END_TIME) {
+            notifyAuctionParticipants(auctionId, "EXTENDED " + auctionId + " " + itemName + " " + extendedTo);
+        }
+        
+        for (WatchIndex.Watch watch : watches.priceReached(auctionId, amount)) {
+            ClientHandler watcher = connectedClients.get(watch.getUserId());
+            if (watcher != null) {
+                watcher.sendMessage("PRICE_ALERT " + auctionId + " " + itemName + " " + Money.format(amount) + " " + Money.format(watch.getAmount()));
+            }
+        }
+    }
+    
+    // Storage thread, once a new auction is committed: matching against the saved searches and
+    // the NEW_LISTING pushes happen on the auction's delivery thread, ahead of any bid on it
+    private void announceListing(int auctionId, String itemName, String itemDescription, long startingPrice,
+                                 int auctionType, int sellerId) {
+        if (searches.isEmpty()) {
+            return;
+        }
+        deliveryFor(auctionId).execute(() -> {
+            String listing = null;
+            for (SearchPercolator.Search search : searches.match(itemName, itemDescription, startingPrice, auctionType)) {
+                ClientHandler buyer = search.getUserId() != sellerId ? connectedClients.get(search.getUserId()) : null;
+                if (buyer == null) {
+                    continue;
+                }
+                if (listing == null) {
+                    StringBuilder sb = new StringBuilder().append(auctionId).append('|').append(itemName).append('|')
+                            .append(itemDescription).append('|');
+                    listing = Money.appendTo(sb, startingPrice).append('|').append(auctionType).append('|')
+                            .append(users.nameOf(sellerId)).toString();
+                }
+                buyer.sendMessage("NEW_LISTING " + search.getSearchId() + " " + listing);
+            }
+        });
+    }
+    
+    // An ending watch's timer went off with no bid at its ceiling yet; the alert goes out on
+    // the auction's delivery thread, after any BID_UPDATE already on its way
+    private void endingWatchDue(WatchIndex.Watch watch) {
+        int auctionId = watch.getAuctionId();
+        deliveryFor(auctionId).execute(() -> {
+            AuctionColumnStore.View auction = activeAuctions.view();
+            if (!auction.load(auctionId) || auction.getCurrentPrice() >= watch.getAmount()) {
+                return;
+            }
+            ClientHandler watcher = connectedClients.get(watch.getUserId());
+            if (watcher != null) {
+                long minutesLeft = Math.max(0, (auction.getEndTimeMillis() - clock.millis() + 59999) / 60000);
+                watcher.sendMessage("ENDING_ALERT " + auctionId + " " + auction.getItemName() + " " + Money.format(auction.getCurrentPrice())
+                        + " " + minutesLeft);
+            }
+        });
     }
     
     private void cancelAuctionTimers(int auctionId) {
@@ -173,32 +865,86 @@ public class AuctionServer {
         }
     }
     
-    // Inner class to handle client connections
-    private class ClientHandler implements Runnable {
+    // Inner class to handle client connections; a web gateway session is one without a
+    // socket, whose messages go to its WebGateway.Peer
+    private class ClientHandler implements Runnable, WebGateway.Session {
         private Socket clientSocket;
         private BufferedReader in;
-        private PrintWriter out;
-        private String username;
+        private FrameCodec.Writer out;
+        private final WebGateway.Peer peer;
+        private final InetAddress remoteAddress;
+        private volatile String username;
+        private volatile int userId;
         private String ipAddress;
+        private final AuctionColumnStore.View activeAuction = activeAuctions.view(); // reused by every bid
+        
+        // Commands run one after another: a command waiting for storage holds back the next
+        // one without blocking this thread, so replies keep the order of the commands
+        private CompletableFuture<Void> pending = DONE;
+        private final Semaphore pipeline = new Semaphore(MAX_PIPELINED_COMMANDS);
         
         public ClientHandler(Socket socket) {
             this.clientSocket = socket;
-            this.ipAddress = socket.getInetAddress().getHostAddress();
+            this.peer = null;
+            this.remoteAddress = socket.getInetAddress();
+            this.ipAddress = remoteAddress.getHostAddress();
             
             try {
                 in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                out = new PrintWriter(clientSocket.getOutputStream(), true);
+                out = new FrameCodec.Writer(clientSocket.getOutputStream());
             } catch (IOException e) {
                 System.err.println("Error creating client handler: " + e.getMessage());
             }
         }
         
+        public ClientHandler(InetAddress remoteAddress, WebGateway.Peer peer) {
+            this.peer = peer;
+            this.remoteAddress = remoteAddress;
+            this.ipAddress = remoteAddress.getHostAddress();
+        }
+        
         public String getIpAddress() {
             return ipAddress;
         }
         
         public void sendMessage(String message) {
-            out.println(message);
+            if (peer != null) {
+                peer.send(message);
+            } else {
+                out.send(message);
+            }
+        }
+        
+        @Override
+        public boolean offer(String command) {
+            if (!pipeline.tryAcquire()) {
+                return false;
+            }
+            enqueue(command);
+            return true;
+        }
+        
+        @Override
+        public CompletableFuture<Void> idle() {
+            return pending;
+        }
+        
+        // The connection is gone: notifications for the user stop coming here
+        @Override
+        public void close() {
+            if (username != null) {
+                connectedClients.remove(userId, this);
+                System.out.println("Client disconnected: " + username);
+            }
+        }
+        
+        // Runs the command once the ones before it have replied; called by one thread at a time
+        private void enqueue(String command) {
+            if (pending.isDone()) {
+                pending = runCommand(command);
+            } else {
+                pending = pending.thenComposeAsync(v -> runCommand(command), threadPool);
+            }
         }
         
         @Override
@@ -206,57 +952,120 @@ public class AuctionServer {
             try {
                 String inputLine;
                 while ((inputLine = in.readLine()) != null) {
-                    processCommand(inputLine);
+                    if (inputLine.equals("IMPORT")) {
+                        // Reads the records itself, after the earlier commands have replied
+                        pending.join();
+                        handleImport();
+                        continue;
+                    }
+                    pipeline.acquire();
+                    enqueue(inputLine);
                 }
             } catch (IOException e) {
                 System.err.println("Error handling client: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } finally {
-                // Handle client disconnection
-                if (username != null) {
-                    connectedClients.remove(username);
-                    System.out.println("Client disconnected: " + username);
-                }
+                close();
                 try {
                     clientSocket.close();
                 } catch (IOException e) {
                     System.err.println("Error closing client socket: " + e.getMessage());
                 }
+                if (out != null) {
+                    out.close();
+                }
             }
         }
         
-        private void processCommand(String input) {
+        // Completes once the command has replied, whether it succeeded or not
+        private CompletableFuture<Void> runCommand(String input) {
+            return processCommand(input).handle((v, e) -> {
+                if (e != null) {
+                    if (isRejected(e)) {
+                        sendMessage("ERROR Server busy, please try again");
+                    } else {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        sendMessage("ERROR " + cause.getMessage());
+                        cause.printStackTrace();
+                    }
+                }
+                pipeline.release();
+                return null;
+            });
+        }
+        
+        private CompletableFuture<Void> processCommand(String input) {
             String[] tokens = input.split(" ", 2);
             String command = tokens[0];
             
             try {
+                if (readOnly && WRITE_COMMANDS.contains(command)) {
+                    sendMessage("ERROR This node is a read-only replica, send " + command + " to the primary");
+                    return DONE;
+                }
+                
                 switch (command) {
                     case "REGISTER":
-                        handleRegister(tokens[1]);
-                        break;
+                        return handleRegister(tokens[1]);
                     case "CONNECT":
-                        handleConnect(tokens[1]);
-                        break;
+                        return handleConnect(tokens[1]);
                     case "ADVERTISE":
-                        handleAdvertise(tokens[1]);
-                        break;
+                        return handleAdvertise(tokens[1]);
                     case "LIST_AUCTIONS":
                         handleListAuctions();
                         break;
                     case "JOIN_AUCTION":
-                        handleJoinAuction(tokens[1]);
-                        break;
+                        return handleJoinAuction(tokens[1]);
                     case "BID":
-                        handleBidCommand(tokens[1]);
-                        break;
+                        return handleBidCommand(tokens[1]);
+                    case "PROXY_BID":
+                        return handleProxyBid(tokens[1]);
                     case "CHECK_BID":
-                        handleCheckBid(tokens[1]);
-                        break;
+                        return handleCheckBid(tokens[1]);
                     case "WITHDRAW":
-                        handleWithdraw(tokens[1]);
-                        break;
+                        return handleWithdraw(tokens[1]);
                     case "DISCONNECT":
-                        handleDisconnect();
+                        return handleDisconnect();
+                    case "FORWARDED_FOR":
+                        handleForwardedFor(tokens[1]);
+                        break;
+                    case "IS_LEADING":
+                        handleIsLeading();
+                        break;
+                    case "PROMOTE":
+                        return handlePromote();
+                    case "STORAGE_STATS":
+                        handleStorageStats();
+                        break;
+                    case "MARKET_STATS":
+                        handleMarketStats(tokens.length > 1 ? tokens[1].trim() : null);
+                        break;
+                    case "AUCTION_HISTORY":
+                        return handleAuctionHistory(tokens[1]);
+                    case "BID_HISTORY":
+                        handleBidHistory(tokens[1]);
                         break;
+                    case "WATCH":
+                        handleWatch(tokens[1]);
+                        break;
+                    case "SAVE_SEARCH":
+                        handleSaveSearch(tokens[1]);
+                        break;
+                    case "DELETE_SEARCH":
+                        handleDeleteSearch(tokens[1]);
+                        break;
+                    case "SAVED_SEARCHES":
+                        handleSavedSearches();
+                        break;
+                    case "UNWATCH":
+                        handleUnwatch(tokens[1]);
+                        break;
+                    case "PRICE_CANDLES":
+                        handlePriceCandles(tokens[1]);
+                        break;
+                    case "EXPORT":
+                        return handleExport(tokens[1]);
                     default:
                         sendMessage("ERROR Unknown command: " + command);
                 }
@@ -266,13 +1075,19 @@ public class AuctionServer {
                 sendMessage("ERROR " + e.getMessage());
                 e.printStackTrace();
             }
+            return DONE;
+        }
+        
+        // Sends the reply computed by a storage task from a client thread, not the storage thread
+        private CompletableFuture<Void> reply(CompletableFuture<String> message) {
+            return message.thenAcceptAsync(this::sendMessage, threadPool);
         }
         
-        private void handleRegister(String args) {
+        private CompletableFuture<Void> handleRegister(String args) {
             String[] tokens = args.split(" ", 7);
             if (tokens.length < 7) {
                 sendMessage("ERROR Invalid registration format");
-                return;
+                return DONE;
             }
             
             String username = tokens[0];
@@ -283,51 +1098,63 @@ public class AuctionServer {
             String phone = tokens[5];
             String email = tokens[6];
             
-            boolean success = dbManager.registerUser(username, password, name, surname, idNumber, phone, email, ipAddress);
-            
-            if (success) {
-                sendMessage("SUCCESS Registration successful");
-            } else {
-                sendMessage("ERROR Username already exists");
-            }
+            return reply(storage.call(db -> {
+                boolean success = db.registerUser(username, password, name, surname, idNumber, phone, email, ipAddress);
+                
+                if (success) {
+                    replicate("USER", username, password, name, surname, idNumber, phone, email, ipAddress);
+                    return "SUCCESS Registration successful";
+                } else {
+                    return "ERROR Username already exists";
+                }
+            }));
         }
         
-        private void handleConnect(String args) {
-            String[] tokens = args.split(" ", 2);
+        // CONNECT username password [COMPRESS=deflate]
+        private CompletableFuture<Void> handleConnect(String args) {
+            String[] tokens = args.split(" ", 3);
             if (tokens.length < 2) {
                 sendMessage("ERROR Invalid login format");
-                return;
+                return DONE;
             }
             
             String username = tokens[0];
             String password = tokens[1];
+            // An unsupported codec is ignored and the connection stays plain, and so is any codec
+            // on a gateway session: its messages go out as WebSocket frames, not through out
+            boolean compress = peer == null && tokens.length > 2 && tokens[2].startsWith(FrameCodec.OPTION)
+                    && FrameCodec.isSupported(tokens[2].substring(FrameCodec.OPTION.length()));
             
-            User user = dbManager.getUser(username);
-            
-            if (user == null) {
-                sendMessage("ERROR User not found");
-                return;
-            }
-            
-            if (!user.getPassword().equals(password)) {
-                sendMessage("ERROR Invalid password");
-                return;
-            }
-            
-            if (!user.getIpAddress().equals(ipAddress)) {
-                sendMessage("ERROR IP address does not match registration IP");
-                return;
-            }
-            
-            this.username = username;
-            connectedClients.put(username, this);
-            sendMessage("WELCOME Welcome to the Auction System, " + user.getName() + "!");
+            return storage.read(db -> db.getUser(username)).thenAcceptAsync(user -> {
+                if (user == null) {
+                    sendMessage("ERROR User not found");
+                    return;
+                }
+                
+                if (!user.getPassword().equals(password)) {
+                    sendMessage("ERROR Invalid password");
+                    return;
+                }
+                
+                if (!user.getIpAddress().equals(ipAddress)) {
+                    sendMessage("ERROR IP address does not match registration IP");
+                    return;
+                }
+                
+                this.username = username;
+                this.userId = user.getUserId();
+                connectedClients.put(userId, this);
+                sendMessage("WELCOME Welcome to the Auction System, " + user.getName() + "!");
+                if (compress) {
+                    out.startCompression();
+                }
+            }, threadPool);
         }
         
-        private void handleAdvertise(String args) {
+        private CompletableFuture<Void> handleAdvertise(String args) {
             if (username == null) {
                 sendMessage("ERROR You must be connected to advertise an item");
-                return;
+                return DONE;
             }
             
             // Split using the pipe delimiter
@@ -335,27 +1162,26 @@ public class AuctionServer {
             
             if (parts.length < 4) {
                 sendMessage("ERROR Invalid advertise format. Need at least 4 parameters.");
-                return;
+                return DONE;
             }
             
             String itemName = parts[0].trim(); // Trim to remove any extra spaces
             String itemDescription = parts[1].trim();
             
-            double startingPrice;
+            long startingPrice;
             try {
-                startingPrice = Double.parseDouble(parts[2].trim());
+                startingPrice = Money.parse(parts[2].trim());
                 if (startingPrice <= 0) {
                     sendMessage("ERROR Starting price must be greater than zero");
-                    return;
+                    return DONE;
                 }
             } catch (NumberFormatException e) {
                 sendMessage("ERROR Invalid starting price: " + parts[2] + ". Must be a valid number.");
-                return;
+                return DONE;
             }
             
             String auctionTypeStr = parts[3].trim();
             int auctionType;
-            Timestamp endTime = null;
             
             try {
                 auctionType = Integer.parseInt(auctionTypeStr);
@@ -364,7 +1190,7 @@ public class AuctionServer {
                     // For timed auction, we need duration
                     if (parts.length < 5) {
                         sendMessage("ERROR Duration required for timed auction");
-                        return;
+                        return DONE;
                     }
                     
                     try {
@@ -373,193 +1199,669 @@ public class AuctionServer {
                         // ADD THIS VALIDATION - Check if duration is positive
                         if (durationMinutes <= 0) {
                             sendMessage("ERROR Duration must be greater than zero minutes");
-                            return;
+                            return DONE;
                         }
                         
                         // ADD THIS VALIDATION - Check if duration is reasonable (not too long)
                         if (durationMinutes > 10080) { // More than 1 week (7 * 24 * 60 minutes)
                             sendMessage("ERROR Duration cannot exceed 1 week (10080 minutes)");
-                            return;
+                            return DONE;
                         }
                         
                         // ADD THIS VALIDATION - Check if duration is not too short
                         if (durationMinutes < 1) {
                             sendMessage("ERROR Duration must be at least 1 minute");
-                            return;
+                            return DONE;
                         }
                         
-                        // Calculate end time
-                        Calendar calendar = Calendar.getInstance();
-                        calendar.add(Calendar.MINUTE, (int) durationMinutes);
-                        endTime = new Timestamp(calendar.getTimeInMillis());
-                        
                         // Create the auction and send response
-                        int auctionId = dbManager.createAuction(itemName, itemDescription, startingPrice, username, auctionType, endTime);
-                        
-                        if (auctionId > 0) {
-                            // Schedule auction close
-                            long durationMillis = durationMinutes * 60 * 1000;
-                            scheduleAuctionClose(auctionId, durationMillis);
+                        return reply(storage.call(db -> {
+                            long startTime = clock.millis();
+                            long endTime = startTime + durationMinutes * 60 * 1000;
+                            int auctionId = db.createAuction(itemName, itemDescription, startingPrice, userId, auctionType, startTime, endTime);
                             
-                            sendMessage("SUCCESS Auction created with ID: " + auctionId + " (Duration: " + durationMinutes + " minutes)");
-                        } else {
-                            sendMessage("ERROR Failed to create auction");
-                        }
-                        
+                            if (auctionId > 0) {
+                                replicate("AUCTION", String.valueOf(auctionId), itemName, itemDescription, Money.format(startingPrice),
+                                        username, String.valueOf(auctionType), String.valueOf(endTime), String.valueOf(startTime));
+                                addActive(auctionId, itemName, itemDescription, auctionType, userId, startingPrice, endTime);
+                                announceListing(auctionId, itemName, itemDescription, startingPrice, auctionType, userId);
+                                
+                                // Schedule auction close
+                                scheduleAuctionClose(auctionId, endTime);
+                                
+                                return "SUCCESS Auction created with ID: " + auctionId + " (Duration: " + durationMinutes + " minutes)";
+                            } else {
+                                return "ERROR Failed to create auction";
+                            }
+                        }));
                     } catch (NumberFormatException e) {
                         sendMessage("ERROR Invalid duration: " + parts[4] + ". Must be a valid number.");
-                        return;
+                        return DONE;
                     }
                 } else if (auctionType == 2) {
                     // Ongoing auction, no end time needed
-                    int auctionId = dbManager.createAuction(itemName, itemDescription, startingPrice, username, auctionType, null);
-                    
-                    if (auctionId > 0) {
-                        sendMessage("SUCCESS Auction created with ID: " + auctionId + " (Ongoing until no more bids)");
-                    } else {
-                        sendMessage("ERROR Failed to create auction");
-                    }
+                    return reply(storage.call(db -> {
+                        long startTime = clock.millis();
+                        int auctionId = db.createAuction(itemName, itemDescription, startingPrice, userId, auctionType, startTime, Auction.NO_END_TIME);
+                        
+                        if (auctionId > 0) {
+                            replicate("AUCTION", String.valueOf(auctionId), itemName, itemDescription, Money.format(startingPrice),
+                                    username, String.valueOf(auctionType), null, String.valueOf(startTime));
+                            addActive(auctionId, itemName, itemDescription, auctionType, userId, startingPrice, Auction.NO_END_TIME);
+                            announceListing(auctionId, itemName, itemDescription, startingPrice, auctionType, userId);
+                            return "SUCCESS Auction created with ID: " + auctionId + " (Ongoing until no more bids)";
+                        } else {
+                            return "ERROR Failed to create auction";
+                        }
+                    }));
                 } else {
                     sendMessage("ERROR Invalid auction type (1 for timed, 2 for ongoing)");
-                    return;
+                    return DONE;
                 }
             } catch (NumberFormatException e) {
                 sendMessage("ERROR Invalid auction type: " + auctionTypeStr + ". Must be 1 or 2.");
+                return DONE;
+            }
+        }
+        // IMPORT, then one listing per line in the ADVERTISE format, then END. Each chunk of
+        // records is stored before the next is read, so a fast sender is held back by TCP
+        // instead of being buffered here. One reply after END with the totals and the first
+        // problems; what was stored before a disconnect stays stored.
+        private void handleImport() throws IOException {
+            String refusal = username == null ? "ERROR You must be connected to import listings"
+                    : readOnly ? "ERROR This node is a read-only replica, send IMPORT to the primary" : null;
+            ListingImporter importer = new ListingImporter(userId, ListingImporter.DEFAULT_CHUNK, clock);
+            long imported = 0;
+            boolean failed = false;
+            
+            String record;
+            while ((record = in.readLine()) != null && !record.equals("END")) {
+                if (refusal != null || failed) {
+                    continue; // read to END so the records are not taken for commands
+                }
+                importer.add(record);
+                if (importer.isChunkFull()) {
+                    int stored = storeImported(importer.takeChunk());
+                    imported += Math.max(0, stored);
+                    failed = stored < 0;
+                }
+            }
+            
+            if (refusal != null) {
+                sendMessage(refusal);
                 return;
             }
+            if (!failed) {
+                int stored = storeImported(importer.takeChunk());
+                imported += Math.max(0, stored);
+                failed = stored < 0;
+            }
+            String problems = importer.getProblems();
+            sendMessage((failed ? "ERROR Import stopped after " : "SUCCESS Imported ") + imported + " auctions, "
+                    + importer.getRejected() + " records rejected" + (problems.isEmpty() ? "" : ": " + problems));
         }
+        
+        // Returns how many auctions were created, or -1 if the chunk could not be stored;
+        // waits while the storage queue is full
+        private int storeImported(List<Auction> chunk) {
+            if (chunk.isEmpty()) {
+                return 0;
+            }
+            String sellerIp = ipAddress;
+            while (true) {
+                try {
+                    return storage.call(db -> importAuctions(chunk, username, sellerIp)).join();
+                } catch (CompletionException e) {
+                    if (!isRejected(e)) {
+                        System.err.println("Error importing auctions: " + e.getCause().getMessage());
+                        return -1;
+                    }
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+        
         private void handleListAuctions() {
-            List<Auction> auctions = dbManager.getActiveAuctions();
+            // Served from the active auctions, rendered once per change
+            sendMessage("AUCTIONS " + currentListing());
+        }
+        
+        private CompletableFuture<Void> handleJoinAuction(String args) {
+            if (username == null) {
+                sendMessage("ERROR You must be connected to join an auction");
+                return DONE;
+            }
             
-            if (auctions.isEmpty()) {
-                sendMessage("AUCTIONS No active auctions");
-                return;
+            int auctionId;
+            try {
+                auctionId = Integer.parseInt(args);
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid auction ID format");
+                return DONE;
             }
             
-            StringBuilder response = new StringBuilder("AUCTIONS ");
-            for (Auction auction : auctions) {
-                User seller = dbManager.getUser(auction.getSellerUsername());
-                String sellerIp = seller != null ? seller.getIpAddress() : "unknown";
-                
-                Bid highestBid = dbManager.getHighestBid(auction.getAuctionId());
-                double highestBidAmount = highestBid != null ? highestBid.getAmount() : auction.getStartingPrice();
+            // Check if auction exists first; only auctions that are not active need the DB
+            AuctionColumnStore.View active = activeAuctions.view();
+            if (!active.load(auctionId)) {
+                return reply(storage.read(db -> db.getClosedAuction(auctionId) == null
+                        ? "ERROR Auction with ID " + auctionId + " does not exist"
+                        : "ERROR Auction " + auctionId + " is no longer active"));
+            }
+            
+            return reply(storage.call(db -> {
+                boolean success = db.joinAuction(auctionId, userId);
                 
-                response.append(auction.getAuctionId()).append("|")
-                        .append(auction.getItemName()).append("|")
-                        .append(auction.getItemDescription()).append("|")
-                        .append(auction.getStartingPrice()).append("|")
-                        .append(highestBidAmount).append("|")
-                        .append(auction.getSellerUsername()).append("|")
-                        .append(sellerIp).append(";");
+                if (success) {
+                    membership.join(auctionId, userId);
+                    replicate("JOIN", String.valueOf(auctionId), username);
+                    return "SUCCESS You have joined auction #" + auctionId + " (" + active.getItemName() + ")";
+                } else {
+                    return "ERROR Failed to join auction (you may already be registered)";
+                }
+            }));
+        }
+        
+        private CompletableFuture<Void> handleBidCommand(String args) {
+            if (username == null) {
+                sendMessage("ERROR! You must be connected to place a bid");
+                return DONE;
+            }
+            
+            String[] tokens = args.split(" ", 2);
+            if (tokens.length < 2) {
+                sendMessage("ERROR!  Invalid bid format");
+                return DONE;
+            }
+            
+            int auctionId;
+            long amount;
+            
+            try {
+                auctionId = Integer.parseInt(tokens[0]);
+                amount = Money.parse(tokens[1].trim());
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR!  Invalid bid amount or the auction ID");
+                return DONE;
             }
             
-            sendMessage(response.toString());
+            // The reply and the BID_UPDATE go out together on the auction's delivery thread,
+            // so every participant sees the bids of an auction in the order they were accepted
+            return deliver(auctionId, storage.call(db -> {
+                synchronized (proxyEngine.lockFor(auctionId)) {
+                    if (!membership.isParticipant(auctionId, userId)) {
+                        return () -> sendMessage("ERROR! Failed to place bid (you may not be registered for this auction or bid amount is too low)");
+                    }
+                    
+                    if (activeAuction.load(auctionId) && isPastDeadline(activeAuction)) {
+                        return () -> sendMessage("ERROR! Auction " + auctionId + " has ended");
+                    }
+                    
+                    if (!proxyEngine.hasProxies(auctionId)) {
+                        boolean success = storeBid(auctionId, userId, amount);
+                        
+                        if (success) {
+                            long extendedTo = handleBid(auctionId, userId, amount);
+                            
+                            // Notify all participants about the new bid
+                            String itemName = activeAuction.load(auctionId) ? activeAuction.getItemName() : null;
+                            return () -> {
+                                sendMessage("SUCCESS!  Your bid is placed successfully!");
+                                if (itemName != null) {
+                                    publishBid(auctionId, itemName, userId, amount, extendedTo);
+                                }
+                            };
+                        } else {
+                            return () -> sendMessage("ERROR! Failed to place bid (you may not be registered for this auction or bid amount is too low)");
+                        }
+                    }
+                    
+                    if (!activeAuction.load(auctionId)) {
+                        return () -> sendMessage("ERROR! Failed to place bid (you may not be registered for this auction or bid amount is too low)");
+                    }
+                    
+                    int leader = activeAuction.getHighestBidderId();
+                    long price = activeAuction.getCurrentPrice();
+                    if ((leader != UserDirectory.NO_USER && amount <= price) || amount < activeAuction.getStartingPrice()) {
+                        return () -> sendMessage("ERROR! Failed to place bid (you may not be registered for this auction or bid amount is too low)");
+                    }
+                    
+                    // Standing proxy bids answer straight away; only the resulting price is written
+                    ProxyBidEngine.Resolution resolution = proxyEngine.resolveBid(auctionId, userId, amount,
+                            price, leader, activeAuction.getStartingPrice());
+                    
+                    if (!storeBid(auctionId, resolution.getWinner(), resolution.getPrice())) {
+                        return () -> sendMessage("ERROR! Failed to place bid (you may not be registered for this auction or bid amount is too low)");
+                    }
+                    proxyEngine.apply(auctionId, resolution);
+                    long extendedTo = handleBid(auctionId, resolution.getWinner(), resolution.getPrice());
+                    
+                    String itemName = activeAuction.getItemName();
+                    return () -> {
+                        if (resolution.getWinner() == userId) {
+                            sendMessage("SUCCESS!  Your bid is placed successfully!");
+                        } else {
+                            sendMessage("SUCCESS!  Your bid was placed but a proxy bid outbid it, current price: " + Money.format(resolution.getPrice()));
+                        }
+                        
+                        // Notify all participants about the new bid
+                        publishBid(auctionId, itemName, resolution.getWinner(), resolution.getPrice(), extendedTo);
+                    };
+                }
+            }));
         }
         
-        private void handleJoinAuction(String args) {
+        // PROXY_BID auctionId maxAmount [increment]
+        private CompletableFuture<Void> handleProxyBid(String args) {
             if (username == null) {
-                sendMessage("ERROR You must be connected to join an auction");
-                return;
+                sendMessage("ERROR You must be connected to place a proxy bid");
+                return DONE;
+            }
+            
+            String[] tokens = args.trim().split(" ");
+            if (tokens.length < 2 || tokens.length > 3) {
+                sendMessage("ERROR Invalid proxy bid format. Use: PROXY_BID auctionId maxAmount [increment]");
+                return DONE;
+            }
+            
+            int auctionId;
+            long maxAmount;
+            long increment = ProxyBidEngine.DEFAULT_INCREMENT;
+            try {
+                auctionId = Integer.parseInt(tokens[0]);
+                maxAmount = Money.parse(tokens[1].trim());
+                if (tokens.length == 3) {
+                    increment = Money.parse(tokens[2].trim());
+                }
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid auction ID, maximum or increment");
+                return DONE;
             }
             
+            if (maxAmount <= 0 || increment <= 0) {
+                sendMessage("ERROR Maximum and increment must be greater than zero");
+                return DONE;
+            }
+            
+            long step = increment;
+            return deliver(auctionId, storage.call(db -> {
+                synchronized (proxyEngine.lockFor(auctionId)) {
+                    if (!activeAuction.load(auctionId)) {
+                        return () -> sendMessage("ERROR Auction " + auctionId + " is not active");
+                    }
+                    
+                    if (isPastDeadline(activeAuction)) {
+                        return () -> sendMessage("ERROR Auction " + auctionId + " has ended");
+                    }
+                    
+                    if (!membership.isParticipant(auctionId, userId)) {
+                        return () -> sendMessage("ERROR You must join auction #" + auctionId + " before placing a proxy bid");
+                    }
+                    
+                    int leader = activeAuction.getHighestBidderId();
+                    long price = activeAuction.getCurrentPrice();
+                    if (leader != UserDirectory.NO_USER ? (maxAmount <= price && userId != leader) : maxAmount < activeAuction.getStartingPrice()) {
+                        return () -> sendMessage("ERROR Maximum must be above the current price of " + Money.format(price));
+                    }
+                    
+                    ProxyBidEngine.Resolution resolution = proxyEngine.resolveProxy(auctionId, userId, maxAmount, step,
+                            price, leader, activeAuction.getStartingPrice());
+                    
+                    if (resolution.isPriceChanged()
+                            && !storeBid(auctionId, resolution.getWinner(), resolution.getPrice())) {
+                        return () -> sendMessage("ERROR Failed to place proxy bid");
+                    }
+                    long extendedTo = Auction.NO_END_TIME;
+                    if (resolution.isPriceChanged()) {
+                        extendedTo = handleBid(auctionId, resolution.getWinner(), resolution.getPrice());
+                    }
+                    long extended = extendedTo;
+                    proxyEngine.apply(auctionId, resolution);
+                    
+                    long currentPrice = resolution.isPriceChanged() ? resolution.getPrice() : price;
+                    String itemName = activeAuction.getItemName();
+                    return () -> {
+                        if (resolution.getWinner() == userId) {
+                            sendMessage("SUCCESS Proxy bid up to " + Money.format(maxAmount) + " registered, you are leading at " + Money.format(currentPrice));
+                        } else {
+                            sendMessage("SUCCESS Proxy bid up to " + Money.format(maxAmount) + " registered, but you are outbid at " + Money.format(currentPrice));
+                        }
+                        
+                        if (resolution.isPriceChanged()) {
+                            publishBid(auctionId, itemName, resolution.getWinner(), resolution.getPrice(), extended);
+                        }
+                    };
+                }
+            }));
+        }
+        
+        private CompletableFuture<Void> handleCheckBid(String args) {
             int auctionId;
             try {
                 auctionId = Integer.parseInt(args);
             } catch (NumberFormatException e) {
-                sendMessage("ERROR Invalid auction ID format");
-                return;
+                sendMessage("ERROR Invalid auction ID");
+                return DONE;
             }
             
-            // Check if auction exists first
-            Auction auction = dbManager.getAuction(auctionId);
-            if (auction == null) {
-                sendMessage("ERROR Auction with ID " + auctionId + " does not exist");
-                return;
+            AuctionColumnStore.View active = activeAuctions.view();
+            if (active.load(auctionId)) {
+                if (active.getHighestBidderId() != UserDirectory.NO_USER) {
+                    sendMessage("BID_STATUS " + auctionId + " " + Money.format(active.getCurrentPrice()) + " " + active.getHighestBidTime()
+                            + " " + active.getHighestBidSequence());
+                } else {
+                    sendMessage("BID_STATUS " + auctionId + " " + Money.format(active.getStartingPrice()) + " (starting price, no bids yet)");
+                }
+                return DONE;
             }
             
-            if (!"active".equals(auction.getStatus())) {
-                sendMessage("ERROR Auction " + auctionId + " is no longer active");
+            // Closed or unknown auctions are not active; closed ones may be archived
+            return reply(storage.read(db -> {
+                List<Bid> history = db.getBidHistory(auctionId);
+                
+                if (!history.isEmpty()) {
+                    Bid highestBid = history.get(history.size() - 1);
+                    return "BID_STATUS " + auctionId + " " + Money.format(highestBid.getAmount()) + " " + highestBid.getBidTime()
+                            + " " + highestBid.getSequence();
+                } else {
+                    Auction auction = db.getClosedAuction(auctionId);
+                    if (auction != null) {
+                        return "BID_STATUS " + auctionId + " " + Money.format(auction.getStartingPrice()) + " (starting price, no bids yet)";
+                    } else {
+                        return "ERROR Auction not found";
+                    }
+                }
+            }));
+        }
+        
+        // SAVE_SEARCH keywords[|max starting price[|auction type]]: every later listing whose name
+        // or description has all the keywords, within the filters, is pushed as
+        // NEW_LISTING searchId id|item|description|starting price|type|seller
+        private void handleSaveSearch(String args) {
+            if (username == null) {
+                sendMessage("ERROR You must be connected to save a search");
                 return;
             }
             
-            boolean success = dbManager.joinAuction(auctionId, username);
+            String[] parts = args.split("\\|", -1);
+            long maxPrice = 0;
+            int auctionType = 0;
+            try {
+                if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+                    maxPrice = Money.parse(parts[1].trim());
+                }
+                if (parts.length > 2 && !parts[2].trim().isEmpty()) {
+                    auctionType = Integer.parseInt(parts[2].trim());
+                }
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid maximum price or auction type");
+                return;
+            }
+            if (parts.length > 3 || maxPrice < 0 || auctionType < 0 || auctionType > 2) {
+                sendMessage("ERROR Invalid search. Use: SAVE_SEARCH keywords[|max price[|type 1 or 2]]");
+                return;
+            }
             
-            if (success) {
-                sendMessage("SUCCESS You have joined auction #" + auctionId + " (" + auction.getItemName() + ")");
+            SearchPercolator.Search search;
+            try {
+                search = searches.add(userId, parts[0], maxPrice, auctionType);
+            } catch (IllegalArgumentException e) {
+                sendMessage("ERROR " + e.getMessage());
+                return;
+            }
+            if (search == null) {
+                sendMessage("ERROR You already have " + SearchPercolator.MAX_SEARCHES_PER_USER + " saved searches");
+                return;
+            }
+            sendMessage("SUCCESS Saved search #" + search.getSearchId() + ": " + search.getKeywords());
+        }
+        
+        private void handleDeleteSearch(String args) {
+            if (username == null) {
+                sendMessage("ERROR You are not connected");
+                return;
+            }
+            int searchId;
+            try {
+                searchId = Integer.parseInt(args.trim());
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid search number");
+                return;
+            }
+            if (searches.remove(userId, searchId)) {
+                sendMessage("SUCCESS Deleted search #" + searchId);
             } else {
-                sendMessage("ERROR Failed to join auction (you may already be registered)");
+                sendMessage("ERROR No saved search #" + searchId);
             }
         }
         
-        private void handleBidCommand(String args) {
+        // SEARCHES searchId|keywords|max price|type;... with empty filters meaning any
+        private void handleSavedSearches() {
             if (username == null) {
-                sendMessage("ERROR! You must be connected to place a bid");
+                sendMessage("ERROR You are not connected");
+                return;
+            }
+            List<SearchPercolator.Search> mine = searches.list(userId);
+            if (mine.isEmpty()) {
+                sendMessage("SEARCHES No saved searches");
+                return;
+            }
+            StringBuilder sb = new StringBuilder("SEARCHES ");
+            for (SearchPercolator.Search search : mine) {
+                sb.append(search.getSearchId()).append('|').append(search.getKeywords()).append('|');
+                if (search.getMaxPrice() > 0) {
+                    Money.appendTo(sb, search.getMaxPrice());
+                }
+                sb.append('|');
+                if (search.getAuctionType() > 0) {
+                    sb.append(search.getAuctionType());
+                }
+                sb.append(';');
+            }
+            sendMessage(sb.toString());
+        }
+        
+        // WATCH auctionId PRICE amount: one PRICE_ALERT once a bid reaches amount
+        // WATCH auctionId ENDING minutes amount: one ENDING_ALERT when the timed auction has that
+        // many minutes left and its price is still under amount
+        // Joining the auction is not needed; watches go with the auction's close or a DISCONNECT
+        private void handleWatch(String args) {
+            if (username == null) {
+                sendMessage("ERROR You must be connected to watch an auction");
                 return;
             }
             
-            String[] tokens = args.split(" ", 2);
-            if (tokens.length < 2) {
-                sendMessage("ERROR!  Invalid bid format");
+            String[] tokens = args.trim().split(" ");
+            boolean ending = tokens.length == 4 && tokens[1].equals("ENDING");
+            if (!ending && !(tokens.length == 3 && tokens[1].equals("PRICE"))) {
+                sendMessage("ERROR Invalid watch format. Use: WATCH auctionId PRICE amount or WATCH auctionId ENDING minutes amount");
                 return;
             }
             
             int auctionId;
-            double amount;
-            
+            int minutes = 0;
+            long amount;
             try {
                 auctionId = Integer.parseInt(tokens[0]);
-                amount = Double.parseDouble(tokens[1]);
+                if (ending) {
+                    minutes = Integer.parseInt(tokens[2]);
+                }
+                amount = Money.parse(tokens[tokens.length - 1]);
             } catch (NumberFormatException e) {
-                sendMessage("ERROR!  Invalid bid amount or the auction ID");
+                sendMessage("ERROR Invalid auction ID, minutes or amount");
+                return;
+            }
+            if (amount <= 0 || (ending && (minutes < 1 || minutes > ListingImporter.MAX_DURATION_MINUTES))) {
+                sendMessage("ERROR Amount must be greater than zero and minutes between 1 and " + ListingImporter.MAX_DURATION_MINUTES);
                 return;
             }
             
-            boolean success = dbManager.placeBid(auctionId, username, amount);
-            
-            if (success) {
-                sendMessage("SUCCESS!  Your bid is placed successfully!");
-                
-                // Notify all participants about the new bid
-                Auction auction = dbManager.getAuction(auctionId);
-                if (auction != null) {
-                    String message = "BID_UPDATE " + auctionId + " " + auction.getItemName() + " " + amount + " " + username + " " + ipAddress;
-                    notifyAuctionParticipants(auctionId, message);
-                    
-                    // Handle the bid for auction type 2 (reset timers)
-                    handleBid(auctionId, username, amount);
+            // Closes hold the auction's lock too, so a watch is never added to a closed auction
+            String reply;
+            AuctionColumnStore.View auction = activeAuctions.view();
+            synchronized (proxyEngine.lockFor(auctionId)) {
+                if (!auction.load(auctionId)) {
+                    reply = "ERROR Auction " + auctionId + " is not active";
+                } else if (auction.getCurrentPrice() >= amount) {
+                    reply = "ERROR The price of auction #" + auctionId + " is already " + Money.format(auction.getCurrentPrice());
+                } else if (ending && !auction.hasEndTime()) {
+                    reply = "ERROR Auction #" + auctionId + " has no fixed end time";
+                } else {
+                    WatchIndex.Watch watch = ending
+                            ? watches.watchEnding(userId, auctionId, amount, minutes, auction.getEndTimeMillis() - minutes * 60000L)
+                            : watches.watchPrice(userId, auctionId, amount);
+                    if (watch == null) {
+                        reply = "ERROR You already have " + WatchIndex.MAX_WATCHES_PER_USER + " watches";
+                    } else if (ending) {
+                        reply = "SUCCESS Watching auction #" + auctionId + " for its last " + minutes + " minutes under " + Money.format(amount);
+                    } else {
+                        reply = "SUCCESS Watching auction #" + auctionId + " for a price of " + Money.format(amount);
+                    }
                 }
-            } else {
-                sendMessage("ERROR! Failed to place bid (you may not be registered for this auction or bid amount is too low)");
             }
+            sendMessage(reply);
         }
         
-        private void handleCheckBid(String args) {
+        private void handleUnwatch(String args) {
+            if (username == null) {
+                sendMessage("ERROR You are not connected");
+                return;
+            }
             int auctionId;
             try {
-                auctionId = Integer.parseInt(args);
+                auctionId = Integer.parseInt(args.trim());
             } catch (NumberFormatException e) {
                 sendMessage("ERROR Invalid auction ID");
                 return;
             }
+            sendMessage("SUCCESS Removed " + watches.unwatch(userId, auctionId) + " watches on auction #" + auctionId);
+        }
+        
+        // BID_HISTORY auctionId [count]: the latest bids on an active auction, oldest first, as
+        // BID_HISTORY id amount|bidder|time;... straight from the bid tape
+        private void handleBidHistory(String args) {
+            String[] tokens = args.trim().split(" ");
+            int auctionId;
+            int count = bidTape.getBidCapacity();
+            try {
+                auctionId = Integer.parseInt(tokens[0]);
+                if (tokens.length > 1) {
+                    count = Integer.parseInt(tokens[1]);
+                }
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid auction ID or count");
+                return;
+            }
             
-            Bid highestBid = dbManager.getHighestBid(auctionId);
+            if (!activeAuctions.contains(auctionId)) {
+                sendMessage("ERROR Auction " + auctionId + " is not active, use AUCTION_HISTORY");
+                return;
+            }
+            long[] bids = new long[bidTape.getBidCapacity() * BidTape.BID_FIELDS];
+            int found = bidTape.recentBids(auctionId, Math.max(0, count), bids);
+            if (found == 0) {
+                sendMessage("BID_HISTORY " + auctionId + " No bids yet");
+                return;
+            }
+            StringBuilder sb = new StringBuilder("BID_HISTORY ").append(auctionId).append(' ');
+            for (int i = 0; i < found; i++) {
+                int at = i * BidTape.BID_FIELDS;
+                Money.appendTo(sb, bids[at + 1]).append('|').append(users.nameOf((int) bids[at + 2]))
+                        .append('|').append(bids[at]).append(';');
+            }
+            sendMessage(sb.toString());
+        }
+        
+        // PRICE_CANDLES auctionId intervalSeconds [count]: the latest candles of an active
+        // auction, oldest first, as CANDLES id interval start|open|high|low|close|bids;...
+        // Periods without bids have no candle
+        private void handlePriceCandles(String args) {
+            String[] tokens = args.trim().split(" ");
+            if (tokens.length < 2) {
+                sendMessage("ERROR Invalid format. Use: PRICE_CANDLES auctionId intervalSeconds [count]");
+                return;
+            }
+            int auctionId;
+            int interval;
+            int count = bidTape.getCandleCapacity();
+            try {
+                auctionId = Integer.parseInt(tokens[0]);
+                interval = Integer.parseInt(tokens[1]);
+                if (tokens.length > 2) {
+                    count = Integer.parseInt(tokens[2]);
+                }
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid auction ID, interval or count");
+                return;
+            }
             
-            if (highestBid != null) {
-                sendMessage("BID_STATUS " + auctionId + " " + highestBid.getAmount() + " " + highestBid.getBidTime());
-            } else {
-                Auction auction = dbManager.getAuction(auctionId);
-                if (auction != null) {
-                    sendMessage("BID_STATUS " + auctionId + " " + auction.getStartingPrice() + " (starting price, no bids yet)");
-                } else {
-                    sendMessage("ERROR Auction not found");
+            if (!activeAuctions.contains(auctionId)) {
+                sendMessage("ERROR Auction " + auctionId + " is not active, use AUCTION_HISTORY");
+                return;
+            }
+            long[] candles = new long[bidTape.getCandleCapacity() * BidTape.CANDLE_FIELDS];
+            int found = bidTape.candles(auctionId, interval, Math.max(0, count), candles);
+            if (found < 0) {
+                sendMessage("ERROR No candles of " + interval + " seconds, intervals kept: " + Arrays.toString(bidTape.getCandleSeconds()));
+                return;
+            }
+            StringBuilder sb = new StringBuilder("CANDLES ").append(auctionId).append(' ').append(interval).append(' ');
+            if (found == 0) {
+                sb.append("No bids yet");
+            }
+            for (int i = 0; i < found; i++) {
+                int at = i * BidTape.CANDLE_FIELDS;
+                sb.append(candles[at]);
+                for (int f = 1; f <= 4; f++) {
+                    Money.appendTo(sb.append('|'), candles[at + f]);
                 }
+                sb.append('|').append(candles[at + 5]).append(';');
+            }
+            sendMessage(sb.toString());
+        }
+        
+        // AUCTION_HISTORY auctionId: a closed auction and every bid on it, first first, as
+        // HISTORY id|item|description|starting price|final price|seller|winner;amount|bidder|time|sequence;...
+        private CompletableFuture<Void> handleAuctionHistory(String args) {
+            int auctionId;
+            try {
+                auctionId = Integer.parseInt(args.trim());
+            } catch (NumberFormatException e) {
+                sendMessage("ERROR Invalid auction ID");
+                return DONE;
+            }
+            
+            if (activeAuctions.contains(auctionId)) {
+                sendMessage("ERROR Auction " + auctionId + " is still active, use CHECK_BID");
+                return DONE;
             }
+            
+            return reply(storage.read(db -> {
+                Auction auction = db.getClosedAuction(auctionId);
+                if (auction == null) {
+                    return "ERROR Auction not found";
+                }
+                StringBuilder sb = new StringBuilder("HISTORY ");
+                sb.append(auctionId).append('|').append(auction.getItemName()).append('|').append(auction.getItemDescription())
+                        .append('|').append(Money.format(auction.getStartingPrice())).append('|').append(Money.format(auction.getCurrentPrice()))
+                        .append('|').append(auction.getSellerUsername())
+                        .append('|').append(auction.getHighestBidder() != null ? auction.getHighestBidder() : "No bidders");
+                for (Bid bid : db.getBidHistory(auctionId)) {
+                    sb.append(';').append(Money.format(bid.getAmount())).append('|').append(bid.getUsername()).append('|').append(bid.getBidTime())
+                            .append('|').append(bid.getSequence());
+                }
+                return sb.toString();
+            }));
         }
         
-        private void handleWithdraw(String args) {
+        private CompletableFuture<Void> handleWithdraw(String args) {
             if (username == null) {
                 sendMessage("ERROR You must be connected to withdraw from an auction");
-                return;
+                return DONE;
             }
             
             int auctionId;
@@ -567,50 +1869,278 @@ public class AuctionServer {
                 auctionId = Integer.parseInt(args);
             } catch (NumberFormatException e) {
                 sendMessage("ERROR Invalid auction ID");
-                return;
+                return DONE;
             }
             
-            boolean success = dbManager.withdrawFromAuction(auctionId, username);
+            // Under the auction's lock, so no bid can make the user the leader in between
+            return reply(storage.call(db -> {
+                synchronized (proxyEngine.lockFor(auctionId)) {
+                    boolean success = !membership.isLeader(auctionId, userId)
+                            && membership.isParticipant(auctionId, userId)
+                            && db.withdrawFromAuction(auctionId, userId);
+                    
+                    if (success) {
+                        membership.leave(auctionId, userId);
+                        replicate("WITHDRAW", String.valueOf(auctionId), username);
+                        proxyEngine.remove(auctionId, userId);
+                        return "SUCCESS You have withdrawn from auction #" + auctionId;
+                    } else {
+                        return "ERROR Failed to withdraw (you may be the highest bidder)";
+                    }
+                }
+            }));
+        }
+        
+        // Sent by the gateway as the first line of a connection it opens for a client,
+        // so registration and login see the client's IP rather than the gateway's
+        private void handleForwardedFor(String args) {
+            String remoteIp = remoteAddress.getHostAddress();
+            if (shardCount <= 1 || username != null || peer != null || !remoteIp.equals(trustedGateway)) {
+                sendMessage("ERROR Forwarding not allowed");
+                return;
+            }
+            ipAddress = args.trim();
+        }
+        
+        // Sent by an operator on the replica's own host once the primary is gone
+        private CompletableFuture<Void> handlePromote() throws IOException {
+            if (!remoteAddress.isLoopbackAddress()) {
+                sendMessage("ERROR PROMOTE is only accepted from the local host");
+                return DONE;
+            }
+            if (follower == null) {
+                sendMessage("ERROR This node is already the primary");
+                return DONE;
+            }
+            return reply(promote().thenApply(lastSeq -> "SUCCESS Promoted to primary at sequence " + lastSeq));
+        }
+        
+        // Queue depth and queueing delay of the storage thread, for operators on the local host
+        private void handleStorageStats() {
+            if (!remoteAddress.isLoopbackAddress()) {
+                sendMessage("ERROR STORAGE_STATS is only accepted from the local host");
+                return;
+            }
+            sendMessage("STORAGE_STATS " + storage.getStats());
+        }
+        
+        // EXPORT path: auctions and bids into a ColumnarExport file on the server's disk, read
+        // consistently without holding up bids; a follower can do it too. Local host only
+        private CompletableFuture<Void> handleExport(String path) {
+            if (!remoteAddress.isLoopbackAddress()) {
+                sendMessage("ERROR EXPORT is only accepted from the local host");
+                return DONE;
+            }
+            return reply(storage.read(db -> {
+                try {
+                    return "SUCCESS " + AuctionExport.export(db, new File(path.trim()));
+                } catch (IOException e) {
+                    return "ERROR " + e.getMessage();
+                }
+            }));
+        }
+        
+        // MARKET_STATS [seller]: the live aggregates, plus the GMV of the seller or, if none is
+        // named, of the caller when connected; read from counters only, never from the database
+        private void handleMarketStats(String seller) {
+            long now = clock.millis();
+            long windowBids = marketStats.getWindowBids(now);
+            StringBuilder sb = new StringBuilder("MARKET_STATS");
+            sb.append(" bidsPerSecond=").append(String.format("%.2f", windowBids / (double) MarketStats.WINDOW_SECONDS));
+            sb.append(" windowBids=").append(windowBids);
+            sb.append(" windowGmv=").append(Money.format(marketStats.getWindowGmv(now)));
+            sb.append(" activeBidders=").append(marketStats.getActiveBidders());
+            sb.append(" bids=").append(marketStats.getBids());
+            sb.append(" sold=").append(marketStats.getSold());
+            sb.append(" unsold=").append(marketStats.getUnsold());
+            sb.append(" gmv=").append(Money.format(marketStats.getGmv()));
+            sb.append(" avgUpliftPercent=").append(String.format("%.1f", marketStats.getAverageUpliftPercent()));
             
-            if (success) {
-                sendMessage("SUCCESS You have withdrawn from auction #" + auctionId);
-            } else {
-                sendMessage("ERROR Failed to withdraw (you may be the highest bidder)");
+            String sellerName = seller != null && !seller.isEmpty() ? seller : username;
+            if (sellerName != null) {
+                int sellerId = users.idOf(sellerName);
+                if (sellerId == UserDirectory.NO_USER) {
+                    sendMessage("ERROR Unknown seller " + sellerName);
+                    return;
+                }
+                sb.append(" seller=").append(sellerName).append(" sellerGmv=").append(Money.format(marketStats.getSellerGmv(sellerId)));
             }
+            sendMessage(sb.toString());
         }
         
-        private void handleDisconnect() {
+        // Lets the gateway check every shard before a DISCONNECT
+        private void handleIsLeading() {
             if (username == null) {
                 sendMessage("ERROR You are not connected");
                 return;
             }
+            sendMessage("LEADING " + membership.isLeadingAnywhere(userId));
+        }
+        
+        private CompletableFuture<Void> handleDisconnect() {
+            if (username == null) {
+                sendMessage("ERROR You are not connected");
+                return DONE;
+            }
             
             // Check if user is highest bidder in any active auction
-            if (dbManager.isUserHighestBidder(username)) {
+            if (membership.isLeadingAnywhere(userId)) {
                 sendMessage("ERROR Cannot disconnect while you are the highest bidder in an active auction");
-                return;
+                return DONE;
             }
             
   
-            dbManager.removeUserFromAllAuctions(username);
-            
-            // Disconnect the user
-            connectedClients.remove(username);
-            sendMessage("GOODBYE Goodbye!");
-            username = null;
-            
-            // Close the connection
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                System.err.println("Error closing client socket: " + e.getMessage());
+            // A replica only ends the session; the primary records the departure
+            CompletableFuture<Void> departure = DONE;
+            if (!readOnly) {
+                departure = storage.run(db -> {
+                    db.removeUserFromAuctions(userId, membership.leaveAll(userId));
+                    replicate("LEAVE", username);
+                    proxyEngine.removeUser(userId);
+                });
             }
+            
+            return departure.thenRunAsync(() -> {
+                // Disconnect the user
+                watches.removeUser(userId);
+                connectedClients.remove(userId, this);
+                sendMessage("GOODBYE Goodbye!");
+                username = null;
+                userId = UserDirectory.NO_USER;
+                
+                // Close the connection
+                if (peer != null) {
+                    peer.hangUp();
+                    return;
+                }
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing client socket: " + e.getMessage());
+                }
+            }, threadPool);
         }
        
     }
     
+    // Usage: java AuctionServer [--port=8888] [--store=sqlite|memory|file] [--db=auction_system.db]
+    //                          [--shard=index/count] [--gateway=127.0.0.1]
+    //                          [--replicationPort=9101] [--follow=primaryHost:replicationPort]
+    //                          [--bidHistory=16] [--candleSeconds=60,3600] [--candleCount=12] [--offHeap=true]
+    //                          [--webPort=8080] [--softClose=windowSeconds[,extensionSeconds]]
+    // --db is the SQLite file of the sqlite store and the journal of the file store
+    // (default auction_system.journal); the memory store keeps nothing. --softClose extends a
+    // timed auction bid on in its last windowSeconds to extensionSeconds (default the window) after the bid
     public static void main(String[] args) {
-        AuctionServer server = new AuctionServer();
+        int port = DEFAULT_PORT;
+        String store = AuctionStore.SQLITE;
+        String dbPath = null;
+        int shardIndex = 0;
+        int shardCount = 1;
+        String gateway = "127.0.0.1";
+        int replicationPort = 0;
+        String primaryHost = null;
+        int primaryReplicationPort = 0;
+        int bidHistory = BidTape.DEFAULT_BIDS;
+        int[] candleSeconds = BidTape.DEFAULT_CANDLE_SECONDS;
+        int candleCount = BidTape.DEFAULT_CANDLES;
+        boolean offHeap = false;
+        int webPort = 0;
+        int softCloseSeconds = 0;
+        int softCloseExtension = 0;
+        
+        try {
+            for (String arg : args) {
+                String[] option = arg.split("=", 2);
+                if (option.length < 2) {
+                    throw new IllegalArgumentException("Invalid argument: " + arg);
+                }
+                switch (option[0]) {
+                    case "--port":
+                        port = Integer.parseInt(option[1]);
+                        break;
+                    case "--store":
+                        store = option[1];
+                        break;
+                    case "--db":
+                        dbPath = option[1];
+                        break;
+                    case "--shard":
+                        String[] shard = option[1].split("/");
+                        shardIndex = Integer.parseInt(shard[0]);
+                        shardCount = Integer.parseInt(shard[1]);
+                        if (shardIndex < 0 || shardIndex >= shardCount) {
+                            throw new IllegalArgumentException("Shard index must be between 0 and " + (shardCount - 1));
+                        }
+                        break;
+                    case "--gateway":
+                        gateway = option[1];
+                        break;
+                    case "--replicationPort":
+                        replicationPort = Integer.parseInt(option[1]);
+                        break;
+                    case "--follow":
+                        String[] primary = option[1].split(":");
+                        primaryHost = primary[0];
+                        primaryReplicationPort = Integer.parseInt(primary[1]);
+                        break;
+                    case "--bidHistory":
+                        bidHistory = Integer.parseInt(option[1]);
+                        break;
+                    case "--candleSeconds":
+                        String[] intervals = option[1].split(",");
+                        candleSeconds = new int[intervals.length];
+                        for (int i = 0; i < intervals.length; i++) {
+                            candleSeconds[i] = Integer.parseInt(intervals[i].trim());
+                        }
+                        break;
+                    case "--candleCount":
+                        candleCount = Integer.parseInt(option[1]);
+                        break;
+                    case "--offHeap":
+                        offHeap = Boolean.parseBoolean(option[1]);
+                        break;
+                    case "--webPort":
+                        webPort = Integer.parseInt(option[1]);
+                        break;
+                    case "--softClose":
+                        String[] softClose = option[1].split(",");
+                        softCloseSeconds = Integer.parseInt(softClose[0].trim());
+                        softCloseExtension = softClose.length > 1 ? Integer.parseInt(softClose[1].trim()) : softCloseSeconds;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option[0]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        
+        if (dbPath == null) {
+            dbPath = store.equals(AuctionStore.FILE) ? DEFAULT_JOURNAL : DEFAULT_DB;
+        }
+        
+        AuctionStore auctionStore;
+        try {
+            auctionStore = AuctionStore.open(store, dbPath);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Using the " + store + " store" + (store.equals(AuctionStore.MEMORY) ? "" : " at " + dbPath));
+        
+        AuctionServer server = new AuctionServer(port, auctionStore, shardIndex, shardCount, gateway);
+        server.configureReplication(replicationPort, primaryHost, primaryReplicationPort);
+        server.configureWebGateway(webPort);
+        try {
+            server.configureBidTape(bidHistory, candleSeconds, candleCount, offHeap);
+            server.configureSoftClose(softCloseSeconds, softCloseExtension);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
         server.start();
     }
 }
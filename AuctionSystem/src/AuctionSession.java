@@ -0,0 +1,703 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// One user's connection to the auction server, driven by an AsyncAuctionClient.
+// Every command returns a CompletableFuture that completes with the server's reply,
+// or exceptionally with a CommandException when the server answers ERROR.
+// The server answers commands in order on a connection, so replies are matched
+// to requests by position; pushed messages go to the AuctionEventListener.
+// Futures complete on the I/O thread; use the *Async stages for blocking work.
+public class AuctionSession {
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    // The server rejected a command
+    public static class CommandException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public CommandException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Outbound {
+        final byte[] bytes;
+        final CompletableFuture<String> reply;
+
+        Outbound(String line, CompletableFuture<String> reply) {
+            this.bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            this.reply = reply;
+        }
+    }
+
+    private final AsyncAuctionClient client;
+    private final InetAddress localAddress;
+    private final AuctionEventListener listener;
+
+    // Commands not yet handed to the socket, guarded by this
+    private final ArrayDeque<Outbound> outbound = new ArrayDeque<>();
+    private boolean actionRequested;
+    private volatile boolean closeRequested;
+    private volatile boolean connected;
+
+    // Credentials of the last successful login, replayed after a reconnect
+    private volatile String username;
+    private volatile String password;
+    private volatile boolean compression;
+
+    // State below is only touched by the I/O thread
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean closed;
+    private boolean reconnecting;
+    private boolean hasConnected;
+    private final ArrayDeque<CompletableFuture<String>> inflight = new ArrayDeque<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(8192);
+    private byte[] lineBuffer = new byte[256];
+    private int lineLength;
+    private FrameCodec.Decoder decoder; // created by the first compressed frame of a connection
+    private long backoffMillis = INITIAL_BACKOFF_MILLIS;
+    private long reconnectAt;
+
+    AuctionSession(AsyncAuctionClient client, InetAddress localAddress, AuctionEventListener listener) {
+        this.client = client;
+        this.localAddress = localAddress;
+        this.listener = listener != null ? listener : new AuctionEventListener() {};
+        this.actionRequested = true;
+    }
+
+    // ===== Commands =====
+
+    public CompletableFuture<String> register(String username, String password, String name, String surname,
+                                              String idNumber, String phone, String email) {
+        return submit("REGISTER " + username + " " + password + " " + name + " " + surname + " "
+                + idNumber + " " + phone + " " + email).thenApply(AuctionSession::content);
+    }
+
+    // Asks the server to compress what it sends from the next login on (see FrameCodec)
+    public void enableCompression() {
+        compression = true;
+    }
+
+    public CompletableFuture<String> login(String username, String password) {
+        return submit(connectCommand(username, password)).thenApply(line -> {
+            this.username = username;
+            this.password = password;
+            return content(line);
+        });
+    }
+
+    // Amounts are in minor units (see Money). Returns the new auction ID
+    public CompletableFuture<Integer> advertiseTimed(String itemName, String itemDescription, long startingPrice, long durationMinutes) {
+        return submit("ADVERTISE " + itemName + "|" + itemDescription + "|" + Money.format(startingPrice) + "|1|" + durationMinutes)
+                .thenApply(AuctionSession::parseAuctionId);
+    }
+
+    // Returns the new auction ID
+    public CompletableFuture<Integer> advertiseOngoing(String itemName, String itemDescription, long startingPrice) {
+        return submit("ADVERTISE " + itemName + "|" + itemDescription + "|" + Money.format(startingPrice) + "|2")
+                .thenApply(AuctionSession::parseAuctionId);
+    }
+
+    public CompletableFuture<List<Auction>> listAuctions() {
+        return submit("LIST_AUCTIONS").thenApply(line -> parseAuctions(content(line)));
+    }
+
+    public CompletableFuture<String> joinAuction(int auctionId) {
+        return submit("JOIN_AUCTION " + auctionId).thenApply(AuctionSession::content);
+    }
+
+    public CompletableFuture<String> bid(int auctionId, long amount) {
+        return submit("BID " + auctionId + " " + Money.format(amount)).thenApply(AuctionSession::content);
+    }
+
+    // Registers a maximum the server bids up to on this user's behalf
+    public CompletableFuture<String> proxyBid(int auctionId, long maxAmount) {
+        return submit("PROXY_BID " + auctionId + " " + Money.format(maxAmount)).thenApply(AuctionSession::content);
+    }
+
+    public CompletableFuture<String> proxyBid(int auctionId, long maxAmount, long increment) {
+        return submit("PROXY_BID " + auctionId + " " + Money.format(maxAmount) + " " + Money.format(increment)).thenApply(AuctionSession::content);
+    }
+
+    // Returns the highest bid, or the starting price with a null bid time when nobody has bid yet
+    public CompletableFuture<Bid> checkBid(int auctionId) {
+        return submit("CHECK_BID " + auctionId).thenApply(line -> parseBidStatus(content(line)));
+    }
+
+    // A closed auction and its bids, as the server formats them (see AUCTION_HISTORY)
+    public CompletableFuture<String> auctionHistory(int auctionId) {
+        return submit("AUCTION_HISTORY " + auctionId).thenApply(AuctionSession::content);
+    }
+
+    // Market figures by name (see MARKET_STATS); seller may be null for the connected user
+    public CompletableFuture<Map<String, String>> marketStats(String seller) {
+        return submit(seller != null ? "MARKET_STATS " + seller : "MARKET_STATS").thenApply(line -> {
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (String field : content(line).split(" ")) {
+                String[] pair = field.split("=", 2);
+                if (pair.length == 2) {
+                    fields.put(pair[0], pair[1]);
+                }
+            }
+            return fields;
+        });
+    }
+
+    // The latest bids on an active auction, as the server formats them (see BID_HISTORY)
+    public CompletableFuture<String> bidHistory(int auctionId) {
+        return submit("BID_HISTORY " + auctionId).thenApply(AuctionSession::content);
+    }
+
+    // The latest price candles of an active auction at one of the server's intervals (see PRICE_CANDLES)
+    public CompletableFuture<String> priceCandles(int auctionId, int intervalSeconds) {
+        return submit("PRICE_CANDLES " + auctionId + " " + intervalSeconds).thenApply(AuctionSession::content);
+    }
+
+    // One PRICE_ALERT when the auction's price reaches amount; alerts arrive as events
+    public CompletableFuture<String> watchPrice(int auctionId, long amount) {
+        return submit("WATCH " + auctionId + " PRICE " + Money.format(amount)).thenApply(AuctionSession::content);
+    }
+
+    // One ENDING_ALERT when the timed auction has minutes left and its price is under amount
+    public CompletableFuture<String> watchEnding(int auctionId, int minutes, long amount) {
+        return submit("WATCH " + auctionId + " ENDING " + minutes + " " + Money.format(amount)).thenApply(AuctionSession::content);
+    }
+
+    public CompletableFuture<String> unwatch(int auctionId) {
+        return submit("UNWATCH " + auctionId).thenApply(AuctionSession::content);
+    }
+
+    // maxPrice 0 and auctionType 0 mean any; matching listings arrive as events
+    public CompletableFuture<String> saveSearch(String keywords, long maxPrice, int auctionType) {
+        return submit("SAVE_SEARCH " + keywords + "|" + (maxPrice > 0 ? Money.format(maxPrice) : "") + "|"
+                + (auctionType > 0 ? String.valueOf(auctionType) : "")).thenApply(AuctionSession::content);
+    }
+
+    public CompletableFuture<String> deleteSearch(int searchId) {
+        return submit("DELETE_SEARCH " + searchId).thenApply(AuctionSession::content);
+    }
+
+    public CompletableFuture<String> withdraw(int auctionId) {
+        return submit("WITHDRAW " + auctionId).thenApply(AuctionSession::content);
+    }
+
+    // Logs out; the server closes the connection afterwards, so the session is not reconnected
+    public CompletableFuture<String> disconnect() {
+        return submit("DISCONNECT").thenApply(line -> {
+            closeRequested = true;
+            username = null;
+            password = null;
+            return content(line);
+        });
+    }
+
+    // Closes the connection without logging out
+    public void close() {
+        closeRequested = true;
+        requestAction();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private CompletableFuture<String> submit(String line) {
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        if (closeRequested) {
+            reply.completeExceptionally(new IOException("Session is closed"));
+            return reply;
+        }
+        synchronized (this) {
+            outbound.add(new Outbound(line, reply));
+        }
+        requestAction();
+        return reply;
+    }
+
+    private void requestAction() {
+        synchronized (this) {
+            if (actionRequested) {
+                return;
+            }
+            actionRequested = true;
+        }
+        client.requestAction(this);
+    }
+
+    // ===== I/O thread =====
+
+    long getReconnectAt() {
+        return reconnectAt;
+    }
+
+    void onAction() {
+        synchronized (this) {
+            actionRequested = false;
+        }
+        if (closed) {
+            return;
+        }
+        if (closeRequested) {
+            shutdown(new IOException("Session is closed"));
+            return;
+        }
+        if (channel == null && !reconnecting) {
+            startConnect();
+        } else if (connected) {
+            try {
+                flush();
+            } catch (IOException e) {
+                connectionLost(e);
+            }
+        }
+    }
+
+    void reconnect() {
+        reconnecting = false;
+        if (closeRequested) {
+            shutdown(new IOException("Session is closed"));
+        } else if (!closed) {
+            startConnect();
+        }
+    }
+
+    private void startConnect() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (localAddress != null) {
+                channel.bind(new InetSocketAddress(localAddress, 0));
+            }
+            key = channel.register(client.getSelector(), SelectionKey.OP_CONNECT, this);
+            if (channel.connect(client.getServerAddress())) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    void onConnectable() {
+        try {
+            if (channel.finishConnect()) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    private void onConnected() throws IOException {
+        boolean reconnected = hasConnected;
+        hasConnected = true;
+        connected = true;
+        backoffMillis = INITIAL_BACKOFF_MILLIS;
+        key.interestOps(SelectionKey.OP_READ);
+
+        if (lastLoginKnown()) {
+            // The server forgets the login with the socket, so log in again before anything queued
+            CompletableFuture<String> relogin = new CompletableFuture<>();
+            synchronized (this) {
+                outbound.addFirst(new Outbound(connectCommand(username, password), relogin));
+            }
+            relogin.whenComplete((line, error) -> {
+                if (error != null) {
+                    System.err.println("Re-login failed for " + username + ": " + error.getMessage());
+                } else {
+                    notifyListener(() -> listener.onReconnected(this));
+                }
+            });
+        } else if (reconnected) {
+            notifyListener(() -> listener.onReconnected(this));
+        }
+        flush();
+    }
+
+    private boolean lastLoginKnown() {
+        return username != null && password != null;
+    }
+
+    private String connectCommand(String username, String password) {
+        String command = "CONNECT " + username + " " + password;
+        return compression ? command + " " + FrameCodec.OPTION + FrameCodec.DEFLATE : command;
+    }
+
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                connectionLost(new EOFException("Server closed the connection"));
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                if (decoder != null && decoder.isReading()) {
+                    byte[] text = decoder.read(readBuffer);
+                    if (text != null) {
+                        for (byte b : text) {
+                            accept(b);
+                        }
+                    }
+                    continue;
+                }
+                byte b = readBuffer.get();
+                if (b == FrameCodec.MARKER && lineLength == 0) {
+                    if (decoder == null) {
+                        decoder = new FrameCodec.Decoder();
+                    }
+                    decoder.begin();
+                } else {
+                    accept(b);
+                }
+            }
+            readBuffer.clear();
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    private void accept(byte b) {
+        if (b == '\n') {
+            int length = lineLength > 0 && lineBuffer[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            String line = new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+            lineLength = 0;
+            dispatch(line);
+        } else {
+            if (lineLength == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, lineLength * 2);
+            }
+            lineBuffer[lineLength++] = b;
+        }
+    }
+
+    void onWritable() {
+        try {
+            flush();
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    // Moves queued commands into the write buffer and writes as much as the socket takes
+    private void flush() throws IOException {
+        while (true) {
+            synchronized (this) {
+                Outbound next;
+                while ((next = outbound.peek()) != null) {
+                    if (next.bytes.length > writeBuffer.remaining()) {
+                        if (writeBuffer.position() > 0) {
+                            break;
+                        }
+                        writeBuffer = ByteBuffer.allocate(next.bytes.length);
+                    }
+                    outbound.poll();
+                    writeBuffer.put(next.bytes);
+                    inflight.add(next.reply);
+                }
+            }
+
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            boolean drained = !writeBuffer.hasRemaining();
+            writeBuffer.compact();
+
+            if (!drained) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            synchronized (this) {
+                if (outbound.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String line) {
+        String command = line.split(" ", 2)[0];
+        switch (command) {
+            case "BID_UPDATE":
+            case "GOING_ONCE":
+            case "GOING_TWICE":
+            case "SOLD":
+            case "PRICE_ALERT":
+            case "ENDING_ALERT":
+            case "EXTENDED":
+            case "NEW_LISTING":
+                dispatchPush(command, line);
+                break;
+            default:
+                CompletableFuture<String> reply = inflight.poll();
+                if (reply == null) {
+                    System.err.println("Unexpected server message: " + line);
+                } else if (command.startsWith("ERROR")) {
+                    reply.completeExceptionally(new CommandException(content(line)));
+                } else {
+                    reply.complete(line);
+                }
+        }
+    }
+
+    private void dispatchPush(String command, String line) {
+        if (command.equals("NEW_LISTING")) {
+            dispatchNewListing(line);
+            return;
+        }
+        String[] tokens = line.split(" ");
+        int n = tokens.length;
+        try {
+            int auctionId = Integer.parseInt(tokens[1]);
+            switch (command) {
+                case "BID_UPDATE": {
+                    // BID_UPDATE auctionId itemName amount bidder ip
+                    String itemName = join(tokens, 2, n - 3);
+                    long amount = Money.parse(tokens[n - 3]);
+                    notifyListener(() -> listener.onBidUpdate(this, auctionId, itemName, amount, tokens[n - 2], tokens[n - 1]));
+                    break;
+                }
+                case "GOING_ONCE":
+                case "GOING_TWICE": {
+                    // GOING_ONCE auctionId itemName amount
+                    String itemName = join(tokens, 2, n - 1);
+                    long amount = Money.parse(tokens[n - 1]);
+                    if (command.equals("GOING_ONCE")) {
+                        notifyListener(() -> listener.onGoingOnce(this, auctionId, itemName, amount));
+                    } else {
+                        notifyListener(() -> listener.onGoingTwice(this, auctionId, itemName, amount));
+                    }
+                    break;
+                }
+                case "PRICE_ALERT": {
+                    // PRICE_ALERT auctionId itemName price threshold
+                    String itemName = join(tokens, 2, n - 2);
+                    long price = Money.parse(tokens[n - 2]);
+                    long threshold = Money.parse(tokens[n - 1]);
+                    notifyListener(() -> listener.onPriceAlert(this, auctionId, itemName, price, threshold));
+                    break;
+                }
+                case "ENDING_ALERT": {
+                    // ENDING_ALERT auctionId itemName price minutesLeft
+                    String itemName = join(tokens, 2, n - 2);
+                    long price = Money.parse(tokens[n - 2]);
+                    int minutesLeft = Integer.parseInt(tokens[n - 1]);
+                    notifyListener(() -> listener.onEndingAlert(this, auctionId, itemName, price, minutesLeft));
+                    break;
+                }
+                case "EXTENDED": {
+                    // EXTENDED auctionId itemName endTimeMillis
+                    String itemName = join(tokens, 2, n - 1);
+                    long endTime = Long.parseLong(tokens[n - 1]);
+                    notifyListener(() -> listener.onExtended(this, auctionId, itemName, endTime));
+                    break;
+                }
+                default:
+                    dispatchSold(tokens, auctionId);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Malformed server message: " + line);
+        }
+    }
+
+    // NEW_LISTING searchId auctionId|itemName|description|startingPrice|type|seller
+    private void dispatchNewListing(String line) {
+        try {
+            String[] head = line.split(" ", 3);
+            int searchId = Integer.parseInt(head[1]);
+            String[] fields = head[2].split("\\|");
+            int auctionId = Integer.parseInt(fields[0]);
+            long startingPrice = Money.parse(fields[3]);
+            int auctionType = Integer.parseInt(fields[4]);
+            notifyListener(() -> listener.onNewListing(this, searchId, auctionId, fields[1], fields[2], startingPrice, auctionType, fields[5]));
+        } catch (RuntimeException e) {
+            System.err.println("Malformed server message: " + line);
+        }
+    }
+
+    // Timed auctions send "SOLD id item price winner" (or "No bidders"),
+    // ongoing auctions send "SOLD id item price winner ip"
+    private void dispatchSold(String[] tokens, int auctionId) {
+        int n = tokens.length;
+        String itemName;
+        long price;
+        String winner;
+        String winnerIp;
+        if (tokens[n - 2].equals("No") && tokens[n - 1].equals("bidders")) {
+            itemName = join(tokens, 2, n - 3);
+            price = Money.parse(tokens[n - 3]);
+            winner = null;
+            winnerIp = null;
+        } else if (n >= 6 && isNumber(tokens[n - 3])) {
+            itemName = join(tokens, 2, n - 3);
+            price = Money.parse(tokens[n - 3]);
+            winner = tokens[n - 2];
+            winnerIp = tokens[n - 1];
+        } else {
+            itemName = join(tokens, 2, n - 2);
+            price = Money.parse(tokens[n - 2]);
+            winner = tokens[n - 1];
+            winnerIp = null;
+        }
+        notifyListener(() -> listener.onSold(this, auctionId, itemName, price, winner, winnerIp));
+    }
+
+    private void notifyListener(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            System.err.println("Auction listener error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void connectionLost(Throwable cause) {
+        closeChannel();
+        failInflight(cause);
+        if (closeRequested) {
+            shutdown(cause);
+            return;
+        }
+
+        notifyListener(() -> listener.onConnectionLost(this, cause));
+        reconnecting = true;
+        reconnectAt = System.currentTimeMillis() + backoffMillis;
+        backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        client.scheduleReconnect(this);
+    }
+
+    void shutdown(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeChannel();
+        failInflight(cause);
+        synchronized (this) {
+            Outbound next;
+            while ((next = outbound.poll()) != null) {
+                next.reply.completeExceptionally(cause);
+            }
+        }
+        client.sessionClosed(this);
+    }
+
+    private void closeChannel() {
+        connected = false;
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing session channel: " + e.getMessage());
+            }
+            channel = null;
+        }
+        writeBuffer.clear();
+        readBuffer.clear();
+        lineLength = 0;
+        if (decoder != null) {
+            // The next connection starts a new stream
+            decoder.end();
+            decoder = null;
+        }
+    }
+
+    private void failInflight(Throwable cause) {
+        CompletableFuture<String> reply;
+        while ((reply = inflight.poll()) != null) {
+            reply.completeExceptionally(cause);
+        }
+    }
+
+    // ===== Reply parsing =====
+
+    private static String content(String line) {
+        int space = line.indexOf(' ');
+        return space < 0 ? "" : line.substring(space + 1).trim();
+    }
+
+    private static String join(String[] tokens, int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(tokens[i]);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNumber(String s) {
+        try {
+            Money.parse(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // "SUCCESS Auction created with ID: 42 (Duration: 5 minutes)"
+    private static int parseAuctionId(String line) {
+        int start = line.indexOf("ID: ") + 4;
+        int end = start;
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(line.substring(start, end));
+    }
+
+    // id|item|description|startingPrice|currentPrice|seller|sellerIp;...
+    private static List<Auction> parseAuctions(String content) {
+        List<Auction> auctions = new ArrayList<>();
+        if (content.equals("No active auctions")) {
+            return auctions;
+        }
+        for (String entry : content.split(";")) {
+            String[] fields = entry.split("\\|");
+            if (fields.length >= 7) {
+                Auction auction = new Auction();
+                auction.setAuctionId(Integer.parseInt(fields[0]));
+                auction.setItemName(fields[1]);
+                auction.setItemDescription(fields[2]);
+                auction.setStartingPrice(Money.parse(fields[3]));
+                auction.setCurrentPrice(Money.parse(fields[4]));
+                auction.setSellerUsername(fields[5]);
+                auction.setStatus("active");
+                auctions.add(auction);
+            }
+        }
+        return auctions;
+    }
+
+    // "auctionId amount bidTime sequence" or "auctionId startingPrice (starting price, no bids yet)"
+    private static Bid parseBidStatus(String content) {
+        String[] tokens = content.split(" ", 4);
+        Bid bid = new Bid();
+        bid.setAuctionId(Integer.parseInt(tokens[0]));
+        bid.setAmount(Money.parse(tokens[1]));
+        if (tokens.length > 3 && !tokens[2].startsWith("(")) {
+            try {
+                bid.setBidTime(Long.parseLong(tokens[2]));
+                bid.setSequence(Long.parseLong(tokens[3]));
+            } catch (NumberFormatException e) {
+                // Leave the bid time and sequence unset
+            }
+        }
+        return bid;
+    }
+}
\ No newline at end of file
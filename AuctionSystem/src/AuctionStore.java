@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.util.List;
+
+// Persistence used by the auction server, chosen at startup with --store:
+//   sqlite  DatabaseManager, the SQLite database file given by --db (default)
+//   memory  InMemoryAuctionStore, nothing written to disk, for benchmarks and load tests
+//   file    FileAuctionStore, in memory with an append-only journal file given by --db
+// Implementations are thread-safe. Users are identified by the IDs of getUserDirectory().
+// Times are epoch millis from the server's ServerClock; stores keep what they are given and
+// never read a clock of their own, so a follower stores exactly what its primary stored.
+public interface AuctionStore {
+    String SQLITE = "sqlite";
+    String MEMORY = "memory";
+    String FILE = "file";
+
+    static AuctionStore open(String type, String path) {
+        switch (type) {
+            case SQLITE:
+                return new DatabaseManager(path);
+            case MEMORY:
+                return new InMemoryAuctionStore();
+            case FILE:
+                return new FileAuctionStore(path);
+            default:
+                throw new IllegalArgumentException("Unknown store: " + type + " (sqlite, memory or file)");
+        }
+    }
+
+    UserDirectory getUserDirectory();
+
+    // Threads that may read at the same time as the writer; 0 if reads have to be serialized with writes
+    int getReaderCount();
+
+    // Returns false if the username is taken
+    boolean registerUser(String username, String password, String name, String surname, String idNumber, String phone, String email, String ipAddress);
+
+    User getUser(String username);
+
+    // Restricts new auction IDs to those with id % count == index
+    void setAuctionIdPartition(int index, int count);
+
+    // Returns the new auction ID, or -1; endTime is Auction.NO_END_TIME for an ongoing auction
+    int createAuction(String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime);
+
+    // Creates many auctions in one go from their item, description, starting price, seller,
+    // type, start and end time, with IDs as createAuction would assign them. Returns the new IDs in
+    // order: all of them or, on failure, null and none are created
+    int[] createAuctions(List<Auction> auctions);
+
+    // Inserts an auction under a known ID; false if the ID is taken
+    boolean insertAuction(int auctionId, String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime);
+
+    List<Auction> getActiveAuctions();
+
+    Auction getAuction(int auctionId);
+
+    // False if the auction is not active or the user has already joined
+    boolean joinAuction(int auctionId, int userId);
+
+    void loadActiveParticipants(MembershipIndex membership);
+
+    int[] getAuctionParticipants(int auctionId);
+
+    // False unless the auction is active and the amount is above the highest bid and at least the starting price.
+    // The server numbers bids in the order it accepts them, across all auctions, and stamps
+    // them with its clock; the sequence orders them where times can tie
+    boolean placeBid(int auctionId, int userId, long amount, long bidTime, long sequence);
+
+    // The highest bid sequence stored, archived bids included; 0 before the first bid
+    long getLastBidSequence();
+
+    Bid getHighestBid(int auctionId);
+
+    boolean withdrawFromAuction(int auctionId, int userId);
+
+    void removeUserFromAuctions(int userId, int[] auctionIds);
+
+    boolean closeAuction(int auctionId, long finalPrice, int highestBidderId);
+
+    // Closes many auctions at once, entry i with finalPrices[i] and highestBidderIds[i];
+    // all of them or, on failure, none
+    boolean closeAuctions(int[] auctionIds, long[] finalPrices, int[] highestBidderIds);
+
+    // Moves the deadlines of active timed auctions, entry i to endTimes[i]; all of them or,
+    // on failure, none
+    boolean extendAuctions(int[] auctionIds, long[] endTimes);
+
+    // Moves up to limit closed auctions, with their bids and participants, out of the hot data
+    // into the archive; returns how many were moved
+    int archiveClosedAuctions(int limit);
+
+    // A closed auction, archived or not; null for active and unknown auctions
+    Auction getClosedAuction(int auctionId);
+
+    // Every bid of an auction in the order they were placed, archived or not
+    List<Bid> getBidHistory(int auctionId);
+
+    // The sequence number of the last event applied from a primary (ReplicationFollower); 0 if none
+    long getReplicationPosition();
+
+    // The ID of the primary's log that the position counts in; null if none
+    String getReplicationLog();
+
+    // Runs the store writes of the replicated event seq of log logId and records both as the
+    // position, all together: false, with nothing stored, if they fail
+    boolean applyReplicated(String logId, long seq, Runnable writes);
+
+    // Writes every auction, whether active, closed or archived, and then every bid to the export
+    // as of one moment, without holding up writers while the rows are written
+    void export(ColumnarExport.Writer writer) throws IOException;
+
+    void close();
+}
\ No newline at end of file
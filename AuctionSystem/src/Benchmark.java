@@ -0,0 +1,1390 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.Deflater;
+
+// Microbenchmarks for hot paths of the auction server, run without a server.
+// Each mode times an operation over many iterations after a warm-up and prints
+// nanoseconds per operation; results are printed so the JIT cannot drop the work.
+//
+// Usage: java Benchmark <mode> [--option=value ...]
+//   money     parse, compare and format prices: double vs Money (long minor units)
+//   clock     an ADVERTISE end time and a bid time: Calendar and Timestamp vs ServerClock's
+//             epoch millis; then whether stamps went back, and a Manual clock deadline
+//   softclose bids in the soft close window of --active timed auctions, each moving a deadline:
+//             cancelling the auction's timer and scheduling a new one vs the server's bump of the
+//             deadline that the auction's close tick checks
+//   store     heap footprint, full GC pause and GC cost under bid load of the active auctions:
+//             HashMap<Integer, Auction> vs AuctionColumnStore (give it a large heap, e.g. -Xmx3g)
+//   pool      concurrency stress test of an AuctionStore on a temporary file: reader threads check
+//             users, auctions and highest bids while bidder threads write. The sqlite store runs
+//             first with every call on the single writer connection, then with --readers readers
+//   close     --closings auctions of an AuctionStore on a temporary file ending at once: closed one
+//             call each, as timers used to, vs in batches of 500, as the server's close ticks do
+//   import    --listings generated IMPORT records streamed into an AuctionStore on a temporary
+//             file in chunks of 1000, one transaction each, after a baseline of one createAuction
+//             per listing; reports the heap in use every 100 chunks. The memory and file stores
+//             keep every listing on the heap; sqlite holds no more than one chunk at a time
+//   server    a running AuctionServer on an AuctionStore on a temporary file: --active listings
+//             imported, then --bids bids from one client, pipelined 100 at a time; the heap held
+//             by the imported auctions and, for the bids, the time, bytes allocated by the
+//             server's threads and GCs per bid. Run with a fixed heap, e.g. -Xms256m -Xmx256m
+//   candles   sustained bids on --tapes auctions: a bounded ArrayDeque<Bid> per auction vs
+//             BidTape (footprint, cost per bid and GCs), then BID_HISTORY and PRICE_CANDLES reads,
+//             alone and while --threads reader threads query during the bids. Run once with
+//             --offHeap=true as well: in one JVM the second variant pays for the JIT having
+//             seen both kinds of buffer
+//   percolate --searches saved searches of 1-3 keywords from a 50000-word vocabulary, a few
+//             words far more common than the rest, matched against new 12-word listings:
+//             checking every search vs SearchPercolator
+//   compression what one session is sent over 20 minutes of a market of --active auctions: a
+//             LIST_AUCTIONS poll a minute between BID_UPDATE, NEW_LISTING and SOLD pushes, as plain
+//             text, each message deflated alone, and FrameCodec's session stream with every
+//             message compressed and with small ones left plain; bytes on the wire and the
+//             server's and client's CPU time per message
+//   --iterations=5000000  operations per measured round
+//   --rounds=5            measured rounds (the best is reported) after one warm-up round
+//   --auctions=5000000    active auctions held by the store mode
+//   --threads=8           threads of the pool mode, a quarter of them bidding
+//   --readers=4           reader connections of the pool mode
+//   --seconds=5           duration of each pool mode run
+//   --store=sqlite        store of the pool and close modes: sqlite, memory or file (see AuctionStore)
+//   --closings=10000      auctions closed per run of the close mode
+//   --listings=1000000    records of the import mode
+//   --tapes=100000        auctions taking bids in the candles mode
+//   --offHeap=false       whether the candles mode keeps its BidTape off the heap
+//   --searches=1000000    saved searches of the percolate mode
+//   --active=2000         active auctions of the compression, softclose and server modes
+//   --bids=20000          bids per round of the server mode
+public class Benchmark {
+    private int iterations = 5000000;
+    private int rounds = 5;
+    private int auctions = 5000000;
+    private int threads = 8;
+    private int readers = ConnectionPool.DEFAULT_READERS;
+    private int seconds = 5;
+    private String store = AuctionStore.SQLITE;
+    private int closings = 10000;
+    private int listings = 1000000;
+    private int tapes = 100000;
+    private boolean offHeap;
+    private int searches = 1000000;
+    private int active = 2000;
+    private int bids = 20000;
+    private long sink;
+
+    private interface Round {
+        void run(int iterations);
+    }
+
+    // Runs one warm-up round, then reports the best of the measured rounds
+    private void measure(String name, Round round) {
+        round.run(iterations);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            round.run(iterations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-34s %8.1f ns/op%n", name, (double) best / iterations);
+    }
+
+    // Bid amounts as they arrive on the wire
+    private static String[] sampleAmounts(int count) {
+        Random random = new Random(42);
+        String[] amounts = new String[count];
+        for (int i = 0; i < count; i++) {
+            long minor = 100 + random.nextInt(10000000);
+            switch (i % 3) {
+                case 0: amounts[i] = String.valueOf(minor / 100); break;
+                case 1: amounts[i] = (minor / 100) + "." + ((minor % 100) / 10); break;
+                default: amounts[i] = Money.format(minor);
+            }
+        }
+        return amounts;
+    }
+
+    private void money() {
+        String[] amounts = sampleAmounts(1024);
+        double[] doubles = new double[amounts.length];
+        long[] longs = new long[amounts.length];
+        for (int i = 0; i < amounts.length; i++) {
+            doubles[i] = Double.parseDouble(amounts[i]);
+            longs[i] = Money.parse(amounts[i]);
+        }
+        int mask = amounts.length - 1;
+
+        measure("parse double", n -> {
+            double acc = 0;
+            for (int i = 0; i < n; i++) {
+                acc += Double.parseDouble(amounts[i & mask]);
+            }
+            sink += (long) acc;
+        });
+        measure("parse Money", n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++) {
+                acc += Money.parse(amounts[i & mask]);
+            }
+            sink += acc;
+        });
+
+        // The check placeBid makes: is the new bid above the current highest?
+        measure("compare double", n -> {
+            long higher = 0;
+            for (int i = 0; i < n; i++) {
+                if (doubles[i & mask] > doubles[(i + 1) & mask]) {
+                    higher++;
+                }
+            }
+            sink += higher;
+        });
+        measure("compare Money", n -> {
+            long higher = 0;
+            for (int i = 0; i < n; i++) {
+                if (longs[i & mask] > longs[(i + 1) & mask]) {
+                    higher++;
+                }
+            }
+            sink += higher;
+        });
+
+        // A BID_UPDATE notification as publishBid builds it
+        measure("format BID_UPDATE double", n -> {
+            long length = 0;
+            for (int i = 0; i < n; i++) {
+                String message = "BID_UPDATE " + (i & mask) + " lamp " + doubles[i & mask] + " alice 127.0.0.1";
+                length += message.length();
+            }
+            sink += length;
+        });
+        measure("format BID_UPDATE Money", n -> {
+            long length = 0;
+            StringBuilder sb = new StringBuilder(64);
+            for (int i = 0; i < n; i++) {
+                sb.setLength(0);
+                sb.append("BID_UPDATE ").append(i & mask).append(" lamp ");
+                Money.appendTo(sb, longs[i & mask]).append(" alice 127.0.0.1");
+                length += sb.toString().length();
+            }
+            sink += length;
+        });
+
+        // Exactness: ten bids of 0.10 should add up to 1.00
+        double d = 0;
+        long m = 0;
+        for (int i = 0; i < 10; i++) {
+            d += 0.1;
+            m += Money.parse("0.10");
+        }
+        System.out.println("10 x 0.10 as double = " + d + ", as Money = " + Money.format(m));
+    }
+
+    private void clock() {
+        ServerClock clock = ServerClock.SYSTEM;
+        measure("end time Calendar + Timestamp", n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++) {
+                Calendar calendar = Calendar.getInstance();
+                calendar.add(Calendar.MINUTE, 1 + (i & 63));
+                acc += new Timestamp(calendar.getTimeInMillis()).getTime();
+            }
+            sink += acc;
+        });
+        measure("end time ServerClock", n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++) {
+                acc += clock.millis() + (1 + (i & 63)) * 60000L;
+            }
+            sink += acc;
+        });
+        measure("bid time Timestamp", n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++) {
+                acc += new Timestamp(System.currentTimeMillis()).getTime();
+            }
+            sink += acc;
+        });
+        measure("bid time ServerClock", n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++) {
+                acc += clock.millis();
+            }
+            sink += acc;
+        });
+
+        // Each stamp against the one before: the wall clock goes back whenever it is stepped
+        long wallBack = 0;
+        long clockBack = 0;
+        long lastWall = System.currentTimeMillis();
+        long lastClock = clock.millis();
+        for (int i = 0; i < iterations; i++) {
+            long wall = System.currentTimeMillis();
+            long now = clock.millis();
+            wallBack += wall < lastWall ? 1 : 0;
+            clockBack += now < lastClock ? 1 : 0;
+            lastWall = wall;
+            lastClock = now;
+        }
+        System.out.println(iterations + " stamps, taken back: " + wallBack + " by the wall clock, " + clockBack + " by ServerClock");
+
+        // A deadline a minute out is reached when the clock has been moved a minute on, not before
+        ServerClock.Manual manual = new ServerClock.Manual(0);
+        long deadline = manual.millis() + 60000;
+        manual.advance(59999);
+        boolean early = manual.millis() >= deadline;
+        manual.advance(1);
+        System.out.println("Manual clock deadline reached early: " + early + ", on time: " + (manual.millis() >= deadline));
+    }
+
+    private void softClose() {
+        long extension = 30000;
+        long now = ServerClock.SYSTEM.millis();
+
+        // Cancelled timers are taken off the queue, as they would have to be with a timer per bid
+        ScheduledThreadPoolExecutor timers = new ScheduledThreadPoolExecutor(1);
+        timers.setRemoveOnCancelPolicy(true);
+        ScheduledFuture<?>[] closes = new ScheduledFuture<?>[active];
+        Runnable close = () -> {};
+        for (int i = 0; i < active; i++) {
+            closes[i] = timers.schedule(close, extension, TimeUnit.MILLISECONDS);
+        }
+        measure("extend by cancel + schedule", n -> {
+            for (int i = 0; i < n; i++) {
+                int auction = i % active;
+                closes[auction].cancel(false);
+                closes[auction] = timers.schedule(close, extension + (i & 1023), TimeUnit.MILLISECONDS);
+            }
+            sink += timers.getQueue().size();
+        });
+        timers.shutdownNow();
+
+        AuctionColumnStore columns = new AuctionColumnStore(active);
+        for (int i = 1; i <= active; i++) {
+            columns.put(i, "item", "description", 1, 1, UserDirectory.NO_USER, 100, 100, 0, 0, now + extension);
+        }
+        Map<Integer, Long> extended = new HashMap<>();
+        measure("extend by deadline bump", n -> {
+            for (int i = 0; i < n; i++) {
+                int auctionId = i % active + 1;
+                long endTime = now + extension + (i & 1023);
+                columns.setEndTime(auctionId, endTime);
+                extended.put(auctionId, endTime);
+            }
+            sink += extended.size();
+        });
+    }
+
+    // Heap in use after a full collection
+    private static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    // Prints the heap held since base and how long a full collection of it takes
+    private void footprint(String name, long base, int count) {
+        long used = heapUsed() - base;
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < 3; r++) {
+            long start = System.nanoTime();
+            System.gc();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-34s %8.1f MB, %5.1f bytes/auction, full GC %d ms%n",
+                name, used / 1048576.0, (double) used / count, best / 1000000);
+    }
+
+    // measure() plus the collections that ran during it
+    private void measureWithGc(String name, Round round) {
+        long[] before = gcTotals();
+        measure(name, round);
+        long[] after = gcTotals();
+        System.out.printf("%-34s %8d GCs, %d ms in GC%n", "", after[0] - before[0], after[1] - before[1]);
+    }
+
+    // Uniform auction IDs 1..auctions from a xorshift sequence, cheaper than Random
+    private static int nextId(int x, int auctions) {
+        return (int) (((x & 0xFFFFFFFFL) * auctions) >>> 32) + 1;
+    }
+
+    private static int xorshift(int x) {
+        x ^= x << 13;
+        x ^= x >>> 17;
+        return x ^ (x << 5);
+    }
+
+    private void store() {
+        String[] names = new String[1000];
+        String[] descriptions = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "item" + i;
+            descriptions[i] = "Description of item " + i + ", in good condition";
+        }
+        String[] bidders = {"alice", "bob", "carol", "dave"};
+        System.out.println(auctions + " active auctions, item strings shared so only the store itself is measured");
+
+        storeObjects(names, descriptions, bidders);
+        storeColumns(names, descriptions, bidders);
+    }
+
+    private void storeObjects(String[] names, String[] descriptions, String[] bidders) {
+        long base = heapUsed();
+        long now = System.currentTimeMillis();
+        Map<Integer, Auction> objects = new HashMap<>();
+        for (int id = 1; id <= auctions; id++) {
+            Auction auction = new Auction();
+            auction.setAuctionId(id);
+            auction.setItemName(names[id % names.length]);
+            auction.setItemDescription(descriptions[id % names.length]);
+            auction.setStartingPrice(1000);
+            auction.setCurrentPrice(1000);
+            auction.setSellerId(1 + id % 1000);
+            auction.setAuctionType(1);
+            auction.setStartTime(now);
+            auction.setEndTime(now + id);
+            auction.setStatus("active");
+            objects.put(id, auction);
+        }
+        footprint("HashMap<Integer, Auction>", base, objects.size());
+
+        // A bid: look the auction up, record the new leader and build the BID_UPDATE line
+        int[] state = {42};
+        measureWithGc("bid on HashMap<Integer, Auction>", n -> {
+            int x = state[0];
+            long length = 0;
+            for (int i = 0; i < n; i++) {
+                x = xorshift(x);
+                Auction auction = objects.get(nextId(x, auctions));
+                auction.setCurrentPrice(auction.getCurrentPrice() + 100);
+                auction.setHighestBidderId(1 + (i & 3));
+                auction.setHighestBidder(bidders[i & 3]);
+                length += ("BID_UPDATE " + auction.getAuctionId() + " " + auction.getItemName()).length();
+            }
+            state[0] = x;
+            sink += length;
+        });
+        sink += objects.size();
+    }
+
+    private void storeColumns(String[] names, String[] descriptions, String[] bidders) {
+        long base = heapUsed();
+        long now = System.currentTimeMillis();
+        AuctionColumnStore columns = new AuctionColumnStore(1024);
+        for (int id = 1; id <= auctions; id++) {
+            columns.put(id, names[id % names.length], descriptions[id % names.length], 1, 1 + id % 1000,
+                    UserDirectory.NO_USER, 1000, 1000, 0, 0, now + id);
+        }
+        footprint("AuctionColumnStore", base, columns.size());
+
+        int[] state = {42};
+        AuctionColumnStore.View auction = columns.view();
+        measureWithGc("bid on AuctionColumnStore", n -> {
+            int x = state[0];
+            long length = 0;
+            for (int i = 0; i < n; i++) {
+                x = xorshift(x);
+                auction.load(nextId(x, auctions));
+                columns.updateBid(auction.getAuctionId(), 1 + (i & 3), auction.getCurrentPrice() + 100, now, i);
+                length += ("BID_UPDATE " + auction.getAuctionId() + " " + auction.getItemName()).length();
+            }
+            state[0] = x;
+            sink += length;
+        });
+        sink += columns.size();
+    }
+
+    private void pool() {
+        PrintStream console = System.out;
+        try {
+            File file = File.createTempFile("pool", ".db");
+            // placeBid and getAuction log every step; only the results are wanted here
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            try {
+                if (store.equals(AuctionStore.SQLITE)) {
+                    deleteDatabase(file);
+                    poolRun(console, "sqlite, 0 reader connections", new DatabaseManager(file.getPath(), 0));
+                    deleteDatabase(file);
+                    poolRun(console, "sqlite, " + readers + " reader connections", new DatabaseManager(file.getPath(), readers));
+                } else {
+                    deleteDatabase(file);
+                    poolRun(console, store, AuctionStore.open(store, file.getPath()));
+                }
+            } finally {
+                System.setOut(console);
+                deleteDatabase(file);
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static void deleteDatabase(File file) {
+        for (String suffix : new String[] {"", "-wal", "-shm"}) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+
+    private void poolRun(PrintStream console, String label, AuctionStore db) throws InterruptedException {
+        int userCount = 100;
+        int auctionCount = 100;
+        for (int i = 0; i < userCount; i++) {
+            db.registerUser("user" + i, "pw", "Name", "Surname", "id" + i, "phone", "mail", "127.0.0.1");
+        }
+        UserDirectory users = db.getUserDirectory();
+        for (int i = 1; i <= auctionCount; i++) {
+            db.createAuction("item" + i, "description", 100, users.idOf("user0"), 2, System.currentTimeMillis(), Auction.NO_END_TIME);
+        }
+
+        // Highest accepted bid per auction; committed prices only grow
+        AtomicLongArray accepted = new AtomicLongArray(auctionCount + 1);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong bids = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong sequence = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        int bidders = Math.max(1, threads / 4);
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            boolean bidder = t < bidders;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] lastSeen = new long[auctionCount + 1];
+                long done = 0;
+                while (System.nanoTime() < deadline) {
+                    int auctionId = 1 + random.nextInt(auctionCount);
+                    if (bidder) {
+                        long amount = Math.max(100, accepted.get(auctionId)) + 1 + random.nextInt(100);
+                        if (db.placeBid(auctionId, users.idOf("user" + random.nextInt(userCount)), amount,
+                                System.currentTimeMillis(), sequence.incrementAndGet())) {
+                            accepted.accumulateAndGet(auctionId, amount, Math::max);
+                            done++;
+                        }
+                        continue;
+                    }
+                    String problem = null;
+                    switch ((int) (done % 3)) {
+                        case 0:
+                            String name = "user" + random.nextInt(userCount);
+                            User user = db.getUser(name);
+                            if (user == null || !name.equals(user.getUsername()) || user.getUserId() != users.idOf(name)) {
+                                problem = "getUser(" + name + ") returned " + (user == null ? null : user.getUsername());
+                            }
+                            break;
+                        case 1:
+                            Auction auction = db.getAuction(auctionId);
+                            if (auction == null || auction.getAuctionId() != auctionId || !("item" + auctionId).equals(auction.getItemName())) {
+                                problem = "getAuction(" + auctionId + ") returned " + (auction == null ? null : auction.getItemName());
+                            }
+                            break;
+                        default:
+                            Bid bid = db.getHighestBid(auctionId);
+                            if (bid != null && (bid.getAmount() < lastSeen[auctionId] || bid.getUsername() == null)) {
+                                problem = "getHighestBid(" + auctionId + ") went back to " + Money.format(bid.getAmount());
+                            } else if (bid != null) {
+                                lastSeen[auctionId] = bid.getAmount();
+                            }
+                    }
+                    if (problem != null && errors.incrementAndGet() <= 5) {
+                        console.println("ERROR " + problem);
+                    }
+                    done++;
+                }
+                (bidder ? bids : reads).addAndGet(done);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // The stored price of every auction must be its highest accepted bid
+        for (int auctionId = 1; auctionId <= auctionCount; auctionId++) {
+            long expected = Math.max(100, accepted.get(auctionId));
+            Auction auction = db.getAuction(auctionId);
+            if (auction == null || auction.getCurrentPrice() != expected) {
+                errors.incrementAndGet();
+                console.println("ERROR auction " + auctionId + " stored " + (auction == null ? null : Money.format(auction.getCurrentPrice()))
+                        + ", highest accepted bid " + Money.format(expected));
+            }
+        }
+        db.close();
+
+        console.printf("%-34s %8d reads/s %8d bids/s, %d errors%n",
+                label, reads.get() / seconds, bids.get() / seconds, errors.get());
+    }
+
+    private void close() {
+        PrintStream console = System.out;
+        try {
+            File file = File.createTempFile("close", ".db");
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            try {
+                deleteDatabase(file);
+                closeRun(console, "closeAuction, one per auction", AuctionStore.open(store, file.getPath()), 1);
+                deleteDatabase(file);
+                closeRun(console, "closeAuctions, 500 per call", AuctionStore.open(store, file.getPath()), 500);
+            } finally {
+                System.setOut(console);
+                deleteDatabase(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void closeRun(PrintStream console, String label, AuctionStore db, int batch) {
+        db.registerUser("seller", "pw", "Name", "Surname", "id", "phone", "mail", "127.0.0.1");
+        db.registerUser("bidder", "pw", "Name", "Surname", "id", "phone", "mail", "127.0.0.1");
+        int sellerId = db.getUserDirectory().idOf("seller");
+        int bidderId = db.getUserDirectory().idOf("bidder");
+        long endTime = System.currentTimeMillis();
+        int[] auctionIds = new int[closings];
+        for (int i = 0; i < closings; i++) {
+            auctionIds[i] = db.createAuction("item" + i, "description", 100, sellerId, 1, endTime, endTime);
+        }
+
+        long start = System.nanoTime();
+        for (int from = 0; from < closings; from += batch) {
+            int count = Math.min(batch, closings - from);
+            if (batch == 1) {
+                db.closeAuction(auctionIds[from], 150, bidderId);
+                continue;
+            }
+            long[] finalPrices = new long[count];
+            int[] highestBidderIds = new int[count];
+            Arrays.fill(finalPrices, 150);
+            Arrays.fill(highestBidderIds, bidderId);
+            db.closeAuctions(Arrays.copyOfRange(auctionIds, from, from + count), finalPrices, highestBidderIds);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int open = db.getActiveAuctions().size();
+        db.close();
+        console.printf("%-34s %8.1f ms for %d auctions, %d left open%n", label, elapsed / 1e6, closings, open);
+    }
+
+    private void importListings() {
+        PrintStream console = System.out;
+        try {
+            File file = File.createTempFile("import", ".db");
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            try {
+                deleteDatabase(file);
+                importRun(console, AuctionStore.open(store, file.getPath()));
+            } finally {
+                System.setOut(console);
+                deleteDatabase(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void importRun(PrintStream console, AuctionStore db) {
+        db.registerUser("seller", "pw", "Name", "Surname", "id", "phone", "mail", "127.0.0.1");
+        int sellerId = db.getUserDirectory().idOf("seller");
+
+        // Baseline: one ADVERTISE-style insert and commit per listing
+        int single = Math.min(listings, 20000);
+        long start = System.nanoTime();
+        for (int i = 0; i < single; i++) {
+            long now = System.currentTimeMillis();
+            db.createAuction("item" + i, "description of item " + i, 100 + i % 1000, sellerId, 1, now, now + 60000);
+        }
+        long elapsed = System.nanoTime() - start;
+        console.printf("%-34s %8.0f listings/s (%d listings)%n", "createAuction, one per listing", single / (elapsed / 1e9), single);
+
+        long baseHeap = heapUsed();
+        long maxHeap = baseHeap;
+        ListingImporter importer = new ListingImporter(sellerId, ListingImporter.DEFAULT_CHUNK, ServerClock.SYSTEM);
+        long chunks = 0;
+        long imported = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < listings; i++) {
+            // Every 1000th record is invalid, as a real feed's would be now and then
+            String price = i % 1000 == 999 ? "free" : Money.format(100 + i % 1000);
+            importer.add("item" + i + "|description of item " + i + "|" + price + "|" + (1 + i % 2) + "|" + (1 + i % 60));
+            if (importer.isChunkFull()) {
+                int[] auctionIds = db.createAuctions(importer.takeChunk());
+                imported += auctionIds != null ? auctionIds.length : 0;
+                if (++chunks % 100 == 0) {
+                    maxHeap = Math.max(maxHeap, heapUsed());
+                }
+            }
+        }
+        int[] auctionIds = db.createAuctions(importer.takeChunk());
+        imported += auctionIds != null ? auctionIds.length : 0;
+        elapsed = System.nanoTime() - start; // includes the sampling GCs
+        db.close();
+
+        console.printf("%-34s %8.0f listings/s (%d imported, %d rejected)%n", "createAuctions, chunks of 1000",
+                imported / (elapsed / 1e9), imported, importer.getRejected());
+        console.printf("%-34s %8.1f MB at start, at most %.1f MB while importing%n", "heap in use",
+                baseHeap / 1048576.0, maxHeap / 1048576.0);
+    }
+
+    private void server() {
+        PrintStream console = System.out;
+        try {
+            File file = File.createTempFile("server", ".db");
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            deleteDatabase(file);
+            AuctionServer server = new AuctionServer(port, AuctionStore.open(store, file.getPath()), 0, 1, "127.0.0.1");
+            Thread serverThread = new Thread(server::start, "server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            try {
+                serverRun(console, port);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                server.stop();
+                System.setOut(console);
+                deleteDatabase(file);
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void serverRun(PrintStream console, int port) throws IOException, InterruptedException {
+        long base;
+        try (LineClient seller = LineClient.open(port)) {
+            seller.call("REGISTER seller pw Name Surname 1 1 e");
+            seller.call("CONNECT seller pw");
+            base = heapUsed();
+            seller.send("IMPORT");
+            for (int i = 0; i < active; i++) {
+                seller.send("item" + i + "|description of item " + i + "|" + Money.format(100 + i % 1000) + "|1|600");
+            }
+            seller.send("END");
+            seller.await("SUCCESS Imported");
+        }
+        serverFootprint(console, "server, " + active + " imported", base);
+
+        try (LineClient bidder = LineClient.open(port)) {
+            bidder.call("REGISTER bidder pw Name Surname 1 1 e");
+            bidder.call("CONNECT bidder pw");
+            for (int auctionId = 1; auctionId <= active; auctionId++) {
+                bidder.send("JOIN_AUCTION " + auctionId);
+            }
+            bidder.replies(active);
+            long[] amount = {100000};
+            Round round = n -> {
+                for (int i = 0; i < n; i += 100) {
+                    int batch = Math.min(100, n - i);
+                    for (int b = 0; b < batch; b++) {
+                        bidder.send("BID " + (1 + (i + b) % active) + " " + Money.format(amount[0]++));
+                    }
+                    try {
+                        sink += bidder.replies(batch);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            round.run(bids);
+            long[] gcBefore = gcTotals();
+            long allocatedBefore = serverAllocatedBytes();
+            long start = System.nanoTime();
+            round.run(bids);
+            long elapsed = System.nanoTime() - start;
+            long allocated = serverAllocatedBytes() - allocatedBefore;
+            long[] gcAfter = gcTotals();
+            console.printf("%-34s %8.1f us/bid, %6.0f bytes allocated/bid, %d GCs, %d ms in GC%n", "bid through the server",
+                    elapsed / 1000.0 / bids, (double) allocated / bids, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        }
+        serverFootprint(console, "server, after " + 2 * bids + " bids", base);
+    }
+
+    // footprint() for the server mode, whose System.out is silenced
+    private void serverFootprint(PrintStream console, String name, long base) {
+        long used = heapUsed() - base;
+        console.printf("%-34s %8.1f MB, %5.1f bytes/auction%n", name, used / 1048576.0, (double) used / active);
+    }
+
+    // Bytes allocated so far by every live thread but this one, which plays the clients
+    private static long serverAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long id : threads.getAllThreadIds()) {
+            if (id != Thread.currentThread().getId()) {
+                total += Math.max(0, threads.getThreadAllocatedBytes(id));
+            }
+        }
+        return total;
+    }
+
+    // One line-protocol connection of the server mode
+    private static final class LineClient implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        private LineClient(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(socket.getOutputStream(), false);
+        }
+
+        static LineClient open(int port) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (true) {
+                try {
+                    return new LineClient(new Socket("127.0.0.1", port));
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    Thread.sleep(50); // the server is still starting
+                }
+            }
+        }
+
+        void send(String line) {
+            out.print(line);
+            out.print('\n');
+        }
+
+        void call(String line) throws IOException {
+            send(line);
+            replies(1);
+        }
+
+        // Reads until count commands have been answered, skipping pushes; returns the bytes read
+        long replies(int count) throws IOException {
+            out.flush();
+            long length = 0;
+            while (count > 0) {
+                String line = await(null);
+                length += line.length();
+                if (line.startsWith("SUCCESS") || line.startsWith("WELCOME") || line.startsWith("ERROR")) {
+                    count--;
+                }
+            }
+            return length;
+        }
+
+        // The next line starting with prefix, or the next line at all for null
+        String await(String prefix) throws IOException {
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (prefix == null || line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+            throw new IOException("connection closed by the server");
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private void candles() {
+        System.out.println(tapes + " auctions taking bids, the last " + BidTape.DEFAULT_BIDS + " kept, candles of "
+                + Arrays.toString(BidTape.DEFAULT_CANDLE_SECONDS) + " s, " + BidTape.DEFAULT_CANDLES + " each");
+        candlesDeque();
+        candlesTape(offHeap ? "BidTape off-heap" : "BidTape", offHeap);
+    }
+
+    // The obvious alternative: a Bid per bid, the oldest dropped past the limit
+    private void candlesDeque() {
+        long base = heapUsed();
+        long start = System.currentTimeMillis();
+        Map<Integer, ArrayDeque<Bid>> history = new HashMap<>();
+        for (int id = 1; id <= tapes; id++) {
+            ArrayDeque<Bid> bids = new ArrayDeque<>(BidTape.DEFAULT_BIDS);
+            for (int b = 0; b < BidTape.DEFAULT_BIDS; b++) {
+                bids.addLast(new Bid(0, id, "alice", 1000 + b, start + b));
+            }
+            history.put(id, bids);
+        }
+        footprint("ArrayDeque<Bid> per auction", base, tapes);
+
+        int[] state = {42};
+        long[] clock = {start};
+        measureWithGc("bid into ArrayDeque<Bid>", n -> {
+            int x = state[0];
+            for (int i = 0; i < n; i++) {
+                x = xorshift(x);
+                ArrayDeque<Bid> bids = history.get(nextId(x, tapes));
+                if (bids.size() == BidTape.DEFAULT_BIDS) {
+                    bids.removeFirst();
+                }
+                clock[0] += 3;
+                bids.addLast(new Bid(0, 0, "alice", 1000 + (i & 1023), clock[0]));
+            }
+            state[0] = x;
+        });
+        sink += history.size();
+    }
+
+    private void candlesTape(String name, boolean offHeap) {
+        long base = heapUsed();
+        long start = System.currentTimeMillis();
+        BidTape tape = new BidTape(tapes, BidTape.DEFAULT_BIDS, BidTape.DEFAULT_CANDLE_SECONDS, BidTape.DEFAULT_CANDLES, offHeap);
+        for (int id = 1; id <= tapes; id++) {
+            for (int b = 0; b < BidTape.DEFAULT_BIDS; b++) {
+                tape.record(id, 1, 1000 + b, start + b);
+            }
+        }
+        footprint(name + " (heap only)", base, tapes);
+
+        // Three milliseconds a bid: every auction rolls over to new candles now and then
+        int[] state = {42};
+        long[] clock = {start};
+        Round bids = n -> {
+            int x = state[0];
+            long time = clock[0];
+            for (int i = 0; i < n; i++) {
+                x = xorshift(x);
+                time += 3;
+                tape.record(nextId(x, tapes), 1 + (i & 3), 1000 + (i & 1023), time);
+            }
+            state[0] = x;
+            clock[0] = time;
+        };
+        measureWithGc("bid into " + name, bids);
+
+        long[] out = new long[BidTape.DEFAULT_CANDLES * BidTape.CANDLE_FIELDS];
+        measure("BID_HISTORY read, " + name, n -> {
+            int x = state[0];
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                x = xorshift(x);
+                total += tape.recentBids(nextId(x, tapes), BidTape.DEFAULT_BIDS, out);
+            }
+            state[0] = x;
+            sink += total;
+        });
+        measure("PRICE_CANDLES read, " + name, n -> {
+            int x = state[0];
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                x = xorshift(x);
+                total += tape.candles(nextId(x, tapes), 60, BidTape.DEFAULT_CANDLES, out);
+            }
+            state[0] = x;
+            sink += total;
+        });
+
+        // The same bids while readers keep asking for histories and candles, each of which must
+        // be whole: bid times in order, every candle's open and close between its low and high
+        AtomicLong reads = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = 1000 + t;
+            readers[t] = new Thread(() -> {
+                long[] copy = new long[BidTape.DEFAULT_CANDLES * BidTape.CANDLE_FIELDS];
+                int x = seed;
+                long done = 0;
+                while (!stop.get()) {
+                    x = xorshift(x);
+                    int id = nextId(x, tapes);
+                    int count = tape.recentBids(id, BidTape.DEFAULT_BIDS, copy);
+                    for (int b = 1; b < count; b++) {
+                        if (copy[b * BidTape.BID_FIELDS] < copy[(b - 1) * BidTape.BID_FIELDS]) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    count = tape.candles(id, 3600, BidTape.DEFAULT_CANDLES, copy);
+                    for (int c = 0; c < count; c++) {
+                        int at = c * BidTape.CANDLE_FIELDS;
+                        long high = copy[at + 2];
+                        long low = copy[at + 3];
+                        if (copy[at + 1] > high || copy[at + 1] < low || copy[at + 4] > high || copy[at + 4] < low) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    done += 2;
+                }
+                reads.addAndGet(done);
+            });
+            readers[t].start();
+        }
+        long readStart = System.nanoTime();
+        measureWithGc("bid into " + name + ", " + threads + " readers", bids);
+        stop.set(true);
+        for (Thread reader : readers) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.printf("%-34s %8.0f reads/s, %d torn reads%n", "", reads.get() / ((System.nanoTime() - readStart) / 1e9), errors.get());
+        sink += tape.size();
+    }
+
+    // Word ranks skewed towards 0, as word frequencies are
+    private static String word(Random random) {
+        double u = random.nextDouble();
+        return "w" + (int) (50000 * u * u);
+    }
+
+    private void percolate() {
+        Random random = new Random(42);
+        String[] queries = new String[searches];
+        long[] maxPrices = new long[searches];
+        SearchPercolator percolator = new SearchPercolator();
+        for (int i = 0; i < searches; i++) {
+            int keywords = 1 + random.nextInt(3);
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < keywords; k++) {
+                sb.append(k > 0 ? " " : "").append(word(random));
+            }
+            queries[i] = sb.toString();
+            maxPrices[i] = (1 + random.nextInt(100)) * 100L;
+            // Users hold up to MAX_SEARCHES_PER_USER searches each
+            percolator.add(1 + i / SearchPercolator.MAX_SEARCHES_PER_USER, queries[i], maxPrices[i], 0);
+        }
+        String[] listings = new String[1024];
+        for (int i = 0; i < listings.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int w = 0; w < 12; w++) {
+                sb.append(w > 0 ? " " : "").append(word(random));
+            }
+            listings[i] = sb.toString();
+        }
+        System.out.println(searches + " saved searches, listings of 12 words");
+
+        // Every search checked against the listing's words, as a loop over all of them would
+        List<Set<String>> parsed = new ArrayList<>();
+        for (String query : queries) {
+            parsed.add(SearchPercolator.words(query));
+        }
+        int scanned = Math.max(1, Math.min(iterations, 200));
+        long matched = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < scanned; i++) {
+            Set<String> words = SearchPercolator.words(listings[i & 1023]);
+            for (int q = 0; q < parsed.size(); q++) {
+                if (maxPrices[q] >= 5000 && words.containsAll(parsed.get(q))) {
+                    matched++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-34s %8.1f us/listing, %.1f matches/listing%n", "scan every search", elapsed / 1e3 / scanned,
+                (double) matched / scanned);
+
+        long found = 0;
+        for (int i = 0; i < scanned; i++) {
+            found += percolator.match(listings[i & 1023], "", 5000, 1).size();
+        }
+        if (found != matched) {
+            System.out.println("ERROR SearchPercolator found " + found + " matches, the scan " + matched);
+        }
+        int[] next = {0};
+        measure("SearchPercolator.match", n -> {
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                total += percolator.match(listings[next[0]++ & 1023], "", 5000, 1).size();
+            }
+            sink += total;
+        });
+    }
+
+    private static final String[] BRANDS = {"Canon", "Nikon", "Sony", "Apple", "Samsung", "Lego", "Fender", "Gibson",
+            "Rolex", "Omega", "Seiko", "Dyson", "Bosch", "Makita", "Nintendo", "Sega", "Leica", "Bose", "Garmin", "Ikea"};
+    private static final String[] PRODUCTS = {"camera body", "lens 50mm", "laptop", "phone", "tablet", "watch",
+            "guitar", "amplifier", "drill", "vacuum cleaner", "console", "headphones", "speaker", "set 10294",
+            "bicycle computer", "desk", "chair", "monitor 27in", "turntable", "sewing machine"};
+    private static final String[] CONDITIONS = {"Brand new, sealed in the original box.", "Used, excellent condition.",
+            "Used, some wear on the corners.", "Refurbished by the manufacturer.", "For parts or repair, does not power on."};
+    private static final String[] EXTRAS = {"Ships within 2 days.", "Collection only.", "Includes charger and manual.",
+            "Receipt and warranty card included.", "Smoke-free home.", "Free shipping to mainland addresses."};
+
+    private static String listingName(Random random) {
+        return BRANDS[random.nextInt(BRANDS.length)] + " " + PRODUCTS[random.nextInt(PRODUCTS.length)];
+    }
+
+    private static String listingDescription(Random random) {
+        return CONDITIONS[random.nextInt(CONDITIONS.length)] + " " + EXTRAS[random.nextInt(EXTRAS.length)]
+                + " Serial " + Integer.toHexString(random.nextInt()).toUpperCase(Locale.ROOT) + ".";
+    }
+
+    private void compression() {
+        Random random = new Random(42);
+        String[] sellers = new String[500];
+        String[] ips = new String[sellers.length];
+        for (int i = 0; i < sellers.length; i++) {
+            sellers[i] = "user" + random.nextInt(100000);
+            ips[i] = "192.168." + random.nextInt(256) + "." + random.nextInt(256);
+        }
+        int nextId = 1;
+        Map<Integer, Auction> open = new LinkedHashMap<>();
+        AuctionColumnStore columns = new AuctionColumnStore(active);
+        for (; nextId <= active; nextId++) {
+            Auction auction = compressionAuction(random, nextId, sellers);
+            open.put(nextId, auction);
+            columns.put(auction, 0, 0);
+        }
+
+        // A minute of market is a poll, 400 bids, 5 new listings and 5 closes
+        List<String> stream = new ArrayList<>();
+        List<Boolean> isListing = new ArrayList<>();
+        Integer[] ids = open.keySet().toArray(new Integer[0]);
+        for (int minute = 0; minute < 20; minute++) {
+            StringBuilder listing = new StringBuilder("AUCTIONS ");
+            columns.appendListing(listing, seller -> sellers[seller], seller -> ips[seller]);
+            stream.add(listing.toString());
+            isListing.add(true);
+            for (int b = 0; b < 400; b++) {
+                Auction auction = open.get(ids[random.nextInt(ids.length)]);
+                if (auction == null) {
+                    continue;
+                }
+                int bidder = random.nextInt(sellers.length);
+                long amount = auction.getCurrentPrice() + 50 + random.nextInt(20) * 50;
+                auction.setCurrentPrice(amount);
+                StringBuilder sb = new StringBuilder("BID_UPDATE ").append(auction.getAuctionId()).append(' ')
+                        .append(auction.getItemName()).append(' ');
+                stream.add(Money.appendTo(sb, amount).append(' ').append(sellers[bidder]).append(' ').append(ips[bidder]).toString());
+                isListing.add(false);
+                columns.updateBid(auction.getAuctionId(), bidder, amount, 0, 0);
+            }
+            for (int k = 0; k < 5; k++) {
+                Auction auction = compressionAuction(random, nextId++, sellers);
+                stream.add("NEW_LISTING " + (1 + random.nextInt(20)) + " " + auction.getAuctionId() + "|" + auction.getItemName()
+                        + "|" + auction.getItemDescription() + "|" + Money.format(auction.getStartingPrice()) + "|1|"
+                        + auction.getSellerUsername());
+                isListing.add(false);
+                Integer closing = ids[random.nextInt(ids.length)];
+                Auction sold = open.remove(closing);
+                if (sold != null) {
+                    stream.add("SOLD " + closing + " " + sold.getItemName() + " " + Money.format(sold.getCurrentPrice()) + " "
+                            + sellers[random.nextInt(sellers.length)]);
+                    isListing.add(false);
+                    columns.remove(closing);
+                }
+            }
+        }
+        String[] messages = stream.toArray(new String[0]);
+        long textBytes = 0;
+        long listingBytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            int length = messages[i].getBytes(StandardCharsets.UTF_8).length + 1;
+            textBytes += length;
+            listingBytes += isListing.get(i) ? length : 0;
+        }
+        System.out.printf("%d messages, %d KB of text: %d polls of %d auctions (%d KB), %d pushes (%d KB)%n", messages.length,
+                textBytes / 1024, 20, active, listingBytes / 1024, messages.length - 20, (textBytes - listingBytes) / 1024);
+        System.out.printf("%-34s %9s %9s %7s %10s %10s %10s%n", "", "bytes", "of pushes", "ratio", "us/listing",
+                "ns/push", "decode");
+
+        compressionRow("plain text", messages, isListing, textBytes, out -> null);
+        compressionRow("each message deflated alone", messages, isListing, textBytes, out -> {
+            Deflater deflater = new Deflater(FrameCodec.LEVEL);
+            byte[] buffer = new byte[1 << 20];
+            return message -> {
+                byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+                deflater.reset();
+                deflater.setInput(bytes);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    length += deflater.deflate(buffer, length, buffer.length - length);
+                }
+                out.write(buffer, 0, length);
+            };
+        });
+        compressionRow("session stream, every message", messages, isListing, textBytes, out -> {
+            FrameCodec.Writer writer = new FrameCodec.Writer(out, 0);
+            writer.startCompression();
+            return writer::send;
+        });
+        for (int threshold : new int[] {32, 64, 128}) {
+            compressionRow("session stream, " + threshold + " bytes and up", messages, isListing, textBytes, out -> {
+                FrameCodec.Writer writer = new FrameCodec.Writer(out, threshold);
+                writer.startCompression();
+                return writer::send;
+            });
+        }
+    }
+
+    private static Auction compressionAuction(Random random, int auctionId, String[] sellers) {
+        Auction auction = new Auction();
+        auction.setAuctionId(auctionId);
+        auction.setItemName(listingName(random));
+        auction.setItemDescription(listingDescription(random));
+        auction.setStartingPrice((1 + random.nextInt(400)) * 250L);
+        auction.setCurrentPrice(auction.getStartingPrice());
+        auction.setSellerId(random.nextInt(sellers.length));
+        auction.setSellerUsername(sellers[auction.getSellerId()]);
+        return auction;
+    }
+
+    private interface MessageSink {
+        void send(String message) throws IOException;
+    }
+
+    private interface SinkFactory {
+        MessageSink open(ByteArrayOutputStream out);
+    }
+
+    // One session's worth of messages through a fresh sink per round; null means plain lines.
+    // Encoding is timed per message and reported per listing and per push; decoding runs the
+    // client's loop over the whole session (frames through FrameCodec.Decoder, lines split at
+    // newlines).
+    private void compressionRow(String name, String[] messages, List<Boolean> isListing, long textBytes, SinkFactory factory) {
+        long bestListings = Long.MAX_VALUE;
+        long bestPushes = Long.MAX_VALUE;
+        long bestDecode = Long.MAX_VALUE;
+        long wire = 0;
+        long pushWire = 0;
+        int listingCount = 0;
+        try {
+            for (int r = 0; r <= rounds; r++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+                MessageSink sink = factory.open(out);
+                pushWire = 0;
+                listingCount = 0;
+                long listingNanos = 0;
+                long pushNanos = 0;
+                for (int i = 0; i < messages.length; i++) {
+                    int before = out.size();
+                    long start = System.nanoTime();
+                    if (sink == null) {
+                        out.write((messages[i] + "\n").getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        sink.send(messages[i]);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (isListing.get(i)) {
+                        listingNanos += elapsed;
+                        listingCount++;
+                    } else {
+                        pushNanos += elapsed;
+                        pushWire += out.size() - before;
+                    }
+                }
+                byte[] bytes = out.toByteArray();
+                wire = bytes.length;
+
+                // Messages deflated alone carry no framing, so only the framed variants decode
+                long decode = 0;
+                if (sink == null || name.startsWith("session")) {
+                    long start = System.nanoTime();
+                    int lines = decodeSession(bytes);
+                    decode = System.nanoTime() - start;
+                    if (lines != messages.length) {
+                        System.out.println("ERROR decoded " + lines + " lines of " + messages.length);
+                    }
+                }
+                if (r > 0) {
+                    bestListings = Math.min(bestListings, listingNanos);
+                    bestPushes = Math.min(bestPushes, pushNanos);
+                    bestDecode = Math.min(bestDecode, decode);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        int pushes = messages.length - listingCount;
+        System.out.printf("%-34s %9d %9d %6.1f%% %10.0f %10.0f %10s%n", name, wire, pushWire, 100.0 * wire / textBytes,
+                bestListings / 1e3 / listingCount, (double) bestPushes / pushes,
+                bestDecode > 0 ? String.format("%.1f ms", bestDecode / 1e6) : "-");
+    }
+
+    // Returns the number of lines read
+    private int decodeSession(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder();
+        int lines = 0;
+        long checksum = 0;
+        boolean lineStart = true;
+        try {
+            while (in.hasRemaining()) {
+                if (decoder.isReading()) {
+                    byte[] text = decoder.read(in);
+                    if (text != null) {
+                        for (byte b : text) {
+                            checksum += b;
+                            lines += b == '\n' ? 1 : 0;
+                        }
+                    }
+                    continue;
+                }
+                byte b = in.get();
+                if (b == FrameCodec.MARKER && lineStart) {
+                    decoder.begin();
+                } else {
+                    checksum += b;
+                    lines += b == '\n' ? 1 : 0;
+                    lineStart = b == '\n';
+                }
+            }
+        } finally {
+            decoder.end();
+        }
+        sink += checksum;
+        return lines;
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length < 2) {
+                throw new IllegalArgumentException("Invalid argument: " + args[i]);
+            }
+            switch (option[0]) {
+                case "--iterations":
+                    iterations = Integer.parseInt(option[1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(option[1]);
+                    break;
+                case "--auctions":
+                    auctions = Integer.parseInt(option[1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(option[1]);
+                    break;
+                case "--readers":
+                    readers = Integer.parseInt(option[1]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(option[1]);
+                    break;
+                case "--store":
+                    store = option[1];
+                    break;
+                case "--closings":
+                    closings = Integer.parseInt(option[1]);
+                    break;
+                case "--listings":
+                    listings = Integer.parseInt(option[1]);
+                    break;
+                case "--tapes":
+                    tapes = Integer.parseInt(option[1]);
+                    break;
+                case "--offHeap":
+                    offHeap = Boolean.parseBoolean(option[1]);
+                    break;
+                case "--searches":
+                    searches = Integer.parseInt(option[1]);
+                    break;
+                case "--active":
+                    active = Integer.parseInt(option[1]);
+                    break;
+                case "--bids":
+                    bids = Integer.parseInt(option[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0]);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Benchmark benchmark = new Benchmark();
+        try {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing mode (money, clock, softclose, store, pool, close, import, server, candles, percolate, compression)");
+            }
+            benchmark.parseArgs(args);
+            switch (args[0]) {
+                case "money":
+                    benchmark.money();
+                    break;
+                case "clock":
+                    benchmark.clock();
+                    break;
+                case "softclose":
+                    benchmark.softClose();
+                    break;
+                case "store":
+                    benchmark.store();
+                    break;
+                case "pool":
+                    benchmark.pool();
+                    break;
+                case "close":
+                    benchmark.close();
+                    break;
+                case "import":
+                    benchmark.importListings();
+                    break;
+                case "server":
+                    benchmark.server();
+                    break;
+                case "candles":
+                    benchmark.candles();
+                    break;
+                case "percolate":
+                    benchmark.percolate();
+                    break;
+                case "compression":
+                    benchmark.compression();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + args[0]);
+            }
+            System.out.println("(checksum " + benchmark.sink + ")");
+            System.exit(0); // the server mode's stopped server still holds the imported auctions' close timers
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
\ No newline at end of file
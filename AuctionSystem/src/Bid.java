@@ -1,17 +1,17 @@
 
 
-import java.sql.Timestamp;
-
 public class Bid {
     private int bidId;
     private int auctionId;
+    private int userId;
     private String username;
-    private double amount;
-    private Timestamp bidTime;
+    private long amount; // minor units, see Money
+    private long bidTime;  // epoch millis, see ServerClock
+    private long sequence; // server-wide order of acceptance, see AuctionStore.placeBid
     
     public Bid() {}
     
-    public Bid(int bidId, int auctionId, String username, double amount, Timestamp bidTime) {
+    public Bid(int bidId, int auctionId, String username, long amount, long bidTime) {
         this.bidId = bidId;
         this.auctionId = auctionId;
         this.username = username;
@@ -36,6 +36,14 @@ public class Bid {
         this.auctionId = auctionId;
     }
     
+    public int getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+    
     public String getUsername() {
         return username;
     }
@@ -44,19 +52,27 @@ public class Bid {
         this.username = username;
     }
     
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
     
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
     
-    public Timestamp getBidTime() {
+    public long getBidTime() {
         return bidTime;
     }
     
-    public void setBidTime(Timestamp bidTime) {
+    public void setBidTime(long bidTime) {
         this.bidTime = bidTime;
     }
+    
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// The most recent bids and the OHLC price candles of every active auction that has bids, for
+// BID_HISTORY and PRICE_CANDLES. Each auction gets a fixed-size slot in one large long buffer:
+// a ring of its last bidCapacity bids (time, amount, bidder), then for every candle interval
+// a ring of its last candleCapacity candles (period, open, high, low, close, bids). Recording
+// a bid writes a few longs in place, so the bid path allocates nothing; a slot is taken on an
+// auction's first bid and reused after it closes, like the rows of AuctionColumnStore.
+// The buffer can live off the heap (a direct ByteBuffer), where the GC never traces it.
+// A slot costs 8 * (3 * bids + 6 * intervals * candles) bytes, 1.5 KB with the defaults.
+// Candles are sparse: a period without bids has no candle, and the close of the one before
+// carries over. Writers are serialized by a lock; readers copy into arrays they own.
+public class BidTape {
+    public static final int DEFAULT_BIDS = 16;
+    public static final int DEFAULT_CANDLES = 12;
+    public static final int[] DEFAULT_CANDLE_SECONDS = {60, 3600};
+    public static final int BID_FIELDS = 3;    // time, amount, bidder
+    public static final int CANDLE_FIELDS = 6; // period start, open, high, low, close, bids
+
+    private final StampedLock lock = new StampedLock();
+    private final IntIntMap slots;
+    private final int bidCapacity;
+    private final int[] candleSeconds;
+    private final int candleCapacity;
+    private final boolean offHeap;
+    private final int slotLongs;
+
+    // By slot: bids ever recorded, and candles ever started per interval (slot * intervals + i)
+    private LongBuffer data;
+    private int[] bidCounts;
+    private int[] candleCounts;
+    private int slotCount; // slots ever used; free slots below it are on the free list
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    public BidTape(int expectedAuctions, int bidCapacity, int[] candleSeconds, int candleCapacity, boolean offHeap) {
+        if (bidCapacity < 1 || candleCapacity < 1) {
+            throw new IllegalArgumentException("Bid and candle counts must be at least 1");
+        }
+        for (int seconds : candleSeconds) {
+            if (seconds < 1) {
+                throw new IllegalArgumentException("Candle intervals must be at least 1 second");
+            }
+        }
+        this.bidCapacity = bidCapacity;
+        this.candleSeconds = candleSeconds.clone();
+        this.candleCapacity = candleCapacity;
+        this.offHeap = offHeap;
+        this.slotLongs = bidCapacity * BID_FIELDS + candleSeconds.length * candleCapacity * CANDLE_FIELDS;
+        int capacity = Math.max(16, expectedAuctions);
+        slots = new IntIntMap(capacity);
+        data = allocate(capacity);
+        bidCounts = new int[capacity];
+        candleCounts = new int[capacity * candleSeconds.length];
+    }
+
+    public int getBidCapacity() {
+        return bidCapacity;
+    }
+
+    public int getCandleCapacity() {
+        return candleCapacity;
+    }
+
+    public int[] getCandleSeconds() {
+        return candleSeconds.clone();
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    // Appends a bid to the auction's ring and folds it into its candles
+    public void record(int auctionId, int bidderId, long amount, long timeMillis) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slots.get(auctionId);
+            if (slot < 0) {
+                slot = allocateSlot();
+                slots.put(auctionId, slot);
+                bidCounts[slot] = 0;
+                Arrays.fill(candleCounts, slot * candleSeconds.length, (slot + 1) * candleSeconds.length, 0);
+            }
+            int base = slot * slotLongs;
+            int at = base + (bidCounts[slot] % bidCapacity) * BID_FIELDS;
+            data.put(at, timeMillis);
+            data.put(at + 1, amount);
+            data.put(at + 2, bidderId);
+            bidCounts[slot]++;
+
+            for (int i = 0; i < candleSeconds.length; i++) {
+                long length = candleSeconds[i] * 1000L;
+                long period = timeMillis - Math.floorMod(timeMillis, length);
+                int ring = base + bidCapacity * BID_FIELDS + i * candleCapacity * CANDLE_FIELDS;
+                int count = candleCounts[slot * candleSeconds.length + i];
+                int last = ring + ((count - 1) % candleCapacity) * CANDLE_FIELDS;
+                // A bid stamped before the last candle (the clock stepped back) joins that candle
+                if (count > 0 && period <= data.get(last)) {
+                    data.put(last + 2, Math.max(data.get(last + 2), amount));
+                    data.put(last + 3, Math.min(data.get(last + 3), amount));
+                    data.put(last + 4, amount);
+                    data.put(last + 5, data.get(last + 5) + 1);
+                    continue;
+                }
+                int next = ring + (count % candleCapacity) * CANDLE_FIELDS;
+                data.put(next, period);
+                data.put(next + 1, amount);
+                data.put(next + 2, amount);
+                data.put(next + 3, amount);
+                data.put(next + 4, amount);
+                data.put(next + 5, 1);
+                candleCounts[slot * candleSeconds.length + i] = count + 1;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Copies up to max of the auction's most recent bids, oldest first, into out as BID_FIELDS
+    // longs each; returns how many, 0 when the auction has no bids
+    public int recentBids(int auctionId, int max, long[] out) {
+        long stamp = lock.readLock();
+        try {
+            int slot = slots.get(auctionId);
+            if (slot < 0) {
+                return 0;
+            }
+            int total = bidCounts[slot];
+            int count = Math.min(Math.min(max, bidCapacity), total);
+            int base = slot * slotLongs;
+            for (int n = 0; n < count; n++) {
+                int at = base + ((total - count + n) % bidCapacity) * BID_FIELDS;
+                for (int f = 0; f < BID_FIELDS; f++) {
+                    out[n * BID_FIELDS + f] = data.get(at + f);
+                }
+            }
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Copies up to max of the auction's most recent candles of the interval, oldest first, into
+    // out as CANDLE_FIELDS longs each; returns how many, or -1 if the interval is not kept
+    public int candles(int auctionId, int intervalSeconds, int max, long[] out) {
+        int interval = intervalIndex(intervalSeconds);
+        if (interval < 0) {
+            return -1;
+        }
+        long stamp = lock.readLock();
+        try {
+            int slot = slots.get(auctionId);
+            if (slot < 0) {
+                return 0;
+            }
+            int total = candleCounts[slot * candleSeconds.length + interval];
+            int count = Math.min(Math.min(max, candleCapacity), total);
+            int ring = slot * slotLongs + bidCapacity * BID_FIELDS + interval * candleCapacity * CANDLE_FIELDS;
+            for (int n = 0; n < count; n++) {
+                int at = ring + ((total - count + n) % candleCapacity) * CANDLE_FIELDS;
+                for (int f = 0; f < CANDLE_FIELDS; f++) {
+                    out[n * CANDLE_FIELDS + f] = data.get(at + f);
+                }
+            }
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Frees the slot of a closed auction
+    public void remove(int auctionId) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slots.remove(auctionId);
+            if (slot < 0) {
+                return;
+            }
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Auctions holding a slot
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return slots.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int intervalIndex(int seconds) {
+        for (int i = 0; i < candleSeconds.length; i++) {
+            if (candleSeconds[i] == seconds) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private LongBuffer allocate(int slotCapacity) {
+        long longs = (long) slotCapacity * slotLongs;
+        if (longs > (offHeap ? Integer.MAX_VALUE / 8 : Integer.MAX_VALUE)) {
+            throw new IllegalStateException("Bid tape cannot hold " + slotCapacity + " auctions");
+        }
+        return offHeap ? ByteBuffer.allocateDirect((int) longs * 8).order(ByteOrder.nativeOrder()).asLongBuffer() : LongBuffer.allocate((int) longs);
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == bidCounts.length) {
+            grow(slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void grow(int capacity) {
+        LongBuffer grown = allocate(capacity);
+        LongBuffer old = data.duplicate();
+        old.clear();
+        grown.put(old);
+        grown.clear();
+        data = grown;
+        bidCounts = Arrays.copyOf(bidCounts, capacity);
+        candleCounts = Arrays.copyOf(candleCounts, capacity * candleSeconds.length);
+    }
+}
\ No newline at end of file
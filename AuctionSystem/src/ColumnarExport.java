@@ -0,0 +1,352 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A compact file of auctions and bids for offline analysis, column-chunked like Parquet but
+// readable without any library:
+//   header  "AUCX", version, then every table's name and its columns' names and types
+//   chunks  up to ROWS_PER_CHUNK rows of one table: table number, row count, then each column
+//           on its own, DEFLATE-compressed. Numbers are zigzag varints of the difference to
+//           the row before, text is a varint length and UTF-8
+//   end     table number 0; a file without it was cut short
+// Timestamps are epoch milliseconds, 0 for none; user columns hold usernames, "" for none.
+// Writer and Reader hold one chunk per table at most, whatever the size of the file.
+public class ColumnarExport {
+    public static final int ROWS_PER_CHUNK = 8192;
+    public static final int AUCTIONS = 1;
+    public static final int BIDS = 2;
+
+    private static final byte[] MAGIC = {'A', 'U', 'C', 'X'};
+    private static final int VERSION = 1;
+    private static final char NUMBER = 'N'; // any other type is text
+
+    // By table number
+    private static final String[] TABLE_NAMES = {null, "auctions", "bids"};
+    private static final String[][] COLUMN_NAMES = {
+        null,
+        {"auction_id", "item_name", "item_description", "starting_price", "final_price", "seller",
+            "auction_type", "start_time", "end_time", "status", "highest_bidder"},
+        {"bid_id", "auction_id", "bidder", "amount", "bid_time", "seq"}
+    };
+    private static final String[] COLUMN_TYPES = {null, "NTTNNTNNNTT", "NNTNNN"};
+
+    // One column of the chunk being written
+    private static final class ColumnBuffer extends ByteArrayOutputStream {
+        long previous;
+
+        void number(long value) {
+            writeVarLong(this, value - previous);
+            previous = value;
+        }
+
+        void text(String value) {
+            byte[] utf8 = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+            writeVarLong(this, utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            previous = 0;
+        }
+    }
+
+    // Streams rows into the file chunk by chunk; call finish() once every row is in
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] deflated = new byte[65536];
+        private final ColumnBuffer[][] columns = new ColumnBuffer[TABLE_NAMES.length][];
+        private final int[] rows = new int[TABLE_NAMES.length];
+        private final long[] totals = new long[TABLE_NAMES.length];
+
+        public Writer(OutputStream stream) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(stream, 65536));
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(TABLE_NAMES.length - 1);
+            for (int table = 1; table < TABLE_NAMES.length; table++) {
+                out.writeUTF(TABLE_NAMES[table]);
+                out.writeByte(COLUMN_NAMES[table].length);
+                columns[table] = new ColumnBuffer[COLUMN_NAMES[table].length];
+                for (int column = 0; column < COLUMN_NAMES[table].length; column++) {
+                    out.writeUTF(COLUMN_NAMES[table][column]);
+                    out.writeByte(COLUMN_TYPES[table].charAt(column));
+                    columns[table][column] = new ColumnBuffer();
+                }
+            }
+        }
+
+        public void auction(Auction auction) throws IOException {
+            ColumnBuffer[] row = columns[AUCTIONS];
+            row[0].number(auction.getAuctionId());
+            row[1].text(auction.getItemName());
+            row[2].text(auction.getItemDescription());
+            row[3].number(auction.getStartingPrice());
+            row[4].number(auction.getCurrentPrice());
+            row[5].text(auction.getSellerUsername());
+            row[6].number(auction.getAuctionType());
+            row[7].number(auction.getStartTime());
+            row[8].number(auction.getEndTime());
+            row[9].text(auction.getStatus());
+            row[10].text(auction.getHighestBidder());
+            endRow(AUCTIONS);
+        }
+
+        public void bid(Bid bid) throws IOException {
+            ColumnBuffer[] row = columns[BIDS];
+            row[0].number(bid.getBidId());
+            row[1].number(bid.getAuctionId());
+            row[2].text(bid.getUsername());
+            row[3].number(bid.getAmount());
+            row[4].number(bid.getBidTime());
+            row[5].number(bid.getSequence());
+            endRow(BIDS);
+        }
+
+        public long getAuctionCount() {
+            return totals[AUCTIONS];
+        }
+
+        public long getBidCount() {
+            return totals[BIDS];
+        }
+
+        // Writes the last chunks and the end marker
+        public void finish() throws IOException {
+            for (int table = 1; table < TABLE_NAMES.length; table++) {
+                writeChunk(table);
+            }
+            out.writeByte(0);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+
+        private void endRow(int table) throws IOException {
+            totals[table]++;
+            if (++rows[table] == ROWS_PER_CHUNK) {
+                writeChunk(table);
+            }
+        }
+
+        private void writeChunk(int table) throws IOException {
+            if (rows[table] == 0) {
+                return;
+            }
+            out.writeByte(table);
+            out.writeInt(rows[table]);
+            for (ColumnBuffer column : columns[table]) {
+                byte[] raw = column.toByteArray();
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 16);
+                while (!deflater.finished()) {
+                    compressed.write(deflated, 0, deflater.deflate(deflated));
+                }
+                out.writeInt(raw.length);
+                out.writeInt(compressed.size());
+                compressed.writeTo(out);
+                column.reset();
+            }
+            rows[table] = 0;
+        }
+    }
+
+    // One chunk as read back: every column of up to ROWS_PER_CHUNK rows of one table
+    public static final class Chunk {
+        private final int table;
+        private final int rows;
+        private final long[][] numbers; // by column, null for text columns
+        private final String[][] texts;  // by column, null for number columns
+
+        Chunk(int table, int rows, long[][] numbers, String[][] texts) {
+            this.table = table;
+            this.rows = rows;
+            this.numbers = numbers;
+            this.texts = texts;
+        }
+
+        public int getTable() {
+            return table;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public boolean isNumber(int column) {
+            return numbers[column] != null;
+        }
+
+        public long getNumber(int column, int row) {
+            return numbers[column][row];
+        }
+
+        public String getText(int column, int row) {
+            return texts[column][row];
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private String[] tableNames;
+        private String[][] columnNames;
+        private String[] columnTypes;
+
+        public Reader(InputStream stream) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(stream, 65536));
+            try {
+                readHeader();
+            } catch (EOFException e) {
+                throw new IOException("Export file is incomplete");
+            }
+        }
+
+        private void readHeader() throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an auction export file");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported export version " + version);
+            }
+            int tables = in.readUnsignedByte();
+            tableNames = new String[tables + 1];
+            columnNames = new String[tables + 1][];
+            columnTypes = new String[tables + 1];
+            for (int table = 1; table <= tables; table++) {
+                tableNames[table] = in.readUTF();
+                columnNames[table] = new String[in.readUnsignedByte()];
+                StringBuilder types = new StringBuilder();
+                for (int column = 0; column < columnNames[table].length; column++) {
+                    columnNames[table][column] = in.readUTF();
+                    types.append((char) in.readUnsignedByte());
+                }
+                columnTypes[table] = types.toString();
+            }
+        }
+
+        // 0 if there is no such table in this file
+        public int tableNumber(String name) {
+            for (int table = 1; table < tableNames.length; table++) {
+                if (tableNames[table].equals(name)) {
+                    return table;
+                }
+            }
+            return 0;
+        }
+
+        public String[] getColumnNames(int table) {
+            return columnNames[table].clone();
+        }
+
+        // The next chunk of any table, or null at the end of the file
+        public Chunk next() throws IOException {
+            try {
+                return readChunk();
+            } catch (EOFException e) {
+                throw new IOException("Export file is incomplete");
+            }
+        }
+
+        private Chunk readChunk() throws IOException {
+            int table = in.readUnsignedByte();
+            if (table == 0) {
+                return null;
+            }
+            if (table >= tableNames.length) {
+                throw new IOException("Unknown table " + table);
+            }
+            int rows = in.readInt();
+            int columnCount = columnNames[table].length;
+            long[][] numbers = new long[columnCount][];
+            String[][] texts = new String[columnCount][];
+            for (int column = 0; column < columnCount; column++) {
+                ByteArrayInputStream data = new ByteArrayInputStream(inflate());
+                if (columnTypes[table].charAt(column) == NUMBER) {
+                    numbers[column] = new long[rows];
+                    long value = 0;
+                    for (int row = 0; row < rows; row++) {
+                        value += readVarLong(data);
+                        numbers[column][row] = value;
+                    }
+                } else {
+                    texts[column] = new String[rows];
+                    for (int row = 0; row < rows; row++) {
+                        byte[] utf8 = new byte[(int) readVarLong(data)];
+                        if (data.available() < utf8.length) {
+                            throw new IOException("Text column is cut short");
+                        }
+                        data.read(utf8, 0, utf8.length);
+                        texts[column][row] = new String(utf8, StandardCharsets.UTF_8);
+                    }
+                }
+            }
+            return new Chunk(table, rows, numbers, texts);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+
+        private byte[] inflate() throws IOException {
+            byte[] raw = new byte[in.readInt()];
+            byte[] compressed = new byte[in.readInt()];
+            in.readFully(compressed);
+            inflater.reset();
+            inflater.setInput(compressed);
+            try {
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    length += inflater.inflate(raw, length, raw.length - length);
+                }
+                if (length != raw.length) {
+                    throw new IOException("Column is cut short");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt column: " + e.getMessage());
+            }
+            return raw;
+        }
+    }
+
+    // Zigzag keeps small negative differences as short as small positive ones
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Number column is cut short");
+            }
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed number");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+// SQLite connections to one database file in WAL mode: a single writer, because SQLite runs
+// one write transaction at a time, and a few query-only readers that read the last committed
+// state without waiting for the writer. Every connection caches its own prepared statements,
+// so a statement is prepared once per connection and is never used by two threads at once.
+// An in-memory database cannot be opened twice, so it gets no readers and reads use the writer.
+public class ConnectionPool {
+    public static final int DEFAULT_READERS = 4;
+
+    // One connection and the statements prepared on it; held by one thread at a time
+    public static class PooledConnection {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection conn) {
+            this.conn = conn;
+        }
+
+        public Connection getConnection() {
+            return conn;
+        }
+
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = conn.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        // For inserts whose generated key is read back
+        public PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        void close() throws SQLException {
+            for (PreparedStatement stmt : statements.values()) {
+                stmt.close();
+            }
+            conn.close();
+        }
+    }
+
+    private final PooledConnection writer;
+    private final ReentrantLock writerLock = new ReentrantLock(); // reentrant: write methods call each other
+    private final PooledConnection[] readers;
+    private final BlockingQueue<PooledConnection> idleReaders;
+
+    public ConnectionPool(String dbPath, int readerCount) throws SQLException {
+        String url = "jdbc:sqlite:" + dbPath;
+        if (isInMemory(dbPath)) {
+            readerCount = 0;
+        }
+
+        Connection conn = DriverManager.getConnection(url);
+        if (readerCount > 0) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("PRAGMA journal_mode = WAL"); // stays set in the file
+            stmt.close();
+        }
+        writer = new PooledConnection(conn);
+
+        readers = new PooledConnection[readerCount];
+        idleReaders = new ArrayBlockingQueue<>(Math.max(1, readerCount));
+        for (int i = 0; i < readerCount; i++) {
+            Connection reader = DriverManager.getConnection(url);
+            Statement stmt = reader.createStatement();
+            stmt.execute("PRAGMA query_only = ON"); // a write on a reader fails instead of competing for the lock
+            stmt.close();
+            readers[i] = new PooledConnection(reader);
+            idleReaders.add(readers[i]);
+        }
+    }
+
+    private static boolean isInMemory(String dbPath) {
+        return dbPath.isEmpty() || dbPath.startsWith(":memory:") || dbPath.contains("mode=memory");
+    }
+
+    public int getReaderCount() {
+        return readers.length;
+    }
+
+    // Blocks while another thread holds the writer; give it back with release()
+    public PooledConnection acquireWriter() {
+        writerLock.lock();
+        return writer;
+    }
+
+    // Blocks while every reader is in use; falls back to the writer when there are no readers
+    public PooledConnection acquireReader() throws SQLException {
+        if (readers.length == 0) {
+            return acquireWriter();
+        }
+        try {
+            return idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+    }
+
+    public void release(PooledConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        if (connection == writer) {
+            writerLock.unlock();
+        } else {
+            idleReaders.add(connection);
+        }
+    }
+
+    public void close() {
+        try {
+            for (PooledConnection reader : readers) {
+                reader.close();
+            }
+            writer.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database connection: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -1,131 +1,466 @@
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class DatabaseManager {
-    private Connection conn;
-    
-    // Prepared statements for database operations
-    private PreparedStatement getUserStmt;
-    private PreparedStatement registerUserStmt;
-    private PreparedStatement createAuctionStmt;
-    private PreparedStatement getActiveAuctionsStmt;
-    private PreparedStatement joinAuctionStmt;
-    private PreparedStatement checkUserInAuctionStmt;
-    private PreparedStatement placeBidStmt;
-    private PreparedStatement getHighestBidStmt;
-    private PreparedStatement withdrawFromAuctionStmt;
-    private PreparedStatement checkUserHighestBidderStmt;
-    private PreparedStatement getUserAuctionsStmt;
-    private PreparedStatement getUserRegisteredAuctionsStmt;
-    private PreparedStatement getAuctionByIdStmt;
-    private PreparedStatement getAuctionParticipantsStmt;
-    private PreparedStatement closeAuctionStmt;
+public class DatabaseManager implements AuctionStore {
+    // Schema version kept in PRAGMA user_version; every change bumps it and adds a step to migrateSchema()
+    //   1: prices and bid amounts stored as INTEGER minor units instead of REAL
+    //   2: integer user IDs instead of usernames in auctions, auction_participants and bids
+    //   3: auctions_archive, bids_archive and auction_participants_archive for closed auctions
+    //   4: start, end and bid times as INTEGER epoch millis instead of TIMESTAMP; bids numbered by seq
+    //   5: replication_position, the last event a follower has applied
+    //   6: replication_position.log_id, the primary's log that position counts in
+    private static final int SCHEMA_VERSION = 6;
+    
+    // One writer and a few readers (WAL), each with its own prepared statements: methods that
+    // write take the writer, so writes are serialized; pure reads take any idle reader
+    private ConnectionPool pool;
+    private final UserDirectory users = new UserDirectory();
+    
+    // Statements, prepared lazily on each connection that runs them (ConnectionPool.PooledConnection)
+    // Users
+    private static final String GET_USER = "SELECT * FROM users WHERE username = ?";
+    private static final String REGISTER_USER = "INSERT INTO users (username, password, name, surname, id_number, phone, email, ip_address) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String GET_USER_IDS = "SELECT user_id, username FROM users";
+    
+    // Auctions
+    private static final String CREATE_AUCTION = "INSERT INTO auctions (item_name, item_description, starting_price, current_price, seller_id, auction_type, start_time, end_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String CREATE_AUCTION_WITH_ID = "INSERT INTO auctions (item_name, item_description, starting_price, current_price, seller_id, auction_type, start_time, end_time, auction_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Archived IDs count too, so a partition never hands out the ID of an archived auction
+    private static final String MAX_AUCTION_ID = "SELECT MAX(COALESCE((SELECT MAX(auction_id) FROM auctions), 0), COALESCE((SELECT MAX(auction_id) FROM auctions_archive), 0))";
+    private static final String GET_ACTIVE_AUCTIONS = "SELECT * FROM auctions WHERE status = 'active'";
+    private static final String GET_AUCTION_BY_ID = "SELECT * FROM auctions WHERE auction_id = ?";
+    private static final String UPDATE_AUCTION_PRICE = "UPDATE auctions SET current_price = ?, highest_bidder_id = ? WHERE auction_id = ?";
+    private static final String CLOSE_AUCTION = "UPDATE auctions SET status = 'closed', current_price = ?, highest_bidder_id = ? WHERE auction_id = ?";
+    private static final String EXTEND_AUCTION = "UPDATE auctions SET end_time = ? WHERE auction_id = ? AND status = 'active'";
+    
+    // Archive: closed auctions move out of the hot tables with their bids and participants.
+    // The archive tables have the same layouts, so rows are copied with SELECT *
+    private static final String GET_CLOSED_BATCH = "SELECT auction_id FROM auctions WHERE status = 'closed' ORDER BY auction_id LIMIT ?";
+    private static final String[] ARCHIVE_AUCTION = {
+        "INSERT INTO auctions_archive SELECT * FROM auctions WHERE auction_id = ?",
+        "INSERT INTO bids_archive SELECT * FROM bids WHERE auction_id = ?",
+        "INSERT INTO auction_participants_archive SELECT * FROM auction_participants WHERE auction_id = ?",
+        "DELETE FROM bids WHERE auction_id = ?",
+        "DELETE FROM auction_participants WHERE auction_id = ?",
+        "DELETE FROM auctions WHERE auction_id = ?"
+    };
+    private static final String GET_CLOSED_AUCTION = "SELECT * FROM auctions WHERE auction_id = ? AND status = 'closed' UNION ALL SELECT * FROM auctions_archive WHERE auction_id = ?";
+    private static final String GET_BID_HISTORY = "SELECT amount, user_id, bid_time, seq FROM bids WHERE auction_id = ? UNION ALL SELECT amount, user_id, bid_time, seq FROM bids_archive WHERE auction_id = ? ORDER BY seq";
+    
+    // Export: every row of the hot and archive tables, in table order so nothing is sorted
+    private static final String EXPORT_AUCTIONS = "SELECT * FROM auctions UNION ALL SELECT * FROM auctions_archive";
+    private static final String EXPORT_BIDS = "SELECT bid_id, auction_id, user_id, amount, bid_time, seq FROM bids UNION ALL SELECT bid_id, auction_id, user_id, amount, bid_time, seq FROM bids_archive";
+    
+    // Auction participants
+    private static final String JOIN_AUCTION = "INSERT INTO auction_participants (auction_id, user_id) VALUES (?, ?)";
+    private static final String CHECK_USER_IN_AUCTION = "SELECT 1 FROM auction_participants WHERE auction_id = ? AND user_id = ?";
+    private static final String WITHDRAW_FROM_AUCTION = "DELETE FROM auction_participants WHERE auction_id = ? AND user_id = ?";
+    private static final String GET_AUCTION_PARTICIPANTS = "SELECT user_id FROM auction_participants WHERE auction_id = ?";
+    private static final String GET_ACTIVE_PARTICIPANTS = "SELECT p.auction_id, p.user_id FROM auction_participants p JOIN auctions a ON a.auction_id = p.auction_id WHERE a.status = 'active'";
+    
+    // Bids
+    private static final String PLACE_BID = "INSERT INTO bids (auction_id, user_id, amount, bid_time, seq) VALUES (?, ?, ?, ?, ?)";
+    private static final String GET_HIGHEST_BID = "SELECT b.amount, b.user_id, b.bid_time, b.seq FROM bids b WHERE b.auction_id = ? ORDER BY b.amount DESC LIMIT 1";
+    private static final String MAX_BID_SEQ = "SELECT MAX(COALESCE((SELECT MAX(seq) FROM bids), 0), COALESCE((SELECT MAX(seq) FROM bids_archive), 0))";
+    
+    // Replication: one row, the sequence number of the last event applied from the primary
+    private static final String GET_REPLICATION_POSITION = "SELECT last_seq FROM replication_position";
+    private static final String GET_REPLICATION_LOG = "SELECT log_id FROM replication_position";
+    private static final String SET_REPLICATION_POSITION = "UPDATE replication_position SET last_seq = ?, log_id = ?";
+    
+    // Auction ID partition for multi-node mode: IDs are allocated so that id % idCount == idIndex
+    private int idIndex = 0;
+    private int idCount = 1;
     
     public DatabaseManager() {
+        this("auction_system.db");
+    }
+    
+    public DatabaseManager(String dbPath) {
+        this(dbPath, ConnectionPool.DEFAULT_READERS);
+    }
+    
+    public DatabaseManager(String dbPath, int readers) {
+        ConnectionPool.PooledConnection writer = null;
         try {
             // Connect to SQLite database
-            conn = DriverManager.getConnection("jdbc:sqlite:auction_system.db");
+            pool = new ConnectionPool(dbPath, readers);
+            writer = pool.acquireWriter();
+            Connection conn = writer.getConnection();
             
-            // Create tables if they don't exist
+            // Bring an existing database up to date, then create tables if they don't exist
             Statement stmt = conn.createStatement();
+            migrateSchema(conn, stmt);
             
             // Users table
-            stmt.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS users (" +
-                "username TEXT PRIMARY KEY, " +
-                "password TEXT NOT NULL, " +
-                "name TEXT NOT NULL, " +
-                "surname TEXT NOT NULL, " +
-                "id_number TEXT NOT NULL, " +
-                "phone TEXT NOT NULL, " +
-                "email TEXT NOT NULL, " +
-                "ip_address TEXT NOT NULL)"
-            );
+            createUsersTable(stmt, "users");
             
             // Auctions table
-            stmt.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS auctions (" +
-                "auction_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "item_name TEXT NOT NULL, " +
-                "item_description TEXT NOT NULL, " +
-                "starting_price REAL NOT NULL, " +
-                "current_price REAL NOT NULL, " +
-                "seller_username TEXT NOT NULL, " +
-                "auction_type INTEGER NOT NULL, " +
-                "start_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "end_time TIMESTAMP, " +
-                "status TEXT DEFAULT 'active', " +
-                "highest_bidder TEXT, " +
-                "FOREIGN KEY (seller_username) REFERENCES users(username))"
-            );
+            createAuctionsTable(stmt, "auctions");
             
             // Auction participants table
-            stmt.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS auction_participants (" +
-                "auction_id INTEGER NOT NULL, " +
-                "username TEXT NOT NULL, " +
-                "PRIMARY KEY (auction_id, username), " +
-                "FOREIGN KEY (auction_id) REFERENCES auctions(auction_id), " +
-                "FOREIGN KEY (username) REFERENCES users(username))"
-            );
+            createParticipantsTable(stmt, "auction_participants");
             
             // Bids table
-            stmt.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS bids (" +
-                "bid_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "auction_id INTEGER NOT NULL, " +
-                "username TEXT NOT NULL, " +
-                "amount REAL NOT NULL, " +
-                "bid_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "FOREIGN KEY (auction_id) REFERENCES auctions(auction_id), " +
-                "FOREIGN KEY (username) REFERENCES users(username))"
-            );
-            
-            // Prepare statements
-            prepareStatements();
+            createBidsTable(stmt, "bids");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS bids_by_auction ON bids (auction_id, amount)");
+            
+            // Archive of closed auctions, see archiveClosedAuctions()
+            createAuctionsTable(stmt, "auctions_archive");
+            createParticipantsTable(stmt, "auction_participants_archive");
+            createBidsTable(stmt, "bids_archive");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS bids_archive_by_auction ON bids_archive (auction_id, amount)");
+            
+            // Where a follower resumes, see applyReplicated()
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS replication_position (last_seq INTEGER NOT NULL, log_id TEXT)");
+            stmt.executeUpdate("INSERT INTO replication_position (last_seq) SELECT 0 WHERE NOT EXISTS (SELECT 1 FROM replication_position)");
+            
+            stmt.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+            stmt.close();
+            
+            loadUserDirectory(writer);
             
         } catch (SQLException e) {
             System.err.println("Database initialization error: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            if (pool != null) {
+                pool.release(writer);
+            }
         }
     }
     
-    private void prepareStatements() throws SQLException {
-        // Users
-        getUserStmt = conn.prepareStatement("SELECT * FROM users WHERE username = ?");
-        registerUserStmt = conn.prepareStatement("INSERT INTO users (username, password, name, surname, id_number, phone, email, ip_address) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
-        
-        // Auctions
-        createAuctionStmt = conn.prepareStatement("INSERT INTO auctions (item_name, item_description, starting_price, current_price, seller_username, auction_type, end_time) VALUES (?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
-        getActiveAuctionsStmt = conn.prepareStatement("SELECT * FROM auctions WHERE status = 'active'");
-        getAuctionByIdStmt = conn.prepareStatement("SELECT * FROM auctions WHERE auction_id = ?");
-        getUserAuctionsStmt = conn.prepareStatement("SELECT * FROM auctions WHERE seller_username = ? AND status = 'active'");
-        getUserRegisteredAuctionsStmt = conn.prepareStatement("SELECT a.* FROM auctions a JOIN auction_participants p ON a.auction_id = p.auction_id WHERE p.username = ? AND a.status = 'active'");
-        closeAuctionStmt = conn.prepareStatement("UPDATE auctions SET status = 'closed', current_price = ?, highest_bidder = ? WHERE auction_id = ?");
+    // Readers available to concurrent read tasks (0 for an in-memory database)
+    @Override
+    public int getReaderCount() {
+        return pool != null ? pool.getReaderCount() : 0;
+    }
+    
+    // Current table layouts. Users are referenced by user_id everywhere but the users table;
+    // prices are INTEGER minor units (cents), see Money; times are INTEGER epoch millis, given
+    // by the server's clock rather than defaulted here, see ServerClock
+    private void createUsersTable(Statement stmt, String table) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "user_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "username TEXT NOT NULL UNIQUE, " +
+            "password TEXT NOT NULL, " +
+            "name TEXT NOT NULL, " +
+            "surname TEXT NOT NULL, " +
+            "id_number TEXT NOT NULL, " +
+            "phone TEXT NOT NULL, " +
+            "email TEXT NOT NULL, " +
+            "ip_address TEXT NOT NULL)"
+        );
+    }
+    
+    private void createAuctionsTable(Statement stmt, String table) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "auction_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "item_name TEXT NOT NULL, " +
+            "item_description TEXT NOT NULL, " +
+            "starting_price INTEGER NOT NULL, " +
+            "current_price INTEGER NOT NULL, " +
+            "seller_id INTEGER NOT NULL, " +
+            "auction_type INTEGER NOT NULL, " +
+            "start_time INTEGER NOT NULL, " +
+            "end_time INTEGER, " +
+            "status TEXT DEFAULT 'active', " +
+            "highest_bidder_id INTEGER, " +
+            "FOREIGN KEY (seller_id) REFERENCES users(user_id))"
+        );
+    }
+    
+    // Two integers per row and no rowid: the primary key is the whole table
+    private void createParticipantsTable(Statement stmt, String table) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "auction_id INTEGER NOT NULL, " +
+            "user_id INTEGER NOT NULL, " +
+            "PRIMARY KEY (auction_id, user_id), " +
+            "FOREIGN KEY (auction_id) REFERENCES auctions(auction_id), " +
+            "FOREIGN KEY (user_id) REFERENCES users(user_id)) WITHOUT ROWID"
+        );
+    }
+    
+    private void createBidsTable(Statement stmt, String table) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "bid_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "auction_id INTEGER NOT NULL, " +
+            "user_id INTEGER NOT NULL, " +
+            "amount INTEGER NOT NULL, " +
+            "bid_time INTEGER NOT NULL, " +
+            "seq INTEGER NOT NULL, " +
+            "FOREIGN KEY (auction_id) REFERENCES auctions(auction_id), " +
+            "FOREIGN KEY (user_id) REFERENCES users(user_id))"
+        );
+    }
+    
+    private void migrateSchema(Connection conn, Statement stmt) throws SQLException {
+        ResultSet rs = stmt.executeQuery("PRAGMA user_version");
+        int version = rs.next() ? rs.getInt(1) : 0;
+        rs.close();
         
-        // Auction participants
-        joinAuctionStmt = conn.prepareStatement("INSERT INTO auction_participants (auction_id, username) VALUES (?, ?)");
-        checkUserInAuctionStmt = conn.prepareStatement("SELECT * FROM auction_participants WHERE auction_id = ? AND username = ?");
-        withdrawFromAuctionStmt = conn.prepareStatement("DELETE FROM auction_participants WHERE auction_id = ? AND username = ?");
-        getAuctionParticipantsStmt = conn.prepareStatement("SELECT username FROM auction_participants WHERE auction_id = ?");
+        rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = 'auctions'");
+        boolean existing = rs.next();
+        rs.close();
+        if (!existing || version >= SCHEMA_VERSION) {
+            return; // New database, created at the current version below
+        }
         
-        // Bids
-        placeBidStmt = conn.prepareStatement("INSERT INTO bids (auction_id, username, amount) VALUES (?, ?, ?)");
-        getHighestBidStmt = conn.prepareStatement("SELECT b.amount, b.username, b.bid_time FROM bids b WHERE b.auction_id = ? ORDER BY b.amount DESC LIMIT 1");
-        checkUserHighestBidderStmt = conn.prepareStatement("SELECT COUNT(*) FROM auctions WHERE highest_bidder = ? AND status = 'active'");
+        System.out.println("Migrating database from schema version " + version + " to " + SCHEMA_VERSION);
+        conn.setAutoCommit(false);
+        try {
+            // Each step creates the layouts of its own version; the latest one may use the
+            // create*Table helpers until a later version changes those tables
+            if (version < 1) {
+                // REAL prices -> INTEGER cents. Tables are rebuilt because SQLite cannot change a
+                // column's type; foreign keys are not enforced, so references survive the swap.
+                stmt.executeUpdate(
+                    "CREATE TABLE auctions_v1 (" +
+                    "auction_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "item_name TEXT NOT NULL, " +
+                    "item_description TEXT NOT NULL, " +
+                    "starting_price INTEGER NOT NULL, " +
+                    "current_price INTEGER NOT NULL, " +
+                    "seller_username TEXT NOT NULL, " +
+                    "auction_type INTEGER NOT NULL, " +
+                    "start_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "end_time TIMESTAMP, " +
+                    "status TEXT DEFAULT 'active', " +
+                    "highest_bidder TEXT, " +
+                    "FOREIGN KEY (seller_username) REFERENCES users(username))"
+                );
+                stmt.executeUpdate(
+                    "INSERT INTO auctions_v1 SELECT auction_id, item_name, item_description, " +
+                    "CAST(ROUND(starting_price * 100) AS INTEGER), CAST(ROUND(current_price * 100) AS INTEGER), " +
+                    "seller_username, auction_type, start_time, end_time, status, highest_bidder FROM auctions"
+                );
+                stmt.executeUpdate("DROP TABLE auctions");
+                stmt.executeUpdate("ALTER TABLE auctions_v1 RENAME TO auctions");
+                
+                stmt.executeUpdate(
+                    "CREATE TABLE bids_v1 (" +
+                    "bid_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "auction_id INTEGER NOT NULL, " +
+                    "username TEXT NOT NULL, " +
+                    "amount INTEGER NOT NULL, " +
+                    "bid_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "FOREIGN KEY (auction_id) REFERENCES auctions(auction_id), " +
+                    "FOREIGN KEY (username) REFERENCES users(username))"
+                );
+                stmt.executeUpdate(
+                    "INSERT INTO bids_v1 SELECT bid_id, auction_id, username, " +
+                    "CAST(ROUND(amount * 100) AS INTEGER), bid_time FROM bids"
+                );
+                stmt.executeUpdate("DROP TABLE bids");
+                stmt.executeUpdate("ALTER TABLE bids_v1 RENAME TO bids");
+            }
+            if (version < 2) {
+                // Usernames -> user IDs, numbered in registration order
+                createUsersTable(stmt, "users_v2");
+                stmt.executeUpdate(
+                    "INSERT INTO users_v2 (username, password, name, surname, id_number, phone, email, ip_address) " +
+                    "SELECT username, password, name, surname, id_number, phone, email, ip_address FROM users ORDER BY rowid"
+                );
+                
+                stmt.executeUpdate(
+                    "CREATE TABLE auctions_v2 (" +
+                    "auction_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "item_name TEXT NOT NULL, " +
+                    "item_description TEXT NOT NULL, " +
+                    "starting_price INTEGER NOT NULL, " +
+                    "current_price INTEGER NOT NULL, " +
+                    "seller_id INTEGER NOT NULL, " +
+                    "auction_type INTEGER NOT NULL, " +
+                    "start_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "end_time TIMESTAMP, " +
+                    "status TEXT DEFAULT 'active', " +
+                    "highest_bidder_id INTEGER, " +
+                    "FOREIGN KEY (seller_id) REFERENCES users(user_id))"
+                );
+                stmt.executeUpdate(
+                    "INSERT INTO auctions_v2 SELECT a.auction_id, a.item_name, a.item_description, " +
+                    "a.starting_price, a.current_price, COALESCE(s.user_id, 0), a.auction_type, a.start_time, " +
+                    "a.end_time, a.status, h.user_id FROM auctions a " +
+                    "LEFT JOIN users_v2 s ON s.username = a.seller_username " +
+                    "LEFT JOIN users_v2 h ON h.username = a.highest_bidder"
+                );
+                
+                createParticipantsTable(stmt, "auction_participants_v2");
+                stmt.executeUpdate(
+                    "INSERT INTO auction_participants_v2 SELECT p.auction_id, u.user_id " +
+                    "FROM auction_participants p JOIN users_v2 u ON u.username = p.username"
+                );
+                
+                stmt.executeUpdate(
+                    "CREATE TABLE bids_v2 (" +
+                    "bid_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "auction_id INTEGER NOT NULL, " +
+                    "user_id INTEGER NOT NULL, " +
+                    "amount INTEGER NOT NULL, " +
+                    "bid_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "FOREIGN KEY (auction_id) REFERENCES auctions(auction_id), " +
+                    "FOREIGN KEY (user_id) REFERENCES users(user_id))"
+                );
+                stmt.executeUpdate(
+                    "INSERT INTO bids_v2 SELECT b.bid_id, b.auction_id, u.user_id, b.amount, b.bid_time " +
+                    "FROM bids b JOIN users_v2 u ON u.username = b.username"
+                );
+                
+                for (String table : new String[] {"users", "auctions", "auction_participants", "bids"}) {
+                    stmt.executeUpdate("DROP TABLE " + table);
+                    stmt.executeUpdate("ALTER TABLE " + table + "_v2 RENAME TO " + table);
+                }
+            }
+            if (version < 3) {
+                // Only new tables: the archive tables are created with the others after migrating
+            }
+            if (version < 4) {
+                // TIMESTAMP -> INTEGER epoch millis. The driver wrote end times as millis already,
+                // but the CURRENT_TIMESTAMP defaults of start and bid times are UTC text. Existing
+                // bids are numbered in bid_id order, the order they were placed in.
+                for (String suffix : new String[] {"", "_archive"}) {
+                    if (!tableExists(stmt, "auctions" + suffix)) {
+                        continue; // before version 3: the archive tables are created after migrating
+                    }
+                    createAuctionsTable(stmt, "auctions" + suffix + "_v4");
+                    stmt.executeUpdate(
+                        "INSERT INTO auctions" + suffix + "_v4 SELECT auction_id, item_name, item_description, " +
+                        "starting_price, current_price, seller_id, auction_type, COALESCE(" + millisOf("start_time") + ", 0), " +
+                        millisOf("end_time") + ", status, highest_bidder_id FROM auctions" + suffix
+                    );
+                    createBidsTable(stmt, "bids" + suffix + "_v4");
+                    stmt.executeUpdate(
+                        "INSERT INTO bids" + suffix + "_v4 SELECT bid_id, auction_id, user_id, amount, " +
+                        "COALESCE(" + millisOf("bid_time") + ", 0), bid_id FROM bids" + suffix
+                    );
+                    for (String table : new String[] {"auctions" + suffix, "bids" + suffix}) {
+                        stmt.executeUpdate("DROP TABLE " + table);
+                        stmt.executeUpdate("ALTER TABLE " + table + "_v4 RENAME TO " + table);
+                    }
+                }
+            }
+            if (version < 5) {
+                // Only a new table, created with the others after migrating
+            }
+            if (version < 6 && tableExists(stmt, "replication_position")) {
+                // A position without its log cannot be resumed: the follower needs a fresh copy
+                // of the primary's database, which restarted into a new log to upgrade anyway
+                stmt.executeUpdate("ALTER TABLE replication_position ADD COLUMN log_id TEXT");
+            }
+            stmt.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    private static boolean tableExists(Statement stmt, String table) throws SQLException {
+        ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = '" + table + "'");
+        boolean exists = rs.next();
+        rs.close();
+        return exists;
+    }
+    
+    // A TIMESTAMP column as epoch millis, NULL stays NULL: numbers are millis already, text is
+    // CURRENT_TIMESTAMP's UTC "YYYY-MM-DD HH:MM:SS"
+    private static String millisOf(String column) {
+        return "CASE WHEN typeof(" + column + ") IN ('integer', 'real') THEN CAST(" + column + " AS INTEGER) " +
+               "ELSE CAST(ROUND((julianday(" + column + ") - 2440587.5) * 86400000) AS INTEGER) END";
     }
     
+    private void loadUserDirectory(ConnectionPool.PooledConnection connection) throws SQLException {
+        ResultSet rs = connection.prepare(GET_USER_IDS).executeQuery();
+        while (rs.next()) {
+            users.add(rs.getInt(1), rs.getString(2));
+        }
+        rs.close();
+    }
+    
+    // Transactions of the write methods that applyReplicated() may call. There the writer has
+    // a transaction open already, and the method runs in a savepoint of it instead, so that
+    // its rollback undoes its own writes only and its commit waits for the event's
+    private static Savepoint begin(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            return conn.setSavepoint();
+        }
+        conn.setAutoCommit(false);
+        return null;
+    }
+    
+    private static void commit(Connection conn, Savepoint savepoint) throws SQLException {
+        if (savepoint == null) {
+            conn.commit();
+        } else {
+            conn.releaseSavepoint(savepoint);
+        }
+    }
+    
+    private static void rollback(Connection conn, Savepoint savepoint) throws SQLException {
+        if (savepoint == null) {
+            conn.rollback();
+        } else {
+            conn.rollback(savepoint);
+        }
+    }
+    
+    private static void end(Connection conn, Savepoint savepoint) throws SQLException {
+        if (savepoint == null) {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    @Override
+    public UserDirectory getUserDirectory() {
+        return users;
+    }
+    
+    // NO_USER is stored as NULL, e.g. an auction closed without bids
+    private static void setUserId(PreparedStatement stmt, int index, int userId) throws SQLException {
+        if (userId == UserDirectory.NO_USER) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setInt(index, userId);
+        }
+    }
+    
+    // NO_END_TIME is stored as NULL, the end time of an ongoing auction
+    private static void setEndTime(PreparedStatement stmt, int index, long endTime) throws SQLException {
+        if (endTime == Auction.NO_END_TIME) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setLong(index, endTime);
+        }
+    }
+    
+    // Result sets are closed before a connection goes back to the pool: an open one keeps a
+    // reader's read transaction, and with it an old snapshot of the database, alive
+    
+    @Override
     public boolean registerUser(String username, String password, String name, String surname, String idNumber, String phone, String email, String ipAddress) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
         try {
             // Check if username already exists
+            PreparedStatement getUserStmt = writer.prepare(GET_USER);
             getUserStmt.setString(1, username);
             ResultSet rs = getUserStmt.executeQuery();
-            if (rs.next()) {
+            boolean exists = rs.next();
+            rs.close();
+            if (exists) {
                 return false; // User already exists
             }
             
             // Register new user
+            PreparedStatement registerUserStmt = writer.prepareReturningKeys(REGISTER_USER);
             registerUserStmt.setString(1, username);
             registerUserStmt.setString(2, password);
             registerUserStmt.setString(3, name);
@@ -136,20 +471,33 @@ public class DatabaseManager {
             registerUserStmt.setString(8, ipAddress);
             registerUserStmt.executeUpdate();
             
+            rs = registerUserStmt.getGeneratedKeys();
+            if (rs.next()) {
+                users.add(rs.getInt(1), username);
+            }
+            rs.close();
             return true;
         } catch (SQLException e) {
             System.err.println("Error registering user: " + e.getMessage());
             return false;
+        } finally {
+            pool.release(writer);
         }
     }
     
+    @Override
     public User getUser(String username) {
+        ConnectionPool.PooledConnection reader = null;
         try {
+            reader = pool.acquireReader();
+            PreparedStatement getUserStmt = reader.prepare(GET_USER);
             getUserStmt.setString(1, username);
             ResultSet rs = getUserStmt.executeQuery();
             
+            User user = null;
             if (rs.next()) {
-                User user = new User();
+                user = new User();
+                user.setUserId(rs.getInt("user_id"));
                 user.setUsername(rs.getString("username"));
                 user.setPassword(rs.getString("password"));
                 user.setName(rs.getString("name"));
@@ -158,303 +506,539 @@ public class DatabaseManager {
                 user.setPhone(rs.getString("phone"));
                 user.setEmail(rs.getString("email"));
                 user.setIpAddress(rs.getString("ip_address"));
-                return user;
             }
+            rs.close();
+            return user;
         } catch (SQLException e) {
             System.err.println("Error getting user: " + e.getMessage());
+        } finally {
+            pool.release(reader);
         }
         
         return null;
     }
     
-    public int createAuction(String itemName, String itemDescription, double startingPrice, String sellerUsername, int auctionType, Timestamp endTime) {
+    // Restricts new auction IDs to one residue class, so every node of a sharded
+    // deployment allocates IDs that route back to itself
+    @Override
+    public void setAuctionIdPartition(int index, int count) {
+        this.idIndex = index;
+        this.idCount = count;
+    }
+    
+    @Override
+    public int createAuction(String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime) {
+        if (idCount > 1) {
+            return createPartitionedAuction(itemName, itemDescription, startingPrice, sellerId, auctionType, startTime, endTime);
+        }
+        
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
         try {
+            PreparedStatement createAuctionStmt = writer.prepareReturningKeys(CREATE_AUCTION);
             createAuctionStmt.setString(1, itemName);
             createAuctionStmt.setString(2, itemDescription);
-            createAuctionStmt.setDouble(3, startingPrice);
-            createAuctionStmt.setDouble(4, startingPrice); // Current price starts at starting price
-            createAuctionStmt.setString(5, sellerUsername);
+            createAuctionStmt.setLong(3, startingPrice);
+            createAuctionStmt.setLong(4, startingPrice); // Current price starts at starting price
+            createAuctionStmt.setInt(5, sellerId);
             createAuctionStmt.setInt(6, auctionType);
-            createAuctionStmt.setTimestamp(7, endTime);
+            createAuctionStmt.setLong(7, startTime);
+            setEndTime(createAuctionStmt, 8, endTime);
             
             int affectedRows = createAuctionStmt.executeUpdate();
             
             if (affectedRows > 0) {
                 ResultSet rs = createAuctionStmt.getGeneratedKeys();
-                if (rs.next()) {
-                    return rs.getInt(1); // Return the generated auction ID
-                }
+                int auctionId = rs.next() ? rs.getInt(1) : -1; // the generated auction ID
+                rs.close();
+                return auctionId;
             }
         } catch (SQLException e) {
             System.err.println("Error creating auction: " + e.getMessage());
+        } finally {
+            pool.release(writer);
         }
         
         return -1;
     }
     
+    private int createPartitionedAuction(String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime) {
+        // Holding the writer keeps the maximum current until the insert
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        try {
+            ResultSet rs = writer.prepare(MAX_AUCTION_ID).executeQuery();
+            int maxId = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            
+            // Smallest ID above the current maximum that belongs to this partition
+            int auctionId = maxId + 1;
+            auctionId += Math.floorMod(idIndex - auctionId, idCount);
+            
+            return insertAuction(auctionId, itemName, itemDescription, startingPrice, sellerId, auctionType, startTime, endTime) ? auctionId : -1;
+        } catch (SQLException e) {
+            System.err.println("Error creating auction: " + e.getMessage());
+        } finally {
+            pool.release(writer);
+        }
+        
+        return -1;
+    }
+    
+    // IDs are allocated up front from the current maximum, so the whole lot is one transaction
+    // and one batched insert; the writer is held throughout, which keeps the maximum current
+    @Override
+    public int[] createAuctions(List<Auction> auctions) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        try {
+            ResultSet rs = writer.prepare(MAX_AUCTION_ID).executeQuery();
+            int lastId = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            
+            conn.setAutoCommit(false);
+            int[] auctionIds = new int[auctions.size()];
+            PreparedStatement createAuctionWithIdStmt = writer.prepare(CREATE_AUCTION_WITH_ID);
+            for (int i = 0; i < auctionIds.length; i++) {
+                // Smallest ID above the last one that belongs to this partition
+                int auctionId = lastId + 1;
+                auctionId += Math.floorMod(idIndex - auctionId, idCount);
+                auctionIds[i] = lastId = auctionId;
+                
+                Auction auction = auctions.get(i);
+                createAuctionWithIdStmt.setString(1, auction.getItemName());
+                createAuctionWithIdStmt.setString(2, auction.getItemDescription());
+                createAuctionWithIdStmt.setLong(3, auction.getStartingPrice());
+                createAuctionWithIdStmt.setLong(4, auction.getStartingPrice());
+                createAuctionWithIdStmt.setInt(5, auction.getSellerId());
+                createAuctionWithIdStmt.setInt(6, auction.getAuctionType());
+                createAuctionWithIdStmt.setLong(7, auction.getStartTime());
+                setEndTime(createAuctionWithIdStmt, 8, auction.getEndTime());
+                createAuctionWithIdStmt.setInt(9, auctionId);
+                createAuctionWithIdStmt.addBatch();
+            }
+            createAuctionWithIdStmt.executeBatch();
+            conn.commit();
+            return auctionIds;
+        } catch (SQLException e) {
+            System.err.println("Error creating auctions: " + e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException e1) {
+                e1.printStackTrace();
+            }
+            return null;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit: " + e.getMessage());
+            }
+            pool.release(writer);
+        }
+    }
+    
+    // Inserts an auction under a known ID, e.g. one allocated by this node's partition or replicated from a primary
+    @Override
+    public boolean insertAuction(int auctionId, String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        try {
+            PreparedStatement createAuctionWithIdStmt = writer.prepare(CREATE_AUCTION_WITH_ID);
+            createAuctionWithIdStmt.setString(1, itemName);
+            createAuctionWithIdStmt.setString(2, itemDescription);
+            createAuctionWithIdStmt.setLong(3, startingPrice);
+            createAuctionWithIdStmt.setLong(4, startingPrice);
+            createAuctionWithIdStmt.setInt(5, sellerId);
+            createAuctionWithIdStmt.setInt(6, auctionType);
+            createAuctionWithIdStmt.setLong(7, startTime);
+            setEndTime(createAuctionWithIdStmt, 8, endTime);
+            createAuctionWithIdStmt.setInt(9, auctionId);
+            
+            return createAuctionWithIdStmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            System.err.println("Error inserting auction: " + e.getMessage());
+            return false;
+        } finally {
+            pool.release(writer);
+        }
+    }
+    
+    // Maps the current row of a SELECT * on auctions or auctions_archive
+    private Auction readAuction(ResultSet rs) throws SQLException {
+        Auction auction = new Auction();
+        auction.setAuctionId(rs.getInt("auction_id"));
+        auction.setItemName(rs.getString("item_name"));
+        auction.setItemDescription(rs.getString("item_description"));
+        auction.setStartingPrice(rs.getLong("starting_price"));
+        auction.setCurrentPrice(rs.getLong("current_price"));
+        auction.setSellerId(rs.getInt("seller_id"));
+        auction.setSellerUsername(users.nameOf(auction.getSellerId()));
+        auction.setAuctionType(rs.getInt("auction_type"));
+        auction.setStartTime(rs.getLong("start_time"));
+        auction.setEndTime(rs.getLong("end_time")); // 0 (NO_END_TIME) for NULL
+        auction.setStatus(rs.getString("status"));
+        auction.setHighestBidderId(rs.getInt("highest_bidder_id")); // 0 (NO_USER) for NULL
+        auction.setHighestBidder(users.nameOf(auction.getHighestBidderId()));
+        return auction;
+    }
+    
+    @Override
     public List<Auction> getActiveAuctions() {
         List<Auction> auctions = new ArrayList<>();
         
+        ConnectionPool.PooledConnection reader = null;
         try {
-            ResultSet rs = getActiveAuctionsStmt.executeQuery();
+            reader = pool.acquireReader();
+            ResultSet rs = reader.prepare(GET_ACTIVE_AUCTIONS).executeQuery();
             
             while (rs.next()) {
-                Auction auction = new Auction();
-                auction.setAuctionId(rs.getInt("auction_id"));
-                auction.setItemName(rs.getString("item_name"));
-                auction.setItemDescription(rs.getString("item_description"));
-                auction.setStartingPrice(rs.getDouble("starting_price"));
-                auction.setCurrentPrice(rs.getDouble("current_price"));
-                auction.setSellerUsername(rs.getString("seller_username"));
-                auction.setAuctionType(rs.getInt("auction_type"));
-                auction.setStartTime(rs.getTimestamp("start_time"));
-                auction.setEndTime(rs.getTimestamp("end_time"));
-                auction.setStatus(rs.getString("status"));
-                auction.setHighestBidder(rs.getString("highest_bidder"));
-                
-                auctions.add(auction);
+                auctions.add(readAuction(rs));
             }
+            rs.close();
         } catch (SQLException e) {
             System.err.println("Error getting active auctions: " + e.getMessage());
+        } finally {
+            pool.release(reader);
         }
         
         return auctions;
     }
     
-    public boolean joinAuction(int auctionId, String username) {
+    @Override
+    public boolean joinAuction(int auctionId, int userId) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
         try {
             // First check if auction exists and is active
+            PreparedStatement getAuctionByIdStmt = writer.prepare(GET_AUCTION_BY_ID);
             getAuctionByIdStmt.setInt(1, auctionId);
             ResultSet auctionResult = getAuctionByIdStmt.executeQuery();
+            boolean active = auctionResult.next() && "active".equals(auctionResult.getString("status"));
+            auctionResult.close();
             
-            if (!auctionResult.next()) {
-                return false; // Auction doesn't exist
-            }
-            
-            if (!"active".equals(auctionResult.getString("status"))) {
-                return false; // Auction is not active
+            if (!active) {
+                return false; // Auction doesn't exist or is not active
             }
             
             // Check if user is already in the auction
+            PreparedStatement checkUserInAuctionStmt = writer.prepare(CHECK_USER_IN_AUCTION);
             checkUserInAuctionStmt.setInt(1, auctionId);
-            checkUserInAuctionStmt.setString(2, username);
+            checkUserInAuctionStmt.setInt(2, userId);
             ResultSet rs = checkUserInAuctionStmt.executeQuery();
+            boolean joined = rs.next();
+            rs.close();
             
-            if (rs.next()) {
+            if (joined) {
                 return false; // User already in auction
             }
             
             // Add user to auction
+            PreparedStatement joinAuctionStmt = writer.prepare(JOIN_AUCTION);
             joinAuctionStmt.setInt(1, auctionId);
-            joinAuctionStmt.setString(2, username);
+            joinAuctionStmt.setInt(2, userId);
             joinAuctionStmt.executeUpdate();
             
             return true;
         } catch (SQLException e) {
             System.err.println("Error joining auction: " + e.getMessage());
             return false;
+        } finally {
+            pool.release(writer);
         }
     }
     
-    
-    
-    public boolean placeBid(int auctionId, String username, double amount) {
-        System.out.println("DEBUG: Attempting to place bid for auction " + auctionId + " by user " + username + " amount " + amount);
-        
+    // Fills the index with the participants of every active auction, e.g. at startup
+    @Override
+    public void loadActiveParticipants(MembershipIndex membership) {
+        ConnectionPool.PooledConnection reader = null;
         try {
-            conn.setAutoCommit(false);
-            
-            // Check if user is registered for the auction
-            System.out.println("DEBUG: Checking if user is registered for auction");
-            checkUserInAuctionStmt.setInt(1, auctionId);
-            checkUserInAuctionStmt.setString(2, username);
-            ResultSet rs = checkUserInAuctionStmt.executeQuery();
-            
-            if (!rs.next()) {
-                System.out.println("DEBUG: User not registered for auction - rolling back");
-                conn.rollback();
-                conn.setAutoCommit(true);
-                return false; // User not registered for this auction
+            reader = pool.acquireReader();
+            ResultSet rs = reader.prepare(GET_ACTIVE_PARTICIPANTS).executeQuery();
+            while (rs.next()) {
+                membership.join(rs.getInt(1), rs.getInt(2));
             }
+            rs.close();
+        } catch (SQLException e) {
+            System.err.println("Error loading auction participants: " + e.getMessage());
+        } finally {
+            pool.release(reader);
+        }
+    }
+    
+    // The caller checks that the user has joined the auction (MembershipIndex)
+    @Override
+    public boolean placeBid(int auctionId, int userId, long amount, long bidTime, long sequence) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        Savepoint transaction = null;
+        try {
+            transaction = begin(conn);
             
             // Get the current highest bid
-            System.out.println("DEBUG: Getting current highest bid");
+            PreparedStatement getHighestBidStmt = writer.prepare(GET_HIGHEST_BID);
             getHighestBidStmt.setInt(1, auctionId);
-            rs = getHighestBidStmt.executeQuery();
+            ResultSet rs = getHighestBidStmt.executeQuery();
             
-            double currentHighestBid = 0;
+            long currentHighestBid = 0;
             if (rs.next()) {
-                currentHighestBid = rs.getDouble("amount");
-                System.out.println("DEBUG: Current highest bid: " + currentHighestBid);
-            } else {
-                System.out.println("DEBUG: No previous bids found");
+                currentHighestBid = rs.getLong("amount");
             }
+            rs.close();
             
             // Get auction details
-            System.out.println("DEBUG: Getting auction details");
+            PreparedStatement getAuctionByIdStmt = writer.prepare(GET_AUCTION_BY_ID);
             getAuctionByIdStmt.setInt(1, auctionId);
             rs = getAuctionByIdStmt.executeQuery();
             
             if (!rs.next()) {
-                System.out.println("DEBUG: Auction not found - rolling back");
-                conn.rollback();
-                conn.setAutoCommit(true);
+                rs.close();
+                rollback(conn, transaction);
+                end(conn, transaction);
                 return false; // Auction not found
             }
             
             String auctionStatus = rs.getString("status");
-            System.out.println("DEBUG: Auction status: " + auctionStatus);
+            long startingPrice = rs.getLong("starting_price");
+            rs.close();
             
             if (!auctionStatus.equals("active")) {
-                System.out.println("DEBUG: Auction not active - rolling back");
-                conn.rollback();
-                conn.setAutoCommit(true);
+                rollback(conn, transaction);
+                end(conn, transaction);
                 return false; // Auction not active
             }
             
-            double startingPrice = rs.getDouble("starting_price");
-            System.out.println("DEBUG: Starting price: " + startingPrice);
-            
             // Check if bid is higher than current highest bid and starting price
             if (amount <= currentHighestBid || amount < startingPrice) {
-                System.out.println("DEBUG: Bid too low (amount: " + amount + ", currentHighest: " + currentHighestBid + ", startingPrice: " + startingPrice + ") - rolling back");
-                conn.rollback();
-                conn.setAutoCommit(true);
+                rollback(conn, transaction);
+                end(conn, transaction);
                 return false; // Bid too low
             }
             
             // Place the bid
-            System.out.println("DEBUG: Placing bid in database");
+            PreparedStatement placeBidStmt = writer.prepare(PLACE_BID);
             placeBidStmt.setInt(1, auctionId);
-            placeBidStmt.setString(2, username);
-            placeBidStmt.setDouble(3, amount);
+            placeBidStmt.setInt(2, userId);
+            placeBidStmt.setLong(3, amount);
+            placeBidStmt.setLong(4, bidTime);
+            placeBidStmt.setLong(5, sequence);
             placeBidStmt.executeUpdate();
             
             // Update the auction's current price and highest bidder
-            System.out.println("DEBUG: Updating auction current price and highest bidder");
-            PreparedStatement updateAuctionStmt = conn.prepareStatement(
-                "UPDATE auctions SET current_price = ?, highest_bidder = ? WHERE auction_id = ?"
-            );
-            updateAuctionStmt.setDouble(1, amount);
-            updateAuctionStmt.setString(2, username);
+            PreparedStatement updateAuctionStmt = writer.prepare(UPDATE_AUCTION_PRICE);
+            updateAuctionStmt.setLong(1, amount);
+            updateAuctionStmt.setInt(2, userId);
             updateAuctionStmt.setInt(3, auctionId);
             updateAuctionStmt.executeUpdate();
             
-            System.out.println("DEBUG: Committing transaction");
-            conn.commit();
-            conn.setAutoCommit(true);
+            commit(conn, transaction);
+            end(conn, transaction);
             return true;
         } catch (SQLException e) {
-            System.out.println("DEBUG: SQLException occurred - rolling back");
             try {
-                conn.rollback();
-                conn.setAutoCommit(true);
+                rollback(conn, transaction);
+                end(conn, transaction);
             } catch (SQLException e1) {
                 e1.printStackTrace();
             }
             System.err.println("Error placing bid: " + e.getMessage());
             e.printStackTrace();
             return false;
+        } finally {
+            pool.release(writer);
         }
     }
     
+    @Override
     public Bid getHighestBid(int auctionId) {
+        ConnectionPool.PooledConnection reader = null;
         try {
+            reader = pool.acquireReader();
+            PreparedStatement getHighestBidStmt = reader.prepare(GET_HIGHEST_BID);
             getHighestBidStmt.setInt(1, auctionId);
             ResultSet rs = getHighestBidStmt.executeQuery();
             
+            Bid bid = null;
             if (rs.next()) {
-                Bid bid = new Bid();
-                bid.setAmount(rs.getDouble("amount"));
-                bid.setUsername(rs.getString("username"));
-                bid.setBidTime(rs.getTimestamp("bid_time"));
-                return bid;
+                bid = new Bid();
+                bid.setAmount(rs.getLong("amount"));
+                bid.setUserId(rs.getInt("user_id"));
+                bid.setUsername(users.nameOf(bid.getUserId()));
+                bid.setBidTime(rs.getLong("bid_time"));
+                bid.setSequence(rs.getLong("seq"));
             }
+            rs.close();
+            return bid;
         } catch (SQLException e) {
             System.err.println("Error getting highest bid: " + e.getMessage());
+        } finally {
+            pool.release(reader);
         }
         
         return null;
     }
     
-    public boolean withdrawFromAuction(int auctionId, String username) {
+    @Override
+    public long getLastBidSequence() {
+        ConnectionPool.PooledConnection reader = null;
         try {
-            // Check if user is the highest bidder
-            getAuctionByIdStmt.setInt(1, auctionId);
-            ResultSet rs = getAuctionByIdStmt.executeQuery();
-            
-            if (rs.next() && username.equals(rs.getString("highest_bidder"))) {
-                return false; // User is highest bidder, cannot withdraw
+            reader = pool.acquireReader();
+            ResultSet rs = reader.prepare(MAX_BID_SEQ).executeQuery();
+            long sequence = rs.next() ? rs.getLong(1) : 0;
+            rs.close();
+            return sequence;
+        } catch (SQLException e) {
+            System.err.println("Error getting last bid sequence: " + e.getMessage());
+        } finally {
+            pool.release(reader);
+        }
+        
+        return 0;
+    }
+    
+    @Override
+    public long getReplicationPosition() {
+        ConnectionPool.PooledConnection reader = null;
+        try {
+            reader = pool.acquireReader();
+            ResultSet rs = reader.prepare(GET_REPLICATION_POSITION).executeQuery();
+            long position = rs.next() ? rs.getLong(1) : 0;
+            rs.close();
+            return position;
+        } catch (SQLException e) {
+            System.err.println("Error getting replication position: " + e.getMessage());
+        } finally {
+            pool.release(reader);
+        }
+        
+        return 0;
+    }
+    
+    @Override
+    public String getReplicationLog() {
+        ConnectionPool.PooledConnection reader = null;
+        try {
+            reader = pool.acquireReader();
+            ResultSet rs = reader.prepare(GET_REPLICATION_LOG).executeQuery();
+            String logId = rs.next() ? rs.getString(1) : null;
+            rs.close();
+            return logId;
+        } catch (SQLException e) {
+            System.err.println("Error getting replication log: " + e.getMessage());
+        } finally {
+            pool.release(reader);
+        }
+        
+        return null;
+    }
+    
+    // One transaction for the event's writes and its position; the writer is held throughout,
+    // and write methods that open their own transaction run in savepoints of this one
+    @Override
+    public boolean applyReplicated(String logId, long seq, Runnable writes) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            writes.run();
+            PreparedStatement setPositionStmt = writer.prepare(SET_REPLICATION_POSITION);
+            setPositionStmt.setLong(1, seq);
+            setPositionStmt.setString(2, logId);
+            setPositionStmt.executeUpdate();
+            conn.commit();
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error applying replicated event " + seq + ": " + e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException e1) {
+                e1.printStackTrace();
             }
-            
+            return false;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit: " + e.getMessage());
+            }
+            pool.release(writer);
+        }
+    }
+    
+    // The caller checks that the user is not the highest bidder (MembershipIndex)
+    @Override
+    public boolean withdrawFromAuction(int auctionId, int userId) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        try {
             // Withdraw user from auction
+            PreparedStatement withdrawFromAuctionStmt = writer.prepare(WITHDRAW_FROM_AUCTION);
             withdrawFromAuctionStmt.setInt(1, auctionId);
-            withdrawFromAuctionStmt.setString(2, username);
+            withdrawFromAuctionStmt.setInt(2, userId);
             int rowsAffected = withdrawFromAuctionStmt.executeUpdate();
             
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.err.println("Error withdrawing from auction: " + e.getMessage());
             return false;
+        } finally {
+            pool.release(writer);
         }
     }
     
-    public boolean isUserHighestBidder(String username) {
-        try {
-            checkUserHighestBidderStmt.setString(1, username);
-            ResultSet rs = checkUserHighestBidderStmt.executeQuery();
-            
-            if (rs.next() && rs.getInt(1) > 0) {
-                return true; // User is highest bidder in at least one active auction
-            }
-        } catch (SQLException e) {
-            System.err.println("Error checking if user is highest bidder: " + e.getMessage());
+    // Deletes the user's participant rows for the given auctions (MembershipIndex.leaveAll)
+    // as one batch of primary-key deletes in a single transaction
+    @Override
+    public void removeUserFromAuctions(int userId, int[] auctionIds) {
+        if (auctionIds.length == 0) {
+            return;
         }
-        
-        return false;
-    }
-    
-    public void removeUserFromAllAuctions(String username) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        Savepoint transaction = null;
         try {
-            PreparedStatement removeUserStmt = conn.prepareStatement(
-                "DELETE FROM auction_participants WHERE username = ?"
-            );
-            removeUserStmt.setString(1, username);
-            removeUserStmt.executeUpdate();
+            transaction = begin(conn);
+            PreparedStatement withdrawFromAuctionStmt = writer.prepare(WITHDRAW_FROM_AUCTION);
+            for (int auctionId : auctionIds) {
+                withdrawFromAuctionStmt.setInt(1, auctionId);
+                withdrawFromAuctionStmt.setInt(2, userId);
+                withdrawFromAuctionStmt.addBatch();
+            }
+            withdrawFromAuctionStmt.executeBatch();
+            commit(conn, transaction);
         } catch (SQLException e) {
             System.err.println("Error removing user from auctions: " + e.getMessage());
+            try {
+                rollback(conn, transaction);
+            } catch (SQLException e1) {
+                e1.printStackTrace();
+            }
+        } finally {
+            try {
+                end(conn, transaction);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit: " + e.getMessage());
+            }
+            pool.release(writer);
         }
     }
     
     
+    @Override
     public Auction getAuction(int auctionId) {
+        ConnectionPool.PooledConnection reader = null;
         try {
-            System.out.println("DEBUG: Looking for auction ID: " + auctionId);
+            reader = pool.acquireReader();
+            PreparedStatement getAuctionByIdStmt = reader.prepare(GET_AUCTION_BY_ID);
             getAuctionByIdStmt.setInt(1, auctionId);
             ResultSet rs = getAuctionByIdStmt.executeQuery();
             
+            Auction auction = null;
             if (rs.next()) {
-                System.out.println("DEBUG: Found auction, status: " + rs.getString("status"));
-                Auction auction = new Auction();
-                auction.setAuctionId(rs.getInt("auction_id"));
-                auction.setItemName(rs.getString("item_name"));
-                auction.setItemDescription(rs.getString("item_description"));
-                auction.setStartingPrice(rs.getDouble("starting_price"));
-                auction.setCurrentPrice(rs.getDouble("current_price"));
-                auction.setSellerUsername(rs.getString("seller_username"));
-                auction.setAuctionType(rs.getInt("auction_type"));
-                auction.setStartTime(rs.getTimestamp("start_time"));
-                auction.setEndTime(rs.getTimestamp("end_time"));
-                auction.setStatus(rs.getString("status"));
-                auction.setHighestBidder(rs.getString("highest_bidder"));
-                
-                return auction;
-            } else {
-                System.out.println("DEBUG: No auction found with ID: " + auctionId);
+                auction = readAuction(rs);
             }
+            rs.close();
+            return auction;
         } catch (SQLException e) {
             System.err.println("Error getting auction: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            pool.release(reader);
         }
         
         return null;
@@ -470,8 +1054,8 @@ public class DatabaseManager {
 //                auction.setAuctionId(rs.getInt("auction_id"));
 //                auction.setItemName(rs.getString("item_name"));
 //                auction.setItemDescription(rs.getString("item_description"));
-//                auction.setStartingPrice(rs.getDouble("starting_price"));
-//                auction.setCurrentPrice(rs.getDouble("current_price"));
+//                auction.setStartingPrice(rs.getLong("starting_price"));
+//                auction.setCurrentPrice(rs.getLong("current_price"));
 //                auction.setSellerUsername(rs.getString("seller_username"));
 //                auction.setAuctionType(rs.getInt("auction_type"));
 //                auction.setStartTime(rs.getTimestamp("start_time"));
@@ -488,27 +1072,41 @@ public class DatabaseManager {
 //        return null;
 //    }
     
-    public List<String> getAuctionParticipants(int auctionId) {
-        List<String> participants = new ArrayList<>();
+    @Override
+    public int[] getAuctionParticipants(int auctionId) {
+        int[] participants = new int[16];
+        int count = 0;
         
+        ConnectionPool.PooledConnection reader = null;
         try {
+            reader = pool.acquireReader();
+            PreparedStatement getAuctionParticipantsStmt = reader.prepare(GET_AUCTION_PARTICIPANTS);
             getAuctionParticipantsStmt.setInt(1, auctionId);
             ResultSet rs = getAuctionParticipantsStmt.executeQuery();
             
             while (rs.next()) {
-                participants.add(rs.getString("username"));
+                if (count == participants.length) {
+                    participants = Arrays.copyOf(participants, count * 2);
+                }
+                participants[count++] = rs.getInt(1);
             }
+            rs.close();
         } catch (SQLException e) {
             System.err.println("Error getting auction participants: " + e.getMessage());
+        } finally {
+            pool.release(reader);
         }
         
-        return participants;
+        return Arrays.copyOf(participants, count);
     }
     
-    public boolean closeAuction(int auctionId, double finalPrice, String highestBidder) {
+    @Override
+    public boolean closeAuction(int auctionId, long finalPrice, int highestBidderId) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
         try {
-            closeAuctionStmt.setDouble(1, finalPrice);
-            closeAuctionStmt.setString(2, highestBidder);
+            PreparedStatement closeAuctionStmt = writer.prepare(CLOSE_AUCTION);
+            closeAuctionStmt.setLong(1, finalPrice);
+            setUserId(closeAuctionStmt, 2, highestBidderId);
             closeAuctionStmt.setInt(3, auctionId);
             
             int rowsAffected = closeAuctionStmt.executeUpdate();
@@ -516,16 +1114,228 @@ public class DatabaseManager {
         } catch (SQLException e) {
             System.err.println("Error closing auction: " + e.getMessage());
             return false;
+        } finally {
+            pool.release(writer);
         }
     }
     
-    public void close() {
+    // One transaction and one batched statement for the lot, e.g. auctions that end on the same tick
+    @Override
+    public boolean closeAuctions(int[] auctionIds, long[] finalPrices, int[] highestBidderIds) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement closeAuctionStmt = writer.prepare(CLOSE_AUCTION);
+            for (int i = 0; i < auctionIds.length; i++) {
+                closeAuctionStmt.setLong(1, finalPrices[i]);
+                setUserId(closeAuctionStmt, 2, highestBidderIds[i]);
+                closeAuctionStmt.setInt(3, auctionIds[i]);
+                closeAuctionStmt.addBatch();
+            }
+            closeAuctionStmt.executeBatch();
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error closing auctions: " + e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException e1) {
+                e1.printStackTrace();
+            }
+            return false;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit: " + e.getMessage());
+            }
+            pool.release(writer);
+        }
+    }
+    
+    @Override
+    public boolean extendAuctions(int[] auctionIds, long[] endTimes) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        Savepoint transaction = null;
         try {
-            if (conn != null) {
-                conn.close();
+            transaction = begin(conn);
+            PreparedStatement extendAuctionStmt = writer.prepare(EXTEND_AUCTION);
+            for (int i = 0; i < auctionIds.length; i++) {
+                extendAuctionStmt.setLong(1, endTimes[i]);
+                extendAuctionStmt.setInt(2, auctionIds[i]);
+                extendAuctionStmt.addBatch();
             }
+            extendAuctionStmt.executeBatch();
+            commit(conn, transaction);
+            return true;
         } catch (SQLException e) {
-            System.err.println("Error closing database connection: " + e.getMessage());
+            System.err.println("Error extending auctions: " + e.getMessage());
+            try {
+                rollback(conn, transaction);
+            } catch (SQLException e1) {
+                e1.printStackTrace();
+            }
+            return false;
+        } finally {
+            try {
+                end(conn, transaction);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit: " + e.getMessage());
+            }
+            pool.release(writer);
+        }
+    }
+    
+    // Moves up to limit closed auctions, oldest first, with their bids and participants into
+    // the archive tables in one transaction, so active-auction queries only see live rows
+    @Override
+    public int archiveClosedAuctions(int limit) {
+        ConnectionPool.PooledConnection writer = pool.acquireWriter();
+        Connection conn = writer.getConnection();
+        try {
+            PreparedStatement batchStmt = writer.prepare(GET_CLOSED_BATCH);
+            batchStmt.setInt(1, limit);
+            ResultSet rs = batchStmt.executeQuery();
+            int[] auctionIds = new int[limit];
+            int count = 0;
+            while (rs.next()) {
+                auctionIds[count++] = rs.getInt(1);
+            }
+            rs.close();
+            if (count == 0) {
+                return 0;
+            }
+            
+            conn.setAutoCommit(false);
+            for (String sql : ARCHIVE_AUCTION) {
+                PreparedStatement stmt = writer.prepare(sql);
+                for (int i = 0; i < count; i++) {
+                    stmt.setInt(1, auctionIds[i]);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+            return count;
+        } catch (SQLException e) {
+            System.err.println("Error archiving auctions: " + e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException e1) {
+                e1.printStackTrace();
+            }
+            return 0;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error restoring auto-commit: " + e.getMessage());
+            }
+            pool.release(writer);
+        }
+    }
+    
+    // A closed auction, whether it has been archived yet or not
+    @Override
+    public Auction getClosedAuction(int auctionId) {
+        ConnectionPool.PooledConnection reader = null;
+        try {
+            reader = pool.acquireReader();
+            PreparedStatement stmt = reader.prepare(GET_CLOSED_AUCTION);
+            stmt.setInt(1, auctionId);
+            stmt.setInt(2, auctionId);
+            ResultSet rs = stmt.executeQuery();
+            Auction auction = rs.next() ? readAuction(rs) : null;
+            rs.close();
+            return auction;
+        } catch (SQLException e) {
+            System.err.println("Error getting closed auction: " + e.getMessage());
+        } finally {
+            pool.release(reader);
+        }
+        
+        return null;
+    }
+    
+    // Every bid of an auction in sequence order, from the hot or the archive table
+    @Override
+    public List<Bid> getBidHistory(int auctionId) {
+        List<Bid> history = new ArrayList<>();
+        
+        ConnectionPool.PooledConnection reader = null;
+        try {
+            reader = pool.acquireReader();
+            PreparedStatement stmt = reader.prepare(GET_BID_HISTORY);
+            stmt.setInt(1, auctionId);
+            stmt.setInt(2, auctionId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                Bid bid = new Bid();
+                bid.setAuctionId(auctionId);
+                bid.setAmount(rs.getLong("amount"));
+                bid.setUserId(rs.getInt("user_id"));
+                bid.setUsername(users.nameOf(bid.getUserId()));
+                bid.setBidTime(rs.getLong("bid_time"));
+                bid.setSequence(rs.getLong("seq"));
+                history.add(bid);
+            }
+            rs.close();
+        } catch (SQLException e) {
+            System.err.println("Error getting bid history: " + e.getMessage());
+        } finally {
+            pool.release(reader);
+        }
+        
+        return history;
+    }
+    
+    // Both queries run in one read transaction on a reader connection. In WAL mode that sees the
+    // database as of its first read while the writer carries on, and rows are stepped through
+    // one at a time. Without reader connections (an in-memory database) this holds the writer.
+    @Override
+    public void export(ColumnarExport.Writer writer) throws IOException {
+        ConnectionPool.PooledConnection reader = null;
+        try {
+            reader = pool.acquireReader();
+            Connection conn = reader.getConnection();
+            conn.setAutoCommit(false);
+            try {
+                ResultSet rs = reader.prepare(EXPORT_AUCTIONS).executeQuery();
+                while (rs.next()) {
+                    writer.auction(readAuction(rs));
+                }
+                rs.close();
+                
+                rs = reader.prepare(EXPORT_BIDS).executeQuery();
+                while (rs.next()) {
+                    Bid bid = new Bid();
+                    bid.setBidId(rs.getInt("bid_id"));
+                    bid.setAuctionId(rs.getInt("auction_id"));
+                    bid.setUserId(rs.getInt("user_id"));
+                    bid.setUsername(users.nameOf(bid.getUserId()));
+                    bid.setAmount(rs.getLong("amount"));
+                    bid.setBidTime(rs.getLong("bid_time"));
+                    bid.setSequence(rs.getLong("seq"));
+                    writer.bid(bid);
+                }
+                rs.close();
+            } finally {
+                conn.rollback(); // nothing was written; ends the read transaction
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error exporting: " + e.getMessage(), e);
+        } finally {
+            pool.release(reader);
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
         }
     }
 }
\ No newline at end of file
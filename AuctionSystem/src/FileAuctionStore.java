@@ -0,0 +1,94 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// InMemoryAuctionStore made durable by an append-only journal file: every change is written
+// as one line, in ReplicationLog's encoding, before it is applied, and the journal is read
+// back when the store opens. Needs no database engine or driver. Each line is flushed to the
+// operating system, so changes survive a crash of the server but not of the machine.
+// The journal only grows; it holds every change since the store was created.
+public class FileAuctionStore extends InMemoryAuctionStore {
+    private Writer out;
+    private StringBuilder held; // lines of the replicated event being applied, see applyReplicated()
+
+    public FileAuctionStore(String path) {
+        File file = new File(path);
+        try {
+            if (file.exists()) {
+                replay(file);
+            }
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Journal initialization error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void replay(File file) throws IOException {
+        int events = 0;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(ReplicationLog.decode(line));
+                    events++;
+                } catch (RuntimeException e) {
+                    // Typically the last line, cut short by a crash while it was written
+                    System.err.println("Skipping unreadable journal entry: " + e.getMessage());
+                }
+            }
+        } finally {
+            in.close();
+        }
+        System.out.println("Replayed " + events + " journal entries from " + file);
+    }
+
+    @Override
+    protected void journal(String... event) throws IOException {
+        if (out == null) {
+            throw new IOException("Journal is not open");
+        }
+        if (held != null) {
+            held.append(ReplicationLog.encode(event)).append('\n');
+            return;
+        }
+        out.write(ReplicationLog.encode(event));
+        out.write('\n');
+        out.flush();
+    }
+
+    // A replicated event's lines are written out with its POSITION line once it has been
+    // applied, so an event that fails leaves nothing in the journal and is applied again
+    // from the journaled position after a restart
+    @Override
+    public synchronized boolean applyReplicated(String logId, long seq, Runnable writes) {
+        held = new StringBuilder();
+        try {
+            if (!super.applyReplicated(logId, seq, writes)) {
+                return false;
+            }
+            out.write(held.toString());
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error journaling replicated event " + seq + ": " + e.getMessage());
+            return false;
+        } finally {
+            held = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
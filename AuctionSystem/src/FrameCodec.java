@@ -0,0 +1,227 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Optional compression of what a server sends on one connection, asked for by ending CONNECT
+// with COMPRESS=deflate. Only the server-to-client direction is compressed: that is where
+// listings and pushed notifications go, while commands are short.
+// Messages are still written one at a time. One shorter than MIN_COMPRESSED_BYTES goes out as
+// the usual text line; a longer one is a compressed frame: a MARKER byte (protocol text never
+// contains it), the payload length as a varint, and the message and its newline deflated.
+// A connection keeps one deflate stream for its lifetime, flushed at the end of every frame,
+// so each message is compressed against the ones before it as well as against a preset
+// dictionary of protocol vocabulary; a listing polled twice costs little the second time.
+// Readers that asked for compression accept both forms at any point, so switching a
+// connection over needs no handshake beyond the WELCOME reply.
+// A compressing connection holds about 256 KB of native zlib memory until it is closed.
+public class FrameCodec {
+    public static final String DEFLATE = "deflate";
+    public static final String OPTION = "COMPRESS=";
+    public static final int MIN_COMPRESSED_BYTES = 128;
+    public static final byte MARKER = 0;
+    // Level 1 deflates a listing about three times as fast as the default level 6, for output
+    // about a quarter larger; a server compresses every poll once per client
+    public static final int LEVEL = Deflater.BEST_SPEED;
+
+    // The fixed text of the messages AuctionServer sends, in their own formats: keywords, the
+    // field names of the stats replies and the separators of listing, NEW_LISTING and HISTORY
+    // bodies. Deflate looks back into the dictionary as if it had just been sent, so the most
+    // common strings go last, where matches are cheapest to encode
+    private static final byte[] DICTIONARY = String.join("",
+            "WELCOME Welcome to the Auction System, ", "GOODBYE Goodbye!",
+            "STORAGE_STATS queued= submitted= completed= rejected= avgWaitMicros= maxWaitMicros=",
+            "MARKET_STATS bidsPerSecond= windowBids= windowGmv= activeBidders= bids= sold= unsold= gmv= avgUpliftPercent= seller= sellerGmv=",
+            "SEARCHES No saved searches", "LEADING ", "ERROR ", "SUCCESS ", "SUCCESS!  Your bid is placed successfully!",
+            "HISTORY ", "|No bidders;", "CANDLES ", "BID_HISTORY ", " No bids yet",
+            "GOING_ONCE ", "GOING_TWICE ", "ENDING_ALERT ", "PRICE_ALERT ", "EXTENDED ", "SOLD ", "No bidders",
+            "BID_STATUS ", "BID_UPDATE ", "NEW_LISTING ", "|1|", "|2|",
+            ".00|", ".50|", ".99|", "127.0.0.1;", "192.168.", "10.0.", "No active auctions", "AUCTIONS ")
+            .getBytes(StandardCharsets.UTF_8);
+
+    public static boolean isSupported(String codec) {
+        return DEFLATE.equalsIgnoreCase(codec);
+    }
+
+    // Writes messages to a connection, plain until startCompression(); safe to share between
+    // threads, a message is written whole before the next one starts. Like a PrintWriter it
+    // does not throw: after a write fails the connection is going away and messages are dropped.
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private final int minCompressedBytes;
+        private Deflater deflater;
+        private byte[] frame = new byte[1024];
+        private boolean failed;
+        private long messageBytes;
+        private long wireBytes;
+
+        public Writer(OutputStream out) {
+            this(out, MIN_COMPRESSED_BYTES);
+        }
+
+        public Writer(OutputStream out, int minCompressedBytes) {
+            this.out = new BufferedOutputStream(out, 8192);
+            this.minCompressedBytes = minCompressedBytes;
+        }
+
+        public synchronized void startCompression() {
+            if (deflater == null) {
+                deflater = new Deflater(LEVEL, true);
+                deflater.setDictionary(DICTIONARY);
+            }
+        }
+
+        public synchronized boolean isCompressing() {
+            return deflater != null;
+        }
+
+        public synchronized void send(String message) {
+            if (failed) {
+                return;
+            }
+            byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                if (deflater == null || bytes.length < minCompressedBytes) {
+                    out.write(bytes);
+                    wireBytes += bytes.length;
+                } else {
+                    int length = deflate(bytes);
+                    out.write(MARKER);
+                    int header = 1 + writeVarint(out, length);
+                    out.write(frame, 0, length);
+                    wireBytes += header + length;
+                }
+                messageBytes += bytes.length;
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        // Bytes of the messages as text, and as written
+        public synchronized long getMessageBytes() {
+            return messageBytes;
+        }
+
+        public synchronized long getWireBytes() {
+            return wireBytes;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+
+        // Deflates into frame and flushes to a byte boundary; returns the compressed length
+        private int deflate(byte[] bytes) {
+            deflater.setInput(bytes);
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(frame, length, frame.length - length, Deflater.SYNC_FLUSH);
+                if (length < frame.length) {
+                    return length;
+                }
+                frame = Arrays.copyOf(frame, frame.length * 2);
+            }
+        }
+    }
+
+    // Reads the compressed frames of one connection. The caller spots the MARKER where a line
+    // would start and calls begin(); read() then takes the rest of the frame from the buffer,
+    // across as many reads as it takes, and returns the message text with its newline.
+    public static final class Decoder {
+        private final Inflater inflater = new Inflater(true);
+        private byte[] payload;
+        private int filled;
+        private int length;
+        private int shift = -1; // the next varint byte's shift, -1 outside a frame header
+        private byte[] text = new byte[1024];
+
+        public Decoder() {
+            inflater.setDictionary(DICTIONARY);
+        }
+
+        public void begin() {
+            payload = null;
+            length = 0;
+            shift = 0;
+        }
+
+        public boolean isReading() {
+            return shift >= 0 || payload != null;
+        }
+
+        // Returns null until the frame is complete
+        public byte[] read(ByteBuffer in) throws IOException {
+            while (shift >= 0 && in.hasRemaining()) {
+                byte b = in.get();
+                length |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    if (length <= 0) {
+                        throw new IOException("Corrupt frame length");
+                    }
+                    shift = -1;
+                    payload = new byte[length];
+                    filled = 0;
+                } else if ((shift += 7) > 28) {
+                    throw new IOException("Corrupt frame length");
+                }
+            }
+            if (payload == null) {
+                return null;
+            }
+            int n = Math.min(in.remaining(), payload.length - filled);
+            in.get(payload, filled, n);
+            filled += n;
+            if (filled < payload.length) {
+                return null;
+            }
+            byte[] frame = payload;
+            payload = null;
+            return inflate(frame, frame.length);
+        }
+
+        // Inflates one frame's payload
+        public byte[] inflate(byte[] frame, int frameLength) throws IOException {
+            inflater.setInput(frame, 0, frameLength);
+            int length = 0;
+            try {
+                while (true) {
+                    int n = inflater.inflate(text, length, text.length - length);
+                    length += n;
+                    if (length == text.length) {
+                        text = Arrays.copyOf(text, text.length * 2);
+                    } else if (inflater.needsInput()) {
+                        return Arrays.copyOf(text, length);
+                    } else if (n == 0) {
+                        throw new IOException("Corrupt compressed frame");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed frame: " + e.getMessage());
+            }
+        }
+
+        public void end() {
+            inflater.end();
+        }
+    }
+
+    // Returns the number of bytes written
+    static int writeVarint(OutputStream out, int value) throws IOException {
+        int bytes = 1;
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+            bytes++;
+        }
+        out.write(value);
+        return bytes;
+    }
+}
\ No newline at end of file
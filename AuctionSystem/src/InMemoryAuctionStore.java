@@ -0,0 +1,572 @@
+import java.io.IOException;
+import java.util.*;
+
+// AuctionStore kept entirely in memory, with the rules of the SQLite schema: auction IDs are
+// never reused, a bid must beat the highest bid, closed auctions keep their bids until they
+// are archived, which moves them to separate maps. Nothing
+// survives a restart, so benchmarks and load tests measure the server rather than the disk.
+// Every method is synchronized; each call is a few map operations.
+// Changes are reported to journal() before they are made, which FileAuctionStore writes out.
+public class InMemoryAuctionStore implements AuctionStore {
+    private final UserDirectory users = new UserDirectory();
+    private final Map<String, User> usersByName = new HashMap<>();
+    private int lastUserId;
+
+    private final TreeMap<Integer, Auction> auctions = new TreeMap<>(); // by ID, like the table's rowid order
+    private final Map<Integer, TreeSet<Integer>> participants = new HashMap<>();
+    private final Map<Integer, List<Bid>> bids = new HashMap<>(); // accepted bids only rise, so the last is the highest
+    private int lastAuctionId;
+    private int lastBidId;
+    private long lastBidSequence;
+    private final TreeSet<Integer> closed = new TreeSet<>(); // closed auctions not archived yet
+    private long replicationPosition;
+    private String replicationLog;
+
+    // Closed auctions moved out of the maps above by archiveClosedAuctions()
+    private final Map<Integer, Auction> archivedAuctions = new HashMap<>();
+    private final Map<Integer, List<Bid>> archivedBids = new HashMap<>();
+    private final Map<Integer, TreeSet<Integer>> archivedParticipants = new HashMap<>();
+
+    private int idIndex = 0;
+    private int idCount = 1;
+
+    // Records a change before it is applied; the event is what apply() needs to redo it
+    protected void journal(String... event) throws IOException {
+    }
+
+    // Redoes a journaled change, e.g. while FileAuctionStore reads its journal back
+    protected synchronized void apply(String[] event) {
+        switch (event[0]) {
+            case "USER":
+                addUser(Integer.parseInt(event[1]), event[2], event[3], event[4], event[5], event[6], event[7], event[8], event[9]);
+                break;
+            case "AUCTION":
+                addAuction(Integer.parseInt(event[1]), event[2], event[3], Long.parseLong(event[4]), Integer.parseInt(event[5]),
+                        Integer.parseInt(event[6]), event[7] != null ? Long.parseLong(event[7]) : Auction.NO_END_TIME,
+                        Long.parseLong(event[8]));
+                break;
+            case "JOIN":
+                participantsOf(Integer.parseInt(event[1])).add(Integer.parseInt(event[2]));
+                break;
+            case "BID":
+                // Journals written before bids were numbered: in journal order, like bid IDs
+                addBid(Integer.parseInt(event[1]), Integer.parseInt(event[2]), Long.parseLong(event[3]),
+                        Long.parseLong(event[4]), event.length > 5 ? Long.parseLong(event[5]) : lastBidId + 1);
+                break;
+            case "WITHDRAW":
+                participantsOf(Integer.parseInt(event[1])).remove(Integer.parseInt(event[2]));
+                break;
+            case "CLOSE":
+                setClosed(Integer.parseInt(event[1]), Long.parseLong(event[2]), Integer.parseInt(event[3]));
+                break;
+            case "EXTEND":
+                auctions.get(Integer.parseInt(event[1])).setEndTime(Long.parseLong(event[2]));
+                break;
+            case "ARCHIVE":
+                moveToArchive(Integer.parseInt(event[1]));
+                break;
+            case "POSITION":
+                // Journals written before positions named their log have no ID: no primary accepts them
+                replicationPosition = Long.parseLong(event[1]);
+                replicationLog = event.length > 2 ? event[2] : null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event: " + event[0]);
+        }
+    }
+
+    @Override
+    public UserDirectory getUserDirectory() {
+        return users;
+    }
+
+    @Override
+    public int getReaderCount() {
+        return 0; // reads are as cheap as the hop to another thread
+    }
+
+    @Override
+    public synchronized boolean registerUser(String username, String password, String name, String surname, String idNumber, String phone, String email, String ipAddress) {
+        if (usersByName.containsKey(username)) {
+            return false;
+        }
+        int userId = lastUserId + 1;
+        try {
+            journal("USER", String.valueOf(userId), username, password, name, surname, idNumber, phone, email, ipAddress);
+        } catch (IOException e) {
+            System.err.println("Error registering user: " + e.getMessage());
+            return false;
+        }
+        addUser(userId, username, password, name, surname, idNumber, phone, email, ipAddress);
+        return true;
+    }
+
+    private void addUser(int userId, String username, String password, String name, String surname, String idNumber, String phone, String email, String ipAddress) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setUsername(username);
+        user.setPassword(password);
+        user.setName(name);
+        user.setSurname(surname);
+        user.setIdNumber(idNumber);
+        user.setPhone(phone);
+        user.setEmail(email);
+        user.setIpAddress(ipAddress);
+        usersByName.put(username, user);
+        users.add(userId, username);
+        lastUserId = Math.max(lastUserId, userId);
+    }
+
+    @Override
+    public synchronized User getUser(String username) {
+        User user = usersByName.get(username);
+        if (user == null) {
+            return null;
+        }
+        User copy = new User();
+        copy.setUserId(user.getUserId());
+        copy.setUsername(user.getUsername());
+        copy.setPassword(user.getPassword());
+        copy.setName(user.getName());
+        copy.setSurname(user.getSurname());
+        copy.setIdNumber(user.getIdNumber());
+        copy.setPhone(user.getPhone());
+        copy.setEmail(user.getEmail());
+        copy.setIpAddress(user.getIpAddress());
+        return copy;
+    }
+
+    @Override
+    public synchronized void setAuctionIdPartition(int index, int count) {
+        this.idIndex = index;
+        this.idCount = count;
+    }
+
+    @Override
+    public synchronized int createAuction(String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime) {
+        // Smallest ID above every ID used so far that belongs to this partition
+        int auctionId = lastAuctionId + 1;
+        auctionId += Math.floorMod(idIndex - auctionId, idCount);
+        return insertAuction(auctionId, itemName, itemDescription, startingPrice, sellerId, auctionType, startTime, endTime) ? auctionId : -1;
+    }
+
+    // Journals every auction before adding any of them; if the journal fails, none are added
+    @Override
+    public synchronized int[] createAuctions(List<Auction> newAuctions) {
+        int[] auctionIds = new int[newAuctions.size()];
+        int lastId = lastAuctionId;
+        try {
+            for (int i = 0; i < auctionIds.length; i++) {
+                int auctionId = lastId + 1;
+                auctionId += Math.floorMod(idIndex - auctionId, idCount);
+                auctionIds[i] = lastId = auctionId;
+                
+                Auction auction = newAuctions.get(i);
+                journal("AUCTION", String.valueOf(auctionId), auction.getItemName(), auction.getItemDescription(),
+                        String.valueOf(auction.getStartingPrice()), String.valueOf(auction.getSellerId()), String.valueOf(auction.getAuctionType()),
+                        auction.hasEndTime() ? String.valueOf(auction.getEndTime()) : null, String.valueOf(auction.getStartTime()));
+            }
+        } catch (IOException e) {
+            System.err.println("Error creating auctions: " + e.getMessage());
+            return null;
+        }
+        for (int i = 0; i < auctionIds.length; i++) {
+            Auction auction = newAuctions.get(i);
+            addAuction(auctionIds[i], auction.getItemName(), auction.getItemDescription(), auction.getStartingPrice(),
+                    auction.getSellerId(), auction.getAuctionType(), auction.getEndTime(), auction.getStartTime());
+        }
+        return auctionIds;
+    }
+
+    @Override
+    public synchronized boolean insertAuction(int auctionId, String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long startTime, long endTime) {
+        if (auctions.containsKey(auctionId) || archivedAuctions.containsKey(auctionId)) {
+            return false;
+        }
+        try {
+            journal("AUCTION", String.valueOf(auctionId), itemName, itemDescription, String.valueOf(startingPrice),
+                    String.valueOf(sellerId), String.valueOf(auctionType), endTime != Auction.NO_END_TIME ? String.valueOf(endTime) : null,
+                    String.valueOf(startTime));
+        } catch (IOException e) {
+            System.err.println("Error inserting auction: " + e.getMessage());
+            return false;
+        }
+        addAuction(auctionId, itemName, itemDescription, startingPrice, sellerId, auctionType, endTime, startTime);
+        return true;
+    }
+
+    private void addAuction(int auctionId, String itemName, String itemDescription, long startingPrice, int sellerId, int auctionType, long endTime, long startTime) {
+        Auction auction = new Auction();
+        auction.setAuctionId(auctionId);
+        auction.setItemName(itemName);
+        auction.setItemDescription(itemDescription);
+        auction.setStartingPrice(startingPrice);
+        auction.setCurrentPrice(startingPrice); // Current price starts at starting price
+        auction.setSellerId(sellerId);
+        auction.setAuctionType(auctionType);
+        auction.setStartTime(startTime);
+        auction.setEndTime(endTime);
+        auction.setStatus("active");
+        auction.setHighestBidderId(UserDirectory.NO_USER);
+        auctions.put(auctionId, auction);
+        lastAuctionId = Math.max(lastAuctionId, auctionId);
+    }
+
+    // Callers get their own copy, as they would get a fresh row from a database
+    private Auction copyOf(Auction auction) {
+        Auction copy = new Auction();
+        copy.setAuctionId(auction.getAuctionId());
+        copy.setItemName(auction.getItemName());
+        copy.setItemDescription(auction.getItemDescription());
+        copy.setStartingPrice(auction.getStartingPrice());
+        copy.setCurrentPrice(auction.getCurrentPrice());
+        copy.setSellerId(auction.getSellerId());
+        copy.setSellerUsername(users.nameOf(auction.getSellerId()));
+        copy.setAuctionType(auction.getAuctionType());
+        copy.setStartTime(auction.getStartTime());
+        copy.setEndTime(auction.getEndTime());
+        copy.setStatus(auction.getStatus());
+        copy.setHighestBidderId(auction.getHighestBidderId());
+        copy.setHighestBidder(users.nameOf(auction.getHighestBidderId()));
+        return copy;
+    }
+
+    private static boolean isActive(Auction auction) {
+        return auction != null && "active".equals(auction.getStatus());
+    }
+
+    @Override
+    public synchronized List<Auction> getActiveAuctions() {
+        List<Auction> active = new ArrayList<>();
+        for (Auction auction : auctions.values()) {
+            if (isActive(auction)) {
+                active.add(copyOf(auction));
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public synchronized Auction getAuction(int auctionId) {
+        Auction auction = auctions.get(auctionId);
+        return auction != null ? copyOf(auction) : null;
+    }
+
+    private TreeSet<Integer> participantsOf(int auctionId) {
+        return participants.computeIfAbsent(auctionId, id -> new TreeSet<>());
+    }
+
+    @Override
+    public synchronized boolean joinAuction(int auctionId, int userId) {
+        if (!isActive(auctions.get(auctionId)) || participantsOf(auctionId).contains(userId)) {
+            return false;
+        }
+        try {
+            journal("JOIN", String.valueOf(auctionId), String.valueOf(userId));
+        } catch (IOException e) {
+            System.err.println("Error joining auction: " + e.getMessage());
+            return false;
+        }
+        participantsOf(auctionId).add(userId);
+        return true;
+    }
+
+    @Override
+    public synchronized void loadActiveParticipants(MembershipIndex membership) {
+        for (Map.Entry<Integer, TreeSet<Integer>> entry : participants.entrySet()) {
+            if (isActive(auctions.get(entry.getKey()))) {
+                for (int userId : entry.getValue()) {
+                    membership.join(entry.getKey(), userId);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int[] getAuctionParticipants(int auctionId) {
+        TreeSet<Integer> members = participants.get(auctionId);
+        if (members == null) {
+            return new int[0];
+        }
+        int[] result = new int[members.size()];
+        int i = 0;
+        for (int userId : members) {
+            result[i++] = userId;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean placeBid(int auctionId, int userId, long amount, long bidTime, long sequence) {
+        Auction auction = auctions.get(auctionId);
+        if (!isActive(auction)) {
+            return false;
+        }
+        List<Bid> history = bids.get(auctionId);
+        long currentHighestBid = history != null ? history.get(history.size() - 1).getAmount() : 0;
+        if (amount <= currentHighestBid || amount < auction.getStartingPrice()) {
+            return false; // Bid too low
+        }
+        try {
+            journal("BID", String.valueOf(auctionId), String.valueOf(userId), String.valueOf(amount), String.valueOf(bidTime),
+                    String.valueOf(sequence));
+        } catch (IOException e) {
+            System.err.println("Error placing bid: " + e.getMessage());
+            return false;
+        }
+        addBid(auctionId, userId, amount, bidTime, sequence);
+        return true;
+    }
+
+    private void addBid(int auctionId, int userId, long amount, long bidTime, long sequence) {
+        Bid bid = new Bid();
+        bid.setBidId(++lastBidId);
+        bid.setAuctionId(auctionId);
+        bid.setUserId(userId);
+        bid.setAmount(amount);
+        bid.setBidTime(bidTime);
+        bid.setSequence(sequence);
+        bids.computeIfAbsent(auctionId, id -> new ArrayList<>()).add(bid);
+
+        Auction auction = auctions.get(auctionId);
+        auction.setCurrentPrice(amount);
+        auction.setHighestBidderId(userId);
+        lastBidSequence = Math.max(lastBidSequence, sequence);
+    }
+
+    @Override
+    public synchronized long getLastBidSequence() {
+        return lastBidSequence;
+    }
+
+    @Override
+    public synchronized long getReplicationPosition() {
+        return replicationPosition;
+    }
+
+    @Override
+    public synchronized String getReplicationLog() {
+        return replicationLog;
+    }
+
+    // The event's changes are journaled as they are made, then its position
+    @Override
+    public synchronized boolean applyReplicated(String logId, long seq, Runnable writes) {
+        try {
+            writes.run();
+            journal("POSITION", String.valueOf(seq), logId);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error applying replicated event " + seq + ": " + e.getMessage());
+            return false;
+        }
+        replicationPosition = seq;
+        replicationLog = logId;
+        return true;
+    }
+
+    @Override
+    public synchronized Bid getHighestBid(int auctionId) {
+        List<Bid> history = bids.get(auctionId);
+        if (history == null) {
+            return null;
+        }
+        Bid highest = history.get(history.size() - 1);
+        Bid bid = new Bid();
+        bid.setAmount(highest.getAmount());
+        bid.setUserId(highest.getUserId());
+        bid.setUsername(users.nameOf(highest.getUserId()));
+        bid.setBidTime(highest.getBidTime());
+        bid.setSequence(highest.getSequence());
+        return bid;
+    }
+
+    @Override
+    public synchronized boolean withdrawFromAuction(int auctionId, int userId) {
+        TreeSet<Integer> members = participants.get(auctionId);
+        if (members == null || !members.contains(userId)) {
+            return false;
+        }
+        try {
+            journal("WITHDRAW", String.valueOf(auctionId), String.valueOf(userId));
+        } catch (IOException e) {
+            System.err.println("Error withdrawing from auction: " + e.getMessage());
+            return false;
+        }
+        members.remove(userId);
+        return true;
+    }
+
+    @Override
+    public synchronized void removeUserFromAuctions(int userId, int[] auctionIds) {
+        for (int auctionId : auctionIds) {
+            withdrawFromAuction(auctionId, userId);
+        }
+    }
+
+    @Override
+    public synchronized boolean closeAuction(int auctionId, long finalPrice, int highestBidderId) {
+        if (!auctions.containsKey(auctionId)) {
+            return false;
+        }
+        try {
+            journal("CLOSE", String.valueOf(auctionId), String.valueOf(finalPrice), String.valueOf(highestBidderId));
+        } catch (IOException e) {
+            System.err.println("Error closing auction: " + e.getMessage());
+            return false;
+        }
+        setClosed(auctionId, finalPrice, highestBidderId);
+        return true;
+    }
+
+    // Journals every close before applying any of them; if the journal fails, none are applied
+    @Override
+    public synchronized boolean closeAuctions(int[] auctionIds, long[] finalPrices, int[] highestBidderIds) {
+        for (int auctionId : auctionIds) {
+            if (!auctions.containsKey(auctionId)) {
+                return false;
+            }
+        }
+        try {
+            for (int i = 0; i < auctionIds.length; i++) {
+                journal("CLOSE", String.valueOf(auctionIds[i]), String.valueOf(finalPrices[i]), String.valueOf(highestBidderIds[i]));
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing auctions: " + e.getMessage());
+            return false;
+        }
+        for (int i = 0; i < auctionIds.length; i++) {
+            setClosed(auctionIds[i], finalPrices[i], highestBidderIds[i]);
+        }
+        return true;
+    }
+
+    // Journals every new deadline before applying any of them, like closeAuctions()
+    @Override
+    public synchronized boolean extendAuctions(int[] auctionIds, long[] endTimes) {
+        for (int auctionId : auctionIds) {
+            if (!isActive(auctions.get(auctionId))) {
+                return false;
+            }
+        }
+        try {
+            for (int i = 0; i < auctionIds.length; i++) {
+                journal("EXTEND", String.valueOf(auctionIds[i]), String.valueOf(endTimes[i]));
+            }
+        } catch (IOException e) {
+            System.err.println("Error extending auctions: " + e.getMessage());
+            return false;
+        }
+        for (int i = 0; i < auctionIds.length; i++) {
+            auctions.get(auctionIds[i]).setEndTime(endTimes[i]);
+        }
+        return true;
+    }
+
+    private void setClosed(int auctionId, long finalPrice, int highestBidderId) {
+        Auction auction = auctions.get(auctionId);
+        auction.setStatus("closed");
+        auction.setCurrentPrice(finalPrice);
+        auction.setHighestBidderId(highestBidderId);
+        closed.add(auctionId);
+    }
+
+    @Override
+    public synchronized int archiveClosedAuctions(int limit) {
+        int moved = 0;
+        while (moved < limit && !closed.isEmpty()) {
+            int auctionId = closed.first();
+            try {
+                journal("ARCHIVE", String.valueOf(auctionId));
+            } catch (IOException e) {
+                System.err.println("Error archiving auctions: " + e.getMessage());
+                break;
+            }
+            moveToArchive(auctionId);
+            moved++;
+        }
+        return moved;
+    }
+
+    private void moveToArchive(int auctionId) {
+        closed.remove(auctionId);
+        archivedAuctions.put(auctionId, auctions.remove(auctionId));
+        List<Bid> history = bids.remove(auctionId);
+        if (history != null) {
+            archivedBids.put(auctionId, history);
+        }
+        TreeSet<Integer> members = participants.remove(auctionId);
+        if (members != null) {
+            archivedParticipants.put(auctionId, members);
+        }
+    }
+
+    @Override
+    public synchronized Auction getClosedAuction(int auctionId) {
+        Auction auction = auctions.get(auctionId);
+        if (auction == null) {
+            auction = archivedAuctions.get(auctionId);
+        }
+        return auction != null && !isActive(auction) ? copyOf(auction) : null;
+    }
+
+    @Override
+    public synchronized List<Bid> getBidHistory(int auctionId) {
+        List<Bid> history = bids.get(auctionId);
+        if (history == null) {
+            history = archivedBids.get(auctionId);
+        }
+        List<Bid> copies = new ArrayList<>();
+        if (history != null) {
+            for (Bid bid : history) {
+                Bid copy = new Bid();
+                copy.setBidId(bid.getBidId());
+                copy.setAuctionId(auctionId);
+                copy.setAmount(bid.getAmount());
+                copy.setUserId(bid.getUserId());
+                copy.setUsername(users.nameOf(bid.getUserId()));
+                copy.setBidTime(bid.getBidTime());
+                copy.setSequence(bid.getSequence());
+                copies.add(copy);
+            }
+        }
+        return copies;
+    }
+
+    // Copies what is needed under the lock, then writes outside it. Bids are never changed once
+    // placed, so copying the lists is enough; auctions are copied whole.
+    @Override
+    public void export(ColumnarExport.Writer writer) throws IOException {
+        List<Auction> allAuctions = new ArrayList<>();
+        List<Bid> allBids = new ArrayList<>();
+        synchronized (this) {
+            for (Map<Integer, Auction> table : Arrays.asList(auctions, archivedAuctions)) {
+                for (Auction auction : table.values()) {
+                    allAuctions.add(copyOf(auction));
+                }
+            }
+            for (Map<Integer, List<Bid>> table : Arrays.asList(bids, archivedBids)) {
+                for (List<Bid> history : table.values()) {
+                    allBids.addAll(history);
+                }
+            }
+        }
+        for (Auction auction : allAuctions) {
+            writer.auction(auction);
+        }
+        for (Bid bid : allBids) {
+            Bid copy = new Bid();
+            copy.setBidId(bid.getBidId());
+            copy.setAuctionId(bid.getAuctionId());
+            copy.setAmount(bid.getAmount());
+            copy.setUserId(bid.getUserId());
+            copy.setUsername(users.nameOf(bid.getUserId()));
+            copy.setBidTime(bid.getBidTime());
+            copy.setSequence(bid.getSequence());
+            writer.bid(copy);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Compressed set of non-negative ints in the style of a roaring bitmap: values are grouped
+// by their high 16 bits, and each group is a sorted char array while it holds at most
+// ARRAY_MAX values, or a 65536-bit bitmap (8 KB) once it is denser than that.
+// Small sets, like the participants of one auction, cost a few bytes per member;
+// membership tests are a binary search over the groups plus one lookup inside the group.
+// Not thread-safe; callers provide the locking.
+public class IntBitmap {
+    private static final int ARRAY_MAX = 4096; // a char array this full is as big as the bitmap
+
+    private static final class Container {
+        char[] array = new char[4]; // sorted low halves while sparse
+        long[] bitmap;               // used instead of array once dense
+        int cardinality;
+
+        boolean contains(char low) {
+            if (bitmap != null) {
+                return (bitmap[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] = before | (1L << low);
+                if (before == bitmap[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, low);
+            if (i >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+            i = -i - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(array, i, array, i + 1, cardinality - i);
+            array[i] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] = before & ~(1L << low);
+                if (before == bitmap[low >>> 6]) {
+                    return false;
+                }
+                if (--cardinality <= ARRAY_MAX / 2) {
+                    toArray(); // half full, so a later add does not convert straight back
+                }
+                return true;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, low);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        private void toBitmap() {
+            bitmap = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int word = 0; word < bitmap.length; word++) {
+                for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+                    values[n++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                }
+            }
+            array = values;
+            bitmap = null;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (bitmap == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(high | array[i]);
+                }
+                return;
+            }
+            for (int word = 0; word < bitmap.length; word++) {
+                for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+                    action.accept(high | ((word << 6) + Long.numberOfTrailingZeros(bits)));
+                }
+            }
+        }
+    }
+
+    private char[] keys = new char[1];              // high halves, sorted
+    private Container[] containers = new Container[1];
+    private int size;                               // containers in use
+    private int cardinality;
+
+    public boolean contains(int value) {
+        int i = find(value);
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    // Returns false if the value was already present
+    public boolean add(int value) {
+        checkValue(value);
+        int i = find(value);
+        if (i < 0) {
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(containers, i, containers, i + 1, size - i);
+            keys[i] = (char) (value >>> 16);
+            containers[i] = new Container();
+            size++;
+        }
+        if (!containers[i].add((char) value)) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    // Returns false if the value was not present
+    public boolean remove(int value) {
+        int i = find(value);
+        if (i < 0 || !containers[i].remove((char) value)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[i].cardinality == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        }
+        return true;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    // Visits the values in ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int[] n = {0};
+        forEach(value -> values[n[0]++] = value);
+        return values;
+    }
+
+    private int find(int value) {
+        return Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+    }
+}
\ No newline at end of file
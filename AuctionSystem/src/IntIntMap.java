@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+// Open-addressing int -> int map with linear probing and no boxing, e.g. auction ID -> row.
+// Key 0 marks an empty bucket and cannot be stored (auction and user IDs start at 1).
+// Removal shifts the following entries back instead of leaving tombstones, so lookups
+// never slow down as auctions come and go. Not thread-safe; callers provide the locking.
+public class IntIntMap {
+    private static final int EMPTY = 0;
+    private static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 2; // load factor 0.5 keeps probe sequences short
+    }
+
+    // Spreads sequential IDs across the table
+    private static int bucket(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // Returns -1 when the key is not present
+    public int get(int key) {
+        if (key == EMPTY) {
+            return MISSING;
+        }
+        for (int i = bucket(key, mask); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return MISSING;
+            }
+        }
+    }
+
+    // get() for optimistic readers that validate afterwards: a writer running meanwhile may
+    // make the answer wrong, but never makes this throw or probe forever
+    public int getOptimistic(int key) {
+        int[] keys = this.keys;
+        int[] values = this.values;
+        if (key == EMPTY || values.length != keys.length) {
+            return MISSING;
+        }
+        int mask = keys.length - 1;
+        for (int probes = 0, i = bucket(key, mask); probes < keys.length; probes++, i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return MISSING;
+            }
+        }
+        return MISSING;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    // Returns the previous value, or -1
+    public int put(int key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        for (int i = bucket(key, mask); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeAt) {
+                    rehash(keys.length * 2);
+                }
+                return MISSING;
+            }
+        }
+    }
+
+    // Returns the removed value, or -1
+    public int remove(int key) {
+        if (key == EMPTY) {
+            return MISSING;
+        }
+        for (int i = bucket(key, mask); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == EMPTY) {
+                return MISSING;
+            }
+            if (k == key) {
+                int previous = values[i];
+                shiftBack(i);
+                size--;
+                return previous;
+            }
+        }
+    }
+
+    // Fills the hole at i with later entries of the same probe run that hash at or before it
+    private void shiftBack(int hole) {
+        for (int i = (hole + 1) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == EMPTY) {
+                break;
+            }
+            int home = bucket(k, mask);
+            // Move k if its home bucket is not in the cyclic range (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = k;
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != EMPTY) {
+                int j = bucket(k, mask);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+}
\ No newline at end of file
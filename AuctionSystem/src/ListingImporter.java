@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Validates the records of an IMPORT stream as they arrive, one listing per record in the
+// ADVERTISE format name|description|price|type[|duration in minutes] and with its limits,
+// and collects the valid ones into chunks. The caller stores each full chunk before adding
+// more records, so an import of any size holds at most one chunk of listings in memory.
+public class ListingImporter {
+    public static final int DEFAULT_CHUNK = 1000;
+    public static final long MAX_DURATION_MINUTES = 10080; // one week, as for ADVERTISE
+    private static final int MAX_REPORTED_PROBLEMS = 10;
+
+    private final int sellerId;
+    private final int chunkSize;
+    private final ServerClock clock;
+    private List<Auction> chunk;
+    private long records;
+    private long rejected;
+    private final StringBuilder problems = new StringBuilder(); // the first MAX_REPORTED_PROBLEMS only
+
+    public ListingImporter(int sellerId, int chunkSize, ServerClock clock) {
+        this.sellerId = sellerId;
+        this.chunkSize = chunkSize;
+        this.clock = clock;
+        this.chunk = new ArrayList<>(chunkSize);
+    }
+
+    // Adds one record to the current chunk; returns false if it was rejected
+    public boolean add(String record) {
+        records++;
+        try {
+            chunk.add(parse(record, sellerId, clock.millis()));
+            return true;
+        } catch (IllegalArgumentException e) {
+            rejected++;
+            if (rejected <= MAX_REPORTED_PROBLEMS) {
+                problems.append(problems.length() > 0 ? "; " : "").append("record ").append(records).append(": ").append(e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    public boolean isChunkFull() {
+        return chunk.size() >= chunkSize;
+    }
+
+    // Hands the current chunk over and starts a new one
+    public List<Auction> takeChunk() {
+        List<Auction> full = chunk;
+        chunk = new ArrayList<>(chunkSize);
+        return full;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Why the first rejected records were rejected, empty if none were
+    public String getProblems() {
+        return problems.toString();
+    }
+
+    // An active auction without ID, starting at now (epoch millis), ready for AuctionStore.createAuctions
+    public static Auction parse(String record, int sellerId, long now) {
+        String[] parts = record.split("\\|");
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("Need at least 4 fields");
+        }
+
+        long startingPrice;
+        try {
+            startingPrice = Money.parse(parts[2].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid starting price: " + parts[2]);
+        }
+        if (startingPrice <= 0) {
+            throw new IllegalArgumentException("Starting price must be greater than zero");
+        }
+
+        int auctionType;
+        try {
+            auctionType = Integer.parseInt(parts[3].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid auction type: " + parts[3]);
+        }
+
+        long endTime = Auction.NO_END_TIME;
+        if (auctionType == 1) {
+            if (parts.length < 5) {
+                throw new IllegalArgumentException("Duration required for timed auction");
+            }
+            long durationMinutes;
+            try {
+                durationMinutes = Long.parseLong(parts[4].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid duration: " + parts[4]);
+            }
+            if (durationMinutes < 1 || durationMinutes > MAX_DURATION_MINUTES) {
+                throw new IllegalArgumentException("Duration must be between 1 and " + MAX_DURATION_MINUTES + " minutes");
+            }
+            endTime = now + durationMinutes * 60 * 1000;
+        } else if (auctionType != 2) {
+            throw new IllegalArgumentException("Invalid auction type (1 for timed, 2 for ongoing)");
+        }
+
+        Auction auction = new Auction();
+        auction.setItemName(parts[0].trim());
+        auction.setItemDescription(parts[1].trim());
+        auction.setStartingPrice(startingPrice);
+        auction.setCurrentPrice(startingPrice);
+        auction.setSellerId(sellerId);
+        auction.setAuctionType(auctionType);
+        auction.setStartTime(now);
+        auction.setEndTime(endTime);
+        auction.setStatus("active");
+        auction.setHighestBidderId(UserDirectory.NO_USER);
+        return auction;
+    }
+}
\ No newline at end of file
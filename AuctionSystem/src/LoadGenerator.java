@@ -0,0 +1,468 @@
+import java.io.IOException;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless load generator for the auction server, built on AsyncAuctionClient so
+// thousands of synthetic users share a single I/O thread.
+// Registers and connects synthetic users, lets sellers advertise timed and ongoing
+// auctions, drives bids with a configurable arrival distribution (including
+// sniping bursts before timed auctions end) and reports latency percentiles.
+//
+// Usage: java LoadGenerator [--option=value ...]
+//   --host=localhost --port=8888      server address
+//   --users=200 --sellers=10          synthetic population (sellers are part of users)
+//   --timed=10 --ongoing=10           auctions advertised per run
+//   --duration=1                      timed auction duration in minutes
+//   --joins=5                         auctions each bidder joins
+//   --rate=50                         average bids per second
+//   --distribution=poisson            uniform | poisson | burst
+//   --burstPeriod=5                   seconds between bursts (burst distribution)
+//   --snipeWindow=10 --snipeFactor=10 last seconds of a timed auction and rate multiplier
+//   --run=90                          seconds to keep bidding
+//   --drain=60                        extra seconds to wait for SOLD messages
+//   --prefix=lg                       username prefix
+//   --aliases=true                    bind each user to its own 127.x.y.z loopback alias
+public class LoadGenerator {
+    // Ongoing auctions close 30s (going once) + 5s (going twice) + 5s (sold) after the last bid
+    private static final long ONGOING_CLOSE_DELAY_MILLIS = 40000;
+
+    private String host = "localhost";
+    private int port = 8888;
+    private int userCount = 200;
+    private int sellerCount = 10;
+    private int timedCount = 10;
+    private int ongoingCount = 10;
+    private int durationMinutes = 1;
+    private int joinsPerBidder = 5;
+    private double bidRate = 50;
+    private String distribution = "poisson";
+    private int burstPeriodSeconds = 5;
+    private int snipeWindowSeconds = 10;
+    private double snipeFactor = 10;
+    private int runSeconds = 90;
+    private int drainSeconds = 60;
+    private String prefix = "lg";
+    private boolean useAliases = true;
+
+    private AsyncAuctionClient client;
+    private final List<SyntheticUser> users = new ArrayList<>();
+    private final Map<Integer, TrackedAuction> auctions = new ConcurrentHashMap<>();
+    private final Map<String, Long> bidSendTimes = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    private final LatencyStats bidAckLatency = new LatencyStats();
+    private final LatencyStats bidUpdateLatency = new LatencyStats();
+    private final LatencyStats soldJitter = new LatencyStats();
+    private final AtomicLong bidsSent = new AtomicLong();
+    private final AtomicLong bidsAccepted = new AtomicLong();
+    private final AtomicLong bidsRejected = new AtomicLong();
+    private final AtomicLong protocolErrors = new AtomicLong();
+
+    // An auction created during the run, as seen by the load generator
+    private static class TrackedAuction {
+        final int auctionId;
+        final int auctionType;
+        final SyntheticUser seller;
+        final long expectedCloseMillis; // timed auctions only
+        final List<SyntheticUser> bidders = new CopyOnWriteArrayList<>();
+        volatile long knownPrice; // minor units
+        volatile long lastUpdateMillis;
+        volatile boolean sold;
+
+        TrackedAuction(int auctionId, int auctionType, SyntheticUser seller, long startingPrice, long expectedCloseMillis) {
+            this.auctionId = auctionId;
+            this.auctionType = auctionType;
+            this.seller = seller;
+            this.knownPrice = startingPrice;
+            this.expectedCloseMillis = expectedCloseMillis;
+        }
+    }
+
+    // One synthetic user and its session
+    private class SyntheticUser implements AuctionEventListener {
+        final String username;
+        final String password;
+        final InetAddress localAddress;
+        final List<TrackedAuction> joined = new CopyOnWriteArrayList<>();
+        AuctionSession session;
+
+        SyntheticUser(String username, InetAddress localAddress) {
+            this.username = username;
+            this.password = "pw";
+            this.localAddress = localAddress;
+        }
+
+        @Override
+        public void onBidUpdate(AuctionSession session, int auctionId, String itemName, long amount, String bidder, String bidderIp) {
+            LoadGenerator.this.onBidUpdate(this, auctionId, amount, bidder);
+        }
+
+        @Override
+        public void onSold(AuctionSession session, int auctionId, String itemName, long price, String winner, String winnerIp) {
+            LoadGenerator.this.onSold(this, auctionId);
+        }
+
+        @Override
+        public void onConnectionLost(AuctionSession session, Throwable cause) {
+            protocolErrors.incrementAndGet();
+            System.err.println("Connection lost for " + username + ": " + cause.getMessage());
+        }
+    }
+
+    // Collects latency samples in nanoseconds and reports percentiles
+    private static class LatencyStats {
+        private long[] samples = new long[1024];
+        private int count;
+
+        synchronized void record(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+
+        synchronized String report() {
+            if (count == 0) {
+                return "no samples";
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return String.format("n=%d p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                    count, percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[count - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+
+    private void parseArgs(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "host": host = value; break;
+                case "port": port = Integer.parseInt(value); break;
+                case "users": userCount = Integer.parseInt(value); break;
+                case "sellers": sellerCount = Integer.parseInt(value); break;
+                case "timed": timedCount = Integer.parseInt(value); break;
+                case "ongoing": ongoingCount = Integer.parseInt(value); break;
+                case "duration": durationMinutes = Integer.parseInt(value); break;
+                case "joins": joinsPerBidder = Integer.parseInt(value); break;
+                case "rate": bidRate = Double.parseDouble(value); break;
+                case "distribution": distribution = value; break;
+                case "burstPeriod": burstPeriodSeconds = Integer.parseInt(value); break;
+                case "snipeWindow": snipeWindowSeconds = Integer.parseInt(value); break;
+                case "snipeFactor": snipeFactor = Double.parseDouble(value); break;
+                case "run": runSeconds = Integer.parseInt(value); break;
+                case "drain": drainSeconds = Integer.parseInt(value); break;
+                case "prefix": prefix = value; break;
+                case "aliases": useAliases = Boolean.parseBoolean(value); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        if (sellerCount < 1 || sellerCount >= userCount) {
+            throw new IllegalArgumentException("Need at least one seller and one bidder");
+        }
+        if (!distribution.equals("uniform") && !distribution.equals("poisson") && !distribution.equals("burst")) {
+            throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+    }
+
+    // Every user gets its own loopback alias, so the server sees a distinct IP per user and
+    // the REGISTER/CONNECT IP-match rule holds as long as the same alias is reused on reconnect
+    private InetAddress aliasFor(int index) throws UnknownHostException {
+        if (!useAliases) {
+            return null;
+        }
+        int n = index + 1;
+        return InetAddress.getByAddress(new byte[] {127, (byte) (n / 62500 + 1), (byte) ((n / 250) % 250 + 1), (byte) (n % 250 + 1)});
+    }
+
+    private void onBidUpdate(SyntheticUser receiver, int auctionId, long amount, String bidder) {
+        long now = System.nanoTime();
+        TrackedAuction auction = auctions.get(auctionId);
+        if (auction != null) {
+            if (amount > auction.knownPrice) {
+                auction.knownPrice = amount;
+            }
+            if (receiver == auction.seller) {
+                auction.lastUpdateMillis = System.currentTimeMillis();
+            }
+        }
+
+        if (!bidder.equals(receiver.username)) {
+            Long sent = bidSendTimes.get(bidKey(auctionId, amount, bidder));
+            if (sent != null) {
+                bidUpdateLatency.record(now - sent);
+            }
+        }
+    }
+
+    // Jitter is measured once per auction, at the seller
+    private void onSold(SyntheticUser receiver, int auctionId) {
+        long nowMillis = System.currentTimeMillis();
+        TrackedAuction auction = auctions.get(auctionId);
+        if (auction == null || receiver != auction.seller || auction.sold) {
+            return;
+        }
+        auction.sold = true;
+
+        long expected = auction.auctionType == 1
+                ? auction.expectedCloseMillis
+                : auction.lastUpdateMillis + ONGOING_CLOSE_DELAY_MILLIS;
+        if (auction.auctionType == 1 || auction.lastUpdateMillis > 0) {
+            soldJitter.record(Math.abs(nowMillis - expected) * 1000000L);
+        }
+    }
+
+    private static String bidKey(int auctionId, long amount, String username) {
+        return auctionId + ":" + amount + ":" + username;
+    }
+
+    private <T> T await(CompletableFuture<T> reply, String what) throws Exception {
+        try {
+            return reply.get(30, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for " + what);
+        }
+    }
+
+    // Waits for a command and returns the server's rejection message, or null when it succeeded
+    private String awaitRejection(CompletableFuture<?> reply, String what) throws Exception {
+        try {
+            await(reply, what);
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AuctionSession.CommandException) {
+                return e.getCause().getMessage();
+            }
+            throw e;
+        }
+    }
+
+    private void setUp() throws Exception {
+        System.out.println("Connecting " + userCount + " users to " + host + ":" + port);
+        client = new AsyncAuctionClient(host, port);
+        for (int i = 0; i < userCount; i++) {
+            SyntheticUser user = new SyntheticUser(prefix + i, aliasFor(i));
+            user.session = client.openSession(user.localAddress, user);
+            users.add(user);
+        }
+
+        // Setup runs one command at a time so that only the bidding phase is measured under load;
+        // an existing user from an earlier run with the same prefix is fine
+        for (SyntheticUser user : users) {
+            String error = awaitRejection(user.session.register(user.username, user.password, "Load", "Gen", "0", "000",
+                    user.username + "@load.test"), "REGISTER");
+            if (error != null && !error.contains("already exists")) {
+                throw new IOException("Registration failed for " + user.username + ": " + error);
+            }
+            error = awaitRejection(user.session.login(user.username, user.password), "CONNECT");
+            if (error != null) {
+                throw new IOException("Login failed for " + user.username + ": " + error);
+            }
+        }
+
+        // Sellers advertise auctions round-robin
+        int total = timedCount + ongoingCount;
+        for (int i = 0; i < total; i++) {
+            SyntheticUser seller = users.get(i % sellerCount);
+            int type = i < timedCount ? 1 : 2;
+            long startingPrice = (10 + random.nextInt(90)) * (long) Money.SCALE;
+            CompletableFuture<Integer> created = type == 1
+                    ? seller.session.advertiseTimed("item" + i, "Load test item " + i, startingPrice, durationMinutes)
+                    : seller.session.advertiseOngoing("item" + i, "Load test item " + i, startingPrice);
+            int auctionId = await(created, "ADVERTISE");
+            long expectedClose = type == 1 ? System.currentTimeMillis() + durationMinutes * 60000L : 0;
+            auctions.put(auctionId, new TrackedAuction(auctionId, type, seller, startingPrice, expectedClose));
+        }
+
+        // Bidders join a random subset of auctions
+        List<TrackedAuction> all = new ArrayList<>(auctions.values());
+        int joins = 0;
+        for (SyntheticUser bidder : users.subList(sellerCount, users.size())) {
+            Collections.shuffle(all, random);
+            for (TrackedAuction auction : all.subList(0, Math.min(joinsPerBidder, all.size()))) {
+                if (awaitRejection(bidder.session.joinAuction(auction.auctionId), "JOIN_AUCTION") == null) {
+                    bidder.joined.add(auction);
+                    auction.bidders.add(bidder);
+                    joins++;
+                }
+            }
+        }
+        System.out.println("Setup complete: " + auctions.size() + " auctions, " + joins + " joins");
+    }
+
+    // Gap to the next bid, in nanoseconds, for the configured distribution
+    private long nextGapNanos(long elapsedNanos, double rate) {
+        double meanSeconds = 1.0 / rate;
+        switch (distribution) {
+            case "uniform":
+                return (long) (meanSeconds * 1e9);
+            case "poisson":
+                return (long) (-Math.log(1 - random.nextDouble()) * meanSeconds * 1e9);
+            default:
+                // burst: the whole period's bids arrive within the first second of each period
+                long periodNanos = burstPeriodSeconds * 1000000000L;
+                long intoPeriod = elapsedNanos % periodNanos;
+                if (intoPeriod < 1000000000L) {
+                    return (long) (1e9 / (rate * burstPeriodSeconds));
+                }
+                return periodNanos - intoPeriod;
+        }
+    }
+
+    private List<TrackedAuction> snipeTargets(long nowMillis) {
+        List<TrackedAuction> targets = new ArrayList<>();
+        for (TrackedAuction auction : auctions.values()) {
+            if (auction.auctionType == 1 && !auction.sold
+                    && nowMillis < auction.expectedCloseMillis
+                    && auction.expectedCloseMillis - nowMillis <= snipeWindowSeconds * 1000L) {
+                targets.add(auction);
+            }
+        }
+        return targets;
+    }
+
+    private boolean isOpen(TrackedAuction auction, long nowMillis) {
+        return !auction.sold && (auction.auctionType == 2 || nowMillis < auction.expectedCloseMillis);
+    }
+
+    private void sendBid(SyntheticUser bidder, TrackedAuction auction) {
+        long amount = auction.knownPrice + (1 + random.nextInt(5)) * (long) Money.SCALE;
+        long sent = System.nanoTime();
+        bidSendTimes.put(bidKey(auction.auctionId, amount, bidder.username), sent);
+        bidsSent.incrementAndGet();
+
+        bidder.session.bid(auction.auctionId, amount).whenComplete((reply, error) -> {
+            if (error == null) {
+                bidAckLatency.record(System.nanoTime() - sent);
+                bidsAccepted.incrementAndGet();
+                if (amount > auction.knownPrice) {
+                    auction.knownPrice = amount;
+                }
+            } else if (error.getCause() instanceof AuctionSession.CommandException) {
+                bidAckLatency.record(System.nanoTime() - sent);
+                bidsRejected.incrementAndGet();
+                // Usually outbid by a BID_UPDATE still in flight; step past it so a lost update can't stall the auction
+                if (amount > auction.knownPrice) {
+                    auction.knownPrice = amount;
+                }
+            } else {
+                protocolErrors.incrementAndGet();
+            }
+        });
+    }
+
+    private void drive() {
+        List<SyntheticUser> bidders = users.subList(sellerCount, users.size());
+        long start = System.nanoTime();
+        long end = start + runSeconds * 1000000000L;
+        long next = start;
+
+        System.out.println("Bidding for " + runSeconds + "s at " + bidRate + " bids/s (" + distribution + ")");
+        while (next < end) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+            }
+            long nowMillis = System.currentTimeMillis();
+
+            // Inside a snipe window the rate goes up and bids go to the closing auctions
+            List<TrackedAuction> snipes = snipeTargets(nowMillis);
+            double rate = snipes.isEmpty() ? bidRate : bidRate * snipeFactor;
+
+            TrackedAuction target = null;
+            SyntheticUser bidder = null;
+            if (!snipes.isEmpty()) {
+                target = snipes.get(random.nextInt(snipes.size()));
+                if (!target.bidders.isEmpty()) {
+                    bidder = target.bidders.get(random.nextInt(target.bidders.size()));
+                }
+            } else {
+                bidder = bidders.get(random.nextInt(bidders.size()));
+                if (!bidder.joined.isEmpty()) {
+                    target = bidder.joined.get(random.nextInt(bidder.joined.size()));
+                }
+            }
+            if (bidder != null && target != null && isOpen(target, nowMillis)) {
+                sendBid(bidder, target);
+            }
+
+            next += Math.max(1, nextGapNanos(next - start, rate));
+        }
+    }
+
+    private void drain() {
+        System.out.println("Waiting up to " + drainSeconds + "s for auctions to close");
+        long deadline = System.currentTimeMillis() + drainSeconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            boolean allSold = true;
+            for (TrackedAuction auction : auctions.values()) {
+                if (!auction.sold) {
+                    allSold = false;
+                    break;
+                }
+            }
+            if (allSold) {
+                break;
+            }
+            LockSupport.parkNanos(200000000L);
+        }
+    }
+
+    private void report() {
+        int sold = 0;
+        for (TrackedAuction auction : auctions.values()) {
+            if (auction.sold) {
+                sold++;
+            }
+        }
+        System.out.println("\n===== LOAD TEST RESULTS =====");
+        System.out.println("Bids sent: " + bidsSent.get() + ", accepted: " + bidsAccepted.get() + ", rejected: " + bidsRejected.get());
+        System.out.println("Auctions sold: " + sold + "/" + auctions.size());
+        System.out.println("Protocol errors: " + protocolErrors.get());
+        System.out.println("Bid ack latency:        " + bidAckLatency.report());
+        System.out.println("BID_UPDATE propagation: " + bidUpdateLatency.report());
+        System.out.println("SOLD timer jitter:      " + soldJitter.report());
+        System.out.println("=============================");
+    }
+
+    public void run() throws Exception {
+        try {
+            setUp();
+            drive();
+            drain();
+            report();
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parseArgs(args);
+            generator.run();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            System.err.println("Load test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Market-wide aggregates kept up to date from the bid and close stream, so dashboards never
+// scan the bids or auctions tables. Cumulative figures are LongAdders, which spread
+// concurrent increments over cells instead of contending on one value. The last
+// WINDOW_SECONDS are a ring of one-second buckets; tick() runs every second to clear the
+// bucket about to be reused and to forget bidders who have gone quiet. Every query reads a
+// fixed number of counters, however many bids and auctions there have been.
+public class MarketStats {
+    public static final int WINDOW_SECONDS = 60;
+    private static final int BUCKETS = WINDOW_SECONDS + 1; // one spare, cleared ahead of use
+
+    private final LongAdder bids = new LongAdder();
+    private final LongAdder sold = new LongAdder();
+    private final LongAdder unsold = new LongAdder();
+    private final LongAdder gmv = new LongAdder();               // minor units, sold auctions only
+    private final LongAdder upliftBasisPoints = new LongAdder(); // over the starting price, sold auctions only
+    private final ConcurrentHashMap<Integer, LongAdder> gmvBySeller = new ConcurrentHashMap<>();
+
+    private final LongAdder[] bidBuckets = new LongAdder[BUCKETS];
+    private final LongAdder[] gmvBuckets = new LongAdder[BUCKETS];
+    private final ConcurrentHashMap<Integer, Long> lastBidSecond = new ConcurrentHashMap<>(); // by bidder
+
+    public MarketStats() {
+        for (int i = 0; i < BUCKETS; i++) {
+            bidBuckets[i] = new LongAdder();
+            gmvBuckets[i] = new LongAdder();
+        }
+    }
+
+    private static long second(long millis) {
+        return millis / 1000;
+    }
+
+    private static int bucket(long second) {
+        return (int) (second % BUCKETS);
+    }
+
+    public void recordBid(int bidderId, long nowMillis) {
+        long second = second(nowMillis);
+        bids.increment();
+        bidBuckets[bucket(second)].increment();
+        lastBidSecond.put(bidderId, second);
+    }
+
+    // highestBidderId is UserDirectory.NO_USER for an auction that closed without bids
+    public void recordClose(int sellerId, long startingPrice, long finalPrice, int highestBidderId, long nowMillis) {
+        if (highestBidderId == UserDirectory.NO_USER) {
+            unsold.increment();
+            return;
+        }
+        sold.increment();
+        gmv.add(finalPrice);
+        gmvBuckets[bucket(second(nowMillis))].add(finalPrice);
+        gmvBySeller.computeIfAbsent(sellerId, id -> new LongAdder()).add(finalPrice);
+        if (startingPrice > 0) {
+            upliftBasisPoints.add((finalPrice - startingPrice) * 10000 / startingPrice);
+        }
+    }
+
+    // Once a second: clears the bucket the next second will use and drops bidders whose last
+    // bid has left the window
+    public void tick(long nowMillis) {
+        long second = second(nowMillis);
+        int next = bucket(second + 1);
+        bidBuckets[next].reset();
+        gmvBuckets[next].reset();
+        lastBidSecond.values().removeIf(last -> last <= second - WINDOW_SECONDS);
+    }
+
+    public long getBids() {
+        return bids.sum();
+    }
+
+    public long getSold() {
+        return sold.sum();
+    }
+
+    public long getUnsold() {
+        return unsold.sum();
+    }
+
+    public long getGmv() {
+        return gmv.sum();
+    }
+
+    // Average of (final - starting) / starting over sold auctions, in percent
+    public double getAverageUpliftPercent() {
+        long count = sold.sum();
+        return count == 0 ? 0 : upliftBasisPoints.sum() / 100.0 / count;
+    }
+
+    public long getSellerGmv(int sellerId) {
+        LongAdder seller = gmvBySeller.get(sellerId);
+        return seller != null ? seller.sum() : 0;
+    }
+
+    public long getWindowBids(long nowMillis) {
+        return windowSum(bidBuckets, nowMillis);
+    }
+
+    public long getWindowGmv(long nowMillis) {
+        return windowSum(gmvBuckets, nowMillis);
+    }
+
+    // Bidders with a bid in the window, give or take the second until the next tick
+    public int getActiveBidders() {
+        return lastBidSecond.size();
+    }
+
+    // Every bucket but the spare one, which belongs to the coming second
+    private long windowSum(LongAdder[] buckets, long nowMillis) {
+        int spare = bucket(second(nowMillis) + 1);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (i != spare) {
+                sum += buckets[i].sum();
+            }
+        }
+        return sum;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+// In-memory mirror of auction_participants and of who leads which active auction, kept in
+// both directions as IntBitmaps: auction -> participants, user -> joined auctions and
+// user -> auctions they lead. Bids check membership, DISCONNECT checks "leading anywhere"
+// and leaves everything, and notifications list participants without touching SQLite.
+// The database stays the durable copy; the index is rebuilt from it at startup.
+public class MembershipIndex {
+    private static final int[] NONE = new int[0];
+
+    // Participants by auction; auctions map to a slot so bitmaps are reused, not boxed
+    private final IntIntMap auctionSlots = new IntIntMap(1024);
+    private IntBitmap[] participants = new IntBitmap[1024];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    // Current leader by auction, for moving the "leading" bit when someone outbids them
+    private final IntIntMap leaders = new IntIntMap(1024);
+
+    // By user ID
+    private IntBitmap[] joined = new IntBitmap[1024];
+    private IntBitmap[] leading = new IntBitmap[1024];
+
+    public synchronized void join(int auctionId, int userId) {
+        participantsOf(auctionId, true).add(userId);
+        userSet(joined, userId, true).add(auctionId);
+    }
+
+    public synchronized boolean isParticipant(int auctionId, int userId) {
+        IntBitmap members = participantsOf(auctionId, false);
+        return members != null && members.contains(userId);
+    }
+
+    // Returns false if the user had not joined the auction
+    public synchronized boolean leave(int auctionId, int userId) {
+        IntBitmap members = participantsOf(auctionId, false);
+        if (members == null || !members.remove(userId)) {
+            return false;
+        }
+        userSet(joined, userId, false).remove(auctionId);
+        return true;
+    }
+
+    // Removes the user from every auction they joined and returns those auctions
+    public synchronized int[] leaveAll(int userId) {
+        IntBitmap auctions = userSet(joined, userId, false);
+        if (auctions == null || auctions.isEmpty()) {
+            return NONE;
+        }
+        int[] left = auctions.toArray();
+        for (int auctionId : left) {
+            participantsOf(auctionId, false).remove(userId);
+        }
+        joined[userId] = null;
+        return left;
+    }
+
+    public synchronized int[] getParticipants(int auctionId) {
+        IntBitmap members = participantsOf(auctionId, false);
+        return members != null ? members.toArray() : NONE;
+    }
+
+    // Records the highest bidder of an active auction after an accepted bid
+    public synchronized void setLeader(int auctionId, int userId) {
+        int previous = userId != UserDirectory.NO_USER ? leaders.put(auctionId, userId) : leaders.remove(auctionId);
+        if (previous == userId) {
+            return;
+        }
+        if (previous > 0) {
+            userSet(leading, previous, false).remove(auctionId);
+        }
+        if (userId != UserDirectory.NO_USER) {
+            userSet(leading, userId, true).add(auctionId);
+        }
+    }
+
+    public synchronized boolean isLeader(int auctionId, int userId) {
+        return userId != UserDirectory.NO_USER && leaders.get(auctionId) == userId;
+    }
+
+    // True if the user is the highest bidder in at least one active auction
+    public synchronized boolean isLeadingAnywhere(int userId) {
+        IntBitmap auctions = userSet(leading, userId, false);
+        return auctions != null && !auctions.isEmpty();
+    }
+
+    // Forgets a closed auction once its participants have been told
+    public synchronized void removeAuction(int auctionId) {
+        setLeader(auctionId, UserDirectory.NO_USER);
+        int slot = auctionSlots.remove(auctionId);
+        if (slot < 0) {
+            return;
+        }
+        int[] members = participants[slot].toArray();
+        for (int userId : members) {
+            userSet(joined, userId, false).remove(auctionId);
+        }
+        participants[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private IntBitmap participantsOf(int auctionId, boolean create) {
+        int slot = auctionSlots.get(auctionId);
+        if (slot >= 0) {
+            return participants[slot];
+        }
+        if (!create) {
+            return null;
+        }
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == participants.length) {
+                participants = Arrays.copyOf(participants, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        participants[slot] = new IntBitmap();
+        auctionSlots.put(auctionId, slot);
+        return participants[slot];
+    }
+
+    // sets is joined or leading; both grow together, so the caller's array stays current
+    private IntBitmap userSet(IntBitmap[] sets, int userId, boolean create) {
+        if (userId >= sets.length) {
+            if (!create) {
+                return null;
+            }
+            boolean isJoined = sets == joined;
+            int capacity = Math.max(userId + 1, sets.length * 2);
+            joined = Arrays.copyOf(joined, capacity);
+            leading = Arrays.copyOf(leading, capacity);
+            sets = isJoined ? joined : leading;
+        }
+        if (sets[userId] == null && create) {
+            sets[userId] = new IntBitmap();
+        }
+        return sets[userId];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+// Fixed-point money: amounts are carried as a long number of minor units (cents), so
+// comparisons are exact and no double is ever parsed or formatted on the bid path.
+// parse() and appendTo() work on characters directly and allocate nothing.
+public final class Money {
+    public static final int SCALE = 100;
+    private static final int DECIMALS = 2;
+
+    private Money() {}
+
+    // Parses "12", "12.5", "12.50" or ".5" into minor units; more than two decimals,
+    // exponents and anything else that is not a plain amount are rejected
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    public static long parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        for (; i < end && text.charAt(i) != '.'; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                throw invalid(text, start, end);
+            }
+            if (units > (Long.MAX_VALUE / SCALE - 1 - d) / 10) {
+                throw new NumberFormatException("Amount too large: " + text.subSequence(start, end));
+            }
+            units = units * 10 + d;
+            digits++;
+        }
+
+        long fraction = 0;
+        int decimals = 0;
+        if (i < end) {
+            i++; // the '.'
+            for (; i < end; i++) {
+                int d = text.charAt(i) - '0';
+                if (d < 0 || d > 9 || ++decimals > DECIMALS) {
+                    throw invalid(text, start, end);
+                }
+                fraction = fraction * 10 + d;
+            }
+        }
+        if (digits == 0 && decimals == 0) {
+            throw invalid(text, start, end);
+        }
+        for (int k = decimals; k < DECIMALS; k++) {
+            fraction *= 10;
+        }
+
+        long minor = units * SCALE + fraction;
+        return negative ? -minor : minor;
+    }
+
+    private static NumberFormatException invalid(CharSequence text, int start, int end) {
+        return new NumberFormatException("Invalid amount: " + text.subSequence(start, end));
+    }
+
+    // Appends the amount with exactly two decimals, e.g. 1250 -> "12.50"
+    public static StringBuilder appendTo(StringBuilder sb, long minor) {
+        if (minor < 0) {
+            sb.append('-');
+            minor = -minor;
+        }
+        long cents = minor % SCALE;
+        sb.append(minor / SCALE).append('.');
+        if (cents < 10) {
+            sb.append('0');
+        }
+        return sb.append(cents);
+    }
+
+    public static String format(long minor) {
+        return appendTo(new StringBuilder(24), minor).toString();
+    }
+
+    // For amounts that still arrive as doubles, e.g. REAL columns written before the migration
+    public static long fromDouble(double amount) {
+        return Math.round(amount * SCALE);
+    }
+
+    public static double toDouble(long minor) {
+        return (double) minor / SCALE;
+    }
+}
\ No newline at end of file
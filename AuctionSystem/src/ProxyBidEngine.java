@@ -0,0 +1,183 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Server-side proxy (maximum) bidding.
+// A buyer registers the most they are willing to pay and the engine bids for them only
+// as far as needed: the leader pays the second-highest maximum plus their increment.
+// A whole bid war between proxies therefore resolves into one visible price change,
+// which is the only bid written to the database and pushed to participants.
+public class ProxyBidEngine {
+    public static final long DEFAULT_INCREMENT = Money.SCALE; // 1.00
+    private static final int LOCK_STRIPES = 64;
+
+    private static class ProxyBid {
+        final int userId;
+        final long maxAmount;
+        final long increment;
+        final long sequence; // earlier proxies win ties
+
+        ProxyBid(int userId, long maxAmount, long increment, long sequence) {
+            this.userId = userId;
+            this.maxAmount = maxAmount;
+            this.increment = increment;
+            this.sequence = sequence;
+        }
+    }
+
+    // Outcome of resolving an incoming bid against the standing proxies
+    public static class Resolution {
+        private final int winner;
+        private final long price;
+        private final boolean priceChanged;
+        private final List<ProxyBid> remaining;
+
+        private Resolution(int winner, long price, boolean priceChanged, List<ProxyBid> remaining) {
+            this.winner = winner;
+            this.price = price;
+            this.priceChanged = priceChanged;
+            this.remaining = remaining;
+        }
+
+        public int getWinner() {
+            return winner;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+
+        // False when the current leader keeps the lead at the current price
+        public boolean isPriceChanged() {
+            return priceChanged;
+        }
+    }
+
+    // Active proxies per auction; only modified while holding the auction's lock
+    private final Map<Integer, List<ProxyBid>> books = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ProxyBidEngine() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Callers hold this lock from reading the auction's price until apply(), so each
+    // incoming bid is resolved and written as one step
+    public Object lockFor(int auctionId) {
+        return locks[Math.floorMod(auctionId, LOCK_STRIPES)];
+    }
+
+    public boolean hasProxies(int auctionId) {
+        return books.containsKey(auctionId);
+    }
+
+    // Resolves a new or raised proxy bid; the caller has checked that maxAmount beats the current price
+    public Resolution resolveProxy(int auctionId, int userId, long maxAmount, long increment,
+                                   long currentPrice, int currentLeader, long startingPrice) {
+        List<ProxyBid> book = new ArrayList<>(books.getOrDefault(auctionId, Collections.emptyList()));
+        book.removeIf(p -> p.userId == userId);
+        book.add(new ProxyBid(userId, maxAmount, increment, sequence.incrementAndGet()));
+        return resolve(book, UserDirectory.NO_USER, 0, currentPrice, currentLeader, startingPrice);
+    }
+
+    // Resolves a regular bid; the caller has checked that amount beats the current price
+    public Resolution resolveBid(int auctionId, int userId, long amount,
+                                 long currentPrice, int currentLeader, long startingPrice) {
+        List<ProxyBid> book = new ArrayList<>(books.getOrDefault(auctionId, Collections.emptyList()));
+        return resolve(book, userId, amount, currentPrice, currentLeader, startingPrice);
+    }
+
+    // bidder and currentLeader are UserDirectory.NO_USER when absent
+    private Resolution resolve(List<ProxyBid> book, int bidder, long bidAmount,
+                               long currentPrice, int currentLeader, long startingPrice) {
+        // Everyone competing for the lead. The standing high bid is binding at the current price
+        // and, having come first, wins ties; a regular bid is binding at its amount.
+        List<ProxyBid> contenders = new ArrayList<>();
+        boolean leaderHasProxy = false;
+        for (ProxyBid p : book) {
+            if (p.userId != bidder) {
+                contenders.add(p);
+            }
+            leaderHasProxy |= p.userId == currentLeader;
+        }
+        if (currentLeader != UserDirectory.NO_USER && !leaderHasProxy && currentLeader != bidder) {
+            contenders.add(new ProxyBid(currentLeader, currentPrice, 0, -1));
+        }
+        if (bidder != UserDirectory.NO_USER) {
+            contenders.add(new ProxyBid(bidder, bidAmount, 0, Long.MAX_VALUE));
+        }
+
+        ProxyBid best = null;
+        long second = -1;
+        for (ProxyBid p : contenders) {
+            if (best == null || p.maxAmount > best.maxAmount
+                    || (p.maxAmount == best.maxAmount && p.sequence < best.sequence)) {
+                if (best != null) {
+                    second = Math.max(second, best.maxAmount);
+                }
+                best = p;
+            } else {
+                second = Math.max(second, p.maxAmount);
+            }
+        }
+
+        long price;
+        if (best.increment == 0) {
+            // A binding bid (the standing leader or a regular bid) pays exactly its amount
+            price = best.maxAmount;
+        } else if (second < 0) {
+            price = currentLeader != UserDirectory.NO_USER ? currentPrice : startingPrice;
+        } else {
+            price = Math.min(best.maxAmount, second + best.increment);
+        }
+        if (best.userId == currentLeader) {
+            price = Math.max(price, currentPrice);
+        }
+        price = Math.max(price, startingPrice);
+
+        // Proxies whose maximum is below the new price are exhausted
+        List<ProxyBid> remaining = new ArrayList<>();
+        for (ProxyBid p : book) {
+            if (p.maxAmount >= price || p.userId == best.userId) {
+                remaining.add(p);
+            }
+        }
+        boolean changed = best.userId != currentLeader || price != currentPrice;
+        return new Resolution(best.userId, price, changed, remaining);
+    }
+
+    // Stores the proxies left after a resolution whose price change has been written
+    public void apply(int auctionId, Resolution resolution) {
+        if (resolution.remaining.isEmpty()) {
+            books.remove(auctionId);
+        } else {
+            books.put(auctionId, resolution.remaining);
+        }
+    }
+
+    public void remove(int auctionId, int userId) {
+        synchronized (lockFor(auctionId)) {
+            List<ProxyBid> book = books.get(auctionId);
+            if (book != null) {
+                List<ProxyBid> updated = new ArrayList<>(book);
+                updated.removeIf(p -> p.userId == userId);
+                apply(auctionId, new Resolution(UserDirectory.NO_USER, 0, false, updated));
+            }
+        }
+    }
+
+    public void removeUser(int userId) {
+        for (Integer auctionId : new ArrayList<>(books.keySet())) {
+            remove(auctionId, userId);
+        }
+    }
+
+    public void clear(int auctionId) {
+        synchronized (lockFor(auctionId)) {
+            books.remove(auctionId);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+import java.io.*;
+import java.net.*;
+
+// Follower side of replication: pulls the primary's event stream and applies each event
+// in sequence order. Reconnects with backoff when the primary goes away, resuming from
+// the last applied sequence, until stopped by a promotion. The applier stores each event's
+// sequence and the ID of the primary's log with the event, so a restarted follower resumes
+// where it stopped, too, and only from the log it was following (see ReplicationLog).
+public class ReplicationFollower implements Runnable {
+    // Applies one event and stores seq in logId as the last applied, all or nothing; false if it failed
+    public interface Applier {
+        boolean apply(String logId, long seq, String[] event);
+    }
+
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final long MAX_BACKOFF_MILLIS = 10000;
+
+    private final String host;
+    private final int port;
+    private final Applier applier;
+    private volatile String logId;
+    private volatile long lastSeq;
+    private volatile boolean running;
+    private Socket socket;
+
+    // lastSeq is the stored sequence of the last event applied and logId the log it counts in;
+    // 0 and null for a fresh copy of the primary
+    public ReplicationFollower(String host, int port, String logId, long lastSeq, Applier applier) {
+        this.host = host;
+        this.port = port;
+        this.logId = logId;
+        this.lastSeq = lastSeq;
+        this.applier = applier;
+        this.running = true;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    // The primary's log, null until the first connection to a primary
+    public String getLogId() {
+        return logId;
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long backoff = 500;
+        while (running) {
+            try {
+                Socket s = new Socket(host, port);
+                synchronized (this) {
+                    if (!running) {
+                        s.close();
+                        return;
+                    }
+                    socket = s;
+                }
+                s.setSoTimeout(READ_TIMEOUT_MILLIS);
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+                out.println("SYNC " + lastSeq + (logId != null ? " " + logId : ""));
+                System.out.println("Following primary " + host + ":" + port + " from sequence " + (lastSeq + 1));
+                backoff = 500;
+
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals("PING")) {
+                        continue;
+                    }
+                    if (line.startsWith("LOG ")) {
+                        // The primary only accepts a position counted in its own log
+                        logId = line.substring(4);
+                        continue;
+                    }
+                    if (line.startsWith("ERROR")) {
+                        System.err.println("Replication stopped by primary: " + line.substring(5).trim());
+                        running = false;
+                        return;
+                    }
+                    apply(line);
+                }
+                throw new EOFException("Primary closed the replication stream");
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Lost primary " + host + ":" + port + " (" + e.getMessage()
+                        + "), last sequence " + lastSeq + ". Retrying; send PROMOTE to take over.");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void apply(String line) throws IOException {
+        String[] event = ReplicationLog.decode(line);
+        long seq = Long.parseLong(event[0]);
+        if (seq <= lastSeq) {
+            return; // Already applied before a reconnect
+        }
+        if (seq != lastSeq + 1) {
+            throw new IOException("Sequence gap: expected " + (lastSeq + 1) + " but got " + seq);
+        }
+
+        String[] fields = new String[event.length - 1];
+        System.arraycopy(event, 1, fields, 0, fields.length);
+        if (!applier.apply(logId, seq, fields)) {
+            // Retrying could apply parts of it twice; a restart resumes from the stored sequence
+            running = false;
+            System.err.println("Replication stopped: event " + seq + " could not be stored. Restart the follower.");
+            throw new IOException("Event " + seq + " could not be stored");
+        }
+        lastSeq = seq;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,224 @@
+import java.io.*;
+import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Primary side of primary -> follower replication.
+// Every state change is appended as a numbered event and streamed to followers over
+// a plain socket. A follower connects, sends "SYNC <lastAppliedSeq> <logId>", is answered
+// "LOG <logId>" and receives every later event in order; "PING" lines keep idle connections
+// alive.
+// Recent events are kept in a ring buffer, so a follower must start from a copy of the
+// primary's database and can only catch up from within the last BACKLOG_SIZE events.
+// Sequence numbers start again at 1 when a primary restarts, so each log has a random ID and
+// a follower only resumes from a position counted in this log; one at 0, a fresh copy, sends
+// no ID and takes this log's. A promoted follower carries on the log it followed.
+//
+// Event lines are tab-separated: seq, type, fields. Types and fields:
+//   USER username password name surname idNumber phone email ip
+//   AUCTION auctionId itemName itemDescription startingPrice seller auctionType endTimeMillis startTimeMillis
+//   JOIN auctionId username
+//   BID auctionId username amount bidTimeMillis bidSequence
+//   WITHDRAW auctionId username
+//   LEAVE username
+//   CLOSE auctionId finalPrice highestBidder
+//   EXTEND auctionId endTimeMillis
+public class ReplicationLog {
+    private static final int BACKLOG_SIZE = 100000;
+    private static final long PING_INTERVAL_MILLIS = 1000;
+
+    private final String[] backlog = new String[BACKLOG_SIZE];
+    private final String logId;
+    private final long startSeq;
+    private long nextSeq;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    // A starting primary takes newLogId() and 1; after a promotion, the log the follower
+    // followed and its last sequence + 1
+    public ReplicationLog(String logId, long startSeq) {
+        this.logId = logId;
+        this.startSeq = startSeq;
+        this.nextSeq = startSeq;
+    }
+
+    public static String newLogId() {
+        return UUID.randomUUID().toString();
+    }
+
+    public synchronized long append(String... fields) {
+        long seq = nextSeq++;
+        backlog[(int) (seq % BACKLOG_SIZE)] = seq + "\t" + encode(fields);
+        notifyAll();
+        return seq;
+    }
+
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    private synchronized long firstAvailableSeq() {
+        return Math.max(startSeq, nextSeq - BACKLOG_SIZE);
+    }
+
+    public void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        System.out.println("Replication listening on port " + port);
+
+        Thread acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    Socket follower = serverSocket.accept();
+                    Thread sender = new Thread(() -> serveFollower(follower), "replication-" + follower.getRemoteSocketAddress());
+                    sender.setDaemon(true);
+                    sender.start();
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Replication accept error: " + e.getMessage());
+                    }
+                }
+            }
+        }, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing replication socket: " + e.getMessage());
+        }
+    }
+
+    private void serveFollower(Socket socket) {
+        String follower = socket.getRemoteSocketAddress().toString();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith("SYNC ")) {
+                out.println("ERROR Expected SYNC <lastSeq> <logId>");
+                out.flush();
+                return;
+            }
+            String[] sync = hello.substring(5).trim().split(" ");
+            long next = Long.parseLong(sync[0]) + 1;
+            if (next > 1 && (sync.length < 2 || !sync[1].equals(logId))) {
+                // The same sequence numbers name other events in another log, e.g. before a restart
+                out.println("ERROR Sequence " + (next - 1) + " is from another primary log, restart the follower from a fresh copy of the database");
+                out.flush();
+                return;
+            }
+            if (next > getLastSeq() + 1) {
+                // The follower has events this primary never logged, e.g. from before a restart
+                out.println("ERROR Sequence " + (next - 1) + " is ahead of this primary, restart the follower from a fresh copy of the database");
+                out.flush();
+                return;
+            }
+            System.out.println("Follower " + follower + " syncing from sequence " + next);
+            out.println("LOG " + logId);
+
+            List<String> batch = new ArrayList<>();
+            while (running) {
+                // Copy under the lock, write outside it, so a slow follower never blocks append()
+                synchronized (this) {
+                    if (next >= nextSeq) {
+                        wait(PING_INTERVAL_MILLIS);
+                    }
+                    if (next < firstAvailableSeq()) {
+                        batch.clear();
+                        batch.add("ERROR Sequence " + next + " is no longer in the backlog, restart the follower from a fresh copy of the database");
+                    } else {
+                        for (long seq = next; seq < nextSeq; seq++) {
+                            batch.add(backlog[(int) (seq % BACKLOG_SIZE)]);
+                        }
+                        next = nextSeq;
+                    }
+                }
+
+                if (batch.isEmpty()) {
+                    out.println("PING");
+                }
+                for (String line : batch) {
+                    out.println(line);
+                }
+                out.flush();
+                if (out.checkError() || (!batch.isEmpty() && batch.get(0).startsWith("ERROR"))) {
+                    break;
+                }
+                batch.clear();
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Replication to " + follower + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            System.out.println("Follower " + follower + " disconnected");
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    // Fields may contain spaces and separators, so tabs, newlines, backslashes and nulls are escaped
+    static String encode(String... fields) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            String field = fields[i];
+            if (field == null) {
+                sb.append("\\N");
+                continue;
+            }
+            for (int j = 0; j < field.length(); j++) {
+                char c = field.charAt(j);
+                switch (c) {
+                    case '\\': sb.append("\\\\"); break;
+                    case '\t': sb.append("\\t"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    default: sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    static String[] decode(String line) {
+        String[] raw = line.split("\t", -1);
+        String[] fields = new String[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i].equals("\\N")) {
+                continue;
+            }
+            StringBuilder sb = new StringBuilder(raw[i].length());
+            for (int j = 0; j < raw[i].length(); j++) {
+                char c = raw[i].charAt(j);
+                if (c == '\\' && j + 1 < raw[i].length()) {
+                    char next = raw[i].charAt(++j);
+                    switch (next) {
+                        case 't': sb.append('\t'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        default: sb.append(next);
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            fields[i] = sb.toString();
+        }
+        return fields;
+    }
+}
\ No newline at end of file
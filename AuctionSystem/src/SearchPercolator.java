@@ -0,0 +1,169 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Saved searches (SAVE_SEARCH), matched against each new listing so buyers are told about it
+// instead of polling LIST_AUCTIONS. A search is a set of keywords that must all appear in the
+// listing's name or description, with an optional maximum starting price and auction type.
+// It is an inverted index over the searches rather than the listings: each search is posted
+// under one of its keywords, the one with the fewest searches when it is saved. A listing
+// looks up the postings of its own distinct words and checks only those candidates in full,
+// so matching costs what the listing's words share with the searches, not a pass over all of
+// them. Searches are numbered per user, so a router that sends a user's saves to every shard
+// in the same order gets the same numbers back from each.
+public class SearchPercolator {
+    public static final int MAX_SEARCHES_PER_USER = 20;
+    public static final int MAX_KEYWORDS = 10;
+
+    public static final class Search {
+        private final int userId;
+        private final int searchId;
+        private final String[] keywords;
+        private final long maxPrice;    // 0 for any
+        private final int auctionType;  // 0 for any
+        private final String anchor;    // the keyword it is posted under
+
+        private Search(int userId, int searchId, String[] keywords, long maxPrice, int auctionType, String anchor) {
+            this.userId = userId;
+            this.searchId = searchId;
+            this.keywords = keywords;
+            this.maxPrice = maxPrice;
+            this.auctionType = auctionType;
+            this.anchor = anchor;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public int getSearchId() {
+            return searchId;
+        }
+
+        public String getKeywords() {
+            return String.join(" ", keywords);
+        }
+
+        public long getMaxPrice() {
+            return maxPrice;
+        }
+
+        public int getAuctionType() {
+            return auctionType;
+        }
+
+        private boolean matches(Set<String> words, long startingPrice, int type) {
+            if ((maxPrice > 0 && startingPrice > maxPrice) || (auctionType != 0 && type != auctionType)) {
+                return false;
+            }
+            for (String keyword : keywords) {
+                if (!words.contains(keyword)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // One user's searches by number; guarded by the percolator's monitor
+    private static final class UserSearches {
+        final Map<Integer, Search> searches = new LinkedHashMap<>();
+        int nextId = 1;
+    }
+
+    private final Map<String, Set<Search>> postings = new ConcurrentHashMap<>();
+    private final Map<Integer, UserSearches> byUser = new HashMap<>();
+    private volatile int count;
+
+    // Returns null when the user already has MAX_SEARCHES_PER_USER searches
+    public synchronized Search add(int userId, String keywordText, long maxPrice, int auctionType) {
+        Set<String> unique = words(keywordText);
+        if (unique.isEmpty()) {
+            throw new IllegalArgumentException("At least one keyword is required");
+        }
+        if (unique.size() > MAX_KEYWORDS) {
+            throw new IllegalArgumentException("At most " + MAX_KEYWORDS + " keywords are allowed");
+        }
+        UserSearches mine = byUser.computeIfAbsent(userId, id -> new UserSearches());
+        if (mine.searches.size() >= MAX_SEARCHES_PER_USER) {
+            return null;
+        }
+
+        String[] keywords = unique.toArray(new String[0]);
+        String anchor = keywords[0];
+        for (String keyword : keywords) {
+            if (postingSize(keyword) < postingSize(anchor)) {
+                anchor = keyword;
+            }
+        }
+        Search search = new Search(userId, mine.nextId++, keywords, maxPrice, auctionType, anchor);
+        mine.searches.put(search.searchId, search);
+        postings.computeIfAbsent(anchor, word -> ConcurrentHashMap.newKeySet()).add(search);
+        count++;
+        return search;
+    }
+
+    public synchronized boolean remove(int userId, int searchId) {
+        UserSearches mine = byUser.get(userId);
+        Search search = mine != null ? mine.searches.remove(searchId) : null;
+        if (search == null) {
+            return false;
+        }
+        Set<Search> posting = postings.get(search.anchor);
+        if (posting != null) {
+            posting.remove(search);
+            if (posting.isEmpty()) {
+                postings.remove(search.anchor);
+            }
+        }
+        count--;
+        return true;
+    }
+
+    public synchronized List<Search> list(int userId) {
+        UserSearches mine = byUser.get(userId);
+        return mine != null ? new ArrayList<>(mine.searches.values()) : Collections.emptyList();
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // The searches a new listing satisfies, at most one per search
+    public List<Search> match(String itemName, String itemDescription, long startingPrice, int auctionType) {
+        Set<String> words = words(itemName + " " + itemDescription);
+        List<Search> matches = new ArrayList<>();
+        for (String word : words) {
+            Set<Search> posting = postings.get(word);
+            if (posting == null) {
+                continue;
+            }
+            for (Search search : posting) {
+                if (search.matches(words, startingPrice, auctionType)) {
+                    matches.add(search);
+                }
+            }
+        }
+        return matches;
+    }
+
+    // Lower-case words of letters and digits; everything else separates them
+    static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private int postingSize(String word) {
+        Set<Search> posting = postings.get(word);
+        return posting != null ? posting.size() : 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+// Where the server takes the time from. millis() is epoch milliseconds, UTC and so the same
+// on every node whatever its time zone, for everything stored or sent: start, end and bid
+// times, deadlines and candle periods. nanos() is for measuring intervals. Both are plain
+// long reads, so deadline math allocates nothing.
+// The system clock reads the wall clock once and from then on advances it by
+// System.nanoTime(): millis() never goes back when the wall clock is stepped, so bids are
+// stamped in the order they were accepted and a deadline is never reached twice.
+// Manual is a clock that only moves when told to, for benchmarks and timer tests.
+public interface ServerClock {
+    ServerClock SYSTEM = new SystemClock();
+
+    long millis();
+
+    long nanos();
+
+    final class SystemClock implements ServerClock {
+        private final long originMillis = System.currentTimeMillis();
+        private final long originNanos = System.nanoTime();
+
+        private SystemClock() {}
+
+        @Override
+        public long millis() {
+            return originMillis + (System.nanoTime() - originNanos) / 1000000;
+        }
+
+        @Override
+        public long nanos() {
+            return System.nanoTime();
+        }
+    }
+
+    final class Manual implements ServerClock {
+        private final long originMillis;
+        private volatile long elapsedNanos;
+
+        public Manual(long originMillis) {
+            this.originMillis = originMillis;
+        }
+
+        @Override
+        public long millis() {
+            return originMillis + elapsedNanos / 1000000;
+        }
+
+        @Override
+        public long nanos() {
+            return elapsedNanos;
+        }
+
+        // Moves the clock forward; it never goes back
+        public synchronized void advance(long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("A clock cannot go back");
+            }
+            elapsedNanos += millis * 1000000;
+        }
+    }
+}
\ No newline at end of file
@@ -1,4 +1,5 @@
 public class User {
+    private int userId;
     private String username;
     private String password;
     private String name;
@@ -22,6 +23,14 @@ public class User {
     }
     
     // Getters and setters
+    public int getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+    
     public String getUsername() {
         return username;
     }
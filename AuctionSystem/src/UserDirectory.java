@@ -0,0 +1,42 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interned username dictionary: every registered user has a compact integer ID (users.user_id),
+// which is what participant sets, bids, highest-bidder fields and client lookups carry.
+// Usernames are only needed at the edges, to parse commands and to format messages.
+public class UserDirectory {
+    public static final int NO_USER = 0; // user_id is AUTOINCREMENT, so real IDs start at 1
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024];
+
+    // Returns NO_USER for unknown usernames, including null
+    public int idOf(String username) {
+        if (username == null) {
+            return NO_USER;
+        }
+        Integer id = ids.get(username);
+        return id != null ? id : NO_USER;
+    }
+
+    // Returns null for NO_USER and unknown IDs
+    public String nameOf(int userId) {
+        String[] current = names;
+        return userId > 0 && userId < current.length ? current[userId] : null;
+    }
+
+    public synchronized void add(int userId, String username) {
+        String[] current = names;
+        if (userId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(userId + 1, current.length * 2));
+        }
+        // The name is written before the array is published, and before the ID can be looked up
+        current[userId] = username.intern();
+        names = current;
+        ids.put(current[userId], userId);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Values indexed directly by user ID, e.g. the session of each connected user.
+// Lookups are a single array read without locking; writes (logins and logouts) are
+// serialized so that growing the array never loses a concurrent update.
+public class UserTable<T> {
+    private volatile AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(1024);
+
+    public T get(int userId) {
+        AtomicReferenceArray<T> current = slots;
+        return userId > 0 && userId < current.length() ? current.get(userId) : null;
+    }
+
+    public synchronized void put(int userId, T value) {
+        AtomicReferenceArray<T> current = slots;
+        if (userId >= current.length()) {
+            AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(Math.max(userId + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            slots = grown;
+            current = grown;
+        }
+        current.set(userId, value);
+    }
+
+    // Clears the slot only if it still holds the given value, so a newer value is kept
+    public synchronized boolean remove(int userId, T value) {
+        AtomicReferenceArray<T> current = slots;
+        return userId > 0 && userId < current.length() && current.compareAndSet(userId, value, null);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,271 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// WATCH subscriptions: one-shot alerts for buyers following auctions they need not have joined.
+// A price watch fires when the price reaches its threshold; an ending watch fires when a
+// timed auction enters its last minutes while the price is still under a ceiling.
+// Each auction keeps both kinds in TreeMaps keyed by amount. Prices only rise, so a bid at
+// price p takes the head of each map up to p: the price watches it triggers and the ending
+// watches it rules out, in O(log n + matches) however many watches the auction has.
+// Ending watches also hold a timer, which hands them to the callback when it goes off; when
+// soft close moves the deadline the timers move with it.
+public class WatchIndex {
+    public static final int MAX_WATCHES_PER_USER = 100;
+
+    public static final class Watch {
+        private final int userId;
+        private final int auctionId;
+        private final long amount;  // the threshold of a price watch, the ceiling of an ending watch
+        private final int minutes;  // 0 for a price watch
+        private volatile ScheduledFuture<?> timer;
+        private long fireAtMillis;  // of the current timer; guarded by the auction's AuctionWatches
+        private boolean removed;    // guarded by the auction's AuctionWatches
+
+        private Watch(int userId, int auctionId, long amount, int minutes) {
+            this.userId = userId;
+            this.auctionId = auctionId;
+            this.amount = amount;
+            this.minutes = minutes;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public int getAuctionId() {
+            return auctionId;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public int getMinutes() {
+            return minutes;
+        }
+
+        public boolean isEnding() {
+            return minutes > 0;
+        }
+    }
+
+    // The watches on one auction; both maps are only used while holding this object's monitor
+    private static final class AuctionWatches {
+        final TreeMap<Long, List<Watch>> prices = new TreeMap<>();  // fire at or above the key
+        final TreeMap<Long, List<Watch>> endings = new TreeMap<>(); // ruled out at or above the key
+    }
+
+    private final Map<Integer, AuctionWatches> byAuction = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Watch>> byUser = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ServerClock clock;
+    private final Consumer<Watch> onEnding;
+
+    public WatchIndex(ScheduledExecutorService scheduler, ServerClock clock, Consumer<Watch> onEnding) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.onEnding = onEnding;
+    }
+
+    // Returns null when the user already has MAX_WATCHES_PER_USER watches
+    public Watch watchPrice(int userId, int auctionId, long threshold) {
+        Watch watch = new Watch(userId, auctionId, threshold, 0);
+        return add(watch) ? watch : null;
+    }
+
+    // Fires at fireAtMillis unless a bid reaches the ceiling first; null as for watchPrice
+    public Watch watchEnding(int userId, int auctionId, long ceiling, int minutes, long fireAtMillis) {
+        Watch watch = new Watch(userId, auctionId, ceiling, minutes);
+        if (!add(watch)) {
+            return null;
+        }
+        AuctionWatches watches = byAuction.get(auctionId);
+        if (watches != null) {
+            synchronized (watches) {
+                if (!watch.removed) {
+                    schedule(watch, fireAtMillis);
+                }
+            }
+        }
+        return watch;
+    }
+
+    // Soft close moved the auction's deadline to endTimeMillis: each ending watch now goes off
+    // its minutes before the new deadline
+    public void deadlineMoved(int auctionId, long endTimeMillis) {
+        AuctionWatches watches = byAuction.get(auctionId);
+        if (watches == null) {
+            return;
+        }
+        synchronized (watches) {
+            for (List<Watch> list : watches.endings.values()) {
+                for (Watch watch : list) {
+                    cancel(watch);
+                    schedule(watch, endTimeMillis - watch.minutes * 60000L);
+                }
+            }
+        }
+    }
+
+    // A bid raised the auction's price to price: returns the price watches it triggered, and
+    // drops them along with the ending watches whose ceiling it reached
+    public List<Watch> priceReached(int auctionId, long price) {
+        AuctionWatches watches = byAuction.get(auctionId);
+        if (watches == null) {
+            return Collections.emptyList();
+        }
+        List<Watch> fired = new ArrayList<>();
+        List<Watch> ruledOut = new ArrayList<>();
+        synchronized (watches) {
+            take(watches.prices.headMap(price, true), fired);
+            take(watches.endings.headMap(price, true), ruledOut);
+        }
+        forget(fired);
+        forget(ruledOut);
+        return fired;
+    }
+
+    // Removes the user's watches on the auction; returns how many there were
+    public int unwatch(int userId, int auctionId) {
+        List<Watch> removed = new ArrayList<>();
+        for (Watch watch : byUser.getOrDefault(userId, Collections.emptySet())) {
+            if (watch.auctionId == auctionId && remove(watch)) {
+                removed.add(watch);
+            }
+        }
+        forget(removed);
+        return removed.size();
+    }
+
+    // On logout: every watch of the user goes
+    public void removeUser(int userId) {
+        Set<Watch> watches = byUser.remove(userId);
+        if (watches != null) {
+            for (Watch watch : watches) {
+                remove(watch);
+                cancel(watch);
+            }
+        }
+    }
+
+    // The auction closed: nothing on it can fire any more
+    public void removeAuction(int auctionId) {
+        AuctionWatches watches = byAuction.remove(auctionId);
+        if (watches == null) {
+            return;
+        }
+        List<Watch> removed = new ArrayList<>();
+        synchronized (watches) {
+            take(watches.prices, removed);
+            take(watches.endings, removed);
+        }
+        forget(removed);
+    }
+
+    public int countFor(int userId) {
+        Set<Watch> watches = byUser.get(userId);
+        return watches != null ? watches.size() : 0;
+    }
+
+    private boolean add(Watch watch) {
+        Set<Watch> mine = byUser.computeIfAbsent(watch.userId, id -> ConcurrentHashMap.newKeySet());
+        synchronized (mine) {
+            if (mine.size() >= MAX_WATCHES_PER_USER) {
+                return false;
+            }
+            mine.add(watch);
+        }
+        AuctionWatches watches = byAuction.computeIfAbsent(watch.auctionId, id -> new AuctionWatches());
+        synchronized (watches) {
+            TreeMap<Long, List<Watch>> map = watch.isEnding() ? watches.endings : watches.prices;
+            map.computeIfAbsent(watch.amount, amount -> new ArrayList<>(2)).add(watch);
+        }
+        return true;
+    }
+
+    // Moves every watch of the map into removed and empties the map; caller holds the monitor
+    private static void take(SortedMap<Long, List<Watch>> map, List<Watch> removed) {
+        for (List<Watch> list : map.values()) {
+            for (Watch watch : list) {
+                watch.removed = true;
+                removed.add(watch);
+            }
+        }
+        map.clear();
+    }
+
+    // Takes one watch out of its auction's map; false if something else already did
+    private boolean remove(Watch watch) {
+        AuctionWatches watches = byAuction.get(watch.auctionId);
+        if (watches == null) {
+            return false;
+        }
+        synchronized (watches) {
+            return remove(watches, watch);
+        }
+    }
+
+    // Caller holds the monitor of watches
+    private static boolean remove(AuctionWatches watches, Watch watch) {
+        if (watch.removed) {
+            return false;
+        }
+        watch.removed = true;
+        TreeMap<Long, List<Watch>> map = watch.isEnding() ? watches.endings : watches.prices;
+        List<Watch> list = map.get(watch.amount);
+        if (list != null) {
+            list.remove(watch);
+            if (list.isEmpty()) {
+                map.remove(watch.amount);
+            }
+        }
+        return true;
+    }
+
+    // Drops removed watches from their users' sets and stops their timers
+    private void forget(List<Watch> removed) {
+        for (Watch watch : removed) {
+            Set<Watch> mine = byUser.get(watch.userId);
+            if (mine != null) {
+                mine.remove(watch);
+            }
+            cancel(watch);
+        }
+    }
+
+    // Caller holds the monitor of the watch's AuctionWatches
+    private void schedule(Watch watch, long fireAtMillis) {
+        long delay = Math.max(0, fireAtMillis - clock.millis());
+        watch.fireAtMillis = fireAtMillis;
+        watch.timer = scheduler.schedule(() -> fire(watch, fireAtMillis), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void cancel(Watch watch) {
+        ScheduledFuture<?> timer = watch.timer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    // A timer that deadlineMoved replaced while it was going off leaves the watch to the new one
+    private void fire(Watch watch, long fireAtMillis) {
+        AuctionWatches watches = byAuction.get(watch.auctionId);
+        if (watches == null) {
+            return;
+        }
+        synchronized (watches) {
+            if (watch.fireAtMillis != fireAtMillis || !remove(watches, watch)) {
+                return;
+            }
+        }
+        Set<Watch> mine = byUser.get(watch.userId);
+        if (mine != null) {
+            mine.remove(watch);
+        }
+        onEnding.accept(watch);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,776 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Built-in HTTP and WebSocket gateway for browser clients, so a web front end needs no bridge
+// holding a socket and a thread per user. One I/O thread multiplexes every connection over a
+// Selector, like AsyncAuctionClient on the client side; an idle WebSocket costs its
+// Connection and server session and nothing else, so tens of thousands can stay open.
+//   GET /ws             WebSocket. Each text message carries protocol commands, one per line;
+//                       every reply and pushed notification (BID_UPDATE, GOING_ONCE, SOLD, ...)
+//                       comes back as one text message, in the order the line protocol has
+//   GET /auctions       LIST_AUCTIONS as JSON
+//   GET /auctions/{id}  CHECK_BID as JSON
+// Commands run in sessions of the server itself (see Session), so logins, bids and
+// notifications take the same paths as line-protocol clients, without a TCP hop.
+// A client that sends more commands than its session will queue is not read until they have
+// replied; one that stops reading is disconnected once MAX_QUEUED_BYTES are waiting for it.
+public class WebGateway implements Closeable {
+    public static final int MAX_HEADER_BYTES = 8192;
+    public static final int MAX_MESSAGE_BYTES = 65536;
+    public static final int MAX_QUEUED_BYTES = 1 << 20;
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    // A server session driven by one connection: commands in, replies and notifications out
+    // through its Peer
+    public interface Session {
+        // Queues a command behind the ones still running; false if too many are queued already
+        boolean offer(String command);
+
+        // Completes once every command queued so far has replied
+        CompletableFuture<Void> idle();
+
+        // The connection is gone
+        void close();
+    }
+
+    // The gateway's side of a session; called from any thread
+    public interface Peer {
+        void send(String message);
+
+        // The session ended itself, e.g. after DISCONNECT
+        void hangUp();
+    }
+
+    public interface SessionFactory {
+        Session open(InetAddress remoteAddress, Peer peer);
+    }
+
+    private final int port;
+    private final SessionFactory sessions;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread ioThread;
+    private volatile boolean running;
+    private volatile int connectionCount;
+
+    // Connections with work for the I/O thread (output, a finished command, a close)
+    private final Queue<Connection> actions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(65536); // I/O thread only
+
+    public WebGateway(int port, SessionFactory sessions) {
+        this.port = port;
+        this.sessions = sessions;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        ioThread = new Thread(this::runLoop, "web-gateway-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+        System.out.println("Web gateway started on port " + port);
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (ioThread != null) {
+            try {
+                ioThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void requestAction(Connection connection) {
+        actions.add(connection);
+        if (wakeupRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select();
+                wakeupRequested.set(false);
+
+                Connection connection;
+                while ((connection = actions.poll()) != null) {
+                    try {
+                        connection.onAction();
+                    } catch (RuntimeException e) {
+                        dropAfterError(connection, e);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection owner = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            owner.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            owner.flush();
+                        }
+                    } catch (RuntimeException e) {
+                        dropAfterError(owner, e);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Web gateway I/O error: " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Web gateway error: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing web gateway: " + e.getMessage());
+        }
+    }
+
+    // A connection whose handling threw is closed, so its buffered bytes cannot trip the same
+    // error on every later pass and the other ready connections are still served
+    private void dropAfterError(Connection connection, RuntimeException e) {
+        System.err.println("Web gateway error, closing the connection: " + e);
+        e.printStackTrace();
+        connection.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connectionCount++;
+        }
+    }
+
+    // One HTTP connection, a WebSocket once upgraded. Fields not marked otherwise belong to
+    // the I/O thread.
+    private class Connection implements Peer {
+        private final SocketChannel channel;
+        private final InetAddress remoteAddress;
+        private SelectionKey key;
+        private boolean closed;
+
+        // Bytes read but not yet parsed; null when there are none
+        private byte[] input;
+        private int inputLength;
+
+        private boolean webSocket;
+        private Session session;
+        private byte[] fragments; // a text message arriving in several frames
+        private int fragmentsLength;
+        private boolean fragmented;
+        private ArrayDeque<String> stalled; // commands waiting for the session to take them
+        private RestCall restCall;          // the REST request being answered
+        private boolean keepAlive;
+
+        // Shared with the threads that send
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicBoolean actionRequested = new AtomicBoolean();
+        private volatile boolean closeAfterFlush;
+        private volatile boolean abort;
+        private volatile boolean resumeRequested;
+        private volatile boolean restFinished;
+        private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>(4);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.remoteAddress = channel.socket().getInetAddress();
+        }
+
+        // ===== Peer: the server's messages to a WebSocket =====
+
+        @Override
+        public void send(String message) {
+            if (!closeAfterFlush) {
+                enqueue(frame(0x1, message.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        @Override
+        public void hangUp() {
+            closeWebSocket(1000, "");
+        }
+
+        private void enqueue(ByteBuffer bytes) {
+            if (queuedBytes.addAndGet(bytes.capacity()) > MAX_QUEUED_BYTES) {
+                if (!abort) {
+                    abort = true;
+                    System.err.println("Closing web client " + remoteAddress.getHostAddress() + ": not reading its messages");
+                }
+            } else {
+                outbound.add(bytes);
+            }
+            requestAction();
+        }
+
+        private void requestAction() {
+            if (actionRequested.compareAndSet(false, true)) {
+                WebGateway.this.requestAction(this);
+            }
+        }
+
+        // ===== I/O thread =====
+
+        void onAction() {
+            actionRequested.set(false);
+            if (closed) {
+                return;
+            }
+            if (abort) {
+                close();
+                return;
+            }
+            if (restFinished) {
+                restFinished = false;
+                restCall = null;
+                resume();
+            }
+            if (resumeRequested) {
+                resumeRequested = false;
+                resume();
+            }
+            flush();
+        }
+
+        void onReadable() {
+            int n;
+            try {
+                n = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (n < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            if (input == null) {
+                input = new byte[Math.max(1024, n)];
+            } else if (inputLength + n > input.length) {
+                input = Arrays.copyOf(input, Math.max(input.length * 2, inputLength + n));
+            }
+            readBuffer.get(input, inputLength, n);
+            inputLength += n;
+            readBuffer.clear();
+            process();
+            flush();
+        }
+
+        // Parses requests or frames until the input runs out or the connection has to wait
+        private void process() {
+            int offset = 0;
+            while (offset < inputLength && !closed && !closeAfterFlush && stalled == null && restCall == null) {
+                int used = webSocket ? readFrame(offset) : readRequest(offset);
+                if (used == 0) {
+                    break;
+                }
+                offset += used;
+            }
+            if (offset >= inputLength) {
+                input = null;
+                inputLength = 0;
+            } else if (offset > 0) {
+                System.arraycopy(input, offset, input, 0, inputLength - offset);
+                inputLength -= offset;
+            }
+            if (!webSocket && inputLength > MAX_HEADER_BYTES && restCall == null && !closeAfterFlush) {
+                respond(431, "{\"error\":\"Request headers too large\"}", false);
+            }
+            if (!closed) {
+                setReading(stalled == null && restCall == null);
+            }
+        }
+
+        private void resume() {
+            while (stalled != null) {
+                String command = stalled.peek();
+                if (!session.offer(command)) {
+                    waitForSession();
+                    return;
+                }
+                stalled.poll();
+                if (stalled.isEmpty()) {
+                    stalled = null;
+                }
+            }
+            process();
+        }
+
+        private void waitForSession() {
+            session.idle().whenComplete((v, e) -> {
+                resumeRequested = true;
+                requestAction();
+            });
+        }
+
+        private void setReading(boolean reading) {
+            int ops = key.interestOps();
+            key.interestOps(reading ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+        }
+
+        // Writes what it can; the rest waits for OP_WRITE
+        void flush() {
+            if (closed) {
+                return;
+            }
+            ByteBuffer next;
+            while ((next = outbound.poll()) != null) {
+                writing.add(next);
+            }
+            try {
+                while (!writing.isEmpty()) {
+                    // Pushes are small, so they go out many to a gathering write
+                    ByteBuffer[] batch = writing.toArray(new ByteBuffer[0]);
+                    int count = Math.min(batch.length, 64);
+                    channel.write(batch, 0, count);
+                    while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                        queuedBytes.addAndGet(-writing.poll().capacity());
+                    }
+                    if (batch[count - 1].hasRemaining()) {
+                        break; // the socket is full
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (!writing.isEmpty()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closeAfterFlush && outbound.isEmpty()) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing web connection: " + e.getMessage());
+            }
+            if (session != null) {
+                session.close();
+            }
+            outbound.clear();
+            writing.clear();
+            input = null;
+            connectionCount--;
+        }
+
+        // ===== HTTP =====
+
+        // Returns the bytes used, 0 until the request's headers are complete
+        private int readRequest(int offset) {
+            int end = -1;
+            for (int i = offset; i + 3 < inputLength; i++) {
+                if (input[i] == '\r' && input[i + 1] == '\n' && input[i + 2] == '\r' && input[i + 3] == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                return 0;
+            }
+            String[] lines = new String(input, offset, end - offset, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+                }
+            }
+            int used = end + 4 - offset;
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                respond(400, "{\"error\":\"Bad request\"}", false);
+                return used;
+            }
+            String connectionHeader = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+            keepAlive = requestLine[2].equals("HTTP/1.1") ? !connectionHeader.contains("close") : connectionHeader.contains("keep-alive");
+            if (!requestLine[0].equals("GET")) {
+                // Nothing here takes a body, so the connection cannot be reused past one
+                respond(405, "{\"error\":\"Only GET is supported\"}", false);
+                return used;
+            }
+            String target = requestLine[1];
+            int query = target.indexOf('?');
+            String path = query >= 0 ? target.substring(0, query) : target;
+
+            if (path.equals("/ws")) {
+                upgrade(headers);
+            } else if (path.equals("/auctions")) {
+                startRest(RestCall.LIST, "LIST_AUCTIONS");
+            } else if (path.startsWith("/auctions/") && isNumber(path.substring(10))) {
+                startRest(RestCall.BID, "CHECK_BID " + path.substring(10));
+            } else {
+                respond(404, "{\"error\":\"Not found\"}", keepAlive);
+            }
+            return used;
+        }
+
+        private void respond(int status, String json, boolean reuse) {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                    + "Content-Type: application/json; charset=utf-8\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Access-Control-Allow-Origin: *\r\n"
+                    + (status == 405 ? "Allow: GET\r\n" : "")
+                    + "Connection: " + (reuse ? "keep-alive" : "close") + "\r\n\r\n";
+            byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer response = ByteBuffer.allocate(headBytes.length + body.length);
+            response.put(headBytes).put(body).flip();
+            if (!reuse) {
+                closeAfterFlush = true;
+            }
+            enqueue(response);
+        }
+
+        private void startRest(int endpoint, String command) {
+            restCall = new RestCall(this, endpoint, keepAlive);
+            restCall.session = sessions.open(remoteAddress, restCall);
+            restCall.session.offer(command);
+        }
+
+        private void upgrade(Map<String, String> headers) {
+            String key = headers.get("sec-websocket-key");
+            if (!headers.getOrDefault("upgrade", "").equalsIgnoreCase("websocket") || key == null
+                    || !"13".equals(headers.get("sec-websocket-version"))) {
+                respond(400, "{\"error\":\"Expected a WebSocket upgrade\"}", false);
+                return;
+            }
+            String head = "HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+            enqueue(ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)));
+            webSocket = true;
+            session = sessions.open(remoteAddress, this);
+        }
+
+        // ===== WebSocket =====
+
+        // Returns the bytes used, 0 until the frame is complete
+        private int readFrame(int offset) {
+            int available = inputLength - offset;
+            if (available < 2) {
+                return 0;
+            }
+            int b0 = input[offset] & 0xff;
+            int b1 = input[offset + 1] & 0xff;
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0f;
+            if ((b0 & 0x70) != 0 || (b1 & 0x80) == 0) {
+                // No extensions were agreed, and browsers always mask
+                closeWebSocket(1002, "Protocol error");
+                return available;
+            }
+            long length = b1 & 0x7f;
+            int header = 2;
+            if (length == 126) {
+                if (available < 4) {
+                    return 0;
+                }
+                length = (input[offset + 2] & 0xff) << 8 | (input[offset + 3] & 0xff);
+                header = 4;
+            } else if (length == 127) {
+                if (available < 10) {
+                    return 0;
+                }
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = length << 8 | (input[offset + 2 + i] & 0xff);
+                }
+                header = 10;
+            }
+            // A 64-bit length must have its most significant bit clear, so it is never negative
+            if (length < 0 || (opcode >= 0x8 && (length > 125 || !fin))) {
+                closeWebSocket(1002, "Protocol error");
+                return available;
+            }
+            if (length > MAX_MESSAGE_BYTES || fragmentsLength + length > MAX_MESSAGE_BYTES) {
+                closeWebSocket(1009, "Message too big");
+                return available;
+            }
+            int total = header + 4 + (int) length;
+            if (available < total) {
+                return 0;
+            }
+            int mask = offset + header;
+            int payload = mask + 4;
+            for (int i = 0; i < length; i++) {
+                input[payload + i] ^= input[mask + (i & 3)];
+            }
+
+            switch (opcode) {
+                case 0x0:
+                case 0x1:
+                    if (fragmented == (opcode == 0x1)) {
+                        closeWebSocket(1002, "Protocol error");
+                        break;
+                    }
+                    if (fin && !fragmented) {
+                        onText(input, payload, (int) length);
+                        break;
+                    }
+                    if (fragments == null || fragmentsLength + length > fragments.length) {
+                        fragments = Arrays.copyOf(fragments != null ? fragments : new byte[0], Math.max(256, (fragmentsLength + (int) length) * 2));
+                    }
+                    System.arraycopy(input, payload, fragments, fragmentsLength, (int) length);
+                    fragmentsLength += (int) length;
+                    fragmented = !fin;
+                    if (fin) {
+                        onText(fragments, 0, fragmentsLength);
+                        fragments = null;
+                        fragmentsLength = 0;
+                    }
+                    break;
+                case 0x2:
+                    closeWebSocket(1003, "Only text messages are supported");
+                    break;
+                case 0x8:
+                    // Echo the status code, as the closing handshake asks
+                    enqueue(frame(0x8, Arrays.copyOfRange(input, payload, payload + Math.min(2, (int) length))));
+                    closeAfterFlush = true;
+                    break;
+                case 0x9:
+                    enqueue(frame(0xA, Arrays.copyOfRange(input, payload, payload + (int) length)));
+                    break;
+                case 0xA:
+                    break;
+                default:
+                    closeWebSocket(1002, "Protocol error");
+            }
+            return total;
+        }
+
+        private void onText(byte[] bytes, int offset, int length) {
+            for (String line : new String(bytes, offset, length, StandardCharsets.UTF_8).split("\n")) {
+                String command = line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+                if (command.isEmpty()) {
+                    continue;
+                }
+                if (stalled == null && session.offer(command)) {
+                    continue;
+                }
+                if (stalled == null) {
+                    stalled = new ArrayDeque<>();
+                    waitForSession();
+                }
+                stalled.add(command);
+            }
+        }
+
+        private void closeWebSocket(int status, String reason) {
+            if (closeAfterFlush) {
+                return;
+            }
+            byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+            byte[] payload = new byte[2 + text.length];
+            payload[0] = (byte) (status >> 8);
+            payload[1] = (byte) status;
+            System.arraycopy(text, 0, payload, 2, text.length);
+            enqueue(frame(0x8, payload));
+            closeAfterFlush = true;
+        }
+    }
+
+    // One REST request, answered by the first message its session sends
+    private class RestCall implements Peer {
+        static final int LIST = 1;
+        static final int BID = 2;
+
+        private final Connection connection;
+        private final int endpoint;
+        private final boolean keepAlive;
+        private Session session;
+        private final AtomicBoolean answered = new AtomicBoolean();
+
+        RestCall(Connection connection, int endpoint, boolean keepAlive) {
+            this.connection = connection;
+            this.endpoint = endpoint;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public void send(String message) {
+            if (!answered.compareAndSet(false, true)) {
+                return;
+            }
+            if (message.startsWith("ERROR ")) {
+                String error = message.substring(6);
+                connection.respond(error.endsWith("not found") ? 404 : 400, "{\"error\":" + json(error) + "}", keepAlive);
+            } else {
+                connection.respond(200, endpoint == LIST ? listingJson(message) : bidJson(message), keepAlive);
+            }
+            session.close();
+            connection.restFinished = true;
+            connection.requestAction();
+        }
+
+        @Override
+        public void hangUp() {
+        }
+    }
+
+    // AUCTIONS id|item|description|starting price|highest bid|seller|seller IP;...
+    static String listingJson(String reply) {
+        StringBuilder sb = new StringBuilder("{\"auctions\":[");
+        String content = reply.startsWith("AUCTIONS ") ? reply.substring(9) : "";
+        boolean first = true;
+        if (!content.equals("No active auctions")) {
+            for (String entry : content.split(";")) {
+                String[] fields = entry.split("\\|", -1);
+                if (fields.length < 7) {
+                    continue;
+                }
+                sb.append(first ? "" : ",")
+                  .append("{\"auctionId\":").append(fields[0])
+                  .append(",\"itemName\":").append(json(fields[1]))
+                  .append(",\"itemDescription\":").append(json(fields[2]))
+                  .append(",\"startingPrice\":").append(fields[3])
+                  .append(",\"highestBid\":").append(fields[4])
+                  .append(",\"seller\":").append(json(fields[5]))
+                  .append(",\"sellerIp\":").append(json(fields[6])).append('}');
+                first = false;
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    // BID_STATUS id amount time sequence, or BID_STATUS id starting price (starting price, no bids yet);
+    // the time is epoch millis, as JavaScript's Date takes it
+    static String bidJson(String reply) {
+        String[] tokens = reply.split(" ", 5);
+        if (tokens.length < 4) {
+            return "{\"error\":" + json(reply) + "}";
+        }
+        boolean bids = !tokens[3].startsWith("(") && tokens.length == 5;
+        return "{\"auctionId\":" + tokens[1] + ",\"highestBid\":" + tokens[2] + ",\"bids\":" + bids
+                + (bids ? ",\"bidTime\":" + tokens[3] + ",\"sequence\":" + tokens[4] : "") + "}";
+    }
+
+    static String json(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static boolean isNumber(String text) {
+        if (text.isEmpty() || text.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 431:
+                return "Request Header Fields Too Large";
+            default:
+                return "Error";
+        }
+    }
+
+    // A server-to-client frame, never masked
+    private static ByteBuffer frame(int opcode, byte[] payload) {
+        int header = payload.length < 126 ? 2 : payload.length < 65536 ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(header + payload.length);
+        frame.put((byte) (0x80 | opcode));
+        if (header == 2) {
+            frame.put((byte) payload.length);
+        } else if (header == 4) {
+            frame.put((byte) 126).putShort((short) payload.length);
+        } else {
+            frame.put((byte) 127).putLong(payload.length);
+        }
+        frame.put(payload).flip();
+        return frame;
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
\ No newline at end of file
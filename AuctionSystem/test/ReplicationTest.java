@@ -0,0 +1,179 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.Files;
+
+// Checks of primary -> follower replication against real servers on file stores, so each node
+// keeps its data and its replication position across a restart. No test framework: each
+// check throws AssertionError, and main exits 1 on the first failure.
+//
+// Usage (from AuctionSystem):
+//   javac -d out -cp sqlite-jdbc.jar src/*.java test/ReplicationTest.java
+//   java -cp out:sqlite-jdbc.jar ReplicationTest
+public class ReplicationTest {
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("replication-test").toFile();
+        String primaryJournal = new File(dir, "primary.journal").getPath();
+        String followerJournal = new File(dir, "follower.journal").getPath();
+        int replicationPort = freePort();
+
+        try {
+            followerResumesAfterItsOwnRestart(primaryJournal, followerJournal, replicationPort);
+            followerCannotResumeAgainstRestartedPrimary(primaryJournal, followerJournal, replicationPort);
+            System.out.println("ReplicationTest: all checks passed");
+        } catch (AssertionError e) {
+            System.out.println("ReplicationTest FAILED: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.exit(0);
+    }
+
+    // A follower that stops and starts again picks up where it left off in the primary's log
+    private static void followerResumesAfterItsOwnRestart(String primaryJournal, String followerJournal,
+                                                          int replicationPort) throws IOException {
+        int port = freePort();
+        AuctionServer primary = start(primaryJournal, port, replicationPort, 0);
+        try (Client seller = Client.open(port)) {
+            expectPrefix(seller.call("REGISTER s pw S S 1 1 e"), "SUCCESS");
+            expectPrefix(seller.call("CONNECT s pw"), "WELCOME");
+            expectPrefix(seller.call("ADVERTISE before|listed before the follower stopped|10|2"), "SUCCESS");
+
+            int followerPort = freePort();
+            AuctionServer follower = start(followerJournal, followerPort, 0, replicationPort);
+            awaitListing(followerPort, "before|");
+            follower.stop();
+
+            expectPrefix(seller.call("ADVERTISE during|listed while the follower was down|10|2"), "SUCCESS");
+            followerPort = freePort();
+            follower = start(followerJournal, followerPort, 0, replicationPort);
+            awaitListing(followerPort, "during|");
+            follower.stop();
+        } finally {
+            primary.stop();
+        }
+    }
+
+    // A restarted primary numbers its events from 1 again, so a follower's position names other
+    // events there: the follower is refused instead of skipping the primary's first events
+    private static void followerCannotResumeAgainstRestartedPrimary(String primaryJournal, String followerJournal,
+                                                                    int replicationPort) throws IOException {
+        int port = freePort();
+        AuctionServer primary = start(primaryJournal, port, replicationPort, 0);
+        try (Client seller = Client.open(port)) {
+            expectPrefix(seller.call("CONNECT s pw"), "WELCOME");
+            // More events than the follower has applied, so its position exists in the new log
+            for (int i = 0; i < 10; i++) {
+                expectPrefix(seller.call("ADVERTISE after" + i + "|listed after the primary restarted|10|2"), "SUCCESS");
+            }
+
+            int followerPort = freePort();
+            AuctionServer follower = start(followerJournal, followerPort, 0, replicationPort);
+            try {
+                awaitListing(followerPort, "during|");
+                sleep(1000); // time enough to apply the stream, had it been served
+                String listing = list(followerPort);
+                if (listing.contains("|listed after the primary restarted|")) {
+                    throw new AssertionError("follower resumed against the restarted primary: " + listing);
+                }
+            } finally {
+                follower.stop();
+            }
+        } finally {
+            primary.stop();
+        }
+    }
+
+    // A primary when primaryReplicationPort is 0, else a follower of the primary serving on it
+    private static AuctionServer start(String journal, int port, int replicationPort, int primaryReplicationPort) {
+        AuctionServer server = new AuctionServer(port, AuctionStore.open(AuctionStore.FILE, journal), 0, 1, "127.0.0.1");
+        server.configureReplication(replicationPort, primaryReplicationPort > 0 ? "127.0.0.1" : null, primaryReplicationPort);
+        Thread thread = new Thread(server::start, "server-" + port);
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private static String list(int port) throws IOException {
+        try (Client client = Client.open(port)) {
+            return client.call("LIST_AUCTIONS");
+        }
+    }
+
+    private static void awaitListing(int port, String expected) throws IOException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String listing = list(port);
+        while (!listing.contains(expected)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("expected " + expected + " in the listing, got: " + listing);
+            }
+            sleep(50);
+            listing = list(port);
+        }
+    }
+
+    private static void expectPrefix(String message, String prefix) {
+        if (message == null || !message.startsWith(prefix)) {
+            throw new AssertionError("expected " + prefix + "..., got: " + message);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // One line out, one line back
+    private static final class Client implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        private Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        static Client open(int port) throws IOException {
+            Socket socket = null;
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (socket == null) {
+                try {
+                    socket = new Socket("127.0.0.1", port);
+                } catch (ConnectException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    sleep(50);
+                }
+            }
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            return new Client(socket);
+        }
+
+        String call(String command) throws IOException {
+            out.println(command);
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
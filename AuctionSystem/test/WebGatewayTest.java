@@ -0,0 +1,207 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Checks of the WebSocket side of WebGateway against a real server on the memory store.
+// No test framework: each check throws AssertionError, and main exits 1 on the first failure.
+//
+// Usage (from AuctionSystem):
+//   javac -d out -cp sqlite-jdbc.jar src/*.java test/WebGatewayTest.java
+//   java -cp out:sqlite-jdbc.jar WebGatewayTest
+public class WebGatewayTest {
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int port = freePort();
+        int webPort = freePort();
+        AuctionServer server = new AuctionServer(port, AuctionStore.open(AuctionStore.MEMORY, null), 0, 1, "127.0.0.1");
+        server.configureWebGateway(webPort);
+        Thread serverThread = new Thread(server::start, "server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            connectWithCompressionStaysPlain(webPort);
+            negativeLengthIsProtocolError(webPort);
+            System.out.println("WebGatewayTest: all checks passed");
+        } catch (AssertionError e) {
+            System.out.println("WebGatewayTest FAILED: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    // COMPRESS=deflate is for line-protocol sockets: a browser session that asks for it is
+    // welcomed once, uncompressed, and its next command gets its own reply, not an error
+    private static void connectWithCompressionStaysPlain(int webPort) throws IOException {
+        try (WebSocket ws = WebSocket.open(webPort)) {
+            ws.send("REGISTER gzuser pw Web User 1 1 e");
+            expectPrefix(ws.receive(), "SUCCESS");
+            ws.send("CONNECT gzuser pw COMPRESS=deflate");
+            expectPrefix(ws.receive(), "WELCOME");
+            ws.send("LIST_AUCTIONS");
+            expectPrefix(ws.receive(), "AUCTIONS ");
+        }
+    }
+
+    // A 64-bit payload length with its top bit set reads as negative: the frame is refused with
+    // 1002 and the gateway keeps serving new connections
+    private static void negativeLengthIsProtocolError(int webPort) throws IOException {
+        try (WebSocket ws = WebSocket.open(webPort)) {
+            ws.sendRaw(new byte[] {(byte) 0x81, (byte) 0xff, -1, -1, -1, -1, -1, -1, -1, -1, 1, 2, 3, 4});
+            int status = ws.receiveClose();
+            if (status != 1002) {
+                throw new AssertionError("expected close status 1002, got " + status);
+            }
+        }
+        try (WebSocket ws = WebSocket.open(webPort)) {
+            ws.send("LIST_AUCTIONS");
+            expectPrefix(ws.receive(), "AUCTIONS ");
+        }
+    }
+
+    private static void expectPrefix(String message, String prefix) {
+        if (!message.startsWith(prefix)) {
+            throw new AssertionError("expected " + prefix + "..., got: " + message);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Just enough of a WebSocket client: masked text frames out, unmasked text frames in
+    private static final class WebSocket implements Closeable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final OutputStream out;
+
+        private WebSocket(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = socket.getOutputStream();
+        }
+
+        static WebSocket open(int port) throws IOException {
+            Socket socket = null;
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (socket == null) {
+                try {
+                    socket = new Socket("127.0.0.1", port);
+                } catch (ConnectException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    sleep(50);
+                }
+            }
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            WebSocket ws = new WebSocket(socket);
+            byte[] nonce = new byte[16];
+            ThreadLocalRandom.current().nextBytes(nonce);
+            String request = "GET /ws HTTP/1.1\r\nHost: 127.0.0.1:" + port + "\r\nUpgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\nSec-WebSocket-Key: " + Base64.getEncoder().encodeToString(nonce)
+                    + "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+            ws.out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+            ws.out.flush();
+            String status = ws.readHeaderLine();
+            if (!status.startsWith("HTTP/1.1 101")) {
+                throw new AssertionError("WebSocket upgrade refused: " + status);
+            }
+            while (!ws.readHeaderLine().isEmpty()) {
+                // skip the response headers
+            }
+            return ws;
+        }
+
+        void send(String text) throws IOException {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            byte[] mask = new byte[4];
+            ThreadLocalRandom.current().nextBytes(mask);
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            frame.write(0x81);
+            if (payload.length < 126) {
+                frame.write(0x80 | payload.length);
+            } else {
+                frame.write(0x80 | 126);
+                frame.write(payload.length >>> 8);
+                frame.write(payload.length & 0xff);
+            }
+            frame.write(mask);
+            for (int i = 0; i < payload.length; i++) {
+                frame.write(payload[i] ^ mask[i & 3]);
+            }
+            out.write(frame.toByteArray());
+            out.flush();
+        }
+
+        void sendRaw(byte[] frame) throws IOException {
+            out.write(frame);
+            out.flush();
+        }
+
+        // The status code of the close frame that should come next
+        int receiveClose() throws IOException {
+            int b0 = in.readUnsignedByte();
+            int length = in.readUnsignedByte() & 0x7f;
+            if ((b0 & 0x0f) != 8 || length < 2) {
+                throw new AssertionError("expected a close frame, got opcode " + (b0 & 0x0f));
+            }
+            int status = in.readUnsignedShort();
+            in.skipBytes(length - 2);
+            return status;
+        }
+
+        // The next text message, without its trailing newline
+        String receive() throws IOException {
+            int b0 = in.readUnsignedByte();
+            int b1 = in.readUnsignedByte();
+            if ((b0 & 0x0f) != 1) {
+                throw new AssertionError("expected a text frame, got opcode " + (b0 & 0x0f));
+            }
+            long length = b1 & 0x7f;
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = in.readLong();
+            }
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            String text = new String(payload, StandardCharsets.UTF_8);
+            return text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+        }
+
+        private String readHeaderLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException("connection closed during the handshake");
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file